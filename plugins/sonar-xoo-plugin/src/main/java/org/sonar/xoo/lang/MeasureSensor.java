@@ -110,7 +110,8 @@ public class MeasureSensor implements Sensor {
   public void describe(SensorDescriptor descriptor) {
     descriptor
       .name("Xoo Measure Sensor")
-      .onlyOnLanguages(Xoo.KEY);
+      .onlyOnLanguages(Xoo.KEY)
+      .executedConcurrently();
   }
 
   @Override
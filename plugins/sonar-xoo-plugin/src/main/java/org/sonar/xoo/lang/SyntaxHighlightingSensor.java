@@ -85,7 +85,8 @@ public class SyntaxHighlightingSensor implements Sensor {
   public void describe(SensorDescriptor descriptor) {
     descriptor
       .name("Xoo Highlighting Sensor")
-      .onlyOnLanguages(Xoo.KEY);
+      .onlyOnLanguages(Xoo.KEY)
+      .executedConcurrently();
   }
 
   @Override
@@ -0,0 +1,122 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import java.io.File;
+import java.util.Date;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.issue.internal.IssueChangeContext;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.Uuids;
+import org.sonar.server.computation.issue.DefaultIssueCodec;
+import org.sonar.server.util.CloseableIterator;
+import org.sonar.server.util.cache.Codec;
+import org.sonar.server.util.cache.DiskCache;
+import org.sonar.server.util.cache.SerializableCodec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IssueCacheBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkIssueCache");
+
+  private static final int NUMBER_OF_ISSUES = 200_000;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    benchmark("Java serialization", new SerializableCodec<DefaultIssue>(), false);
+    benchmark("issue codec", new DefaultIssueCodec(), false);
+    benchmark("issue codec with LZ4", new DefaultIssueCodec(), true);
+  }
+
+  private void benchmark(String label, Codec<DefaultIssue> codec, boolean compressed) throws Exception {
+    File file = temp.newFile();
+    DiskCache<DefaultIssue> cache = new DiskCache<>(file, codec, compressed, System2.INSTANCE);
+
+    long start = System.currentTimeMillis();
+    DiskCache<DefaultIssue>.DiskAppender appender = cache.newAppender();
+    for (int i = 0; i < NUMBER_OF_ISSUES; i++) {
+      appender.append(newIssue(i));
+    }
+    appender.close();
+    long appendPeriod = System.currentTimeMillis() - start;
+
+    start = System.currentTimeMillis();
+    int count = 0;
+    try (CloseableIterator<DefaultIssue> issues = cache.traverse()) {
+      while (issues.hasNext()) {
+        assertThat(issues.next().key()).isNotNull();
+        count++;
+      }
+    }
+    long traversePeriod = System.currentTimeMillis() - start;
+    assertThat(count).isEqualTo(NUMBER_OF_ISSUES);
+
+    LOGGER.info(String.format("%s: %d issues appended in %d ms (%d issues/second), traversed in %d ms (%d issues/second), file size is %d Kb",
+      label, NUMBER_OF_ISSUES, appendPeriod, throughput(appendPeriod), traversePeriod, throughput(traversePeriod), file.length() / 1024));
+  }
+
+  private static long throughput(long period) {
+    return 1000L * NUMBER_OF_ISSUES / Math.max(1L, period);
+  }
+
+  private static DefaultIssue newIssue(int i) {
+    Date now = new Date();
+    DefaultIssue issue = new DefaultIssue()
+      .setKey(Uuids.create())
+      .setComponentUuid("FILE_UUID_" + (i / 100))
+      .setComponentKey("org.sonar:project:src/main/java/File" + (i / 100) + ".java")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".PROJECT_UUID.MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("org.sonar:project")
+      .setRuleKey(RuleKey.of("squid", "S" + (i % 300)))
+      .setLanguage("java")
+      .setSeverity(Severity.MAJOR)
+      .setMessage("Remove this unused private field " + i)
+      .setLine(1 + i % 1000)
+      .setEffortToFix(2.0)
+      .setDebt(Duration.create(10L))
+      .setStatus("OPEN")
+      .setChecksum("49d7230271f2bd24c759e54bcd66547d")
+      .setAuthorLogin("john")
+      .setCreationDate(now)
+      .setUpdateDate(now)
+      .setNew(i % 2 == 0);
+    if (i % 10 == 0) {
+      issue.setFieldChange(IssueChangeContext.createScan(now), "severity", Severity.MINOR, Severity.MAJOR);
+    }
+    return issue;
+  }
+}
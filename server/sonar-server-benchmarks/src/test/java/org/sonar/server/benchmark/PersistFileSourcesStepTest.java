@@ -24,7 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -35,12 +35,15 @@ import org.sonar.api.utils.internal.Uuids;
 import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.persistence.DbTester;
-import org.sonar.server.computation.batch.BatchReportDirectoryHolderImpl;
+import org.sonar.server.computation.ComputationMetrics;
+import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.computation.batch.BatchReportReaderImpl;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.computation.step.PersistFileSourcesStep;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.source.db.FileSourceDao;
@@ -73,16 +76,17 @@ public class PersistFileSourcesStepTest {
     persistFileSources(reportDir);
   }
 
-  private void persistFileSources(File reportDir) {
+  private void persistFileSources(File reportDir) throws IOException {
     LOGGER.info("Persist file sources");
     DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new FileSourceDao(dbTester.myBatis()));
 
     long start = System.currentTimeMillis();
 
-    BatchReportDirectoryHolderImpl batchReportDirectoryHolder = new BatchReportDirectoryHolderImpl();
-    batchReportDirectoryHolder.setDirectory(reportDir);
-    PersistFileSourcesStep step = new PersistFileSourcesStep(dbClient, System2.INSTANCE, treeRootHolder, new BatchReportReaderImpl(batchReportDirectoryHolder));
+    BatchReportReaderImpl reportReader = new BatchReportReaderImpl(new ReportQueue.Item(AnalysisReportDto.newForTests(1L), reportDir));
+    PersistFileSourcesStep step = new PersistFileSourcesStep(dbClient, System2.INSTANCE, treeRootHolder, reportReader,
+      new FileSourcesToIndexCache(temp.newFile(), System2.INSTANCE), new ComputationMetrics(System2.INSTANCE));
     step.execute();
+    reportReader.stop();
 
     long end = System.currentTimeMillis();
     long duration = end - start;
@@ -117,7 +121,7 @@ public class PersistFileSourcesStepTest {
       .build());
 
     writer.writeComponent(project.build());
-
+    writer.close();
     return reportDir;
   }
 
@@ -132,7 +136,7 @@ public class PersistFileSourcesStepTest {
       .setLines(NUMBER_OF_LINES)
       .build());
 
-    FileUtils.writeLines(writer.getSourceFile(fileRef), lineData.lines);
+    writer.writeFileSource(fileRef, StringUtils.join(lineData.lines, '\n'));
     writer.writeComponentCoverage(fileRef, lineData.coverages);
     writer.writeComponentChangesets(lineData.changesetsBuilder.setComponentRef(fileRef).build());
     writer.writeComponentSyntaxHighlighting(fileRef, lineData.highlightings);
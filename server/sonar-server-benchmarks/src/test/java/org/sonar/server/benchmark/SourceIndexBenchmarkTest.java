@@ -20,6 +20,8 @@
 
 package org.sonar.server.benchmark;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
@@ -46,6 +48,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 /**
  * Performance tests of the Elasticsearch index sourcelines
  * <ul>
+ *   <li>throughput and allocation rate of serialization of documents</li>
  *   <li>throughput of indexing of documents</li>
  *   <li>size of ES data directory</li>
  *   <li>time to request index</li>
@@ -65,6 +68,9 @@ public class SourceIndexBenchmarkTest {
 
   @Test
   public void benchmark() {
+    // serialize source lines to JSON documents, without indexing
+    benchmarkSerialization();
+
     // index source lines
     benchmarkIndexing();
 
@@ -72,6 +78,39 @@ public class SourceIndexBenchmarkTest {
     benchmarkQueries();
   }
 
+  private void benchmarkSerialization() {
+    LOGGER.info("Serializing source lines");
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    boolean allocationSupported = threadBean instanceof com.sun.management.ThreadMXBean
+      && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+
+    SourceIterator files = new SourceIterator(FILES, LINES_PER_FILE);
+    long docs = 0L;
+    long allocatedBefore = allocatedBytes(threadBean, allocationSupported);
+    long start = System.currentTimeMillis();
+    while (files.hasNext()) {
+      docs += files.next().getUpdateRequests().size();
+    }
+    long period = Math.max(1L, System.currentTimeMillis() - start);
+    long allocatedPerLine = (allocatedBytes(threadBean, allocationSupported) - allocatedBefore) / docs;
+
+    long throughputPerSecond = 1000L * docs / period;
+    LOGGER.info(String.format("%d lines serialized in %d ms (%d lines/second)", docs, period, throughputPerSecond));
+    if (allocationSupported) {
+      // includes the generation of protobuf data by the iterator
+      LOGGER.info(String.format("%d bytes allocated per line (%d MB/second)", allocatedPerLine, allocatedPerLine * throughputPerSecond / FileUtils.ONE_MB));
+      benchmark.expectBetween("Allocated bytes per serialized line", allocatedPerLine, 1000L, 5000L);
+    }
+    benchmark.expectAround("Throughput to serialize source lines", throughputPerSecond, 440000, Benchmark.DEFAULT_ERROR_MARGIN_PERCENTS);
+  }
+
+  private static long allocatedBytes(ThreadMXBean threadBean, boolean allocationSupported) {
+    if (allocationSupported) {
+      return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0L;
+  }
+
   private void benchmarkIndexing() {
     LOGGER.info("Indexing source lines");
 
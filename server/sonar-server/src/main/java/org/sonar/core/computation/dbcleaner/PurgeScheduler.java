@@ -0,0 +1,219 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.computation.dbcleaner;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.config.Settings;
+import org.sonar.api.platform.Server;
+import org.sonar.api.platform.ServerStartHandler;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.purge.IdUuidPair;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.properties.ProjectSettingsFactory;
+
+/**
+ * Purges the projects in background, out of the processing of analysis reports. The Compute Engine only
+ * requests the purge of the analyzed project through {@link #schedule(IdUuidPair, String)}.
+ * <p/>
+ * Projects are purged one at a time, only when no analysis report is waiting or being processed, and with
+ * a pause between two projects. The project is locked in {@link ReportQueue} during its purge, so that a report
+ * submitted meanwhile is not processed concurrently, for example while its unprocessed snapshot could be
+ * deleted as an aborted build. Requests are kept in memory: a project which is not purged before the server
+ * is stopped is purged after its next analysis.
+ */
+@Properties({
+  @Property(
+    key = PurgeScheduler.PROPERTY_PAUSE_IN_MS,
+    defaultValue = "" + PurgeScheduler.DEFAULT_PAUSE_IN_MS,
+    name = "Pause between the background purges of two projects, in milliseconds",
+    project = false,
+    global = false)
+})
+@ServerSide
+public class PurgeScheduler implements Startable, ServerStartHandler {
+
+  public static final String THREAD_NAME = "purge-scheduler";
+  public static final String PROPERTY_PAUSE_IN_MS = "sonar.dbcleaner.backgroundPurgePauseInMs";
+  public static final long DEFAULT_PAUSE_IN_MS = 1000L;
+
+  private static final Logger LOG = Loggers.get(PurgeScheduler.class);
+
+  private final DbClient dbClient;
+  private final ProjectCleaner projectCleaner;
+  private final ProjectSettingsFactory projectSettingsFactory;
+  private final ReportQueue reportQueue;
+  private final IssueIndexer issueIndexer;
+  private final ScheduledExecutorService executorService;
+  private final long pauseInMs;
+  private final long pollingDelay;
+  private final TimeUnit timeUnit;
+
+  // requests by project uuid, in order of arrival. Guarded by this.
+  private final Map<String, Request> requests = new LinkedHashMap<>();
+
+  public PurgeScheduler(DbClient dbClient, ProjectCleaner projectCleaner, ProjectSettingsFactory projectSettingsFactory,
+    ReportQueue reportQueue, IssueIndexer issueIndexer, Settings settings) {
+    this(dbClient, projectCleaner, projectSettingsFactory, reportQueue, issueIndexer, pauseInMs(settings), 30, TimeUnit.SECONDS);
+  }
+
+  @VisibleForTesting
+  PurgeScheduler(DbClient dbClient, ProjectCleaner projectCleaner, ProjectSettingsFactory projectSettingsFactory,
+    ReportQueue reportQueue, IssueIndexer issueIndexer, long pauseInMs, long pollingDelay, TimeUnit timeUnit) {
+    this.dbClient = dbClient;
+    this.projectCleaner = projectCleaner;
+    this.projectSettingsFactory = projectSettingsFactory;
+    this.reportQueue = reportQueue;
+    this.issueIndexer = issueIndexer;
+    this.pauseInMs = pauseInMs;
+    this.pollingDelay = pollingDelay;
+    this.timeUnit = timeUnit;
+    this.executorService = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat(THREAD_NAME).setDaemon(true).setPriority(Thread.MIN_PRIORITY).build());
+  }
+
+  @Override
+  public void start() {
+    // do nothing because we want to wait for the server to finish startup
+  }
+
+  @Override
+  public void stop() {
+    executorService.shutdownNow();
+  }
+
+  @Override
+  public void onServerStart(Server server) {
+    executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        purgePendingProjects();
+      }
+    }, pollingDelay, pollingDelay, timeUnit);
+  }
+
+  /**
+   * Requests the purge of a project. Does nothing if the project is already waiting for purge.
+   */
+  public synchronized void schedule(IdUuidPair project, String projectKey) {
+    if (!requests.containsKey(project.getUuid())) {
+      requests.put(project.getUuid(), new Request(project, projectKey));
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int countPendingProjects() {
+    return requests.size();
+  }
+
+  /**
+   * Purges the waiting projects as long as the Compute Engine has no analysis report to process.
+   */
+  @VisibleForTesting
+  void purgePendingProjects() {
+    while (!Thread.currentThread().isInterrupted() && reportQueue.all().isEmpty()) {
+      Request request = poll();
+      if (request == null) {
+        return;
+      }
+      if (!reportQueue.tryLockProject(request.projectKey)) {
+        // a report of the project has been booked meanwhile. Project is purged after its processing.
+        schedule(request.project, request.projectKey);
+        return;
+      }
+      try {
+        purge(request);
+      } finally {
+        reportQueue.unlockProject(request.projectKey);
+      }
+      pause();
+    }
+  }
+
+  @CheckForNull
+  private synchronized Request poll() {
+    Iterator<Request> it = requests.values().iterator();
+    if (!it.hasNext()) {
+      return null;
+    }
+    Request request = it.next();
+    it.remove();
+    return request;
+  }
+
+  private void purge(Request request) {
+    DbSession session = dbClient.openSession(true);
+    try {
+      if (dbClient.componentDao().selectNullableByUuid(session, request.project.getUuid()) == null) {
+        // project has been deleted meanwhile
+        return;
+      }
+      projectCleaner.purge(session, request.project, projectSettingsFactory.newProjectSettings(request.projectKey));
+      session.commit();
+      // issues of disabled components are closed by the purge
+      issueIndexer.index(request.project.getUuid());
+    } catch (RuntimeException e) {
+      LOG.error("Fail to purge project " + request.projectKey, e);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private void pause() {
+    if (pauseInMs > 0) {
+      try {
+        Thread.sleep(pauseInMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static long pauseInMs(Settings settings) {
+    String value = settings.getString(PROPERTY_PAUSE_IN_MS);
+    return value == null ? DEFAULT_PAUSE_IN_MS : Math.max(0L, settings.getLong(PROPERTY_PAUSE_IN_MS));
+  }
+
+  private static class Request {
+    private final IdUuidPair project;
+    private final String projectKey;
+
+    private Request(IdUuidPair project, String projectKey) {
+      this.project = project;
+      this.projectKey = projectKey;
+    }
+  }
+}
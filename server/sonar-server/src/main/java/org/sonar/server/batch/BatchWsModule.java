@@ -32,6 +32,7 @@ public class BatchWsModule extends Module {
       ProjectRepositoryLoader.class,
       SubmitReportAction.class,
       IssuesAction.class,
+      LineHashesAction.class,
       UsersAction.class,
       BatchWs.class);
   }
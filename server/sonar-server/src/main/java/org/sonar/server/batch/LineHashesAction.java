@@ -0,0 +1,127 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.apache.commons.dbutils.DbUtils;
+import org.sonar.api.resources.Scopes;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.web.UserRole;
+import org.sonar.batch.protocol.input.BatchInput;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.plugins.MimeTypes;
+import org.sonar.server.user.UserSession;
+
+/**
+ * Line hashes of all the files of a module, so that batch does not request them file by file
+ * when tracking issues.
+ */
+public class LineHashesAction implements BatchWsAction {
+
+  private static final String PARAM_KEY = "key";
+
+  private static final String SQL = "SELECT p.kee, fs.line_hashes FROM projects p " +
+    "INNER JOIN file_sources fs ON fs.file_uuid=p.uuid AND fs.data_type=? " +
+    "WHERE p.module_uuid=? AND p.scope=? AND p.enabled=?";
+
+  private final DbClient dbClient;
+  private final UserSession userSession;
+
+  public LineHashesAction(DbClient dbClient, UserSession userSession) {
+    this.dbClient = dbClient;
+    this.userSession = userSession;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction("line_hashes")
+      .setDescription("Return the line hashes of the files of a module, as a stream of delimited protobuf messages. " +
+        "Require Browse permission on module's project")
+      .setSince("5.2")
+      .setInternal(true)
+      .setHandler(this);
+
+    action
+      .createParam(PARAM_KEY)
+      .setRequired(true)
+      .setDescription("Project or module key")
+      .setExampleValue("org.codehaus.sonar:sonar");
+  }
+
+  @Override
+  public void handle(Request request, Response response) throws Exception {
+    String moduleKey = request.mandatoryParam(PARAM_KEY);
+
+    DbSession session = dbClient.openSession(false);
+    try {
+      ComponentDto module = dbClient.componentDao().selectByKey(session, moduleKey);
+      if (!Scopes.PROJECT.equals(module.scope())) {
+        throw new IllegalArgumentException(String.format("Component '%s' is not a module", moduleKey));
+      }
+      userSession.checkProjectUuidPermission(UserRole.USER, module.projectUuid());
+
+      response.stream().setMediaType(MimeTypes.PROTOBUF);
+      writeLineHashes(session, module, response.stream().output());
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private void writeLineHashes(DbSession session, ComponentDto module, OutputStream output) {
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = dbClient.newScrollingSelectStatement(session.getConnection(), SQL);
+      stmt.setString(1, FileSourceDto.Type.SOURCE);
+      stmt.setString(2, module.uuid());
+      stmt.setString(3, Scopes.FILE);
+      stmt.setBoolean(4, true);
+      rs = stmt.executeQuery();
+      BatchInput.FileLineHashes.Builder builder = BatchInput.FileLineHashes.newBuilder();
+      while (rs.next()) {
+        String lineHashes = rs.getString(2);
+        if (lineHashes != null) {
+          builder.clear()
+            .setKey(rs.getString(1))
+            .setLineHashes(lineHashes)
+            .build()
+            .writeDelimitedTo(output);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read line hashes of module " + module.key(), e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to serialize line hashes", e);
+    } finally {
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(stmt);
+    }
+  }
+}
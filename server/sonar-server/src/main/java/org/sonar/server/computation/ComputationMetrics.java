@@ -0,0 +1,230 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import com.google.common.collect.ImmutableList;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.System2;
+
+/**
+ * Rolling registry of the metrics of the last processed analysis reports: duration, rows read/written and
+ * memory allocated by each {@link org.sonar.server.computation.step.ComputationStep}. Metrics are
+ * kept in memory only.
+ * <p/>
+ * Steps can count the rows they read or write with {@link #addRowsRead(long)} and {@link #addRowsWritten(long)},
+ * which are attached to the step being executed by the current thread.
+ */
+@ServerSide
+public class ComputationMetrics {
+
+  static final int MAX_REPORTS = 100;
+
+  private static final Method GET_THREAD_ALLOCATED_BYTES = threadAllocatedBytesMethod();
+
+  private final System2 system;
+  private final ThreadLocal<StepMetrics> currentStep = new ThreadLocal<>();
+  // guarded by this
+  private final Map<Long, ReportMetrics> reportsById = new LinkedHashMap<Long, ReportMetrics>() {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, ReportMetrics> eldest) {
+      return size() > MAX_REPORTS;
+    }
+  };
+
+  public ComputationMetrics(System2 system) {
+    this.system = system;
+  }
+
+  public synchronized ReportMetrics startReport(long reportId, String projectKey) {
+    ReportMetrics report = new ReportMetrics(reportId, projectKey);
+    reportsById.put(reportId, report);
+    return report;
+  }
+
+  /**
+   * Starts measuring a step executed by the current thread. It must be stopped by the same thread.
+   */
+  public StepMetrics startStep(ReportMetrics report, String description) {
+    StepMetrics step = new StepMetrics(description, system.now(), currentThreadAllocatedBytes());
+    report.steps.add(step);
+    currentStep.set(step);
+    return step;
+  }
+
+  public void stopStep(StepMetrics step) {
+    long allocatedBytes = currentThreadAllocatedBytes();
+    if (allocatedBytes >= 0L && step.allocatedBytes >= 0L) {
+      step.allocatedBytes = allocatedBytes - step.allocatedBytes;
+    } else {
+      step.allocatedBytes = -1L;
+    }
+    // written last, as it marks the step as done
+    step.durationMs = system.now() - step.startedAt;
+    currentStep.remove();
+  }
+
+  /**
+   * Adds rows read from database by the step executed by the current thread. Does nothing
+   * if no step is being measured.
+   */
+  public void addRowsRead(long rows) {
+    StepMetrics step = currentStep.get();
+    if (step != null) {
+      step.rowsRead.addAndGet(rows);
+    }
+  }
+
+  /**
+   * Adds rows inserted or updated in database by the step executed by the current thread. Does nothing
+   * if no step is being measured.
+   */
+  public void addRowsWritten(long rows) {
+    StepMetrics step = currentStep.get();
+    if (step != null) {
+      step.rowsWritten.addAndGet(rows);
+    }
+  }
+
+  @CheckForNull
+  public synchronized ReportMetrics getReport(long reportId) {
+    return reportsById.get(reportId);
+  }
+
+  /**
+   * Metrics of the last processed reports, from the oldest to the most recent one
+   */
+  public synchronized List<ReportMetrics> getReports() {
+    return new ArrayList<>(reportsById.values());
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread, or -1 if the JVM does not support it
+   */
+  private static long currentThreadAllocatedBytes() {
+    if (GET_THREAD_ALLOCATED_BYTES == null) {
+      return -1L;
+    }
+    try {
+      return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      return -1L;
+    }
+  }
+
+  /**
+   * com.sun.management.ThreadMXBean is an extension of HotSpot, which is not part of the Java API. It
+   * is loaded by reflection to support other JVMs.
+   */
+  @CheckForNull
+  private static Method threadAllocatedBytesMethod() {
+    try {
+      Class<?> extendedBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+      if (extendedBeanClass.isInstance(ManagementFactory.getThreadMXBean())) {
+        return extendedBeanClass.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (ClassNotFoundException | NoSuchMethodException e) {
+      // not supported
+    }
+    return null;
+  }
+
+  public static class ReportMetrics {
+    private final long reportId;
+    private final String projectKey;
+    private final List<StepMetrics> steps = new CopyOnWriteArrayList<>();
+
+    private ReportMetrics(long reportId, String projectKey) {
+      this.reportId = reportId;
+      this.projectKey = projectKey;
+    }
+
+    public long getReportId() {
+      return reportId;
+    }
+
+    public String getProjectKey() {
+      return projectKey;
+    }
+
+    /**
+     * Steps in the order they have been started
+     */
+    public List<StepMetrics> getSteps() {
+      return ImmutableList.copyOf(steps);
+    }
+  }
+
+  public static class StepMetrics {
+    private final String description;
+    private final long startedAt;
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private volatile long durationMs = -1L;
+    // allocated bytes at startup, then the difference when step is stopped
+    private volatile long allocatedBytes;
+
+    private StepMetrics(String description, long startedAt, long allocatedBytes) {
+      this.description = description;
+      this.startedAt = startedAt;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public boolean isDone() {
+      return durationMs >= 0L;
+    }
+
+    /**
+     * @return the duration, or -1 if step is not done
+     */
+    public long getDurationMs() {
+      return durationMs;
+    }
+
+    /**
+     * @return the number of bytes allocated by the thread executing the step, or -1 if
+     * step is not done or if the JVM does not support it
+     */
+    public long getAllocatedBytes() {
+      return isDone() ? allocatedBytes : -1L;
+    }
+
+    public long getRowsRead() {
+      return rowsRead.get();
+    }
+
+    public long getRowsWritten() {
+      return rowsWritten.get();
+    }
+  }
+}
@@ -20,6 +20,21 @@
 package org.sonar.server.computation;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.sonar.api.config.Settings;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.Logger;
@@ -35,18 +50,31 @@ import static org.sonar.core.computation.db.AnalysisReportDto.Status.SUCCESS;
 @ServerSide
 public class ComputationService {
 
+  /**
+   * Maximum number of steps executed concurrently. Steps are executed sequentially, in the order of
+   * {@link ComputationSteps#orderedStepClasses()}, if value is 1.
+   */
+  public static final String PROPERTY_STEP_THREADS = "sonar.internal.ce.stepThreads";
+  static final int DEFAULT_STEP_THREADS = 4;
+
   private static final Logger LOG = Loggers.get(ComputationService.class);
 
   private final ReportQueue.Item item;
   private final ComputationSteps steps;
   private final ActivityManager activityManager;
   private final System2 system;
+  private final ComputationMetrics metrics;
+  private final int stepThreads;
 
-  public ComputationService(ReportQueue.Item item, ComputationSteps steps, ActivityManager activityManager, System2 system) {
+  public ComputationService(ReportQueue.Item item, ComputationSteps steps, ActivityManager activityManager, System2 system,
+    ComputationMetrics metrics, Settings settings) {
     this.item = item;
     this.steps = steps;
     this.activityManager = activityManager;
     this.system = system;
+    this.metrics = metrics;
+    int threads = settings.getInt(PROPERTY_STEP_THREADS);
+    this.stepThreads = threads > 0 ? threads : DEFAULT_STEP_THREADS;
   }
 
   public void process() {
@@ -54,12 +82,15 @@ public class ComputationService {
     Profiler profiler = Profiler.create(LOG).startDebug(
       String.format("Analysis of project %s (report %d)", projectKey, item.dto.getId())
       );
+    ComputationMetrics.ReportMetrics reportMetrics = metrics.startReport(item.dto.getId(), projectKey);
 
     try {
-      for (ComputationStep step : steps.instances()) {
-        Profiler stepProfiler = Profiler.createIfDebug(LOG).startDebug(step.getDescription());
-        step.execute();
-        stepProfiler.stopDebug();
+      if (stepThreads > 1) {
+        executeConcurrently(reportMetrics);
+      } else {
+        for (ComputationStep step : steps.instances()) {
+          execute(step, reportMetrics);
+        }
       }
       item.dto.setStatus(SUCCESS);
     } catch (Throwable e) {
@@ -71,4 +102,95 @@ public class ComputationService {
       profiler.stopInfo();
     }
   }
+
+  private void execute(ComputationStep step, ComputationMetrics.ReportMetrics reportMetrics) {
+    Profiler stepProfiler = Profiler.createIfDebug(LOG).startDebug(step.getDescription());
+    ComputationMetrics.StepMetrics stepMetrics = metrics.startStep(reportMetrics, step.getDescription());
+    try {
+      step.execute();
+    } finally {
+      metrics.stopStep(stepMetrics);
+    }
+    stepProfiler.stopDebug();
+  }
+
+  /**
+   * Steps are executed as soon as all their dependencies are completed, in the order of declaration
+   * when several steps are ready. When a step fails, no other steps are started and the running ones
+   * are completed before raising the error, as they use components of the analysis container.
+   */
+  private void executeConcurrently(final ComputationMetrics.ReportMetrics reportMetrics) throws ExecutionException {
+    ExecutorService executor = Executors.newFixedThreadPool(stepThreads, new ThreadFactoryBuilder()
+      .setNameFormat("ce-step-%d")
+      .setDaemon(true)
+      .build());
+    CompletionService<ComputationStep> completionService = new ExecutorCompletionService<>(executor);
+    List<ComputationStep> pendingSteps = Lists.newLinkedList(steps.instances());
+    Set<ComputationStep> completedSteps = new HashSet<>();
+    int runningSteps = 0;
+    ExecutionException failure = null;
+    try {
+      while ((failure == null && !pendingSteps.isEmpty()) || runningSteps > 0) {
+        if (failure == null) {
+          runningSteps += submitReadySteps(pendingSteps, completedSteps, completionService, reportMetrics);
+        }
+        if (runningSteps == 0) {
+          throw new IllegalStateException("Dependencies of steps can't be satisfied: " + pendingSteps);
+        }
+        Future<ComputationStep> completed = takeUninterruptibly(completionService);
+        runningSteps--;
+        try {
+          completedSteps.add(Uninterruptibles.getUninterruptibly(completed));
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (failure != null) {
+      Throwables.propagateIfPossible(failure.getCause());
+      throw failure;
+    }
+  }
+
+  private int submitReadySteps(List<ComputationStep> pendingSteps, Set<ComputationStep> completedSteps,
+    CompletionService<ComputationStep> completionService, final ComputationMetrics.ReportMetrics reportMetrics) {
+    int submitted = 0;
+    Iterator<ComputationStep> it = pendingSteps.iterator();
+    while (it.hasNext()) {
+      final ComputationStep step = it.next();
+      if (completedSteps.containsAll(steps.dependencies(step))) {
+        it.remove();
+        completionService.submit(new Callable<ComputationStep>() {
+          @Override
+          public ComputationStep call() {
+            execute(step, reportMetrics);
+            return step;
+          }
+        });
+        submitted++;
+      }
+    }
+    return submitted;
+  }
+
+  private static Future<ComputationStep> takeUninterruptibly(CompletionService<ComputationStep> completionService) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return completionService.take();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
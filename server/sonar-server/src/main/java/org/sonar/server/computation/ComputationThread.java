@@ -20,6 +20,7 @@
 
 package org.sonar.server.computation;
 
+import javax.annotation.CheckForNull;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.platform.ComponentContainer;
@@ -27,7 +28,7 @@ import org.sonar.server.computation.container.ComputeEngineContainer;
 import org.sonar.server.computation.container.ContainerFactory;
 
 /**
- * This thread pops a report from the queue and integrate it.
+ * This thread pops reports from the queue and integrates them until the queue is empty.
  */
 public class ComputationThread implements Runnable {
 
@@ -36,6 +37,7 @@ public class ComputationThread implements Runnable {
   private final ReportQueue queue;
   private final ComponentContainer sqContainer;
   private final ContainerFactory containerFactory;
+  private volatile boolean stopped = false;
 
   public ComputationThread(ReportQueue queue, ComponentContainer sqContainer, ContainerFactory containerFactory) {
     this.queue = queue;
@@ -45,16 +47,34 @@ public class ComputationThread implements Runnable {
 
   @Override
   public void run() {
-    ReportQueue.Item item = null;
+    ReportQueue.Item item = popSilently();
+    while (item != null) {
+      process(item);
+      if (stopped || Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      item = popSilently();
+    }
+  }
+
+  /**
+   * Stops popping the queue once the report being integrated, if any, is processed.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  @CheckForNull
+  private ReportQueue.Item popSilently() {
     try {
-      item = queue.pop();
+      return queue.pop();
     } catch (Exception e) {
       LOG.error("Failed to pop the queue of analysis reports", e);
+      return null;
     }
-    if (item == null) {
-      return;
-    }
+  }
 
+  private void process(ReportQueue.Item item) {
     ComputeEngineContainer computeEngineContainer = containerFactory.create(sqContainer, item);
     try {
       computeEngineContainer.process();
@@ -22,51 +22,62 @@ package org.sonar.server.computation;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import org.picocontainer.Startable;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.api.platform.ServerStartHandler;
 import org.sonar.core.platform.ComponentContainer;
 import org.sonar.server.computation.container.ContainerFactory;
 import org.sonar.server.computation.container.ContainerFactoryImpl;
 
+@Properties({
+  @Property(
+    key = ComputationThreadLauncher.PROPERTY_WORKER_COUNT,
+    defaultValue = "" + ComputationThreadLauncher.DEFAULT_WORKER_COUNT,
+    name = "Number of Compute Engine workers processing analysis reports concurrently",
+    project = false,
+    global = false)
+})
 public class ComputationThreadLauncher implements Startable, ServerStartHandler {
 
   public static final String THREAD_NAME_PREFIX = "computation-";
+  public static final String PROPERTY_WORKER_COUNT = "sonar.ce.workerCount";
+  public static final int DEFAULT_WORKER_COUNT = 1;
+  private static final long TERMINATION_TIMEOUT_IN_SECONDS = 30;
 
   private final ReportQueue queue;
   private final ComponentContainer sqContainer;
-  private final ScheduledExecutorService executorService;
+  private final ExecutorService executorService;
   private final ContainerFactory containerFactory;
+  private final List<ComputationThread> computationThreads = new CopyOnWriteArrayList<>();
+  private volatile boolean stopped = false;
 
-  private final long delayBetweenTasks;
-  private final long delayForFirstStart;
+  private final int workerCount;
+  private final long pollingDelay;
   private final TimeUnit timeUnit;
 
-  public ComputationThreadLauncher(ReportQueue queue, ComponentContainer sqContainer) {
-    this.queue = queue;
-    this.sqContainer = sqContainer;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
-    this.containerFactory = new ContainerFactoryImpl();
-
-    this.delayBetweenTasks = 10;
-    this.delayForFirstStart = 0;
-    this.timeUnit = TimeUnit.SECONDS;
+  public ComputationThreadLauncher(ReportQueue queue, ComponentContainer sqContainer, Settings settings) {
+    this(queue, sqContainer, new ContainerFactoryImpl(), workerCount(settings), 10, TimeUnit.SECONDS);
   }
 
   @VisibleForTesting
   ComputationThreadLauncher(ReportQueue queue, ComponentContainer sqContainer, ContainerFactory containerFactory,
-    long delayForFirstStart, long delayBetweenTasks, TimeUnit timeUnit) {
+    int workerCount, long pollingDelay, TimeUnit timeUnit) {
     this.queue = queue;
     this.sqContainer = sqContainer;
     this.containerFactory = containerFactory;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
+    this.workerCount = workerCount;
+    this.executorService = Executors.newFixedThreadPool(workerCount, newThreadFactory());
 
-    this.delayBetweenTasks = delayBetweenTasks;
-    this.delayForFirstStart = delayForFirstStart;
+    this.pollingDelay = pollingDelay;
     this.timeUnit = timeUnit;
   }
 
@@ -75,22 +86,77 @@ public class ComputationThreadLauncher implements Startable, ServerStartHandler
     // do nothing because we want to wait for the server to finish startup
   }
 
+  /**
+   * Lets the workers complete the reports being processed, then interrupts them if they are still
+   * running after {@value #TERMINATION_TIMEOUT_IN_SECONDS} seconds.
+   */
   @Override
   public void stop() {
+    stopped = true;
+    for (ComputationThread computationThread : computationThreads) {
+      computationThread.stop();
+    }
     executorService.shutdown();
+    // idle workers do not wait for the polling delay
+    queue.wakeUp(workerCount);
+    try {
+      if (!executorService.awaitTermination(TERMINATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+        executorService.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executorService.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
   }
 
-  public void startAnalysisTaskNow() {
-    executorService.execute(new ComputationThread(queue, sqContainer, containerFactory));
-  }
-
+  /**
+   * Each worker drains the queue as long as reports are available, then waits for a report to be
+   * added to the queue. Reports of a same project are never processed concurrently as {@link ReportQueue#pop()}
+   * does not return a report of a project which is already being processed.
+   */
   @Override
   public void onServerStart(Server server) {
-    executorService.scheduleAtFixedRate(new ComputationThread(queue, sqContainer, containerFactory), delayForFirstStart, delayBetweenTasks, timeUnit);
+    for (int i = 0; i < workerCount; i++) {
+      ComputationThread computationThread = new ComputationThread(queue, sqContainer, containerFactory);
+      computationThreads.add(computationThread);
+      executorService.execute(new Worker(computationThread));
+    }
+  }
+
+  @VisibleForTesting
+  int getWorkerCount() {
+    return workerCount;
+  }
+
+  private static int workerCount(Settings settings) {
+    int count = settings.getInt(PROPERTY_WORKER_COUNT);
+    return count > 0 ? count : DEFAULT_WORKER_COUNT;
   }
 
   private static ThreadFactory newThreadFactory() {
     return new ThreadFactoryBuilder()
       .setNameFormat(THREAD_NAME_PREFIX + "%d").setPriority(Thread.MIN_PRIORITY).build();
   }
+
+  private class Worker implements Runnable {
+    private final ComputationThread computationThread;
+
+    private Worker(ComputationThread computationThread) {
+      this.computationThread = computationThread;
+    }
+
+    @Override
+    public void run() {
+      while (!stopped && !Thread.currentThread().isInterrupted()) {
+        computationThread.run();
+        try {
+          // the timeout is a fallback for the reports which are not notified, for example
+          // the reports reset to pending status after a crash
+          queue.awaitNewItem(pollingDelay, timeUnit);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
 }
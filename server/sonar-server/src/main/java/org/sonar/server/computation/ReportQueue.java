@@ -23,13 +23,20 @@ package org.sonar.server.computation;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.InflaterInputStream;
 import javax.annotation.CheckForNull;
 import org.apache.commons.io.FileUtils;
 import org.sonar.api.config.Settings;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.internal.Uuids;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.batch.protocol.output.LegacyReportConverter;
 import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
@@ -38,11 +45,16 @@ import org.sonar.server.computation.db.AnalysisReportDao;
 import org.sonar.server.db.DbClient;
 
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
+import static org.sonar.core.computation.db.AnalysisReportDto.Status.WORKING;
 
 @ServerSide
 public class ReportQueue {
   private final DbClient dbClient;
   private final Settings settings;
+  // one permit is released per added report in order to wake up a waiting worker
+  private final Semaphore newItems = new Semaphore(0);
+  // keys of the projects locked by tryLockProject(). Guarded by this.
+  private final Set<String> lockedProjectKeys = new HashSet<>();
 
   public ReportQueue(DbClient dbClient, Settings settings) {
     this.dbClient = dbClient;
@@ -51,16 +63,17 @@ public class ReportQueue {
 
   public Item add(String projectKey, String projectName, InputStream reportData) {
     String uuid = Uuids.create();
-    File file = reportFileForUuid(uuid);
+    File dir = reportDirForUuid(uuid);
 
     DbSession session = dbClient.openSession(false);
     try {
-      saveReportOnDisk(reportData, file);
+      saveReportOnDisk(reportData, dir);
       AnalysisReportDto dto = saveReportMetadataInDatabase(projectKey, projectName, uuid, session);
+      newItems.release();
 
-      return new Item(dto, file);
+      return new Item(dto, dir);
     } catch (Exception e) {
-      FileUtils.deleteQuietly(file);
+      FileUtils.deleteQuietly(dir);
       throw new IllegalStateException("Fail to store analysis report of project " + projectKey, e);
     } finally {
       MyBatis.closeQuietly(session);
@@ -82,32 +95,44 @@ public class ReportQueue {
     return dbClient.analysisReportDao();
   }
 
-  private static void saveReportOnDisk(InputStream reportData, File file) throws IOException {
-    FileUtils.copyInputStreamToFile(reportData, file);
+  /**
+   * The batch submits the report file compressed as a deflate stream. It is stored uncompressed as it is
+   * received, so that it can be mapped in memory when processed.
+   */
+  private static void saveReportOnDisk(InputStream reportData, File dir) throws IOException {
+    FileUtils.copyInputStreamToFile(new InflaterInputStream(reportData), new File(dir, FileStructure.REPORT_FILE_NAME));
   }
 
   public void remove(Item item) {
     DbSession session = dbClient.openSession(false);
     try {
-      FileUtils.deleteQuietly(item.zipFile);
+      FileUtils.deleteQuietly(item.reportDir);
+      FileUtils.deleteQuietly(legacyZipForUuid(item.dto.getUuid()));
       dao().delete(session, item.dto.getId());
       session.commit();
+      // the pending reports of the same project can now be popped
+      newItems.release();
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
+  /**
+   * Books the oldest pending report whose project is not already being processed. Calls are serialized
+   * so that concurrent workers can not book two reports of the same project.
+   */
   @CheckForNull
-  public Item pop() {
+  public synchronized Item pop() {
     DbSession session = dbClient.openSession(false);
     try {
-      AnalysisReportDto dto = dao().pop(session);
+      AnalysisReportDto dto = dao().pop(session, lockedProjectKeys);
       if (dto != null) {
-        File file = reportFileForUuid(dto.getUuid());
-        if (file.exists()) {
-          return new Item(dto, file);
+        File dir = reportDirForUuid(dto.getUuid());
+        convertLegacyReport(dto.getUuid(), dir);
+        if (dir.isDirectory()) {
+          return new Item(dto, dir);
         }
-        Loggers.get(getClass()).error("Analysis report not found: " + file.getAbsolutePath());
+        Loggers.get(getClass()).error("Analysis report not found: " + dir.getAbsolutePath());
         dao().delete(session, dto.getId());
         session.commit();
       }
@@ -117,6 +142,74 @@ public class ReportQueue {
     }
   }
 
+  /**
+   * Reports submitted to previous versions are stored as zip files, for example when the server is upgraded
+   * while reports are pending. They are converted to the current format when popped.
+   */
+  private void convertLegacyReport(String uuid, File dir) {
+    File legacyZip = legacyZipForUuid(uuid);
+    if (!dir.exists() && legacyZip.isFile()) {
+      try {
+        LegacyReportConverter.convert(legacyZip, dir);
+      } catch (RuntimeException e) {
+        Loggers.get(getClass()).error("Fail to convert analysis report: " + legacyZip.getAbsolutePath(), e);
+        FileUtils.deleteQuietly(dir);
+      }
+      FileUtils.deleteQuietly(legacyZip);
+    }
+  }
+
+  /**
+   * Prevents the reports of a project from being processed, for example while the project is purged. Does
+   * nothing and returns false if a report of the project is already being processed, or if the project
+   * is already locked. Calls are serialized with {@link #pop()}.
+   */
+  public synchronized boolean tryLockProject(String projectKey) {
+    if (lockedProjectKeys.contains(projectKey)) {
+      return false;
+    }
+    DbSession session = dbClient.openSession(false);
+    try {
+      for (AnalysisReportDto dto : dao().selectByProjectKey(session, projectKey)) {
+        if (dto.getStatus() == WORKING) {
+          return false;
+        }
+      }
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+    lockedProjectKeys.add(projectKey);
+    return true;
+  }
+
+  /**
+   * Releases the lock taken by {@link #tryLockProject(String)}. The pending reports of the project can
+   * then be processed, so a waiting worker is woken up.
+   */
+  public synchronized void unlockProject(String projectKey) {
+    if (lockedProjectKeys.remove(projectKey)) {
+      newItems.release();
+    }
+  }
+
+  /**
+   * Blocks until a report is added to the queue, a report or a project lock is removed, or until the
+   * timeout expires. Each of these events wakes up a single caller, so that concurrent workers share the new reports.
+   *
+   * @return true if a report has been added, false if the timeout expired
+   */
+  public boolean awaitNewItem(long timeout, TimeUnit unit) throws InterruptedException {
+    return newItems.tryAcquire(timeout, unit);
+  }
+
+  /**
+   * Wakes up the specified number of callers of {@link #awaitNewItem(long, TimeUnit)}, although no report
+   * is available, for example so that idle workers notice that they are stopped.
+   */
+  public void wakeUp(int count) {
+    newItems.release(count);
+  }
+
   /**
    * Truncates table ANALYSIS_REPORTS and delete all files from directory {data}/analysis
    */
@@ -160,24 +253,29 @@ public class ReportQueue {
   }
 
   /**
-   * This directory is a flat list of the reports referenced in table ANALYSIS_REPORTS.
+   * This directory contains one sub-directory per report referenced in table ANALYSIS_REPORTS, or a zip
+   * file for the reports submitted to previous versions.
    * Never return null but the directory may not exist.
    */
   private File reportsDir() {
     return new File(settings.getString(ProcessProperties.PATH_DATA), "analysis");
   }
 
-  private File reportFileForUuid(String uuid) {
+  private File reportDirForUuid(String uuid) {
+    return new File(reportsDir(), uuid);
+  }
+
+  private File legacyZipForUuid(String uuid) {
     return new File(reportsDir(), String.format("%s.zip", uuid));
   }
 
   public static class Item {
     public final AnalysisReportDto dto;
-    public final File zipFile;
+    public final File reportDir;
 
-    public Item(AnalysisReportDto dto, File zipFile) {
+    public Item(AnalysisReportDto dto, File reportDir) {
       this.dto = dto;
-      this.zipFile = zipFile;
+      this.reportDir = reportDir;
     }
   }
 }
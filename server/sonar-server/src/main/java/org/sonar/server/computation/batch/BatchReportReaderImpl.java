@@ -22,26 +22,44 @@ package org.sonar.server.computation.batch;
 import com.google.common.base.Throwables;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Parser;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.NoSuchElementException;
 import javax.annotation.CheckForNull;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.picocontainer.Startable;
 import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.util.CloseableIterator;
 
-public class BatchReportReaderImpl implements BatchReportReader {
+/**
+ * Reads the entries of the report in place, from the single file extracted when the report has been submitted.
+ * The file is mapped in memory and its index is loaded once.
+ */
+public class BatchReportReaderImpl implements BatchReportReader, Startable {
   private final org.sonar.batch.protocol.output.BatchReportReader delegate;
   // caching of metadata which are read often
   private BatchReport.Metadata metadata;
 
-  public BatchReportReaderImpl(BatchReportDirectoryHolder batchReportDirectoryHolder) {
-    this.delegate = new org.sonar.batch.protocol.output.BatchReportReader(batchReportDirectoryHolder.getDirectory());
+  public BatchReportReaderImpl(ReportQueue.Item item) {
+    this.delegate = new org.sonar.batch.protocol.output.BatchReportReader(item.reportDir);
+  }
+
+  @Override
+  public void start() {
+    // the report is lazily opened
+  }
+
+  /**
+   * Called when the computation is finished, before the report is removed from the queue. The mapped report
+   * file is released.
+   */
+  @Override
+  public void stop() {
+    delegate.close();
   }
 
   @Override
@@ -89,50 +107,39 @@ public class BatchReportReaderImpl implements BatchReportReader {
   }
 
   @Override
-  @CheckForNull
   public CloseableIterator<BatchReport.SyntaxHighlighting> readComponentSyntaxHighlighting(int fileRef) {
-    File file = delegate.readComponentSyntaxHighlighting(fileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(BatchReport.SyntaxHighlighting.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
-    }
+    return delimited(delegate.readComponentSyntaxHighlighting(fileRef), BatchReport.SyntaxHighlighting.PARSER);
   }
 
   @Override
   public CloseableIterator<BatchReport.Coverage> readComponentCoverage(int fileRef) {
-    File file = delegate.readComponentCoverage(fileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
+    return delimited(delegate.readComponentCoverage(fileRef), BatchReport.Coverage.PARSER);
+  }
 
+  @Override
+  public CloseableIterator<String> readFileSource(int fileRef) {
     try {
-      return new ParserCloseableIterator<>(BatchReport.Coverage.PARSER, FileUtils.openInputStream(file));
+      return new CloseableLineIterator(IOUtils.lineIterator(delegate.readFileSource(fileRef), StandardCharsets.UTF_8));
     } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
+      throw new IllegalStateException("Fail to read source of file #" + fileRef, e);
     }
   }
 
   @Override
-  public CloseableIterator<String> readFileSource(int fileRef) {
-    File file = delegate.readFileSource(fileRef);
-    if (file == null) {
-      throw new IllegalStateException("Unable to find source for file #" + fileRef);
-    }
+  public CloseableIterator<BatchReport.Test> readTests(int testFileRef) {
+    return delimited(delegate.readTests(testFileRef), BatchReport.Test.PARSER);
+  }
 
-    try {
-      return new CloseableLineIterator(IOUtils.lineIterator(FileUtils.openInputStream(file), StandardCharsets.UTF_8));
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to traverse file: " + file, e);
+  @Override
+  public CloseableIterator<BatchReport.CoverageDetail> readCoverageDetails(int testFileRef) {
+    return delimited(delegate.readCoverageDetails(testFileRef), BatchReport.CoverageDetail.PARSER);
+  }
+
+  private static <T> CloseableIterator<T> delimited(@CheckForNull InputStream input, Parser<T> parser) {
+    if (input == null) {
+      return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(parser, input);
   }
 
   private static class CloseableLineIterator extends CloseableIterator<String> {
@@ -164,51 +171,19 @@ public class BatchReportReaderImpl implements BatchReportReader {
     }
   }
 
-  @Override
-  public CloseableIterator<BatchReport.Test> readTests(int testFileRef) {
-    File file = delegate.readTests(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(BatchReport.Test.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
-    }
-  }
-
-  @Override
-  public CloseableIterator<BatchReport.CoverageDetail> readCoverageDetails(int testFileRef) {
-    File file = delegate.readCoverageDetails(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(BatchReport.CoverageDetail.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
-    }
-  }
-
   private static class ParserCloseableIterator<T> extends CloseableIterator<T> {
     private final Parser<T> parser;
-    private final FileInputStream fileInputStream;
+    private final InputStream inputStream;
 
-    public ParserCloseableIterator(Parser<T> parser, FileInputStream fileInputStream) {
+    public ParserCloseableIterator(Parser<T> parser, InputStream inputStream) {
       this.parser = parser;
-      this.fileInputStream = fileInputStream;
+      this.inputStream = inputStream;
     }
 
     @Override
     protected T doNext() {
       try {
-        return parser.parseDelimitedFrom(fileInputStream);
+        return parser.parseDelimitedFrom(inputStream);
       } catch (InvalidProtocolBufferException e) {
         Throwables.propagate(e);
         // actually never reached
@@ -218,7 +193,7 @@ public class BatchReportReaderImpl implements BatchReportReader {
 
     @Override
     protected void doClose() throws Exception {
-      fileInputStream.close();
+      inputStream.close();
     }
   }
 }
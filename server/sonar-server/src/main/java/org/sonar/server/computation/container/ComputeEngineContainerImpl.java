@@ -35,7 +35,6 @@ import org.sonar.core.platform.ComponentContainer;
 import org.sonar.server.computation.ComputationService;
 import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.computation.activity.ActivityManager;
-import org.sonar.server.computation.batch.BatchReportDirectoryHolderImpl;
 import org.sonar.server.computation.batch.BatchReportReaderImpl;
 import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.ProjectSettingsRepository;
@@ -57,6 +56,7 @@ import org.sonar.server.computation.qualitygate.EvaluationResultTextConverterImp
 import org.sonar.server.computation.qualitygate.QualityGateHolderImpl;
 import org.sonar.server.computation.qualitygate.QualityGateServiceImpl;
 import org.sonar.server.computation.sqale.SqaleRatingSettings;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.computation.step.ComputationStep;
 import org.sonar.server.computation.step.ComputationSteps;
 import org.sonar.server.view.index.ViewIndex;
@@ -129,7 +129,6 @@ public class ComputeEngineContainerImpl extends ComponentContainer implements Co
       ActivityManager.class,
 
       // holders
-      BatchReportDirectoryHolderImpl.class,
       TreeRootHolderImpl.class,
       PeriodsHolderImpl.class,
       QualityGateHolderImpl.class,
@@ -159,6 +158,9 @@ public class ComputeEngineContainerImpl extends ComponentContainer implements Co
       IssueCache.class,
       UpdateConflictResolver.class,
 
+      // sources
+      FileSourcesToIndexCache.class,
+
       // views
       ViewIndex.class,
 
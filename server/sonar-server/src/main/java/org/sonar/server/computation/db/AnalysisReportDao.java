@@ -29,7 +29,9 @@ import org.sonar.core.persistence.DbSession;
 
 import javax.annotation.CheckForNull;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.WORKING;
@@ -64,13 +66,21 @@ public class AnalysisReportDao implements DaoComponent {
 
   @CheckForNull
   public AnalysisReportDto pop(DbSession session) {
+    return pop(session, Collections.<String>emptySet());
+  }
+
+  /**
+   * Same as {@link #pop(DbSession)}, except that the reports of the given projects are ignored.
+   */
+  @CheckForNull
+  public AnalysisReportDto pop(DbSession session, Set<String> excludedProjectKeys) {
     List<Long> reportIds = mapper(session).selectAvailables(PENDING, WORKING);
-    if (reportIds.isEmpty()) {
-      return null;
+    for (Long reportId : reportIds) {
+      if (excludedProjectKeys.isEmpty() || !excludedProjectKeys.contains(selectById(session, reportId).getProjectKey())) {
+        return tryToPop(session, reportId);
+      }
     }
-
-    long reportId = reportIds.get(0);
-    return tryToPop(session, reportId);
+    return null;
   }
 
   @VisibleForTesting
@@ -0,0 +1,423 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.issue.IssueComment;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.issue.internal.FieldDiffs;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.Duration;
+import org.sonar.server.util.cache.Codec;
+import org.sonar.server.util.cache.SerializableCodec;
+
+/**
+ * Field by field encoding of {@link DefaultIssue}, much faster and more compact than Java serialization.
+ * <p>
+ * The changes of an issue are written once each and referenced by index, so that the current change is
+ * still the same instance as the one in the list of changes once decoded.
+ * </p>
+ */
+public class DefaultIssueCodec implements Codec<DefaultIssue> {
+
+  private static final int NULL_VALUE = 0;
+  private static final int STRING_VALUE = 1;
+  private static final int LONG_VALUE = 2;
+  private static final int INTEGER_VALUE = 3;
+  private static final int DOUBLE_VALUE = 4;
+  private static final int DATE_VALUE = 5;
+  private static final int SERIALIZED_VALUE = 6;
+
+  private final SerializableCodec<Serializable> serializableCodec = new SerializableCodec<>();
+
+  @Override
+  public void write(DefaultIssue issue, DataOutput output) throws IOException {
+    writeString(issue.key(), output);
+    writeString(issue.componentUuid(), output);
+    writeString(issue.componentKey(), output);
+    writeString(issue.moduleUuid(), output);
+    writeString(issue.moduleUuidPath(), output);
+    writeString(issue.projectUuid(), output);
+    writeString(issue.projectKey(), output);
+    writeRuleKey(issue.ruleKey(), output);
+    writeString(issue.language(), output);
+    writeString(issue.severity(), output);
+    output.writeBoolean(issue.manualSeverity());
+    writeString(issue.message(), output);
+    writeInteger(issue.line(), output);
+    writeDouble(issue.effortToFix(), output);
+    writeLong(issue.debtInMinutes(), output);
+    writeString(issue.status(), output);
+    writeString(issue.resolution(), output);
+    writeString(issue.reporter(), output);
+    writeString(issue.assignee(), output);
+    writeString(issue.checksum(), output);
+    writeAttributes(issue.attributes(), output);
+    writeString(issue.authorLogin(), output);
+    writeString(issue.actionPlanKey(), output);
+    writeComments(issue.comments(), output);
+    writeTags(issue.tags(), output);
+    writeDate(issue.creationDate(), output);
+    writeDate(issue.updateDate(), output);
+    writeDate(issue.closeDate(), output);
+    writeChanges(issue.changes(), issue.currentChange(), output);
+    output.writeBoolean(issue.isNew());
+    output.writeBoolean(issue.isEndOfLife());
+    output.writeBoolean(issue.isOnDisabledRule());
+    output.writeBoolean(issue.isChanged());
+    output.writeBoolean(issue.mustSendNotifications());
+    writeLong(issue.selectedAt(), output);
+  }
+
+  @Override
+  public DefaultIssue read(DataInput input) throws IOException {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setKey(readString(input));
+    issue.setComponentUuid(readString(input));
+    issue.setComponentKey(readString(input));
+    issue.setModuleUuid(readString(input));
+    issue.setModuleUuidPath(readString(input));
+    issue.setProjectUuid(readString(input));
+    issue.setProjectKey(readString(input));
+    issue.setRuleKey(readRuleKey(input));
+    issue.setLanguage(readString(input));
+    issue.setSeverity(readString(input));
+    issue.setManualSeverity(input.readBoolean());
+    issue.setMessage(readString(input));
+    issue.setLine(readInteger(input));
+    issue.setEffortToFix(readDouble(input));
+    Long debt = readLong(input);
+    issue.setDebt(debt == null ? null : Duration.create(debt));
+    String status = readString(input);
+    if (status != null) {
+      issue.setStatus(status);
+    }
+    issue.setResolution(readString(input));
+    issue.setReporter(readString(input));
+    issue.setAssignee(readString(input));
+    issue.setChecksum(readString(input));
+    readAttributes(issue, input);
+    issue.setAuthorLogin(readString(input));
+    issue.setActionPlanKey(readString(input));
+    readComments(issue, input);
+    readTags(issue, input);
+    issue.setCreationDate(readDate(input));
+    issue.setUpdateDate(readDate(input));
+    issue.setCloseDate(readDate(input));
+    readChanges(issue, input);
+    issue.setNew(input.readBoolean());
+    issue.setEndOfLife(input.readBoolean());
+    issue.setOnDisabledRule(input.readBoolean());
+    issue.setChanged(input.readBoolean());
+    issue.setSendNotifications(input.readBoolean());
+    issue.setSelectedAt(readLong(input));
+    return issue;
+  }
+
+  private static void writeRuleKey(@Nullable RuleKey ruleKey, DataOutput output) throws IOException {
+    if (ruleKey == null) {
+      output.writeBoolean(false);
+    } else {
+      output.writeBoolean(true);
+      writeString(ruleKey.repository(), output);
+      writeString(ruleKey.rule(), output);
+    }
+  }
+
+  @CheckForNull
+  private static RuleKey readRuleKey(DataInput input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    return RuleKey.of(readString(input), readString(input));
+  }
+
+  private static void writeAttributes(Map<String, String> attributes, DataOutput output) throws IOException {
+    output.writeInt(attributes.size());
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      writeString(attribute.getKey(), output);
+      writeString(attribute.getValue(), output);
+    }
+  }
+
+  private static void readAttributes(DefaultIssue issue, DataInput input) throws IOException {
+    int size = input.readInt();
+    for (int i = 0; i < size; i++) {
+      issue.setAttribute(readString(input), readString(input));
+    }
+  }
+
+  private static void writeComments(List<IssueComment> comments, DataOutput output) throws IOException {
+    output.writeInt(comments.size());
+    for (IssueComment comment : comments) {
+      DefaultIssueComment defaultComment = (DefaultIssueComment) comment;
+      writeString(defaultComment.key(), output);
+      writeString(defaultComment.issueKey(), output);
+      writeString(defaultComment.userLogin(), output);
+      writeString(defaultComment.markdownText(), output);
+      writeDate(defaultComment.createdAt(), output);
+      writeDate(defaultComment.updatedAt(), output);
+      output.writeBoolean(defaultComment.isNew());
+    }
+  }
+
+  private static void readComments(DefaultIssue issue, DataInput input) throws IOException {
+    int size = input.readInt();
+    for (int i = 0; i < size; i++) {
+      issue.addComment(new DefaultIssueComment()
+        .setKey(readString(input))
+        .setIssueKey(readString(input))
+        .setUserLogin(readString(input))
+        .setMarkdownText(readString(input))
+        .setCreatedAt(readDate(input))
+        .setUpdatedAt(readDate(input))
+        .setNew(input.readBoolean()));
+    }
+  }
+
+  private static void writeTags(Collection<String> tags, DataOutput output) throws IOException {
+    output.writeInt(tags.size());
+    for (String tag : tags) {
+      writeString(tag, output);
+    }
+  }
+
+  private static void readTags(DefaultIssue issue, DataInput input) throws IOException {
+    int size = input.readInt();
+    if (size > 0) {
+      List<String> tags = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        tags.add(readString(input));
+      }
+      issue.setTags(tags);
+    }
+  }
+
+  /**
+   * The same instance of {@link FieldDiffs} can be referenced several times by the list of changes and by the
+   * current change, so each distinct instance is written once and then referenced by its index.
+   */
+  private void writeChanges(List<FieldDiffs> changes, @Nullable FieldDiffs currentChange, DataOutput output) throws IOException {
+    Map<FieldDiffs, Integer> indexes = new IdentityHashMap<>();
+    List<FieldDiffs> distinctChanges = new ArrayList<>();
+    for (FieldDiffs change : changes) {
+      addDistinct(change, indexes, distinctChanges);
+    }
+    if (currentChange != null) {
+      addDistinct(currentChange, indexes, distinctChanges);
+    }
+
+    output.writeInt(distinctChanges.size());
+    for (FieldDiffs change : distinctChanges) {
+      writeFieldDiffs(change, output);
+    }
+    output.writeInt(changes.size());
+    for (FieldDiffs change : changes) {
+      output.writeInt(indexes.get(change));
+    }
+    output.writeInt(currentChange == null ? -1 : indexes.get(currentChange));
+  }
+
+  private static void addDistinct(FieldDiffs change, Map<FieldDiffs, Integer> indexes, List<FieldDiffs> distinctChanges) {
+    if (!indexes.containsKey(change)) {
+      indexes.put(change, distinctChanges.size());
+      distinctChanges.add(change);
+    }
+  }
+
+  private void readChanges(DefaultIssue issue, DataInput input) throws IOException {
+    int distinctSize = input.readInt();
+    if (distinctSize == 0) {
+      input.readInt();
+      input.readInt();
+      return;
+    }
+    FieldDiffs[] distinctChanges = new FieldDiffs[distinctSize];
+    for (int i = 0; i < distinctSize; i++) {
+      distinctChanges[i] = readFieldDiffs(input);
+    }
+    int size = input.readInt();
+    List<FieldDiffs> changes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      changes.add(distinctChanges[input.readInt()]);
+    }
+    int currentChangeIndex = input.readInt();
+    if (currentChangeIndex >= 0) {
+      // also adds the change to the list of changes, which is replaced just after
+      issue.setCurrentChange(distinctChanges[currentChangeIndex]);
+    }
+    issue.setChanges(changes);
+  }
+
+  private void writeFieldDiffs(FieldDiffs fieldDiffs, DataOutput output) throws IOException {
+    writeString(fieldDiffs.issueKey(), output);
+    writeString(fieldDiffs.userLogin(), output);
+    writeDate(fieldDiffs.creationDate(), output);
+    output.writeInt(fieldDiffs.diffs().size());
+    for (Map.Entry<String, FieldDiffs.Diff> diff : fieldDiffs.diffs().entrySet()) {
+      writeString(diff.getKey(), output);
+      writeValue(diff.getValue().oldValue(), output);
+      writeValue(diff.getValue().newValue(), output);
+    }
+  }
+
+  private FieldDiffs readFieldDiffs(DataInput input) throws IOException {
+    FieldDiffs fieldDiffs = new FieldDiffs()
+      .setIssueKey(readString(input))
+      .setUserLogin(readString(input))
+      .setCreationDate(readDate(input));
+    int size = input.readInt();
+    for (int i = 0; i < size; i++) {
+      fieldDiffs.setDiff(readString(input), readValue(input), readValue(input));
+    }
+    return fieldDiffs;
+  }
+
+  private void writeValue(@Nullable Serializable value, DataOutput output) throws IOException {
+    if (value == null) {
+      output.writeByte(NULL_VALUE);
+    } else if (value instanceof String) {
+      output.writeByte(STRING_VALUE);
+      writeString((String) value, output);
+    } else if (value instanceof Long) {
+      output.writeByte(LONG_VALUE);
+      output.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      output.writeByte(INTEGER_VALUE);
+      output.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      output.writeByte(DOUBLE_VALUE);
+      output.writeDouble((Double) value);
+    } else if (value.getClass() == Date.class) {
+      output.writeByte(DATE_VALUE);
+      output.writeLong(((Date) value).getTime());
+    } else {
+      output.writeByte(SERIALIZED_VALUE);
+      serializableCodec.write(value, output);
+    }
+  }
+
+  @CheckForNull
+  private Serializable readValue(DataInput input) throws IOException {
+    int type = input.readByte();
+    switch (type) {
+      case NULL_VALUE:
+        return null;
+      case STRING_VALUE:
+        return readString(input);
+      case LONG_VALUE:
+        return input.readLong();
+      case INTEGER_VALUE:
+        return input.readInt();
+      case DOUBLE_VALUE:
+        return input.readDouble();
+      case DATE_VALUE:
+        return new Date(input.readLong());
+      case SERIALIZED_VALUE:
+        return serializableCodec.read(input);
+      default:
+        throw new IllegalStateException("Unsupported type of value: " + type);
+    }
+  }
+
+  /**
+   * Strings are written as UTF-8 bytes prefixed by their length, -1 being the length of null. Contrary to
+   * {@link DataOutput#writeUTF(String)} their size is not limited to 64Kb.
+   */
+  private static void writeString(@Nullable String s, DataOutput output) throws IOException {
+    if (s == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static String readString(DataInput input) throws IOException {
+    int length = input.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeDate(@Nullable Date date, DataOutput output) throws IOException {
+    writeLong(date == null ? null : date.getTime(), output);
+  }
+
+  @CheckForNull
+  private static Date readDate(DataInput input) throws IOException {
+    Long time = readLong(input);
+    return time == null ? null : new Date(time);
+  }
+
+  private static void writeLong(@Nullable Long l, DataOutput output) throws IOException {
+    output.writeBoolean(l != null);
+    if (l != null) {
+      output.writeLong(l);
+    }
+  }
+
+  @CheckForNull
+  private static Long readLong(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readLong() : null;
+  }
+
+  private static void writeInteger(@Nullable Integer i, DataOutput output) throws IOException {
+    output.writeBoolean(i != null);
+    if (i != null) {
+      output.writeInt(i);
+    }
+  }
+
+  @CheckForNull
+  private static Integer readInteger(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readInt() : null;
+  }
+
+  private static void writeDouble(@Nullable Double d, DataOutput output) throws IOException {
+    output.writeBoolean(d != null);
+    if (d != null) {
+      output.writeDouble(d);
+    }
+  }
+
+  @CheckForNull
+  private static Double readDouble(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readDouble() : null;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Raw measures of a single Component, stored in an open addressing hash table keyed by primitive {@code long}s built
+ * with {@link #key(int, Integer, Integer)}.
+ * <p>
+ * Keys, metric ids and measures are stored in parallel arrays so that a lookup does not allocate any object.
+ * </p>
+ */
+final class ComponentMeasures {
+  private static final int INITIAL_CAPACITY = 8;
+  private static final int NO_ASSOCIATION = 0;
+  private static final int RULE_ASSOCIATION = 1;
+  private static final int CHARACTERISTIC_ASSOCIATION = 2;
+
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private int[] metricIds = new int[INITIAL_CAPACITY];
+  private Measure[] measures = new Measure[INITIAL_CAPACITY];
+  private int size = 0;
+  private boolean batchMeasuresLoaded = false;
+
+  /**
+   * Builds the key of a measure from the id of its metric and the rule or characteristic it is associated to, if any.
+   * The id of the metric must fit in 29 bits.
+   */
+  static long key(int metricId, @Nullable Integer ruleId, @Nullable Integer characteristicId) {
+    int association = NO_ASSOCIATION;
+    int id = 0;
+    if (ruleId != null) {
+      association = RULE_ASSOCIATION;
+      id = ruleId;
+    } else if (characteristicId != null) {
+      association = CHARACTERISTIC_ASSOCIATION;
+      id = characteristicId;
+    }
+    return ((long) ((metricId << 2) | association) << 32) | (id & 0xFFFFFFFFL);
+  }
+
+  @CheckForNull
+  Measure get(long key) {
+    return measures[slot(key)];
+  }
+
+  /**
+   * @return {@code true} if the measure has been stored, {@code false} if a measure already exists for this key and
+   *         {@code override} is {@code false}
+   */
+  boolean put(long key, int metricId, Measure measure, boolean override) {
+    int slot = slot(key);
+    if (measures[slot] != null) {
+      if (override) {
+        measures[slot] = measure;
+      }
+      return override;
+    }
+    keys[slot] = key;
+    metricIds[slot] = metricId;
+    measures[slot] = measure;
+    size++;
+    if (size * 4 >= keys.length * 3) {
+      resize();
+    }
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Number of slots of the table, to be used to iterate over {@link #measureAt(int)} and {@link #metricIdAt(int)}.
+   */
+  int capacity() {
+    return measures.length;
+  }
+
+  /**
+   * @return the measure stored in the specified slot or {@code null} if the slot is free
+   */
+  @CheckForNull
+  Measure measureAt(int slot) {
+    return measures[slot];
+  }
+
+  int metricIdAt(int slot) {
+    return metricIds[slot];
+  }
+
+  boolean isBatchMeasuresLoaded() {
+    return batchMeasuresLoaded;
+  }
+
+  void setBatchMeasuresLoaded() {
+    this.batchMeasuresLoaded = true;
+  }
+
+  /**
+   * Index of the slot holding the specified key, or of the free slot where it should be inserted.
+   */
+  private int slot(long key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (measures[slot] != null && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void resize() {
+    long[] oldKeys = keys;
+    int[] oldMetricIds = metricIds;
+    Measure[] oldMeasures = measures;
+    int capacity = oldKeys.length * 2;
+    keys = new long[capacity];
+    metricIds = new int[capacity];
+    measures = new Measure[capacity];
+    for (int i = 0; i < oldMeasures.length; i++) {
+      if (oldMeasures[i] != null) {
+        int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        metricIds[slot] = oldMetricIds[i];
+        measures[slot] = oldMeasures[i];
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
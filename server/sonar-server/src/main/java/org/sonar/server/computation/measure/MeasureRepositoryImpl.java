@@ -22,19 +22,22 @@ package org.sonar.server.computation.measure;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.SetMultimap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.core.measure.db.MeasureDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
+import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.debt.Characteristic;
 import org.sonar.server.computation.issue.RuleCache;
 import org.sonar.server.computation.metric.Metric;
@@ -44,50 +47,105 @@ import org.sonar.server.db.DbClient;
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
+import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
 
 public class MeasureRepositoryImpl implements MeasureRepository {
+  private static final int INITIAL_COMPONENT_CAPACITY = 64;
+
   private final DbClient dbClient;
   private final BatchReportReader reportReader;
   private final BatchMeasureToMeasure batchMeasureToMeasure;
   private final MetricRepository metricRepository;
+  private final TreeRootHolder treeRootHolder;
   private final MeasureDtoToMeasure measureDtoToMeasure = new MeasureDtoToMeasure();
-  private final Set<Integer> loadedComponents = new HashSet<>();
-  private final Map<Integer, Map<MeasureKey, Measure>> measures = new HashMap<>();
+  // measures of the last analysis, indexed by component ref, and ids of the metrics they have been loaded for
+  private final MeasuresByRef baseMeasures = new MeasuresByRef();
+  private final BitSet loadedBaseMetricIds = new BitSet();
+  // measures of components, indexed by component ref
+  private final MeasuresByRef rawMeasures = new MeasuresByRef();
+  private final Map<Integer, String> metricKeysById = new HashMap<>();
+  @CheckForNull
+  private Map<String, Integer> componentRefsByKey;
 
   public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader,
-    final MetricRepository metricRepository, final RuleCache ruleCache) {
+    final MetricRepository metricRepository, final RuleCache ruleCache, TreeRootHolder treeRootHolder) {
     this.dbClient = dbClient;
+    this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.batchMeasureToMeasure = new BatchMeasureToMeasure(ruleCache);
     this.metricRepository = metricRepository;
   }
 
+  /**
+   * The first call for a given metric loads in a single query the measures of all the components of the project
+   * for this metric, so that the following calls for other components do not hit the database.
+   */
   @Override
   public Optional<Measure> getBaseMeasure(Component component, Metric metric) {
     // fail fast
     requireNonNull(component);
     requireNonNull(metric);
 
+    if (!loadedBaseMetricIds.get(metric.getId())) {
+      loadBaseMeasures(metric);
+      loadedBaseMetricIds.set(metric.getId());
+    }
+    ComponentMeasures componentMeasures = baseMeasures.get(component);
+    if (componentMeasures == null) {
+      return Optional.absent();
+    }
+    return Optional.fromNullable(componentMeasures.get(ComponentMeasures.key(metric.getId(), null, null)));
+  }
+
+  private void loadBaseMeasures(final Metric metric) {
+    final Map<String, Integer> refsByKey = componentRefsByKey();
+    final long key = ComponentMeasures.key(metric.getId(), null, null);
     try (DbSession dbSession = dbClient.openSession(false)) {
-      MeasureDto measureDto = dbClient.measureDao().findByComponentKeyAndMetricKey(dbSession, component.getKey(), metric.getKey());
-      return measureDtoToMeasure.toMeasure(measureDto, metric);
+      dbClient.measureDao().selectLastByProjectUuidAndMetricKey(dbSession, treeRootHolder.getRoot().getUuid(), metric.getKey(), new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          MeasureDto measureDto = (MeasureDto) context.getResultObject();
+          Integer ref = refsByKey.get(measureDto.getComponentKey());
+          Optional<Measure> measure = measureDtoToMeasure.toMeasure(measureDto, metric);
+          if (ref != null && measure.isPresent()) {
+            baseMeasures.getOrCreate(ref).put(key, metric.getId(), measure.get(), true);
+          }
+        }
+      });
     }
   }
 
+  /**
+   * Measures of the last analysis are stored by component key in db, while components of the report are looked up by ref.
+   */
+  private Map<String, Integer> componentRefsByKey() {
+    if (componentRefsByKey == null) {
+      final Map<String, Integer> refsByKey = new HashMap<>();
+      new DepthTraversalTypeAwareVisitor(Component.Type.FILE, PRE_ORDER) {
+        @Override
+        public void visitAny(Component component) {
+          refsByKey.put(component.getKey(), component.getRef());
+        }
+      }.visit(treeRootHolder.getRoot());
+      componentRefsByKey = refsByKey;
+    }
+    return componentRefsByKey;
+  }
+
   @Override
   public Optional<Measure> getRawMeasure(final Component component, final Metric metric) {
     // fail fast
     requireNonNull(component);
     requireNonNull(metric);
 
-    Optional<Measure> local = findLocal(component, metric, null, null);
-    if (local.isPresent()) {
-      return local;
+    Measure local = findLocal(component, metric, null, null);
+    if (local != null) {
+      return Optional.of(local);
     }
 
     // look up in batch after loading (if not yet loaded) measures from batch
     loadBatchMeasuresForComponent(component);
-    return findLocal(component, metric, null, null);
+    return Optional.fromNullable(findLocal(component, metric, null, null));
   }
 
   @Override
@@ -97,7 +155,7 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(metric);
     requireNonNull(rule);
 
-    return findLocal(component, metric, rule, null);
+    return Optional.fromNullable(findLocal(component, metric, rule, null));
   }
 
   @Override
@@ -107,7 +165,7 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(metric);
     requireNonNull(characteristic);
 
-    return findLocal(component, metric, null, characteristic);
+    return Optional.fromNullable(findLocal(component, metric, null, characteristic));
   }
 
   @Override
@@ -115,8 +173,8 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(component);
     checkValueTypeConsistency(metric, measure);
 
-    Optional<Measure> existingMeasure = findLocal(component, metric, measure);
-    if (existingMeasure.isPresent()) {
+    Measure existingMeasure = findLocal(component, metric, measure);
+    if (existingMeasure != null) {
       throw new UnsupportedOperationException(
         format(
           "a measure can be set only once for a specific Component (ref=%s), Metric (key=%s)%s. Use update method",
@@ -133,8 +191,8 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(component);
     checkValueTypeConsistency(metric, measure);
 
-    Optional<Measure> existingMeasure = findLocal(component, metric, measure);
-    if (!existingMeasure.isPresent()) {
+    Measure existingMeasure = findLocal(component, metric, measure);
+    if (existingMeasure == null) {
       throw new UnsupportedOperationException(
         format(
           "a measure can be updated only if one already exists for a specific Component (ref=%s), Metric (key=%s)%s. Use add method",
@@ -167,20 +225,24 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   @Override
   public SetMultimap<String, Measure> getRawMeasures(Component component) {
     loadBatchMeasuresForComponent(component);
-    Map<MeasureKey, Measure> rawMeasures = measures.get(component.getRef());
-    if (rawMeasures == null) {
+    ComponentMeasures componentMeasures = rawMeasures.get(component);
+    if (componentMeasures == null || componentMeasures.size() == 0) {
       return ImmutableSetMultimap.of();
     }
 
     ImmutableSetMultimap.Builder<String, Measure> builder = ImmutableSetMultimap.builder();
-    for (Map.Entry<MeasureKey, Measure> entry : rawMeasures.entrySet()) {
-      builder.put(entry.getKey().metricKey, entry.getValue());
+    for (int slot = 0; slot < componentMeasures.capacity(); slot++) {
+      Measure measure = componentMeasures.measureAt(slot);
+      if (measure != null) {
+        builder.put(metricKeysById.get(componentMeasures.metricIdAt(slot)), measure);
+      }
     }
     return builder.build();
   }
 
   private void loadBatchMeasuresForComponent(Component component) {
-    if (loadedComponents.contains(component.getRef())) {
+    ComponentMeasures componentMeasures = rawMeasures.get(component);
+    if (componentMeasures != null && componentMeasures.isBatchMeasuresLoaded()) {
       return;
     }
 
@@ -188,90 +250,67 @@ public class MeasureRepositoryImpl implements MeasureRepository {
       Metric metric = metricRepository.getByKey(batchMeasure.getMetricKey());
       addLocal(component, metric, batchMeasureToMeasure.toMeasure(batchMeasure, metric).get(), OverridePolicy.DO_NOT_OVERRIDE);
     }
-    loadedComponents.add(component.getRef());
+    rawMeasures.getOrCreate(component.getRef()).setBatchMeasuresLoaded();
   }
 
-  private Optional<Measure> findLocal(Component component, Metric metric,
-    @Nullable RuleDto rule, @Nullable Characteristic characteristic) {
-    Map<MeasureKey, Measure> measuresPerMetric = measures.get(component.getRef());
-    if (measuresPerMetric == null) {
-      return Optional.absent();
-    }
-    return Optional.fromNullable(measuresPerMetric.get(new MeasureKey(metric.getKey(), rule, characteristic)));
+  @CheckForNull
+  private Measure findLocal(Component component, Metric metric, @Nullable RuleDto rule, @Nullable Characteristic characteristic) {
+    return findLocalById(component, metric, rule == null ? null : rule.getId(), characteristic == null ? null : characteristic.getId());
   }
 
-  private Optional<Measure> findLocal(Component component, Metric metric, Measure measure) {
-    Map<MeasureKey, Measure> measuresPerMetric = measures.get(component.getRef());
-    if (measuresPerMetric == null) {
-      return Optional.absent();
+  @CheckForNull
+  private Measure findLocal(Component component, Metric metric, Measure measure) {
+    return findLocalById(component, metric, measure.getRuleId(), measure.getCharacteristicId());
+  }
+
+  @CheckForNull
+  private Measure findLocalById(Component component, Metric metric, @Nullable Integer ruleId, @Nullable Integer characteristicId) {
+    ComponentMeasures componentMeasures = rawMeasures.get(component);
+    if (componentMeasures == null) {
+      return null;
     }
-    return Optional.fromNullable(measuresPerMetric.get(new MeasureKey(metric.getKey(), measure.getRuleId(), measure.getCharacteristicId())));
+    return componentMeasures.get(ComponentMeasures.key(metric.getId(), ruleId, characteristicId));
   }
 
   private void addLocal(Component component, Metric metric, Measure measure, OverridePolicy overridePolicy) {
-    Map<MeasureKey, Measure> measuresPerMetric = measures.get(component.getRef());
-    if (measuresPerMetric == null) {
-      measuresPerMetric = new HashMap<>();
-      measures.put(component.getRef(), measuresPerMetric);
-    }
-    MeasureKey key = new MeasureKey(metric.getKey(), measure.getRuleId(), measure.getCharacteristicId());
-    if (!measuresPerMetric.containsKey(key) || overridePolicy == OverridePolicy.OVERRIDE) {
-      measuresPerMetric.put(key, measure);
+    int metricId = metric.getId();
+    if (!metricKeysById.containsKey(metricId)) {
+      metricKeysById.put(metricId, metric.getKey());
     }
+    long key = ComponentMeasures.key(metricId, measure.getRuleId(), measure.getCharacteristicId());
+    rawMeasures.getOrCreate(component.getRef()).put(key, metricId, measure, overridePolicy == OverridePolicy.OVERRIDE);
   }
 
   private enum OverridePolicy {
     OVERRIDE, DO_NOT_OVERRIDE
   }
 
-  @Immutable
-  private static final class MeasureKey {
-    private static final int DEFAULT_INT_VALUE = -6253;
-
-    private final String metricKey;
-    private final int ruleId;
-    private final int characteristicId;
-
-    public MeasureKey(String metricKey, @Nullable Integer ruleId, @Nullable Integer characteristicId) {
-      // defensive code in case we badly chose the default value, we want to know it right away!
-      checkArgument(ruleId == null || ruleId != DEFAULT_INT_VALUE, "Unsupported rule id");
-      checkArgument(characteristicId == null || characteristicId != DEFAULT_INT_VALUE, "Unsupported characteristic id");
-
-      this.metricKey = requireNonNull(metricKey, "MetricKey can not be null");
-      this.ruleId = ruleId == null ? DEFAULT_INT_VALUE : ruleId;
-      this.characteristicId = characteristicId == null ? DEFAULT_INT_VALUE : characteristicId;
-    }
-
-    public MeasureKey(String key, @Nullable RuleDto rule, @Nullable Characteristic characteristic) {
-      this(key, rule == null ? null : rule.getId(), characteristic == null ? null : characteristic.getId());
+  /**
+   * Measures of components, in an array indexed by component ref.
+   */
+  private static final class MeasuresByRef {
+    private ComponentMeasures[] measures = new ComponentMeasures[INITIAL_COMPONENT_CAPACITY];
+
+    @CheckForNull
+    ComponentMeasures get(Component component) {
+      int ref = component.getRef();
+      if (ref < 0 || ref >= measures.length) {
+        return null;
+      }
+      return measures[ref];
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    ComponentMeasures getOrCreate(int ref) {
+      checkArgument(ref >= 0, "Component ref can not be negative: %s", ref);
+      if (ref >= measures.length) {
+        measures = Arrays.copyOf(measures, Math.max(ref + 1, measures.length * 2));
       }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
+      ComponentMeasures componentMeasures = measures[ref];
+      if (componentMeasures == null) {
+        componentMeasures = new ComponentMeasures();
+        measures[ref] = componentMeasures;
       }
-      MeasureKey that = (MeasureKey) o;
-      return metricKey.equals(that.metricKey)
-        && ruleId == that.ruleId
-        && characteristicId == that.characteristicId;
-    }
-
-    @Override
-    public int hashCode() {
-      return Objects.hash(metricKey, ruleId, characteristicId);
-    }
-
-    @Override
-    public String toString() {
-      return com.google.common.base.Objects.toStringHelper(this)
-        .add("metricKey", metricKey)
-        .add("ruleId", ruleId)
-        .add("characteristicId", characteristicId)
-        .toString();
+      return componentMeasures;
     }
   }
 }
@@ -0,0 +1,120 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.source;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.TempFolder;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.Row;
+import org.sonar.server.source.index.SourceLineResultSetIterator;
+import org.sonar.server.test.index.TestResultSetIterator;
+import org.sonar.server.util.CloseableIterator;
+import org.sonar.server.util.cache.Codec;
+import org.sonar.server.util.cache.DiskCache;
+
+/**
+ * Rows of table FILE_SOURCES inserted or updated during the analysis. They are kept on disk so that
+ * Elasticsearch documents can be built from them without reading the table again.
+ */
+public class FileSourcesToIndexCache extends DiskCache<FileSourcesToIndexCache.Entry> {
+
+  // this constructor is used by picocontainer
+  public FileSourcesToIndexCache(TempFolder tempFolder, System2 system2) throws IOException {
+    this(tempFolder.newFile("file-sources-to-index", ".dat"), system2);
+  }
+
+  public FileSourcesToIndexCache(File file, System2 system2) {
+    // binary data is already compressed
+    super(file, new EntryCodec(), false, system2);
+  }
+
+  /**
+   * Rows to be indexed for the specified type of data ({@link FileSourceDto.Type#SOURCE} or {@link FileSourceDto.Type#TEST}).
+   * Binary data is decoded lazily, one row at a time.
+   */
+  public CloseableIterator<Row> traverseRows(final String projectUuid, final String dataType) {
+    final CloseableIterator<Entry> entries = traverse();
+    return new CloseableIterator<Row>() {
+      @Override
+      protected Row doNext() {
+        while (entries.hasNext()) {
+          Entry entry = entries.next();
+          if (entry.dataType.equals(dataType)) {
+            return toRow(projectUuid, entry);
+          }
+        }
+        return null;
+      }
+
+      @Override
+      protected void doClose() {
+        entries.close();
+      }
+    };
+  }
+
+  private static Row toRow(String projectUuid, Entry entry) {
+    Date updatedAt = new Date(entry.updatedAt);
+    if (FileSourceDto.Type.TEST.equals(entry.dataType)) {
+      return TestResultSetIterator.toRow(projectUuid, entry.fileUuid, updatedAt, FileSourceDto.decodeTestData(entry.binaryData));
+    }
+    return SourceLineResultSetIterator.toRow(projectUuid, entry.fileUuid, updatedAt, FileSourceDto.decodeSourceData(entry.binaryData));
+  }
+
+  public static class Entry {
+    private final String dataType;
+    private final String fileUuid;
+    private final long updatedAt;
+    private final byte[] binaryData;
+
+    public Entry(String dataType, String fileUuid, long updatedAt, byte[] binaryData) {
+      this.dataType = dataType;
+      this.fileUuid = fileUuid;
+      this.updatedAt = updatedAt;
+      this.binaryData = binaryData;
+    }
+  }
+
+  private static class EntryCodec implements Codec<Entry> {
+    @Override
+    public void write(Entry entry, DataOutput output) throws IOException {
+      output.writeUTF(entry.dataType);
+      output.writeUTF(entry.fileUuid);
+      output.writeLong(entry.updatedAt);
+      output.writeInt(entry.binaryData.length);
+      output.write(entry.binaryData);
+    }
+
+    @Override
+    public Entry read(DataInput input) throws IOException {
+      String dataType = input.readUTF();
+      String fileUuid = input.readUTF();
+      long updatedAt = input.readLong();
+      byte[] binaryData = new byte[input.readInt()];
+      input.readFully(binaryData);
+      return new Entry(dataType, fileUuid, updatedAt, binaryData);
+    }
+  }
+}
@@ -59,7 +59,7 @@ public class ApplyPermissionsStep implements ComputationStep {
         session.commit();
       }
       // As batch is still apply permission on project, indexing of issue authorization must always been done
-      indexer.index();
+      indexer.index(treeRootHolder.getRoot().getUuid());
     } finally {
       MyBatis.closeQuietly(session);
     }
@@ -20,25 +20,53 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.sonar.server.computation.container.ComputeEngineContainer;
 
 /**
- * Ordered list of steps to be executed
+ * Ordered list of steps to be executed, and the dependencies between steps which allow some of them to be
+ * executed concurrently
  */
 public class ComputationSteps {
 
+  /**
+   * Steps which do not depend on the step preceding them in {@link #orderedStepClasses()}, associated to the
+   * steps which produce their inputs. Other steps depend on their predecessor only.
+   * Dependencies must be declared before the step in {@link #orderedStepClasses()}, so that the sequential
+   * execution is still valid.
+   */
+  private static final ListMultimap<Class<? extends ComputationStep>, Class<? extends ComputationStep>> DEPENDENCIES =
+    ImmutableListMultimap.<Class<? extends ComputationStep>, Class<? extends ComputationStep>>builder()
+      // persistence of data depends on ids of components and snapshots only
+      .put(PersistMeasuresStep.class, PersistSnapshotsStep.class)
+      .put(PersistNumberOfDaysSinceLastCommitStep.class, PersistSnapshotsStep.class)
+      .put(PersistIssuesStep.class, PersistSnapshotsStep.class)
+      .put(PersistProjectLinksStep.class, PersistSnapshotsStep.class)
+      .put(PersistEventsStep.class, PersistSnapshotsStep.class)
+      .put(PersistDuplicationsStep.class, PersistSnapshotsStep.class)
+      .put(PersistFileSourcesStep.class, PersistSnapshotsStep.class)
+      // FileSourcesToIndexCache does not support concurrent appenders
+      .put(PersistTestsStep.class, PersistFileSourcesStep.class)
+      .putAll(SwitchSnapshotStep.class, PersistMeasuresStep.class, PersistNumberOfDaysSinceLastCommitStep.class, PersistIssuesStep.class,
+        PersistProjectLinksStep.class, PersistEventsStep.class, PersistDuplicationsStep.class, PersistTestsStep.class)
+      // indices are independent
+      .put(IndexSourceLinesStep.class, ApplyPermissionsStep.class)
+      .put(IndexTestsStep.class, ApplyPermissionsStep.class)
+      .putAll(SendIssueNotificationsStep.class, IndexIssuesStep.class, IndexSourceLinesStep.class, IndexTestsStep.class)
+      .build();
+
   /**
    * List of all {@link org.sonar.server.computation.step.ComputationStep},
    * ordered by execution sequence.
    */
   public List<Class<? extends ComputationStep>> orderedStepClasses() {
     return Arrays.asList(
-      // extract report to a temp directory
-      ReportExtractionStep.class,
-
       // Builds Component tree
       BuildComponentTreeStep.class,
       FillComponentsStep.class,
@@ -103,16 +131,43 @@ public class ComputationSteps {
   }
 
   public Iterable<ComputationStep> instances() {
-    return Iterables.transform(orderedStepClasses(), new Function<Class<? extends ComputationStep>, ComputationStep>() {
-      @Override
-      public ComputationStep apply(Class<? extends ComputationStep> input) {
-        ComputationStep computationStepType = computeEngineContainer.getStep(input);
-        if (computationStepType == null) {
-          throw new IllegalStateException(String.format("Component not found: %s", input));
-        }
-        return computationStepType;
+    return Iterables.transform(orderedStepClasses(), new StepInstance());
+  }
+
+  /**
+   * Classes of the steps which must be completed before executing the given step
+   */
+  public List<Class<? extends ComputationStep>> dependencyClasses(Class<? extends ComputationStep> stepClass) {
+    if (DEPENDENCIES.containsKey(stepClass)) {
+      return DEPENDENCIES.get(stepClass);
+    }
+    List<Class<? extends ComputationStep>> ordered = orderedStepClasses();
+    int index = ordered.indexOf(stepClass);
+    if (index < 0) {
+      throw new IllegalStateException(String.format("Step is not declared: %s", stepClass));
+    }
+    if (index == 0) {
+      return Collections.emptyList();
+    }
+    return Collections.<Class<? extends ComputationStep>>singletonList(ordered.get(index - 1));
+  }
+
+  /**
+   * Steps which must be completed before executing the given step
+   */
+  public List<ComputationStep> dependencies(ComputationStep step) {
+    return Lists.transform(dependencyClasses(step.getClass()), new StepInstance());
+  }
+
+  private class StepInstance implements Function<Class<? extends ComputationStep>, ComputationStep> {
+    @Override
+    public ComputationStep apply(Class<? extends ComputationStep> input) {
+      ComputationStep computationStepType = computeEngineContainer.getStep(input);
+      if (computationStepType == null) {
+        throw new IllegalStateException(String.format("Component not found: %s", input));
       }
-    });
+      return computationStepType;
+    }
   }
 
 }
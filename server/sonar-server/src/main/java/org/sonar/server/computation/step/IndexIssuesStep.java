@@ -17,26 +17,209 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-
 package org.sonar.server.computation.step;
 
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.resources.Scopes;
+import org.sonar.api.utils.KeyValueFormat;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.rule.RuleDto;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.issue.IssueCache;
+import org.sonar.server.computation.issue.RuleCache;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.index.IssueDoc;
 import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.util.CloseableIterator;
 
+/**
+ * Indexes the issues persisted by {@link PersistIssuesStep}. Documents are built from the issue cache, the rules
+ * and the components of the report, without reading table ISSUES.
+ */
 public class IndexIssuesStep implements ComputationStep {
 
   private final IssueIndexer indexer;
+  private final TreeRootHolder treeRootHolder;
+  private final BatchReportReader reportReader;
+  private final IssueCache issueCache;
+  private final RuleCache ruleCache;
+  private final DbClient dbClient;
+  private final ReportQueue.Item item;
 
-  public IndexIssuesStep(IssueIndexer indexer) {
+  public IndexIssuesStep(IssueIndexer indexer, TreeRootHolder treeRootHolder, BatchReportReader reportReader, IssueCache issueCache,
+    RuleCache ruleCache, DbClient dbClient, ReportQueue.Item item) {
     this.indexer = indexer;
+    this.treeRootHolder = treeRootHolder;
+    this.reportReader = reportReader;
+    this.issueCache = issueCache;
+    this.ruleCache = ruleCache;
+    this.dbClient = dbClient;
+    this.item = item;
   }
 
   @Override
   public void execute() {
-    indexer.index();
+    // Issues are persisted after the start of the computation, so this date is lower than the technical dates
+    // saved in db. The indexing of the project from db, which starts from the most recent technical date of
+    // the index, does not skip the issues updated by users while the report is processed.
+    Date technicalUpdateDate = new Date(item.dto.getStartedAt());
+    Map<String, ComponentLocation> locationsByUuid = new HashMap<>();
+    Component project = treeRootHolder.getRoot();
+    addLocations(project, null, locationsByUuid);
+    addLocationsOfDeletedComponents(locationsByUuid);
+
+    try (CloseableIterator<DefaultIssue> issues = issueCache.traverse()) {
+      indexer.index(project.getUuid(), new IssueDocIterator(issues, locationsByUuid, technicalUpdateDate));
+    }
+  }
+
+  private void addLocations(Component component, @Nullable String parentModuleUuidPath, Map<String, ComponentLocation> locationsByUuid) {
+    String moduleUuidPath;
+    switch (component.getType()) {
+      case PROJECT:
+        moduleUuidPath = ComponentDto.MODULE_UUID_PATH_SEP + component.getUuid() + ComponentDto.MODULE_UUID_PATH_SEP;
+        locationsByUuid.put(component.getUuid(), new ComponentLocation(moduleUuidPath, null, Scopes.PROJECT));
+        break;
+      case MODULE:
+        moduleUuidPath = parentModuleUuidPath + component.getUuid() + ComponentDto.MODULE_UUID_PATH_SEP;
+        locationsByUuid.put(component.getUuid(), new ComponentLocation(moduleUuidPath, null, Scopes.PROJECT));
+        break;
+      case DIRECTORY:
+        moduleUuidPath = parentModuleUuidPath;
+        locationsByUuid.put(component.getUuid(), new ComponentLocation(moduleUuidPath, path(component), Scopes.DIRECTORY));
+        break;
+      case FILE:
+        moduleUuidPath = parentModuleUuidPath;
+        locationsByUuid.put(component.getUuid(), new ComponentLocation(moduleUuidPath, path(component), Scopes.FILE));
+        break;
+      default:
+        throw new IllegalStateException(String.format("Unsupported component type '%s'", component.getType()));
+    }
+    for (Component child : component.getChildren()) {
+      addLocations(child, moduleUuidPath, locationsByUuid);
+    }
+  }
+
+  @CheckForNull
+  private String path(Component component) {
+    BatchReport.Component reportComponent = reportReader.readComponent(component.getRef());
+    return reportComponent.hasPath() ? reportComponent.getPath() : null;
+  }
+
+  /**
+   * Issues of the components removed since previous analysis are closed. These components are not in the report anymore.
+   */
+  private void addLocationsOfDeletedComponents(Map<String, ComponentLocation> locationsByUuid) {
+    int deletedComponentsCount = reportReader.readMetadata().getDeletedComponentsCount();
+    if (deletedComponentsCount > 0) {
+      List<String> uuids = new ArrayList<>();
+      for (int componentRef = 1; componentRef <= deletedComponentsCount; componentRef++) {
+        uuids.add(reportReader.readDeletedComponentIssues(componentRef).getComponentUuid());
+      }
+      DbSession session = dbClient.openSession(false);
+      try {
+        for (ComponentDto component : dbClient.componentDao().selectByUuids(session, uuids)) {
+          locationsByUuid.put(component.uuid(), new ComponentLocation(component.moduleUuidPath(), component.path(), component.scope()));
+        }
+      } finally {
+        MyBatis.closeQuietly(session);
+      }
+    }
   }
 
   @Override
   public String getDescription() {
     return "Index issues";
   }
+
+  private static class ComponentLocation {
+    private final String moduleUuidPath;
+    private final String path;
+    private final String scope;
+
+    private ComponentLocation(String moduleUuidPath, @Nullable String path, String scope) {
+      this.moduleUuidPath = moduleUuidPath;
+      this.path = path;
+      this.scope = scope;
+    }
+  }
+
+  /**
+   * Converts the issues inserted or updated by {@link PersistIssuesStep}. Other issues are already indexed.
+   */
+  private class IssueDocIterator extends AbstractIterator<IssueDoc> {
+    private final Iterator<DefaultIssue> issues;
+    private final Map<String, ComponentLocation> locationsByUuid;
+    private final Date technicalUpdateDate;
+
+    private IssueDocIterator(Iterator<DefaultIssue> issues, Map<String, ComponentLocation> locationsByUuid, Date technicalUpdateDate) {
+      this.issues = issues;
+      this.locationsByUuid = locationsByUuid;
+      this.technicalUpdateDate = technicalUpdateDate;
+    }
+
+    @Override
+    protected IssueDoc computeNext() {
+      while (issues.hasNext()) {
+        DefaultIssue issue = issues.next();
+        if (issue.isNew() || issue.isChanged()) {
+          return toDoc(issue);
+        }
+      }
+      return endOfData();
+    }
+
+    private IssueDoc toDoc(DefaultIssue issue) {
+      ComponentLocation location = locationsByUuid.get(issue.componentUuid());
+      if (location == null) {
+        throw new IllegalStateException(String.format("Component '%s' of issue '%s' is not found", issue.componentUuid(), issue.key()));
+      }
+      RuleDto rule = ruleCache.getNullable(issue.ruleKey());
+
+      IssueDoc doc = new IssueDoc();
+      // all the fields must be present, even if value is null
+      doc.setKey(issue.key());
+      doc.setProjectUuid(issue.projectUuid());
+      doc.setTechnicalUpdateDate(technicalUpdateDate);
+      doc.setActionPlanKey(issue.actionPlanKey());
+      doc.setAssignee(issue.assignee());
+      doc.setEffortToFix(issue.effortToFix());
+      doc.setAttributes(KeyValueFormat.format(issue.attributes()));
+      doc.setLine(issue.line());
+      doc.setMessage(issue.message());
+      doc.setResolution(issue.resolution());
+      doc.setSeverity(issue.severity());
+      doc.setManualSeverity(issue.manualSeverity());
+      doc.setChecksum(issue.checksum());
+      doc.setStatus(issue.status());
+      doc.setDebt(issue.debtInMinutes());
+      doc.setReporter(issue.reporter());
+      doc.setAuthorLogin(issue.authorLogin());
+      doc.setFuncCloseDate(issue.closeDate());
+      doc.setFuncCreationDate(issue.creationDate());
+      doc.setFuncUpdateDate(issue.updateDate());
+      doc.setRuleKey(issue.ruleKey().toString());
+      doc.setLanguage(rule != null ? rule.getLanguage() : null);
+      doc.setComponentUuid(issue.componentUuid());
+      doc.setComponentLocation(location.moduleUuidPath, location.path, location.scope);
+      doc.setTags(ImmutableList.copyOf(issue.tags()));
+      return doc;
+    }
+  }
 }
@@ -19,22 +19,34 @@
  */
 package org.sonar.server.computation.step;
 
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper;
 import org.sonar.server.source.index.SourceLineIndexer;
+import org.sonar.server.util.CloseableIterator;
 
 public class IndexSourceLinesStep implements ComputationStep {
 
   private final SourceLineIndexer indexer;
   private final TreeRootHolder treeRootHolder;
+  private final FileSourcesToIndexCache fileSourcesToIndexCache;
 
-  public IndexSourceLinesStep(SourceLineIndexer indexer, TreeRootHolder treeRootHolder) {
+  public IndexSourceLinesStep(SourceLineIndexer indexer, TreeRootHolder treeRootHolder, FileSourcesToIndexCache fileSourcesToIndexCache) {
     this.indexer = indexer;
     this.treeRootHolder = treeRootHolder;
+    this.fileSourcesToIndexCache = fileSourcesToIndexCache;
   }
 
+  /**
+   * Only the sources inserted or updated by {@link PersistFileSourcesStep} are indexed, without reading them from db
+   */
   @Override
   public void execute() {
-    indexer.index(treeRootHolder.getRoot().getUuid());
+    String projectUuid = treeRootHolder.getRoot().getUuid();
+    try (CloseableIterator<FileSourcesUpdaterHelper.Row> rows = fileSourcesToIndexCache.traverseRows(projectUuid, FileSourceDto.Type.SOURCE)) {
+      indexer.index(projectUuid, rows);
+    }
   }
 
   @Override
@@ -20,22 +20,35 @@
 
 package org.sonar.server.computation.step;
 
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper;
 import org.sonar.server.test.index.TestIndexer;
+import org.sonar.server.util.CloseableIterator;
 
 public class IndexTestsStep implements ComputationStep {
 
   private final TestIndexer indexer;
   private final TreeRootHolder treeRootHolder;
+  private final FileSourcesToIndexCache fileSourcesToIndexCache;
 
-  public IndexTestsStep(TestIndexer indexer, TreeRootHolder treeRootHolder) {
+  public IndexTestsStep(TestIndexer indexer, TreeRootHolder treeRootHolder, FileSourcesToIndexCache fileSourcesToIndexCache) {
     this.indexer = indexer;
     this.treeRootHolder = treeRootHolder;
+    this.fileSourcesToIndexCache = fileSourcesToIndexCache;
   }
 
+  /**
+   * Tests of the files persisted by {@link PersistTestsStep} are replaced, without reading them from db. Tests
+   * of other files are unchanged.
+   */
   @Override
   public void execute() {
-    indexer.index(treeRootHolder.getRoot().getUuid());
+    String projectUuid = treeRootHolder.getRoot().getUuid();
+    try (CloseableIterator<FileSourcesUpdaterHelper.Row> rows = fileSourcesToIndexCache.traverseRows(projectUuid, FileSourceDto.Type.TEST)) {
+      indexer.index(projectUuid, rows);
+    }
   }
 
   @Override
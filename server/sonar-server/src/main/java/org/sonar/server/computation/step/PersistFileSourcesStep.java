@@ -20,11 +20,21 @@
 
 package org.sonar.server.computation.step;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -34,11 +44,13 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.core.source.db.FileSourceDto.Type;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.source.ComputeFileSourceData;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.computation.source.CoverageLineReader;
 import org.sonar.server.computation.source.DuplicationLineReader;
 import org.sonar.server.computation.source.HighlightingLineReader;
@@ -46,46 +58,86 @@ import org.sonar.server.computation.source.LineReader;
 import org.sonar.server.computation.source.ScmLineReader;
 import org.sonar.server.computation.source.SymbolsLineReader;
 import org.sonar.server.db.DbClient;
-import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.util.CloseableIterator;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
 
 public class PersistFileSourcesStep implements ComputationStep {
 
+  /**
+   * Statements are flushed as soon as the data of pending rows exceeds this size, so that batches
+   * of big files do not produce OOM.
+   */
+  static final long MAX_BATCH_SIZE_IN_BYTES = 16L * 1024 * 1024;
+
   private final DbClient dbClient;
   private final System2 system2;
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
+  private final FileSourcesToIndexCache fileSourcesToIndexCache;
+  private final ComputationMetrics metrics;
+  private final long maxBatchSizeInBytes;
+  private final int threads;
+
+  public PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader,
+    FileSourcesToIndexCache fileSourcesToIndexCache, ComputationMetrics metrics) {
+    this(dbClient, system2, treeRootHolder, reportReader, fileSourcesToIndexCache, metrics, MAX_BATCH_SIZE_IN_BYTES, Runtime.getRuntime().availableProcessors());
+  }
 
-  public PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader) {
+  @VisibleForTesting
+  PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader,
+    FileSourcesToIndexCache fileSourcesToIndexCache, ComputationMetrics metrics, long maxBatchSizeInBytes, int threads) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
+    this.fileSourcesToIndexCache = fileSourcesToIndexCache;
+    this.metrics = metrics;
+    this.maxBatchSizeInBytes = maxBatchSizeInBytes;
+    this.threads = threads;
   }
 
   @Override
   public void execute() {
-    // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
-    DbSession session = dbClient.openSession(false);
+    // data of files are computed by a pool of threads, but they are persisted by a single thread, in the order of the tree
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat("compute-file-sources-%d")
+      .setDaemon(true)
+      .build());
+    DbSession session = dbClient.openSession(true);
+    FileSourcesToIndexCache.DiskAppender toIndexAppender = fileSourcesToIndexCache.newAppender();
     try {
-      new FileSourceVisitor(session).visit(treeRootHolder.getRoot());
+      FileSourceVisitor visitor = new FileSourceVisitor(session, executor, toIndexAppender);
+      visitor.visit(treeRootHolder.getRoot());
+      visitor.persistPendingFiles(0);
+      visitor.flush();
     } finally {
+      executor.shutdownNow();
       MyBatis.closeQuietly(session);
+      toIndexAppender.close();
     }
   }
 
   private class FileSourceVisitor extends DepthTraversalTypeAwareVisitor {
 
     private final DbSession session;
+    private final ExecutorService executor;
+    private final FileSourcesToIndexCache.DiskAppender toIndexAppender;
+    // files being computed, in the order they must be persisted. Size is bounded to limit memory usage.
+    private final Deque<Future<FileSourceData>> pendingFiles = new ArrayDeque<>();
+    private final int maxPendingFiles;
 
     private Map<String, FileSourceDto> previousFileSourcesByUuid = new HashMap<>();
     private String projectUuid;
+    // size of the data of the rows which are not flushed yet
+    private long pendingBytes = 0L;
 
-    private FileSourceVisitor(DbSession session) {
+    private FileSourceVisitor(DbSession session, ExecutorService executor, FileSourcesToIndexCache.DiskAppender toIndexAppender) {
       super(Component.Type.FILE, PRE_ORDER);
       this.session = session;
+      this.executor = executor;
+      this.toIndexAppender = toIndexAppender;
+      this.maxPendingFiles = 2 * threads;
     }
 
     @Override
@@ -97,35 +149,47 @@ public class PersistFileSourcesStep implements ComputationStep {
           public void handleResult(ResultContext context) {
             FileSourceDto dto = (FileSourceDto) context.getResultObject();
             previousFileSourcesByUuid.put(dto.getFileUuid(), dto);
+            metrics.addRowsRead(1L);
           }
         });
     }
 
     @Override
-    public void visitFile(Component file) {
-      int fileRef = file.getRef();
-      BatchReport.Component component = reportReader.readComponent(fileRef);
-      CloseableIterator<String> linesIterator = reportReader.readFileSource(fileRef);
-      LineReaders lineReaders = new LineReaders(reportReader, fileRef);
-      try {
-        ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), component.getLines());
-        ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
-        persistSource(fileSourceData, file.getUuid());
-      } catch (Exception e) {
-        throw new IllegalStateException(String.format("Cannot persist sources of %s", file.getKey()), e);
-      } finally {
-        linesIterator.close();
-        lineReaders.close();
-      }
+    public void visitFile(final Component file) {
+      pendingFiles.add(executor.submit(new Callable<FileSourceData>() {
+        @Override
+        public FileSourceData call() {
+          return computeSource(file);
+        }
+      }));
+      persistPendingFiles(maxPendingFiles - 1);
     }
 
-    private void persistSource(ComputeFileSourceData.Data fileSourceData, String componentUuid) {
-      FileSourceDb.Data fileData = fileSourceData.getFileSourceData();
+    /**
+     * Persists the oldest pending files, waiting for their computation if needed, until at most
+     * {@code maxRemaining} files are pending.
+     */
+    private void persistPendingFiles(int maxRemaining) {
+      while (pendingFiles.size() > maxRemaining) {
+        Future<FileSourceData> future = pendingFiles.poll();
+        try {
+          persistSource(future.get());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while persisting file sources", e);
+        } catch (ExecutionException e) {
+          Throwables.propagateIfPossible(e.getCause());
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    }
 
-      byte[] data = FileSourceDto.encodeSourceData(fileData);
-      String dataHash = DigestUtils.md5Hex(data);
-      String srcHash = fileSourceData.getSrcHash();
-      String lineHashes = fileSourceData.getLineHashes();
+    private void persistSource(FileSourceData fileSourceData) {
+      byte[] data = fileSourceData.data;
+      String dataHash = fileSourceData.dataHash;
+      String srcHash = fileSourceData.srcHash;
+      String lineHashes = fileSourceData.lineHashes;
+      String componentUuid = fileSourceData.componentUuid;
       FileSourceDto previousDto = previousFileSourcesByUuid.get(componentUuid);
 
       if (previousDto == null) {
@@ -140,7 +204,9 @@ public class PersistFileSourcesStep implements ComputationStep {
           .setCreatedAt(system2.now())
           .setUpdatedAt(system2.now());
         dbClient.fileSourceDao().insert(session, dto);
-        session.commit();
+        metrics.addRowsWritten(1L);
+        toIndexAppender.append(new FileSourcesToIndexCache.Entry(Type.SOURCE, componentUuid, dto.getUpdatedAt(), data));
+        addToBatch(data, lineHashes);
       } else {
         // Update only if data_hash has changed or if src_hash is missing (progressive migration)
         boolean binaryDataUpdated = !dataHash.equals(previousDto.getDataHash());
@@ -154,12 +220,63 @@ public class PersistFileSourcesStep implements ComputationStep {
           // Optimization only change updated at when updating binary data to avoid unnecessary indexation by E/S
           if (binaryDataUpdated) {
             previousDto.setUpdatedAt(system2.now());
+            toIndexAppender.append(new FileSourcesToIndexCache.Entry(Type.SOURCE, componentUuid, previousDto.getUpdatedAt(), data));
           }
-          dbClient.fileSourceDao().update(previousDto);
-          session.commit();
+          dbClient.fileSourceDao().update(session, previousDto);
+          metrics.addRowsWritten(1L);
+          addToBatch(data, lineHashes);
         }
       }
     }
+
+    private void addToBatch(byte[] data, String lineHashes) {
+      pendingBytes += data.length + lineHashes.length();
+      if (pendingBytes >= maxBatchSizeInBytes) {
+        flush();
+      }
+    }
+
+    private void flush() {
+      session.commit();
+      pendingBytes = 0L;
+    }
+  }
+
+  /**
+   * Reads the data of the file from the report, then encodes and hashes it. Called concurrently.
+   */
+  private FileSourceData computeSource(Component file) {
+    int fileRef = file.getRef();
+    BatchReport.Component component = reportReader.readComponent(fileRef);
+    CloseableIterator<String> linesIterator = reportReader.readFileSource(fileRef);
+    LineReaders lineReaders = new LineReaders(reportReader, fileRef);
+    try {
+      ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), component.getLines());
+      ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
+      byte[] data = FileSourceDto.encodeSourceData(fileSourceData.getFileSourceData());
+      return new FileSourceData(file.getUuid(), data, DigestUtils.md5Hex(data), fileSourceData.getSrcHash(), fileSourceData.getLineHashes());
+    } catch (Exception e) {
+      throw new IllegalStateException(String.format("Cannot persist sources of %s", file.getKey()), e);
+    } finally {
+      linesIterator.close();
+      lineReaders.close();
+    }
+  }
+
+  private static class FileSourceData {
+    private final String componentUuid;
+    private final byte[] data;
+    private final String dataHash;
+    private final String srcHash;
+    private final String lineHashes;
+
+    FileSourceData(String componentUuid, byte[] data, String dataHash, String srcHash, String lineHashes) {
+      this.componentUuid = componentUuid;
+      this.data = data;
+      this.dataHash = dataHash;
+      this.srcHash = srcHash;
+      this.lineHashes = lineHashes;
+    }
   }
 
   private static class LineReaders {
@@ -32,6 +32,7 @@ import org.sonar.core.issue.db.IssueMapper;
 import org.sonar.core.issue.db.UpdateConflictResolver;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.issue.IssueCache;
 import org.sonar.server.computation.issue.RuleCache;
 import org.sonar.server.db.DbClient;
@@ -44,14 +45,16 @@ public class PersistIssuesStep implements ComputationStep {
   private final UpdateConflictResolver conflictResolver;
   private final RuleCache ruleCache;
   private final IssueCache issueCache;
+  private final ComputationMetrics metrics;
 
   public PersistIssuesStep(DbClient dbClient, System2 system2, UpdateConflictResolver conflictResolver,
-    RuleCache ruleCache, IssueCache issueCache) {
+    RuleCache ruleCache, IssueCache issueCache, ComputationMetrics metrics) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.conflictResolver = conflictResolver;
     this.ruleCache = ruleCache;
     this.issueCache = issueCache;
+    this.metrics = metrics;
   }
 
   @Override
@@ -85,7 +88,7 @@ public class PersistIssuesStep implements ComputationStep {
           saved = true;
         }
         if (saved) {
-          insertChanges(changeMapper, issue);
+          metrics.addRowsWritten(1L + insertChanges(changeMapper, issue));
         }
       }
       session.flushStatements();
@@ -96,19 +99,26 @@ public class PersistIssuesStep implements ComputationStep {
     }
   }
 
-  private static void insertChanges(IssueChangeMapper mapper, DefaultIssue issue) {
+  /**
+   * @return the number of inserted rows
+   */
+  private static int insertChanges(IssueChangeMapper mapper, DefaultIssue issue) {
+    int rows = 0;
     for (IssueComment comment : issue.comments()) {
       DefaultIssueComment c = (DefaultIssueComment) comment;
       if (c.isNew()) {
         IssueChangeDto changeDto = IssueChangeDto.of(c);
         mapper.insert(changeDto);
+        rows++;
       }
     }
     FieldDiffs diffs = issue.currentChange();
     if (!issue.isNew() && diffs != null) {
       IssueChangeDto changeDto = IssueChangeDto.of(issue.key(), diffs);
       mapper.insert(changeDto);
+      rows++;
     }
+    return rows;
   }
 
   @Override
@@ -31,6 +31,7 @@ import javax.annotation.Nonnull;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.core.measure.db.MeasureDto;
 import org.sonar.core.persistence.DbSession;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
@@ -58,14 +59,16 @@ public class PersistMeasuresStep implements ComputationStep {
   private final DbIdsRepository dbIdsRepository;
   private final TreeRootHolder treeRootHolder;
   private final MeasureRepository measureRepository;
+  private final ComputationMetrics metrics;
 
   public PersistMeasuresStep(DbClient dbClient, MetricRepository metricRepository, DbIdsRepository dbIdsRepository,
-    TreeRootHolder treeRootHolder, MeasureRepository measureRepository) {
+    TreeRootHolder treeRootHolder, MeasureRepository measureRepository, ComputationMetrics metrics) {
     this.dbClient = dbClient;
     this.metricRepository = metricRepository;
     this.dbIdsRepository = dbIdsRepository;
     this.treeRootHolder = treeRootHolder;
     this.measureRepository = measureRepository;
+    this.metrics = metrics;
   }
 
   @Override
@@ -113,6 +116,7 @@ public class PersistMeasuresStep implements ComputationStep {
         for (Measure measure : from(measures.getValue()).filter(NonEmptyMeasure.INSTANCE).filter(notBestValueOptimized)) {
           MeasureDto measureDto = MeasureToMeasureDto.INSTANCE.toMeasureDto(measure, metric, componentId, snapshotId);
           dbClient.measureDao().insert(session, measureDto);
+          metrics.addRowsWritten(1L);
         }
       }
     }
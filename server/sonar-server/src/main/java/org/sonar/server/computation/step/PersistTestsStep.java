@@ -48,6 +48,7 @@ import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
 import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.source.db.FileSourceDb.Test.TestStatus;
@@ -61,19 +62,23 @@ public class PersistTestsStep implements ComputationStep {
   private final System2 system;
   private final BatchReportReader reportReader;
   private final TreeRootHolder treeRootHolder;
+  private final FileSourcesToIndexCache fileSourcesToIndexCache;
 
-  public PersistTestsStep(DbClient dbClient, System2 system, BatchReportReader reportReader, TreeRootHolder treeRootHolder) {
+  public PersistTestsStep(DbClient dbClient, System2 system, BatchReportReader reportReader, TreeRootHolder treeRootHolder,
+    FileSourcesToIndexCache fileSourcesToIndexCache) {
     this.dbClient = dbClient;
     this.system = system;
     this.reportReader = reportReader;
     this.treeRootHolder = treeRootHolder;
+    this.fileSourcesToIndexCache = fileSourcesToIndexCache;
   }
 
   @Override
   public void execute() {
     DbSession session = dbClient.openSession(true);
+    FileSourcesToIndexCache.DiskAppender toIndexAppender = fileSourcesToIndexCache.newAppender();
     try {
-      TestDepthTraversalTypeAwareVisitor visitor = new TestDepthTraversalTypeAwareVisitor(session);
+      TestDepthTraversalTypeAwareVisitor visitor = new TestDepthTraversalTypeAwareVisitor(session, toIndexAppender);
       visitor.visit(treeRootHolder.getRoot());
       session.commit();
       if (visitor.hasUnprocessedCoverageDetails) {
@@ -81,6 +86,7 @@ public class PersistTestsStep implements ComputationStep {
       }
     } finally {
       MyBatis.closeQuietly(session);
+      toIndexAppender.close();
     }
   }
 
@@ -91,14 +97,16 @@ public class PersistTestsStep implements ComputationStep {
 
   private class TestDepthTraversalTypeAwareVisitor extends DepthTraversalTypeAwareVisitor {
     final DbSession session;
+    final FileSourcesToIndexCache.DiskAppender toIndexAppender;
     final Map<String, FileSourceDto> existingFileSourcesByUuid;
     final String projectUuid;
     final String projectKey;
     boolean hasUnprocessedCoverageDetails = false;
 
-    public TestDepthTraversalTypeAwareVisitor(DbSession session) {
+    public TestDepthTraversalTypeAwareVisitor(DbSession session, FileSourcesToIndexCache.DiskAppender toIndexAppender) {
       super(Component.Type.FILE, Order.PRE_ORDER);
       this.session = session;
+      this.toIndexAppender = toIndexAppender;
       this.existingFileSourcesByUuid = new HashMap<>();
       this.projectUuid = treeRootHolder.getRoot().getUuid();
       this.projectKey = treeRootHolder.getRoot().getKey();
@@ -135,23 +143,25 @@ public class PersistTestsStep implements ComputationStep {
       String componentUuid = getUuid(component.getRef());
       FileSourceDto existingDto = existingFileSourcesByUuid.get(componentUuid);
       long now = system.now();
+      FileSourceDto dto;
       if (existingDto != null) {
         // update
-        existingDto
+        dto = existingDto
           .setTestData(tests)
           .setUpdatedAt(now);
-        dbClient.fileSourceDao().update(session, existingDto);
+        dbClient.fileSourceDao().update(session, dto);
       } else {
         // insert
-        FileSourceDto newDto = new FileSourceDto()
+        dto = new FileSourceDto()
           .setTestData(tests)
           .setFileUuid(componentUuid)
           .setProjectUuid(projectUuid)
           .setDataType(Type.TEST)
           .setCreatedAt(now)
           .setUpdatedAt(now);
-        dbClient.fileSourceDao().insert(session, newDto);
+        dbClient.fileSourceDao().insert(session, dto);
       }
+      toIndexAppender.append(new FileSourcesToIndexCache.Entry(Type.TEST, componentUuid, now, dto.getBinaryData()));
     }
 
     private boolean checkIfThereAreUnprocessedCoverageDetails(Multimap<String, FileSourceDb.Test.Builder> testsByName,
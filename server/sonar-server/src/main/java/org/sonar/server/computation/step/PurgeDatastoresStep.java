@@ -20,47 +20,36 @@
 
 package org.sonar.server.computation.step;
 
-import org.sonar.core.computation.dbcleaner.ProjectCleaner;
-import org.sonar.core.persistence.DbSession;
-import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.computation.dbcleaner.PurgeScheduler;
 import org.sonar.core.purge.IdUuidPair;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
-import org.sonar.server.computation.component.ProjectSettingsRepository;
 import org.sonar.server.computation.component.TreeRootHolder;
-import org.sonar.server.db.DbClient;
 
+/**
+ * The purge itself is executed in background by {@link PurgeScheduler}, so that housekeeping
+ * does not increase the duration of analysis.
+ */
 public class PurgeDatastoresStep implements ComputationStep {
 
-  private final ProjectCleaner projectCleaner;
-  private final DbClient dbClient;
+  private final PurgeScheduler purgeScheduler;
   private final DbIdsRepository dbIdsRepository;
   private final TreeRootHolder treeRootHolder;
-  private final ProjectSettingsRepository projectSettingsRepository;
 
-  public PurgeDatastoresStep(DbClient dbClient, ProjectCleaner projectCleaner, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder,
-    ProjectSettingsRepository projectSettingsRepository) {
-    this.projectCleaner = projectCleaner;
-    this.dbClient = dbClient;
+  public PurgeDatastoresStep(PurgeScheduler purgeScheduler, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder) {
+    this.purgeScheduler = purgeScheduler;
     this.dbIdsRepository = dbIdsRepository;
     this.treeRootHolder = treeRootHolder;
-    this.projectSettingsRepository = projectSettingsRepository;
   }
 
   @Override
   public void execute() {
-    DbSession session = dbClient.openSession(true);
-    try {
-      Component project = treeRootHolder.getRoot();
-      projectCleaner.purge(session, new IdUuidPair(dbIdsRepository.getComponentId(project), project.getUuid()), projectSettingsRepository.getProjectSettings(project.getKey()));
-      session.commit();
-    } finally {
-      MyBatis.closeQuietly(session);
-    }
+    Component project = treeRootHolder.getRoot();
+    purgeScheduler.schedule(new IdUuidPair(dbIdsRepository.getComponentId(project), project.getUuid()), project.getKey());
   }
 
   @Override
   public String getDescription() {
-    return "Purge datastores";
+    return "Schedule purge of datastores";
   }
 }
@@ -20,6 +20,7 @@
 
 package org.sonar.server.computation.ws;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
@@ -29,6 +30,7 @@ import org.sonar.server.activity.Activity;
 import org.sonar.server.activity.index.ActivityDoc;
 import org.sonar.server.activity.index.ActivityIndex;
 import org.sonar.server.activity.index.ActivityQuery;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.es.SearchOptions;
 import org.sonar.server.es.SearchResult;
 import org.sonar.server.issue.ws.IssuesWs;
@@ -36,22 +38,25 @@ import org.sonar.server.user.UserSession;
 
 import java.util.Arrays;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 // FIXME replace by api/activities/search
 public class HistoryAction implements ComputationWsAction {
   private final ActivityIndex activityIndex;
   private final UserSession userSession;
+  private final ComputationMetrics metrics;
 
-  public HistoryAction(ActivityIndex activityIndex, UserSession userSession) {
+  public HistoryAction(ActivityIndex activityIndex, UserSession userSession, ComputationMetrics metrics) {
     this.activityIndex = activityIndex;
     this.userSession = userSession;
+    this.metrics = metrics;
   }
 
   @Override
   public void define(WebService.NewController controller) {
     WebService.NewAction action = controller
       .createAction("history")
-      .setDescription("Past integrations of analysis reports")
+      .setDescription("Past integrations of analysis reports. Metrics of steps are returned for the last processed reports only.")
       .setSince("5.0")
       .setInternal(true)
       .setHandler(this);
@@ -83,8 +88,30 @@ public class HistoryAction implements ComputationWsAction {
       for (Map.Entry<String, String> detail : doc.getDetails().entrySet()) {
         json.prop(detail.getKey(), detail.getValue());
       }
+      writeSteps(doc.getDetails().get("key"), json);
       json.endObject();
     }
     json.endArray();
   }
+
+  private void writeSteps(@Nullable String reportKey, JsonWriter json) {
+    if (!NumberUtils.isDigits(reportKey)) {
+      return;
+    }
+    ComputationMetrics.ReportMetrics report = metrics.getReport(Long.parseLong(reportKey));
+    if (report == null) {
+      return;
+    }
+    json.name("steps").beginArray();
+    for (ComputationMetrics.StepMetrics step : report.getSteps()) {
+      json.beginObject()
+        .prop("description", step.getDescription())
+        .prop("durationMs", step.getDurationMs())
+        .prop("allocatedBytes", step.getAllocatedBytes())
+        .prop("rowsRead", step.getRowsRead())
+        .prop("rowsWritten", step.getRowsWritten())
+        .endObject();
+    }
+    json.endArray();
+  }
 }
@@ -20,25 +20,47 @@
 package org.sonar.server.es;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
-import org.picocontainer.Startable;
-import org.sonar.api.server.ServerSide;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.sonar.api.server.ServerSide;
 
 @ServerSide
 public abstract class BaseIndexer implements Startable {
 
+  /**
+   * Maximum number of indexing tasks executed at the same time. Tasks of a same project, as well
+   * as tasks on the whole index, are never executed concurrently.
+   */
+  static final int DEFAULT_THREADS = 4;
+
+  private static final int PROJECT_LOCK_STRIPES = 64;
+
   private final ThreadPoolExecutor executor;
   private final String indexName;
   private final String typeName;
   private final String dateFieldName;
   protected final EsClient esClient;
-  private volatile long lastUpdatedAt = -1L;
+  private final Object globalLock = new Object();
+  private final Striped<Lock> projectLocks = Striped.lock(PROJECT_LOCK_STRIPES);
+  private final ConcurrentMap<String, Long> lastUpdatedAtByProjectUuid = new ConcurrentHashMap<>();
+  private final AtomicLong lastUpdatedAt = new AtomicLong(-1L);
 
   /**
    * Indexers are disabled during server startup, to avoid too many consecutive refreshes of the same index
@@ -53,36 +75,168 @@ public abstract class BaseIndexer implements Startable {
 
   protected BaseIndexer(EsClient client, long threadKeepAliveSeconds, String indexName, String typeName,
     String dateFieldName) {
+    this(client, threadKeepAliveSeconds, indexName, typeName, dateFieldName, DEFAULT_THREADS);
+  }
+
+  protected BaseIndexer(EsClient client, long threadKeepAliveSeconds, String indexName, String typeName,
+    String dateFieldName, int threads) {
     this.indexName = indexName;
     this.typeName = typeName;
     this.dateFieldName = dateFieldName;
     this.esClient = client;
-    this.executor = new ThreadPoolExecutor(0, 1,
-      threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    // core threads time out, so that idle indexers do not keep any thread. Keep-alive must be positive in this case.
+    this.executor = new ThreadPoolExecutor(threads, threads,
+      Math.max(1L, threadKeepAliveSeconds), TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactoryBuilder().setNameFormat(indexName + "-" + typeName + "-indexer-%d").setDaemon(true).build());
+    this.executor.allowCoreThreadTimeOut(true);
   }
 
+  /**
+   * Indexes the documents updated since the last indexing of the whole index.
+   */
   public void index(final IndexerTask task) {
     if (enabled) {
       final long requestedAt = System.currentTimeMillis();
-      Future submit = executor.submit(new Runnable() {
+      submitAndWait(new Runnable() {
         @Override
         public void run() {
-          if (lastUpdatedAt == -1L) {
-            lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
+          synchronized (globalLock) {
+            long since = lastUpdatedAt();
+            if (requestedAt > since) {
+              long l = task.index(since);
+              // l can be 0 if no documents were indexed
+              lastUpdatedAt.set(Math.max(l, since));
+            }
           }
-          if (requestedAt > lastUpdatedAt) {
-            long l = task.index(lastUpdatedAt);
-            // l can be 0 if no documents were indexed
-            lastUpdatedAt = Math.max(l, lastUpdatedAt);
+        }
+      });
+    }
+  }
+
+  /**
+   * Indexes the documents of a project updated since the last indexing of this project. Tasks of different
+   * projects are executed concurrently.
+   * <p/>
+   * The first indexing of a project after server startup starts from the date of the most recent document
+   * of the project, or of the index if {@link #getProjectUuidFieldName()} is not defined.
+   */
+  public void index(final String projectUuid, final IndexerTask task) {
+    if (enabled) {
+      final long requestedAt = System.currentTimeMillis();
+      submitAndWait(new Runnable() {
+        @Override
+        public void run() {
+          Lock lock = projectLocks.get(projectUuid);
+          lock.lock();
+          try {
+            Long projectLastUpdatedAt = lastUpdatedAtByProjectUuid.get(projectUuid);
+            long since = projectLastUpdatedAt == null ? lastUpdatedAt(projectUuid) : projectLastUpdatedAt;
+            if (requestedAt > since) {
+              long l = task.index(since);
+              lastUpdatedAtByProjectUuid.put(projectUuid, Math.max(l, since));
+            }
+          } finally {
+            lock.unlock();
           }
         }
       });
-      try {
-        Uninterruptibles.getUninterruptibly(submit);
-      } catch (ExecutionException e) {
-        Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Indexes documents of a project that are provided by the caller, for example by the Compute Engine, instead
+   * of being read from db. The task is always executed, after the running tasks of the same project. It does not
+   * change the date of last indexing of the project, which applies only to the documents read from db.
+   */
+  protected void indexProjectDocuments(final String projectUuid, final Runnable task) {
+    if (enabled) {
+      submitAndWait(new Runnable() {
+        @Override
+        public void run() {
+          Lock lock = projectLocks.get(projectUuid);
+          lock.lock();
+          try {
+            task.run();
+          } finally {
+            lock.unlock();
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Same as {@link #index(IndexerTask)}, except that the documents are read by multiple tasks executed
+   * concurrently, each one in its own thread. For example each task scrolls a partition of a big table.
+   * The date of last indexing is updated only if all the tasks succeed.
+   */
+  public void indexPartitions(final List<? extends IndexerTask> partitions) {
+    index(new IndexerTask() {
+      @Override
+      public long index(final long lastUpdatedAt) {
+        ExecutorService partitionExecutor = Executors.newFixedThreadPool(partitions.size(),
+          new ThreadFactoryBuilder().setNameFormat(indexName + "-" + typeName + "-partition-%d").setDaemon(true).build());
+        try {
+          List<Future<Long>> futures = new ArrayList<>();
+          for (final IndexerTask partition : partitions) {
+            futures.add(partitionExecutor.submit(new Callable<Long>() {
+              @Override
+              public Long call() {
+                return partition.index(lastUpdatedAt);
+              }
+            }));
+          }
+          long maxUpdatedAt = 0L;
+          for (Future<Long> future : futures) {
+            maxUpdatedAt = Math.max(maxUpdatedAt, Uninterruptibles.getUninterruptibly(future));
+          }
+          return maxUpdatedAt;
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        } finally {
+          partitionExecutor.shutdownNow();
+        }
       }
+    });
+  }
+
+  private void submitAndWait(Runnable runnable) {
+    Future submit = executor.submit(runnable);
+    try {
+      Uninterruptibles.getUninterruptibly(submit);
+    } catch (ExecutionException e) {
+      Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Does not lock, so that tasks of projects are not blocked by a task on the whole index. The date
+   * can be loaded twice on startup.
+   */
+  private long lastUpdatedAt() {
+    long result = lastUpdatedAt.get();
+    if (result == -1L) {
+      lastUpdatedAt.compareAndSet(-1L, esClient.getMaxFieldValue(indexName, typeName, dateFieldName));
+      result = lastUpdatedAt.get();
     }
+    return result;
+  }
+
+  private long lastUpdatedAt(String projectUuid) {
+    String projectUuidFieldName = getProjectUuidFieldName();
+    if (projectUuidFieldName == null) {
+      return lastUpdatedAt();
+    }
+    return esClient.getMaxFieldValue(indexName, typeName, dateFieldName, projectUuidFieldName, projectUuid);
+  }
+
+  /**
+   * Name of the field containing the uuid of the project of documents. It's used to load the date of
+   * the most recent document of a project. Documents must be routed by project uuid.
+   */
+  @CheckForNull
+  protected String getProjectUuidFieldName() {
+    return null;
   }
 
   public void index() {
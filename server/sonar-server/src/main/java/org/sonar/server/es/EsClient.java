@@ -43,6 +43,7 @@ import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchScrollRequestBuilder;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Priority;
+import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
@@ -194,6 +195,24 @@ public class EsClient implements Startable {
     return (long) max.getValue();
   }
 
+  /**
+   * Same as {@link #getMaxFieldValue(String, String, String)}, but only on the documents of a project. The documents
+   * must be routed by project uuid.
+   */
+  public long getMaxFieldValue(String indexName, String typeName, String fieldName, String projectUuidFieldName, String projectUuid) {
+    SearchRequestBuilder request = prepareSearch(indexName)
+      .setTypes(typeName)
+      .setRouting(projectUuid)
+      .setQuery(QueryBuilders.filteredQuery(
+        QueryBuilders.matchAllQuery(),
+        FilterBuilders.termFilter(projectUuidFieldName, projectUuid).cache(false)))
+      .setSize(0)
+      .addAggregation(AggregationBuilders.max("latest").field(fieldName));
+
+    Max max = request.get().getAggregations().get("latest");
+    return (long) max.getValue();
+  }
+
   @Override
   public void start() {
     // nothing to do
@@ -0,0 +1,135 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.dbutils.DbUtils;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.server.db.DbClient;
+
+/**
+ * Range of uuids of root projects, used to split the scroll of a big table into partitions that are
+ * read concurrently. Lower bound is inclusive, upper bound is exclusive. A {@code null} bound means no limit.
+ */
+public class ProjectUuidRange {
+
+  private static final String SQL_ROOT_PROJECT_UUIDS = "select p.uuid from projects p where p.scope='PRJ' and p.root_id is null order by p.uuid";
+
+  private final String from;
+  private final String to;
+
+  public ProjectUuidRange(@Nullable String from, @Nullable String to) {
+    this.from = from;
+    this.to = to;
+  }
+
+  @CheckForNull
+  public String from() {
+    return from;
+  }
+
+  @CheckForNull
+  public String to() {
+    return to;
+  }
+
+  /**
+   * Appends the SQL condition on the given column, for example " AND project_uuid>=? AND project_uuid<?"
+   */
+  public void appendSqlCondition(StringBuilder sql, String column) {
+    if (from != null) {
+      sql.append(" AND ").append(column).append(">=?");
+    }
+    if (to != null) {
+      sql.append(" AND ").append(column).append("<?");
+    }
+  }
+
+  /**
+   * Sets the parameters of the condition generated by {@link #appendSqlCondition(StringBuilder, String)}
+   * @return the index of the next parameter
+   */
+  public int setSqlParameters(PreparedStatement stmt, int firstIndex) throws SQLException {
+    int index = firstIndex;
+    if (from != null) {
+      stmt.setString(index, from);
+      index++;
+    }
+    if (to != null) {
+      stmt.setString(index, to);
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Splits the uuids of root projects into ranges containing roughly the same number of projects. Bounds
+   * are read from the database, so that they respect its collation. The ranges cover all the possible uuids,
+   * including projects created meanwhile.
+   *
+   * @return between 1 and {@code maxRanges} ranges
+   */
+  public static List<ProjectUuidRange> split(DbClient dbClient, int maxRanges) {
+    List<String> uuids = selectRootProjectUuids(dbClient);
+    int rangeCount = Math.max(1, Math.min(maxRanges, uuids.size()));
+    List<ProjectUuidRange> ranges = new ArrayList<>(rangeCount);
+    String from = null;
+    for (int i = 1; i < rangeCount; i++) {
+      String to = uuids.get(i * uuids.size() / rangeCount);
+      ranges.add(new ProjectUuidRange(from, to));
+      from = to;
+    }
+    ranges.add(new ProjectUuidRange(from, null));
+    return ranges;
+  }
+
+  private static List<String> selectRootProjectUuids(DbClient dbClient) {
+    DbSession dbSession = dbClient.openSession(false);
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = dbClient.newScrollingSelectStatement(dbSession.getConnection(), SQL_ROOT_PROJECT_UUIDS);
+      rs = stmt.executeQuery();
+      List<String> uuids = new ArrayList<>();
+      while (rs.next()) {
+        uuids.add(rs.getString(1));
+      }
+      return uuids;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to select uuids of root projects", e);
+    } finally {
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(stmt);
+      dbSession.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "[" + from + "," + to + ")";
+  }
+}
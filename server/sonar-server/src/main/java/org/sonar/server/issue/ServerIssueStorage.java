@@ -30,6 +30,9 @@ import org.sonar.core.persistence.MyBatis;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.issue.index.IssueIndexer;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @since 3.6
  */
@@ -49,6 +52,8 @@ public class ServerIssueStorage extends IssueStorage {
   protected void doInsert(DbSession session, long now, DefaultIssue issue) {
     ComponentDto component = component(session, issue);
     ComponentDto project = project(session, issue);
+    // required to index the issues of the project after save
+    issue.setProjectUuid(project.uuid());
     int ruleId = rule(issue).getId();
     IssueDto dto = IssueDto.toDtoForServerInsert(issue, component, project, ruleId, now);
 
@@ -63,8 +68,18 @@ public class ServerIssueStorage extends IssueStorage {
   }
 
   @Override
-  protected void doAfterSave() {
-    indexer.index();
+  protected void doAfterSave(Iterable<DefaultIssue> issues) {
+    Set<String> projectUuids = new HashSet<>();
+    for (DefaultIssue issue : issues) {
+      projectUuids.add(issue.projectUuid());
+    }
+    for (String projectUuid : projectUuids) {
+      if (projectUuid == null) {
+        indexer.index();
+      } else {
+        indexer.index(projectUuid);
+      }
+    }
   }
 
   protected ComponentDto component(DbSession session, DefaultIssue issue) {
@@ -25,6 +25,8 @@ import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.server.db.DbClient;
 
+import javax.annotation.Nullable;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -95,6 +97,7 @@ public class IssueAuthorizationDao {
       "        projects.qualifier = 'TRK' " +
       "        AND projects.copy_resource_id is NULL " +
       "        {dateCondition} " +
+      "        {projectCondition} " +
       "      UNION " +
 
       // users
@@ -111,6 +114,7 @@ public class IssueAuthorizationDao {
       "        projects.qualifier = 'TRK' " +
       "        AND projects.copy_resource_id is NULL " +
       "        {dateCondition} " +
+      "        {projectCondition} " +
       "      UNION " +
 
       // groups without Anyone
@@ -127,6 +131,7 @@ public class IssueAuthorizationDao {
       "        projects.qualifier = 'TRK' " +
       "        AND projects.copy_resource_id is NULL " +
       "        {dateCondition} " +
+      "        {projectCondition} " +
       "        AND group_id IS NOT NULL " +
       "      UNION " +
 
@@ -143,16 +148,24 @@ public class IssueAuthorizationDao {
       "        projects.qualifier = 'TRK' " +
       "        AND projects.copy_resource_id is NULL " +
       "        {dateCondition} " +
+      "        {projectCondition} " +
       "        AND group_roles.group_id IS NULL " +
       "    ) project_authorization";
 
   Collection<Dto> selectAfterDate(DbClient dbClient, Connection connection, long afterDate) {
+    return selectAfterDate(dbClient, connection, afterDate, null);
+  }
+
+  /**
+   * @param projectUuid optional uuid of the project
+   */
+  Collection<Dto> selectAfterDate(DbClient dbClient, Connection connection, long afterDate, @Nullable String projectUuid) {
     try {
       Map<String, Dto> dtosByProjectUuid = Maps.newHashMap();
       PreparedStatement stmt = null;
       ResultSet rs = null;
       try {
-        stmt = createStatement(dbClient, connection, afterDate);
+        stmt = createStatement(dbClient, connection, afterDate, projectUuid);
         rs = stmt.executeQuery();
         while (rs.next()) {
           processRow(rs, dtosByProjectUuid);
@@ -167,17 +180,28 @@ public class IssueAuthorizationDao {
     }
   }
 
-  private PreparedStatement createStatement(DbClient dbClient, Connection connection, long afterDate) throws SQLException {
+  private PreparedStatement createStatement(DbClient dbClient, Connection connection, long afterDate, @Nullable String projectUuid) throws SQLException {
     String sql;
     if (afterDate > 0L) {
       sql = StringUtils.replace(SQL_TEMPLATE, "{dateCondition}", " AND projects.authorization_updated_at>? ");
     } else {
       sql = StringUtils.replace(SQL_TEMPLATE, "{dateCondition}", "");
     }
+    if (projectUuid != null) {
+      sql = StringUtils.replace(sql, "{projectCondition}", " AND projects.uuid=? ");
+    } else {
+      sql = StringUtils.replace(sql, "{projectCondition}", "");
+    }
     PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, sql);
-    if (afterDate > 0L) {
-      for (int i = 1; i <= 4; i++) {
-        stmt.setLong(i, afterDate);
+    int index = 1;
+    for (int i = 1; i <= 4; i++) {
+      if (afterDate > 0L) {
+        stmt.setLong(index, afterDate);
+        index++;
+      }
+      if (projectUuid != null) {
+        stmt.setString(index, projectUuid);
+        index++;
       }
     }
     return stmt;
@@ -30,6 +30,8 @@ import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
 
+import javax.annotation.Nullable;
+
 import java.sql.Connection;
 import java.util.Collection;
 import java.util.Date;
@@ -51,8 +53,29 @@ public class IssueAuthorizationIndexer extends BaseIndexer {
     this.dbClient = dbClient;
   }
 
+  /**
+   * Indexes the authorizations of a project updated since the last indexing of this project.
+   */
+  public void index(final String projectUuid) {
+    super.index(projectUuid, new IndexerTask() {
+      @Override
+      public long index(long lastUpdatedAt) {
+        return doIndex(lastUpdatedAt, projectUuid);
+      }
+    });
+  }
+
+  @Override
+  protected String getProjectUuidFieldName() {
+    return IssueIndexDefinition.FIELD_AUTHORIZATION_PROJECT_UUID;
+  }
+
   @Override
   protected long doIndex(long lastUpdatedAt) {
+    return doIndex(lastUpdatedAt, null);
+  }
+
+  private long doIndex(long lastUpdatedAt, @Nullable String projectUuid) {
     // warning - do not enable large mode, else disabling of replicas
     // will impact the type "issue" which is much bigger than issueAuthorization
     final BulkIndexer bulk = new BulkIndexer(esClient, IssueIndexDefinition.INDEX);
@@ -61,7 +84,7 @@ public class IssueAuthorizationIndexer extends BaseIndexer {
     Connection dbConnection = dbSession.getConnection();
     try {
       IssueAuthorizationDao dao = new IssueAuthorizationDao();
-      Collection<IssueAuthorizationDao.Dto> authorizations = dao.selectAfterDate(dbClient, dbConnection, lastUpdatedAt);
+      Collection<IssueAuthorizationDao.Dto> authorizations = dao.selectAfterDate(dbClient, dbConnection, lastUpdatedAt, projectUuid);
       return doIndex(bulk, authorizations);
 
     } finally {
@@ -19,6 +19,9 @@
  */
 package org.sonar.server.issue.index;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +33,7 @@ import javax.annotation.Nullable;
 import org.apache.commons.lang.BooleanUtils;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.issue.IssueComment;
+import org.sonar.api.resources.Scopes;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.Severity;
 import org.sonar.api.utils.Duration;
@@ -38,6 +42,8 @@ import org.sonar.server.search.BaseDoc;
 
 public class IssueDoc extends BaseDoc implements Issue {
 
+  private static final Splitter MODULE_PATH_SPLITTER = Splitter.on('.').trimResults().omitEmptyStrings();
+
   public IssueDoc(Map<String, Object> fields) {
     super(fields);
   }
@@ -362,6 +368,40 @@ public class IssueDoc extends BaseDoc implements Issue {
     return this;
   }
 
+  /**
+   * Sets the module, file and directory fields from the component of the issue
+   *
+   * @param moduleUuidPath the module uuid path of the component, for example ".PROJECT_UUID.MODULE_UUID."
+   * @param path the path of the component, ignored on projects and modules
+   * @param scope the scope of the component, see {@link Scopes}
+   */
+  public IssueDoc setComponentLocation(String moduleUuidPath, @Nullable String path, String scope) {
+    setModuleUuid(Iterators.getLast(MODULE_PATH_SPLITTER.split(moduleUuidPath).iterator()));
+    setModuleUuidPath(moduleUuidPath);
+    // On modules, the path contains the relative path of the module starting from its parent, and in E/S we're only interested in the path
+    // of files and directories.
+    // That's why the file path should be null on modules and projects.
+    String filePath = path != null && !Scopes.PROJECT.equals(scope) ? path : null;
+    setFilePath(filePath);
+    setDirectoryPath(extractDirPath(filePath, scope));
+    return this;
+  }
+
+  @CheckForNull
+  private static String extractDirPath(@Nullable String filePath, String scope) {
+    if (filePath != null) {
+      if (Scopes.DIRECTORY.equals(scope)) {
+        return filePath;
+      }
+      int lastSlashIndex = CharMatcher.anyOf("/").lastIndexIn(filePath);
+      if (lastSlashIndex > 0) {
+        return filePath.substring(0, lastSlashIndex);
+      }
+      return "/";
+    }
+    return null;
+  }
+
   @Override
   @CheckForNull
   public Collection<String> tags() {
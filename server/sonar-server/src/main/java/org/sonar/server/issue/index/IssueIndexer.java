@@ -29,9 +29,14 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ProjectUuidRange;
+
+import javax.annotation.Nullable;
 
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public class IssueIndexer extends BaseIndexer {
 
@@ -47,6 +52,55 @@ public class IssueIndexer extends BaseIndexer {
     return doIndex(createBulkIndexer(false), lastUpdatedAt);
   }
 
+  /**
+   * Indexes the issues of a project updated since the last indexing of this project. Projects
+   * are indexed concurrently.
+   */
+  public void index(final String projectUuid) {
+    super.index(projectUuid, new IndexerTask() {
+      @Override
+      public long index(long lastUpdatedAt) {
+        return doIndex(createBulkIndexer(false), lastUpdatedAt, projectUuid, null);
+      }
+    });
+  }
+
+  /**
+   * Indexes the issues of a project provided by the caller, for example by the Compute Engine, instead
+   * of reading them from db. The date of last indexing of the project is not changed.
+   */
+  public void index(String projectUuid, final Iterator<IssueDoc> issues) {
+    indexProjectDocuments(projectUuid, new Runnable() {
+      @Override
+      public void run() {
+        doIndex(createBulkIndexer(false), issues);
+      }
+    });
+  }
+
+  @Override
+  protected String getProjectUuidFieldName() {
+    return IssueIndexDefinition.FIELD_ISSUE_PROJECT_UUID;
+  }
+
+  /**
+   * Same as {@link #index()}, but table ISSUES is read with a cursor per range of project uuids.
+   * Index is refreshed once, at the end.
+   */
+  public void index(List<ProjectUuidRange> projectUuidRanges) {
+    List<IndexerTask> partitions = new ArrayList<>();
+    for (final ProjectUuidRange range : projectUuidRanges) {
+      partitions.add(new IndexerTask() {
+        @Override
+        public long index(long lastUpdatedAt) {
+          return doIndex(createBulkIndexer(false).setDisableRefresh(true), lastUpdatedAt, null, range);
+        }
+      });
+    }
+    indexPartitions(partitions);
+    esClient.prepareRefresh(IssueIndexDefinition.INDEX).get();
+  }
+
   public void indexAll() {
     doIndex(createBulkIndexer(true), 0L);
   }
@@ -59,11 +113,15 @@ public class IssueIndexer extends BaseIndexer {
   }
 
   private long doIndex(BulkIndexer bulk, long lastUpdatedAt) {
+    return doIndex(bulk, lastUpdatedAt, null, null);
+  }
+
+  private long doIndex(BulkIndexer bulk, long lastUpdatedAt, @Nullable String projectUuid, @Nullable ProjectUuidRange projectUuidRange) {
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
     long maxDate;
     try {
-      IssueResultSetIterator rowIt = IssueResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt);
+      IssueResultSetIterator rowIt = IssueResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, projectUuid, projectUuidRange);
       maxDate = doIndex(bulk, rowIt);
       rowIt.close();
       return maxDate;
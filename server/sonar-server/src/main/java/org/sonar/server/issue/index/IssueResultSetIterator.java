@@ -19,19 +19,16 @@
  */
 package org.sonar.server.issue.index;
 
-import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import org.apache.commons.lang.StringUtils;
-import org.sonar.api.resources.Scopes;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.db.ResultSetIterator;
 import org.sonar.server.db.migrations.SqlUtil;
+import org.sonar.server.es.ProjectUuidRange;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.sql.Connection;
@@ -90,22 +87,47 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     "inner join projects p on p.uuid=i.component_uuid " +
     "inner join projects root on root.uuid=i.project_uuid";
 
+  // conditions can be appended with " AND ..."
+  private static final String SQL_ALL_WHERE = SQL_ALL + " where 1=1";
+
   private static final String SQL_AFTER_DATE = SQL_ALL + " where i.updated_at>?";
 
   private static final Splitter TAGS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
-  private static final Splitter MODULE_PATH_SPLITTER = Splitter.on('.').trimResults().omitEmptyStrings();
-
   private IssueResultSetIterator(PreparedStatement stmt) throws SQLException {
     super(stmt);
   }
 
   static IssueResultSetIterator create(DbClient dbClient, Connection connection, long afterDate) {
+    return create(dbClient, connection, afterDate, null, null);
+  }
+
+  /**
+   * @param projectUuid optional uuid of the project of issues
+   * @param projectUuidRange optional range of project uuids, used to scroll the table with concurrent cursors
+   */
+  static IssueResultSetIterator create(DbClient dbClient, Connection connection, long afterDate, @Nullable String projectUuid,
+    @Nullable ProjectUuidRange projectUuidRange) {
     try {
-      String sql = afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL;
-      PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, sql);
+      StringBuilder sql = new StringBuilder(afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL_WHERE);
+      if (projectUuid != null) {
+        sql.append(" AND i.project_uuid=?");
+      }
+      if (projectUuidRange != null) {
+        projectUuidRange.appendSqlCondition(sql, "i.project_uuid");
+      }
+      PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, sql.toString());
+      int index = 1;
       if (afterDate > 0L) {
-        stmt.setLong(1, afterDate);
+        stmt.setLong(index, afterDate);
+        index++;
+      }
+      if (projectUuid != null) {
+        stmt.setString(index, projectUuid);
+        index++;
+      }
+      if (projectUuidRange != null) {
+        projectUuidRange.setSqlParameters(stmt, index);
       }
       return new IssueResultSetIterator(stmt);
     } catch (SQLException e) {
@@ -113,36 +135,6 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     }
   }
 
-  @CheckForNull
-  private static String extractDirPath(@Nullable String filePath, String scope) {
-    if (filePath != null) {
-      if (Scopes.DIRECTORY.equals(scope)) {
-        return filePath;
-      }
-      int lastSlashIndex = CharMatcher.anyOf("/").lastIndexIn(filePath);
-      if (lastSlashIndex > 0) {
-        return filePath.substring(0, lastSlashIndex);
-      }
-      return "/";
-    }
-    return null;
-  }
-
-  @CheckForNull
-  private static String extractFilePath(@Nullable String filePath, String scope) {
-    // On modules, the path contains the relative path of the module starting from its parent, and in E/S we're only interested in the path
-    // of files and directories.
-    // That's why the file path should be null on modules and projects.
-    if (filePath != null && !Scopes.PROJECT.equals(scope)) {
-      return filePath;
-    }
-    return null;
-  }
-
-  private static String extractModule(String moduleUuidPath) {
-    return Iterators.getLast(MODULE_PATH_SPLITTER.split(moduleUuidPath).iterator());
-  }
-
   @Override
   protected IssueDoc read(ResultSet rs) throws SQLException {
     IssueDoc doc = new IssueDoc(Maps.<String, Object>newHashMapWithExpectedSize(30));
@@ -176,13 +168,7 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     doc.setRuleKey(RuleKey.of(ruleRepo, ruleKey).toString());
     doc.setLanguage(rs.getString(23));
     doc.setComponentUuid(rs.getString(24));
-    String moduleUuidPath = rs.getString(25);
-    doc.setModuleUuid(extractModule(moduleUuidPath));
-    doc.setModuleUuidPath(moduleUuidPath);
-    String scope = rs.getString(27);
-    String filePath = extractFilePath(rs.getString(26), scope);
-    doc.setFilePath(filePath);
-    doc.setDirectoryPath(extractDirPath(doc.filePath(), scope));
+    doc.setComponentLocation(rs.getString(25), rs.getString(26), rs.getString(27));
     String tags = rs.getString(28);
     doc.setTags(ImmutableList.copyOf(TAGS_SPLITTER.split(tags == null ? "" : tags)));
     return doc;
@@ -21,11 +21,13 @@
 package org.sonar.server.measure.persistence;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.CheckForNull;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.api.server.ServerSide;
 import org.sonar.core.component.SnapshotDto;
 import org.sonar.core.measure.db.MeasureDto;
@@ -56,6 +58,15 @@ public class MeasureDao implements DaoComponent {
     });
   }
 
+  /**
+   * Streams the measures of the last snapshots of all the components of a project, for a given metric.
+   * Measures related to rules, characteristics or persons are excluded.
+   */
+  public void selectLastByProjectUuidAndMetricKey(DbSession session, String projectUuid, String metricKey, ResultHandler handler) {
+    session.select("org.sonar.core.measure.db.MeasureMapper.selectLastByProjectUuidAndMetricKey",
+      ImmutableMap.of("projectUuid", projectUuid, "metricKey", metricKey), handler);
+  }
+
   public List<PastMeasureDto> selectByComponentUuidAndProjectSnapshotIdAndMetricIds(final DbSession session, final String componentUuid, final long projectSnapshotId,
     Set<Integer> metricIds) {
     return DaoUtils.executeLargeInputs(metricIds, new Function<List<Integer>, List<PastMeasureDto>>() {
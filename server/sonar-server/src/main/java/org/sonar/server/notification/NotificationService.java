@@ -20,15 +20,24 @@
 package org.sonar.server.notification;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.picocontainer.Startable;
@@ -54,6 +63,12 @@ import org.sonar.server.db.DbClient;
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
     project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_THREADS,
+    defaultValue = "4",
+    name = "Number of threads used to dispatch and deliver notifications",
+    project = false,
     global = false)
 })
 @ServerSide
@@ -63,12 +78,20 @@ public class NotificationService implements Startable {
 
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
+  public static final String PROPERTY_THREADS = "sonar.notifications.threads";
+
+  /**
+   * Maximum number of notifications removed from the queue at once
+   */
+  @VisibleForTesting
+  static final int BATCH_SIZE = 100;
 
   private final long delayInSeconds;
   private final long delayBeforeReportingStatusInSeconds;
   private final DefaultNotificationManager manager;
   private final List<NotificationDispatcher> dispatchers;
   private final DbClient dbClient;
+  private final ExecutorService deliveryExecutor;
 
   private ScheduledExecutorService executorService;
   private boolean stopping = false;
@@ -80,6 +103,9 @@ public class NotificationService implements Startable {
     this.manager = manager;
     this.dbClient = dbClient;
     this.dispatchers = ImmutableList.copyOf(dispatchers);
+    int threads = settings.getInt(PROPERTY_THREADS);
+    this.deliveryExecutor = Executors.newFixedThreadPool(threads > 0 ? threads : 4,
+      new ThreadFactoryBuilder().setNameFormat("notifications-%d").setDaemon(true).build());
   }
 
   /**
@@ -111,6 +137,7 @@ public class NotificationService implements Startable {
       stopping = true;
       executorService.shutdown();
       executorService.awaitTermination(5, TimeUnit.SECONDS);
+      deliveryExecutor.shutdown();
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
     }
@@ -123,10 +150,10 @@ public class NotificationService implements Startable {
     long lastLog = start;
     long notifSentCount = 0;
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      deliver(notifToSend);
-      notifSentCount++;
+    List<Notification> notifsToSend = manager.getFromQueue(BATCH_SIZE);
+    while (!notifsToSend.isEmpty()) {
+      deliver(notifsToSend);
+      notifSentCount += notifsToSend.size();
       if (stopping) {
         break;
       }
@@ -137,7 +164,7 @@ public class NotificationService implements Startable {
         long spentTimeInMinutes = (now - start) / (60 * 1000);
         log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
       }
-      notifToSend = manager.getFromQueue();
+      notifsToSend = manager.getFromQueue(BATCH_SIZE);
     }
   }
 
@@ -153,6 +180,57 @@ public class NotificationService implements Startable {
   }
 
   public void deliver(Notification notification) {
+    dispatch(notification, findRecipients(notification));
+  }
+
+  /**
+   * Recipients of the notifications are searched concurrently. Then the deliveries are grouped by channel:
+   * channels work in parallel, each of them delivering its notifications sequentially.
+   */
+  private void deliver(List<Notification> notifications) {
+    List<Future<SetMultimap<String, NotificationChannel>>> recipientFutures = new ArrayList<>(notifications.size());
+    for (final Notification notification : notifications) {
+      recipientFutures.add(deliveryExecutor.submit(new Callable<SetMultimap<String, NotificationChannel>>() {
+        @Override
+        public SetMultimap<String, NotificationChannel> call() {
+          return findRecipients(notification);
+        }
+      }));
+    }
+
+    final ListMultimap<NotificationChannel, Delivery> deliveriesByChannel = ArrayListMultimap.create();
+    for (int i = 0; i < notifications.size(); i++) {
+      Notification notification = notifications.get(i);
+      for (Map.Entry<String, NotificationChannel> recipient : getUninterruptibly(recipientFutures.get(i)).entries()) {
+        deliveriesByChannel.put(recipient.getValue(), new Delivery(notification, recipient.getKey()));
+      }
+    }
+
+    List<Future<?>> channelFutures = new ArrayList<>();
+    for (final NotificationChannel channel : deliveriesByChannel.keySet()) {
+      channelFutures.add(deliveryExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (Delivery delivery : deliveriesByChannel.get(channel)) {
+            deliver(channel, delivery.notification, delivery.username);
+          }
+        }
+      }));
+    }
+    for (Future<?> channelFuture : channelFutures) {
+      getUninterruptibly(channelFuture);
+    }
+  }
+
+  private static <T> T getUninterruptibly(Future<T> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private SetMultimap<String, NotificationChannel> findRecipients(Notification notification) {
     final SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationDispatcher dispatcher : dispatchers) {
       NotificationDispatcher.Context context = new NotificationDispatcher.Context() {
@@ -175,25 +253,29 @@ public class NotificationService implements Startable {
         LOG.warn("Unable to dispatch notification " + notification + " using " + dispatcher, e);
       }
     }
-    dispatch(notification, recipients);
+    return recipients;
   }
 
-  private void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
+  private static void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
     for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
       String username = entry.getKey();
       Collection<NotificationChannel> userChannels = entry.getValue();
       LOG.debug("For user {} via {}", username, userChannels);
       for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
-        }
+        deliver(channel, notification, username);
       }
     }
   }
 
+  private static void deliver(NotificationChannel channel, Notification notification, String username) {
+    try {
+      channel.deliver(notification, username);
+    } catch (Exception e) {
+      // catch all exceptions in order to deliver via other channels
+      LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
+    }
+  }
+
   @VisibleForTesting
   protected List<NotificationDispatcher> getDispatchers() {
     return dispatchers;
@@ -213,4 +295,14 @@ public class NotificationService implements Startable {
 
     return dbClient.propertiesDao().hasProjectNotificationSubscribersForDispatchers(projectUuid, dispatcherKeys);
   }
+
+  private static class Delivery {
+    private final Notification notification;
+    private final String username;
+
+    private Delivery(Notification notification, String username) {
+      this.notification = notification;
+      this.username = username;
+    }
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.sonar.server.computation.ComputationMetrics;
+import org.sonar.server.computation.ComputationMetrics.ReportMetrics;
+import org.sonar.server.computation.ComputationMetrics.StepMetrics;
+
+/**
+ * Averages of the metrics of Compute Engine steps, over the last reports recorded by {@link ComputationMetrics}
+ */
+public class ComputeEngineMonitor extends BaseMonitorMBean implements ComputeEngineMonitorMBean {
+
+  private final ComputationMetrics metrics;
+
+  public ComputeEngineMonitor(ComputationMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public int getRecordedReports() {
+    return metrics.getReports().size();
+  }
+
+  @Override
+  public Map<String, Long> getAverageStepDurationsInMs() {
+    return averages(Value.DURATION);
+  }
+
+  @Override
+  public Map<String, Long> getAverageStepAllocatedBytes() {
+    return averages(Value.ALLOCATED_BYTES);
+  }
+
+  @Override
+  public Map<String, Long> getAverageStepRowsWritten() {
+    return averages(Value.ROWS_WRITTEN);
+  }
+
+  @Override
+  public String name() {
+    return "ComputeEngine";
+  }
+
+  @Override
+  public LinkedHashMap<String, Object> attributes() {
+    LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("Recorded Reports", getRecordedReports());
+    attributes.put("Average Step Durations (ms)", getAverageStepDurationsInMs());
+    attributes.put("Average Step Allocated Bytes", getAverageStepAllocatedBytes());
+    attributes.put("Average Step Rows Written", getAverageStepRowsWritten());
+    return attributes;
+  }
+
+  /**
+   * Average of the given value of done steps, by step description. Unsupported values (negative) are ignored.
+   */
+  private Map<String, Long> averages(Value value) {
+    Map<String, long[]> sumAndCountByStep = new LinkedHashMap<>();
+    for (ReportMetrics report : metrics.getReports()) {
+      for (StepMetrics step : report.getSteps()) {
+        long v = value.of(step);
+        if (step.isDone() && v >= 0L) {
+          long[] sumAndCount = sumAndCountByStep.get(step.getDescription());
+          if (sumAndCount == null) {
+            sumAndCount = new long[2];
+            sumAndCountByStep.put(step.getDescription(), sumAndCount);
+          }
+          sumAndCount[0] += v;
+          sumAndCount[1]++;
+        }
+      }
+    }
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (Map.Entry<String, long[]> entry : sumAndCountByStep.entrySet()) {
+      result.put(entry.getKey(), entry.getValue()[0] / entry.getValue()[1]);
+    }
+    return result;
+  }
+
+  private enum Value {
+    DURATION {
+      @Override
+      long of(StepMetrics step) {
+        return step.getDurationMs();
+      }
+    },
+    ALLOCATED_BYTES {
+      @Override
+      long of(StepMetrics step) {
+        return step.getAllocatedBytes();
+      }
+    },
+    ROWS_WRITTEN {
+      @Override
+      long of(StepMetrics step) {
+        return step.getRowsWritten();
+      }
+    };
+
+    abstract long of(StepMetrics step);
+  }
+}
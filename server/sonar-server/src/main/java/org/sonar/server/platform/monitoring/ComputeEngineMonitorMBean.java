@@ -17,18 +17,20 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-package org.sonar.server.computation.batch;
+package org.sonar.server.platform.monitoring;
 
-import java.io.File;
+import java.util.Map;
 
-public interface MutableBatchReportDirectoryHolder extends BatchReportDirectoryHolder {
-  /**
-   * Sets the File of the directory in the BatchReportDirectoryHolder. Settings a File more than once is allowed but it
-   * can never be set to {@code null}.
-   *
-   * @param newDirectory a {@link File}, can not be {@code null}
-   *
-   * @throws NullPointerException if {@code newDirectory} is {@code null}
-   */
-  void setDirectory(File newDirectory);
+/**
+ * The public attributes of {@link org.sonar.server.platform.monitoring.ComputeEngineMonitor}
+ * to be exported in JMX bean.
+ */
+public interface ComputeEngineMonitorMBean {
+  int getRecordedReports();
+
+  Map<String, Long> getAverageStepDurationsInMs();
+
+  Map<String, Long> getAverageStepAllocatedBytes();
+
+  Map<String, Long> getAverageStepRowsWritten();
 }
@@ -32,6 +32,7 @@ import org.sonar.api.rules.XMLRuleParser;
 import org.sonar.api.server.rule.RulesDefinitionXmlLoader;
 import org.sonar.core.computation.dbcleaner.IndexPurgeListener;
 import org.sonar.core.computation.dbcleaner.ProjectCleaner;
+import org.sonar.core.computation.dbcleaner.PurgeScheduler;
 import org.sonar.core.computation.dbcleaner.period.DefaultPeriodCleaner;
 import org.sonar.core.issue.IssueFilterSerializer;
 import org.sonar.core.issue.IssueUpdater;
@@ -65,6 +66,7 @@ import org.sonar.server.component.ws.ComponentJsonWriter;
 import org.sonar.server.component.ws.ComponentsWs;
 import org.sonar.server.component.ws.EventsWs;
 import org.sonar.server.component.ws.ResourcesWs;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.ComputationThreadLauncher;
 import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.computation.ws.ComputationWs;
@@ -181,6 +183,7 @@ import org.sonar.server.permission.PermissionFinder;
 import org.sonar.server.permission.ws.PermissionsWs;
 import org.sonar.server.platform.BackendCleanup;
 import org.sonar.server.platform.SettingsChangeNotifier;
+import org.sonar.server.platform.monitoring.ComputeEngineMonitor;
 import org.sonar.server.platform.monitoring.DatabaseMonitor;
 import org.sonar.server.platform.monitoring.EsMonitor;
 import org.sonar.server.platform.monitoring.JvmPropertiesMonitor;
@@ -272,6 +275,7 @@ import org.sonar.server.rule.ws.RepositoriesAction;
 import org.sonar.server.rule.ws.RuleMapping;
 import org.sonar.server.rule.ws.RulesWs;
 import org.sonar.server.rule.ws.TagsAction;
+import org.sonar.server.source.FileSourceDataCache;
 import org.sonar.server.source.HtmlSourceDecorator;
 import org.sonar.server.source.SourceService;
 import org.sonar.server.source.index.SourceLineIndex;
@@ -660,6 +664,7 @@ public class PlatformLevel4 extends PlatformLevel {
 
       // source
       HtmlSourceDecorator.class,
+      FileSourceDataCache.class,
       SourceService.class,
       SourcesWs.class,
       org.sonar.server.source.ws.ShowAction.class,
@@ -718,6 +723,7 @@ public class PlatformLevel4 extends PlatformLevel {
       SystemWs.class,
       SystemMonitor.class,
       SonarQubeMonitor.class,
+      ComputeEngineMonitor.class,
       EsMonitor.class,
       PluginsMonitor.class,
       JvmPropertiesMonitor.class,
@@ -738,6 +744,7 @@ public class PlatformLevel4 extends PlatformLevel {
 
       // Compute engine
       ReportQueue.class,
+      ComputationMetrics.class,
       ComputationThreadLauncher.class,
       ComputationWs.class,
       IsQueueEmptyWs.class,
@@ -745,6 +752,7 @@ public class PlatformLevel4 extends PlatformLevel {
       HistoryAction.class,
       DefaultPeriodCleaner.class,
       ProjectCleaner.class,
+      PurgeScheduler.class,
       ProjectSettingsFactory.class,
       IndexPurgeListener.class,
 
@@ -19,7 +19,16 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -27,6 +36,7 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.server.activity.index.ActivityIndexer;
 import org.sonar.server.db.Dao;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.es.ProjectUuidRange;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.qualityprofile.index.ActiveRuleIndex;
@@ -38,6 +48,12 @@ import org.sonar.server.view.index.ViewIndexer;
 
 public class IndexSynchronizer {
 
+  /**
+   * Number of DB cursors used to read each of the tables ISSUES and FILE_SOURCES
+   */
+  static final String PROPERTY_PARTITIONS = "sonar.internal.es.synchronizerPartitions";
+  static final int DEFAULT_PARTITIONS = 4;
+
   private static final Logger LOG = Loggers.get(IndexSynchronizer.class);
 
   private final DbClient db;
@@ -82,29 +98,86 @@ public class IndexSynchronizer {
     }
   }
 
+  /**
+   * Indexes are independent, so they are populated concurrently. The biggest ones, issues and source lines,
+   * are additionally read by partitions of projects, each one with its own DB cursor.
+   */
   public void execute() {
     if (!settings.getBoolean("sonar.internal.es.disableIndexes")) {
-      LOG.info("Index activities");
-      activityIndexer.setEnabled(true).index();
-
-      LOG.info("Index issues");
-      issueAuthorizationIndexer.setEnabled(true).index();
-      issueIndexer.setEnabled(true).index();
-
-      LOG.info("Index source lines");
-      sourceLineIndexer.setEnabled(true).index();
-
-      LOG.info("Index tests");
-      testIndexer.setEnabled(true).index();
-
-      LOG.info("Index users");
-      userIndexer.setEnabled(true).index();
+      final List<ProjectUuidRange> projectUuidRanges = ProjectUuidRange.split(db, partitions());
+      List<Runnable> tasks = Arrays.<Runnable>asList(
+        new Runnable() {
+          @Override
+          public void run() {
+            LOG.info("Index activities");
+            activityIndexer.setEnabled(true).index();
+          }
+        },
+        new Runnable() {
+          @Override
+          public void run() {
+            LOG.info("Index issues");
+            issueAuthorizationIndexer.setEnabled(true).index();
+            issueIndexer.setEnabled(true);
+            issueIndexer.index(projectUuidRanges);
+          }
+        },
+        new Runnable() {
+          @Override
+          public void run() {
+            LOG.info("Index source lines");
+            sourceLineIndexer.setEnabled(true);
+            sourceLineIndexer.index(projectUuidRanges);
+          }
+        },
+        new Runnable() {
+          @Override
+          public void run() {
+            LOG.info("Index tests");
+            testIndexer.setEnabled(true).index();
+          }
+        },
+        new Runnable() {
+          @Override
+          public void run() {
+            LOG.info("Index users");
+            userIndexer.setEnabled(true).index();
+          }
+        },
+        new Runnable() {
+          @Override
+          public void run() {
+            LOG.info("Index views");
+            viewIndexer.setEnabled(true).index();
+          }
+        });
+      executeConcurrently(tasks);
+    }
+  }
 
-      LOG.info("Index views");
-      viewIndexer.setEnabled(true).index();
+  private static void executeConcurrently(List<Runnable> tasks) {
+    ExecutorService executor = Executors.newFixedThreadPool(tasks.size(),
+      new ThreadFactoryBuilder().setNameFormat("index-synchronizer-%d").setDaemon(true).build());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Runnable task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (Future<?> future : futures) {
+        Uninterruptibles.getUninterruptibly(future);
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Fail to synchronize indexes", e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
   }
 
+  private int partitions() {
+    int partitions = settings.getInt(PROPERTY_PARTITIONS);
+    return partitions > 0 ? partitions : DEFAULT_PARTITIONS;
+  }
+
   void synchronize(DbSession session, Dao dao, Index index) {
     long count = index.getIndexStat().getDocumentCount();
     Date lastSynch = index.getLastSynchronization();
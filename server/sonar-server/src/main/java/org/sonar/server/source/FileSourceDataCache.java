@@ -0,0 +1,106 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import javax.annotation.CheckForNull;
+import org.sonar.api.server.ServerSide;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.source.db.FileSourceDb;
+
+/**
+ * Decoded sources of the files that were recently displayed, so that browsing a file does not
+ * require to load and decode its whole data for each page of lines. The least recently used
+ * files are evicted when the total size of their data exceeds the limit.
+ * <p/>
+ * The hash of data is checked on each access, so files updated by a new analysis are reloaded.
+ */
+@ServerSide
+public class FileSourceDataCache {
+
+  /**
+   * Limit of the size of the cached data, once encoded. Decoded data is larger.
+   */
+  private static final long DEFAULT_MAX_SIZE_IN_BYTES = 32L * 1024 * 1024;
+
+  private final DbClient dbClient;
+  private final Cache<String, Entry> cache;
+
+  public FileSourceDataCache(DbClient dbClient) {
+    this(dbClient, DEFAULT_MAX_SIZE_IN_BYTES);
+  }
+
+  @VisibleForTesting
+  FileSourceDataCache(DbClient dbClient, long maxSizeInBytes) {
+    this.dbClient = dbClient;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxSizeInBytes)
+      .weigher(new Weigher<String, Entry>() {
+        @Override
+        public int weigh(String fileUuid, Entry entry) {
+          return entry.data.getSerializedSize();
+        }
+      })
+      .build();
+  }
+
+  /**
+   * Returns {@code null} if the file does not exist or has no sources
+   */
+  @CheckForNull
+  public FileSourceDb.Data get(String fileUuid) {
+    String dataHash = dbClient.fileSourceDao().selectSourceDataHash(fileUuid);
+    if (dataHash == null) {
+      cache.invalidate(fileUuid);
+      return null;
+    }
+    Entry entry = cache.getIfPresent(fileUuid);
+    if (entry != null && dataHash.equals(entry.dataHash)) {
+      return entry.data;
+    }
+    FileSourceDto dto = dbClient.fileSourceDao().selectSource(fileUuid);
+    if (dto == null) {
+      cache.invalidate(fileUuid);
+      return null;
+    }
+    FileSourceDb.Data data = dto.getSourceData();
+    cache.put(fileUuid, new Entry(dto.getDataHash(), data));
+    return data;
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  private static class Entry {
+    private final String dataHash;
+    private final FileSourceDb.Data data;
+
+    private Entry(String dataHash, FileSourceDb.Data data) {
+      this.dataHash = dataHash;
+      this.data = data;
+    }
+  }
+}
@@ -20,25 +20,41 @@
 
 package org.sonar.server.source;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
 import org.apache.commons.lang.ObjectUtils;
-import org.elasticsearch.common.collect.Lists;
 import org.sonar.api.server.ServerSide;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
-
-import javax.annotation.Nullable;
-
-import java.util.List;
+import org.sonar.server.source.db.FileSourceDb;
 
 @ServerSide
 public class SourceService {
 
   private final HtmlSourceDecorator sourceDecorator;
-  private final SourceLineIndex sourceLineIndex;
+  private final FileSourceDataCache fileSourceDataCache;
 
-  public SourceService(HtmlSourceDecorator sourceDecorator, SourceLineIndex sourceLineIndex) {
+  public SourceService(HtmlSourceDecorator sourceDecorator, FileSourceDataCache fileSourceDataCache) {
     this.sourceDecorator = sourceDecorator;
-    this.sourceLineIndex = sourceLineIndex;
+    this.fileSourceDataCache = fileSourceDataCache;
+  }
+
+  /**
+   * Lines of source file, from line {@code from} to line {@code to}, both included.
+   * Returns an empty list if the file has no sources.
+   */
+  public List<FileSourceDb.Line> getLines(String fileUuid, int from, int to) {
+    FileSourceDb.Data data = fileSourceDataCache.get(fileUuid);
+    if (data == null) {
+      return Collections.emptyList();
+    }
+    List<FileSourceDb.Line> lines = new ArrayList<>();
+    for (FileSourceDb.Line line : data.getLinesList()) {
+      if (line.getLine() >= from && line.getLine() <= to) {
+        lines.add(line);
+      }
+    }
+    return lines;
   }
 
   /**
@@ -47,9 +63,9 @@ public class SourceService {
   public List<String> getLinesAsTxt(String fileUuid, @Nullable Integer fromParam, @Nullable Integer toParam) {
     int from = (Integer) ObjectUtils.defaultIfNull(fromParam, 1);
     int to = (Integer) ObjectUtils.defaultIfNull(toParam, Integer.MAX_VALUE);
-    List<String> lines = Lists.newArrayList();
-    for (SourceLineDoc lineDoc : sourceLineIndex.getLines(fileUuid, from, to)) {
-      lines.add(lineDoc.source());
+    List<String> lines = new ArrayList<>();
+    for (FileSourceDb.Line line : getLines(fileUuid, from, to)) {
+      lines.add(line.getSource());
     }
     return lines;
   }
@@ -60,10 +76,19 @@ public class SourceService {
   public List<String> getLinesAsHtml(String fileUuid, @Nullable Integer fromParam, @Nullable Integer toParam) {
     int from = (Integer) ObjectUtils.defaultIfNull(fromParam, 1);
     int to = (Integer) ObjectUtils.defaultIfNull(toParam, Integer.MAX_VALUE);
-    List<String> lines = Lists.newArrayList();
-    for (SourceLineDoc lineDoc : sourceLineIndex.getLines(fileUuid, from, to)) {
-      lines.add(sourceDecorator.getDecoratedSourceAsHtml(lineDoc.source(), lineDoc.highlighting(), lineDoc.symbols()));
+    List<String> lines = new ArrayList<>();
+    for (FileSourceDb.Line line : getLines(fileUuid, from, to)) {
+      lines.add(getLineAsHtml(line));
     }
     return lines;
   }
+
+  /**
+   * Decorated source of the line.
+   */
+  public String getLineAsHtml(FileSourceDb.Line line) {
+    return sourceDecorator.getDecoratedSourceAsHtml(line.getSource(),
+      line.hasHighlighting() ? line.getHighlighting() : null,
+      line.hasSymbols() ? line.getSymbols() : null);
+  }
 }
@@ -56,6 +56,19 @@ public class FileSourceDao implements DaoComponent {
     }
   }
 
+  /**
+   * Hash of the binary data of source file, without loading the data itself
+   */
+  @CheckForNull
+  public String selectSourceDataHash(String fileUuid) {
+    DbSession session = mybatis.openSession(false);
+    try {
+      return mapper(session).selectDataHash(fileUuid, Type.SOURCE);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   @CheckForNull
   public FileSourceDto selectTest(String fileUuid) {
     DbSession session = mybatis.openSession(false);
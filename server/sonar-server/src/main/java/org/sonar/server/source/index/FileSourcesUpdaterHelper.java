@@ -29,6 +29,7 @@ import java.util.List;
 import javax.annotation.Nullable;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.es.ProjectUuidRange;
 
 public class FileSourcesUpdaterHelper {
 
@@ -50,7 +51,15 @@ public class FileSourcesUpdaterHelper {
 
   public static PreparedStatement preparedStatementToSelectFileSources(DbClient dbClient, Connection connection, String dataType, long afterDate, @Nullable String projectUuid)
     throws SQLException {
-    String sql = createSQL(dataType, afterDate, projectUuid);
+    return preparedStatementToSelectFileSources(dbClient, connection, dataType, afterDate, projectUuid, null);
+  }
+
+  /**
+   * @param projectUuidRange optional range of project uuids, used to scroll the table with concurrent cursors
+   */
+  public static PreparedStatement preparedStatementToSelectFileSources(DbClient dbClient, Connection connection, String dataType, long afterDate, @Nullable String projectUuid,
+    @Nullable ProjectUuidRange projectUuidRange) throws SQLException {
+    String sql = createSQL(dataType, afterDate, projectUuid, projectUuidRange);
     // rows are big, so they are scrolled once at a time (one row in memory at a time)
     PreparedStatement stmt = dbClient.newScrollingSingleRowSelectStatement(connection, sql);
     int index = 1;
@@ -60,19 +69,24 @@ public class FileSourcesUpdaterHelper {
     }
     if (projectUuid != null) {
       stmt.setString(index, projectUuid);
+      index++;
+    }
+    if (projectUuidRange != null) {
+      projectUuidRange.setSqlParameters(stmt, index);
     }
     return stmt;
   }
 
-  private static String createSQL(String dataType, long afterDate, @Nullable String projectUuid) {
+  private static String createSQL(String dataType, long afterDate, @Nullable String projectUuid, @Nullable ProjectUuidRange projectUuidRange) {
     StringBuilder sql = new StringBuilder(String.format(SQL_ALL, FIELDS_ONE_LINE, dataType));
-    if (afterDate > 0L || projectUuid != null) {
-      if (afterDate > 0L) {
-        sql.append(AFTER_DATE_FILTER);
-      }
-      if (projectUuid != null) {
-        sql.append(PROJECT_FILTER);
-      }
+    if (afterDate > 0L) {
+      sql.append(AFTER_DATE_FILTER);
+    }
+    if (projectUuid != null) {
+      sql.append(PROJECT_FILTER);
+    }
+    if (projectUuidRange != null) {
+      projectUuidRange.appendSqlCondition(sql, "project_uuid");
     }
     return sql.toString();
   }
@@ -28,11 +28,14 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ProjectUuidRange;
 
 import javax.annotation.Nullable;
 
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_FILE_UUID;
 import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_PROJECT_UUID;
@@ -50,28 +53,43 @@ public class SourceLineIndexer extends BaseIndexer {
     this.dbClient = dbClient;
   }
 
-  public void index(final String projectUuid){
-    super.index(new IndexerTask() {
-      @Override
-      public long index(long lastUpdatedAt) {
-        return doIndex(lastUpdatedAt, projectUuid);
-      }
-    });
+  /**
+   * Same as {@link #index()}, but table FILE_SOURCES is read with a cursor per range of project uuids.
+   * Partitions do not use the "large" mode of {@link BulkIndexer}, as concurrent bulks would override the
+   * index settings saved by each other. Index is refreshed once, at the end.
+   */
+  public void index(List<ProjectUuidRange> projectUuidRanges) {
+    List<IndexerTask> partitions = new ArrayList<>();
+    for (final ProjectUuidRange range : projectUuidRanges) {
+      partitions.add(new IndexerTask() {
+        @Override
+        public long index(long lastUpdatedAt) {
+          BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX).setDisableRefresh(true);
+          return doIndex(bulk, lastUpdatedAt, range);
+        }
+      });
+    }
+    indexPartitions(partitions);
+    esClient.prepareRefresh(SourceLineIndexDefinition.INDEX).get();
   }
 
   @Override
   protected long doIndex(long lastUpdatedAt) {
-    return doIndex(lastUpdatedAt, null);
-  }
-
-  private long doIndex(long lastUpdatedAt, @Nullable String projectUuid) {
     final BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX);
     bulk.setLarge(lastUpdatedAt == 0L);
+    return doIndex(bulk, lastUpdatedAt, null);
+  }
 
+  @Override
+  protected String getProjectUuidFieldName() {
+    return FIELD_PROJECT_UUID;
+  }
+
+  private long doIndex(BulkIndexer bulk, long lastUpdatedAt, @Nullable ProjectUuidRange projectUuidRange) {
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
     try {
-      SourceLineResultSetIterator rowIt = SourceLineResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, projectUuid);
+      SourceLineResultSetIterator rowIt = SourceLineResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, null, projectUuidRange);
       long maxUpdatedAt = doIndex(bulk, rowIt);
       rowIt.close();
       return maxUpdatedAt;
@@ -86,6 +104,19 @@ public class SourceLineIndexer extends BaseIndexer {
     return doIndex(bulk, dbRows);
   }
 
+  /**
+   * Indexes the given rows of a project, for example the sources persisted by the Compute Engine, without
+   * reading them from db. Projects are indexed concurrently.
+   */
+  public void index(String projectUuid, final Iterator<FileSourcesUpdaterHelper.Row> rows) {
+    indexProjectDocuments(projectUuid, new Runnable() {
+      @Override
+      public void run() {
+        SourceLineIndexer.this.index(rows);
+      }
+    });
+  }
+
   private long doIndex(BulkIndexer bulk, Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
     long maxUpdatedAt = 0L;
     bulk.start();
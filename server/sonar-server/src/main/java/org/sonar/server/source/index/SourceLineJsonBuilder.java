@@ -0,0 +1,307 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.sonar.server.es.EsUtils;
+import org.sonar.server.source.db.FileSourceDb;
+
+/**
+ * Generates the JSON documents of index sourcelines. It replaces the instantiation of a stream, a writer
+ * and a {@link org.sonar.api.utils.text.JsonWriter} per line:
+ * <ul>
+ *   <li>UTF-8 bytes are directly written in a buffer that is reused between lines</li>
+ *   <li>the fields that are the same for all the lines of a file (project, file and date of update) are
+ *   serialized once per file</li>
+ *   <li>SCM dates are formatted once per distinct value in a file</li>
+ * </ul>
+ * Not thread-safe. An instance is bound to each indexing thread, see {@link #forCurrentThread()}.
+ */
+class SourceLineJsonBuilder {
+
+  private static final int INITIAL_CAPACITY = 4096;
+  // do not keep huge buffers in memory once a big line is processed
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  private static final byte[] NULL = ascii("null");
+  private static final byte[] LINE = ascii(",\"" + SourceLineIndexDefinition.FIELD_LINE + "\":");
+  private static final byte[] SCM_REVISION = ascii(",\"" + SourceLineIndexDefinition.FIELD_SCM_REVISION + "\":");
+  private static final byte[] SCM_AUTHOR = ascii(",\"" + SourceLineIndexDefinition.FIELD_SCM_AUTHOR + "\":");
+  private static final byte[] SCM_DATE = ascii(",\"" + SourceLineIndexDefinition.FIELD_SCM_DATE + "\":");
+  private static final byte[] UT_LINE_HITS = ascii(",\"" + SourceLineIndexDefinition.FIELD_UT_LINE_HITS + "\":");
+  private static final byte[] UT_CONDITIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_UT_CONDITIONS + "\":");
+  private static final byte[] UT_COVERED_CONDITIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_UT_COVERED_CONDITIONS + "\":");
+  private static final byte[] IT_LINE_HITS = ascii(",\"" + SourceLineIndexDefinition.FIELD_IT_LINE_HITS + "\":");
+  private static final byte[] IT_CONDITIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_IT_CONDITIONS + "\":");
+  private static final byte[] IT_COVERED_CONDITIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_IT_COVERED_CONDITIONS + "\":");
+  private static final byte[] OVERALL_LINE_HITS = ascii(",\"" + SourceLineIndexDefinition.FIELD_OVERALL_LINE_HITS + "\":");
+  private static final byte[] OVERALL_CONDITIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_OVERALL_CONDITIONS + "\":");
+  private static final byte[] OVERALL_COVERED_CONDITIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_OVERALL_COVERED_CONDITIONS + "\":");
+  private static final byte[] HIGHLIGHTING = ascii(",\"" + SourceLineIndexDefinition.FIELD_HIGHLIGHTING + "\":");
+  private static final byte[] SYMBOLS = ascii(",\"" + SourceLineIndexDefinition.FIELD_SYMBOLS + "\":");
+  private static final byte[] DUPLICATIONS = ascii(",\"" + SourceLineIndexDefinition.FIELD_DUPLICATIONS + "\":");
+  private static final byte[] SOURCE = ascii(",\"" + SourceLineIndexDefinition.FIELD_SOURCE + "\":");
+  private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+
+  private static final ThreadLocal<SourceLineJsonBuilder> PER_THREAD = new ThreadLocal<SourceLineJsonBuilder>() {
+    @Override
+    protected SourceLineJsonBuilder initialValue() {
+      return new SourceLineJsonBuilder();
+    }
+  };
+
+  private final Map<Long, byte[]> formattedScmDates = new HashMap<>();
+  private byte[] filePrefix = new byte[0];
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int count = 0;
+
+  static SourceLineJsonBuilder forCurrentThread() {
+    return PER_THREAD.get();
+  }
+
+  /**
+   * Must be called before serializing the lines of a file.
+   */
+  SourceLineJsonBuilder startFile(String projectUuid, String fileUuid, Date updatedAt) {
+    formattedScmDates.clear();
+    count = 0;
+    writeByte('{');
+    writeName(SourceLineIndexDefinition.FIELD_PROJECT_UUID);
+    writeString(projectUuid);
+    writeByte(',');
+    writeName(SourceLineIndexDefinition.FIELD_FILE_UUID);
+    writeString(fileUuid);
+    writeByte(',');
+    writeName(SourceLineIndexDefinition.FIELD_UPDATED_AT);
+    writeString(EsUtils.formatDateTime(updatedAt));
+    filePrefix = Arrays.copyOf(buffer, count);
+    return this;
+  }
+
+  /**
+   * All the fields are present in the document, even if value is null.
+   */
+  byte[] toJson(FileSourceDb.Line line) {
+    count = 0;
+    writeBytes(filePrefix);
+    writeBytes(LINE);
+    writeLong(line.getLine());
+    writeBytes(SCM_REVISION);
+    writeString(line.getScmRevision());
+    writeBytes(SCM_AUTHOR);
+    writeString(line.getScmAuthor());
+    writeBytes(SCM_DATE);
+    if (line.hasScmDate()) {
+      writeBytes(formattedScmDate(line.getScmDate()));
+    } else {
+      writeBytes(NULL);
+    }
+
+    writeBytes(UT_LINE_HITS);
+    writeNullableInt(line.hasUtLineHits(), line.getUtLineHits());
+    writeBytes(UT_CONDITIONS);
+    writeNullableInt(line.hasUtConditions(), line.getUtConditions());
+    writeBytes(UT_COVERED_CONDITIONS);
+    writeNullableInt(line.hasUtCoveredConditions(), line.getUtCoveredConditions());
+
+    writeBytes(IT_LINE_HITS);
+    writeNullableInt(line.hasItLineHits(), line.getItLineHits());
+    writeBytes(IT_CONDITIONS);
+    writeNullableInt(line.hasItConditions(), line.getItConditions());
+    writeBytes(IT_COVERED_CONDITIONS);
+    writeNullableInt(line.hasItCoveredConditions(), line.getItCoveredConditions());
+
+    writeBytes(OVERALL_LINE_HITS);
+    writeNullableInt(line.hasOverallLineHits(), line.getOverallLineHits());
+    writeBytes(OVERALL_CONDITIONS);
+    writeNullableInt(line.hasOverallConditions(), line.getOverallConditions());
+    writeBytes(OVERALL_COVERED_CONDITIONS);
+    writeNullableInt(line.hasOverallCoveredConditions(), line.getOverallCoveredConditions());
+
+    writeBytes(HIGHLIGHTING);
+    writeString(line.hasHighlighting() ? line.getHighlighting() : null);
+    writeBytes(SYMBOLS);
+    writeString(line.hasSymbols() ? line.getSymbols() : null);
+    writeBytes(DUPLICATIONS);
+    writeIntArray(line.getDuplicationList());
+    writeBytes(SOURCE);
+    writeString(line.hasSource() ? line.getSource() : null);
+    writeByte('}');
+
+    byte[] json = Arrays.copyOf(buffer, count);
+    if (buffer.length > MAX_RETAINED_CAPACITY) {
+      buffer = new byte[INITIAL_CAPACITY];
+    }
+    return json;
+  }
+
+  private byte[] formattedScmDate(long scmDate) {
+    byte[] formatted = formattedScmDates.get(scmDate);
+    if (formatted == null) {
+      int start = count;
+      writeString(EsUtils.formatDateTime(new Date(scmDate)));
+      formatted = Arrays.copyOfRange(buffer, start, count);
+      count = start;
+      formattedScmDates.put(scmDate, formatted);
+    }
+    return formatted;
+  }
+
+  private void writeName(String name) {
+    writeString(name);
+    writeByte(':');
+  }
+
+  private void writeNullableInt(boolean isSet, int value) {
+    if (isSet) {
+      writeLong(value);
+    } else {
+      writeBytes(NULL);
+    }
+  }
+
+  private void writeIntArray(List<Integer> values) {
+    writeByte('[');
+    for (int i = 0; i < values.size(); i++) {
+      if (i > 0) {
+        writeByte(',');
+      }
+      writeLong(values.get(i));
+    }
+    writeByte(']');
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeBytes(ascii(Long.toString(value)));
+      return;
+    }
+    long remaining = value;
+    if (remaining < 0) {
+      writeByte('-');
+      remaining = -remaining;
+    }
+    int start = count;
+    do {
+      writeByte('0' + (int) (remaining % 10));
+      remaining /= 10;
+    } while (remaining > 0);
+    // digits have been written in reverse order
+    for (int i = start, j = count - 1; i < j; i++, j--) {
+      byte b = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = b;
+    }
+  }
+
+  private void writeString(@Nullable String s) {
+    if (s == null) {
+      writeBytes(NULL);
+      return;
+    }
+    writeByte('"');
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        writeAsciiChar(c);
+      } else if (c < 0x800) {
+        writeByte(0xC0 | (c >> 6));
+        writeByte(0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+        i++;
+        writeByte(0xF0 | (codePoint >> 18));
+        writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+        writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+        writeByte(0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // malformed UTF-16, replaced like String#getBytes(Charset) does
+        writeByte('?');
+      } else {
+        writeByte(0xE0 | (c >> 12));
+        writeByte(0x80 | ((c >> 6) & 0x3F));
+        writeByte(0x80 | (c & 0x3F));
+      }
+    }
+    writeByte('"');
+  }
+
+  private void writeAsciiChar(char c) {
+    switch (c) {
+      case '"':
+      case '\\':
+        writeByte('\\');
+        writeByte(c);
+        break;
+      case '\n':
+        writeByte('\\');
+        writeByte('n');
+        break;
+      case '\r':
+        writeByte('\\');
+        writeByte('r');
+        break;
+      case '\t':
+        writeByte('\\');
+        writeByte('t');
+        break;
+      default:
+        if (c < 0x20 || c == 0x7F) {
+          writeByte('\\');
+          writeByte('u');
+          writeByte('0');
+          writeByte('0');
+          writeByte(HEX_DIGITS[c >> 4]);
+          writeByte(HEX_DIGITS[c & 0xF]);
+        } else {
+          writeByte(c);
+        }
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, count, bytes.length);
+    count += bytes.length;
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    buffer[count] = (byte) b;
+    count++;
+  }
+
+  private void ensureCapacity(int length) {
+    if (count + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+    }
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -32,9 +32,8 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.exceptions.NotFoundException;
-import org.sonar.server.source.HtmlSourceDecorator;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
+import org.sonar.server.source.SourceService;
+import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.user.UserSession;
 
 import java.util.Date;
@@ -45,14 +44,12 @@ public class LinesAction implements SourcesWsAction {
   private static final String PARAM_UUID = "uuid";
   private static final String PARAM_KEY = "key";
 
-  private final SourceLineIndex sourceLineIndex;
-  private final HtmlSourceDecorator htmlSourceDecorator;
+  private final SourceService sourceService;
   private final DbClient dbClient;
   private final UserSession userSession;
 
-  public LinesAction(DbClient dbClient, SourceLineIndex sourceLineIndex, HtmlSourceDecorator htmlSourceDecorator, UserSession userSession) {
-    this.sourceLineIndex = sourceLineIndex;
-    this.htmlSourceDecorator = htmlSourceDecorator;
+  public LinesAction(DbClient dbClient, SourceService sourceService, UserSession userSession) {
+    this.sourceService = sourceService;
     this.dbClient = dbClient;
     this.userSession = userSession;
   }
@@ -110,7 +107,7 @@ public class LinesAction implements SourcesWsAction {
     int from = Math.max(request.mandatoryParamAsInt("from"), 1);
     int to = (Integer) ObjectUtils.defaultIfNull(request.paramAsInt("to"), Integer.MAX_VALUE);
 
-    List<SourceLineDoc> sourceLines = sourceLineIndex.getLines(component.uuid(), from, to);
+    List<FileSourceDb.Line> sourceLines = sourceService.getLines(component.uuid(), from, to);
     if (sourceLines.isEmpty()) {
       throw new NotFoundException("File '" + component.key() + "' has no sources");
     }
@@ -121,23 +118,22 @@ public class LinesAction implements SourcesWsAction {
     json.endObject().close();
   }
 
-  private void writeSource(List<SourceLineDoc> lines, JsonWriter json) {
+  private void writeSource(List<FileSourceDb.Line> lines, JsonWriter json) {
     json.name("sources").beginArray();
-    for (SourceLineDoc line : lines) {
+    for (FileSourceDb.Line line : lines) {
       json.beginObject()
-        .prop("line", line.line())
-        .prop("code", htmlSourceDecorator.getDecoratedSourceAsHtml(line.source(), line.highlighting(), line.symbols()))
-        .prop("scmAuthor", line.scmAuthor())
-        .prop("scmRevision", line.scmRevision());
-      Date scmDate = line.scmDate();
-      json.prop("scmDate", scmDate == null ? null : DateUtils.formatDateTime(scmDate));
-      json.prop("utLineHits", line.utLineHits())
-        .prop("utConditions", line.utConditions())
-        .prop("utCoveredConditions", line.utCoveredConditions())
-        .prop("itLineHits", line.itLineHits())
-        .prop("itConditions", line.itConditions())
-        .prop("itCoveredConditions", line.itCoveredConditions());
-      if (!line.duplications().isEmpty()) {
+        .prop("line", line.getLine())
+        .prop("code", sourceService.getLineAsHtml(line))
+        .prop("scmAuthor", line.hasScmAuthor() ? line.getScmAuthor() : null)
+        .prop("scmRevision", line.hasScmRevision() ? line.getScmRevision() : null);
+      json.prop("scmDate", line.hasScmDate() ? DateUtils.formatDateTime(new Date(line.getScmDate())) : null);
+      json.prop("utLineHits", line.hasUtLineHits() ? line.getUtLineHits() : null)
+        .prop("utConditions", line.hasUtConditions() ? line.getUtConditions() : null)
+        .prop("utCoveredConditions", line.hasUtCoveredConditions() ? line.getUtCoveredConditions() : null)
+        .prop("itLineHits", line.hasItLineHits() ? line.getItLineHits() : null)
+        .prop("itConditions", line.hasItConditions() ? line.getItConditions() : null)
+        .prop("itCoveredConditions", line.hasItCoveredConditions() ? line.getItCoveredConditions() : null);
+      if (line.getDuplicationCount() > 0) {
         json.prop("duplicated", true);
       }
       json.endObject();
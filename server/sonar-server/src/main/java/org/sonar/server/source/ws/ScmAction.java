@@ -34,8 +34,8 @@ import org.sonar.core.component.ComponentDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.exceptions.NotFoundException;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
+import org.sonar.server.source.SourceService;
+import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.user.UserSession;
 
 import java.util.Date;
@@ -44,12 +44,12 @@ import java.util.List;
 public class ScmAction implements SourcesWsAction {
 
   private final DbClient dbClient;
-  private final SourceLineIndex sourceLineIndex;
+  private final SourceService sourceService;
   private final UserSession userSession;
 
-  public ScmAction(DbClient dbClient, SourceLineIndex sourceLineIndex, UserSession userSession) {
+  public ScmAction(DbClient dbClient, SourceService sourceService, UserSession userSession) {
     this.dbClient = dbClient;
-    this.sourceLineIndex = sourceLineIndex;
+    this.sourceService = sourceService;
     this.userSession = userSession;
   }
 
@@ -104,7 +104,7 @@ public class ScmAction implements SourcesWsAction {
     try {
       ComponentDto fileDto = dbClient.componentDao().selectByKey(session, fileKey);
       userSession.checkProjectUuidPermission(UserRole.CODEVIEWER, fileDto.projectUuid());
-      List<SourceLineDoc> sourceLines = sourceLineIndex.getLines(fileDto.uuid(), from, to);
+      List<FileSourceDb.Line> sourceLines = sourceService.getLines(fileDto.uuid(), from, to);
       if (sourceLines.isEmpty()) {
         throw new NotFoundException("File '" + fileKey + "' has no sources");
       }
@@ -117,36 +117,35 @@ public class ScmAction implements SourcesWsAction {
     }
   }
 
-  private static void writeSource(List<SourceLineDoc> lines, boolean showCommitsByLine, JsonWriter json) {
+  private static void writeSource(List<FileSourceDb.Line> lines, boolean showCommitsByLine, JsonWriter json) {
     json.name("scm").beginArray();
 
-    SourceLineDoc previousLine = null;
+    FileSourceDb.Line previousLine = null;
     boolean started = false;
-    for (SourceLineDoc lineDoc : lines) {
-      if (hasScm(lineDoc) && (!started || showCommitsByLine || !isSameCommit(previousLine, lineDoc))) {
+    for (FileSourceDb.Line line : lines) {
+      if (hasScm(line) && (!started || showCommitsByLine || !isSameCommit(previousLine, line))) {
         json.beginArray()
-          .value(lineDoc.line())
-          .value(lineDoc.scmAuthor());
-        Date date = lineDoc.scmDate();
-        json.value(date == null ? null : DateUtils.formatDateTime(date));
-        json.value(lineDoc.scmRevision());
+          .value(line.getLine())
+          .value(line.getScmAuthor());
+        json.value(line.hasScmDate() ? DateUtils.formatDateTime(new Date(line.getScmDate())) : null);
+        json.value(line.getScmRevision());
         json.endArray();
         started = true;
       }
-      previousLine = lineDoc;
+      previousLine = line;
     }
     json.endArray();
   }
 
-  private static boolean isSameCommit(SourceLineDoc previousLine, SourceLineDoc currentLine) {
+  private static boolean isSameCommit(FileSourceDb.Line previousLine, FileSourceDb.Line currentLine) {
     return new EqualsBuilder()
-      .append(previousLine.scmAuthor(), currentLine.scmAuthor())
-      .append(previousLine.scmDate(), currentLine.scmDate())
-      .append(previousLine.scmRevision(), currentLine.scmRevision())
+      .append(previousLine.getScmAuthor(), currentLine.getScmAuthor())
+      .append(previousLine.hasScmDate() ? previousLine.getScmDate() : null, currentLine.hasScmDate() ? currentLine.getScmDate() : null)
+      .append(previousLine.getScmRevision(), currentLine.getScmRevision())
       .isEquals();
   }
 
-  private static boolean hasScm(SourceLineDoc line){
-    return !Strings.isNullOrEmpty(line.scmAuthor()) || line.scmDate() != null || !Strings.isNullOrEmpty(line.scmRevision());
+  private static boolean hasScm(FileSourceDb.Line line) {
+    return !Strings.isNullOrEmpty(line.getScmAuthor()) || line.hasScmDate() || !Strings.isNullOrEmpty(line.getScmRevision());
   }
 }
@@ -31,11 +31,11 @@ import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper;
 
-import javax.annotation.Nullable;
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
-import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_PROJECT_UUID;
 import static org.sonar.server.test.index.TestIndexDefinition.*;
 
 /**
@@ -51,34 +51,33 @@ public class TestIndexer extends BaseIndexer {
     this.dbClient = dbClient;
   }
 
-  public void index(final String projectUuid) {
-    deleteByProject(projectUuid);
-    super.index(new IndexerTask() {
-      @Override
-      public long index(long lastUpdatedAt) {
-        return doIndex(lastUpdatedAt, projectUuid);
-      }
-    });
-  }
-
   public long index(Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
     BulkIndexer bulk = new BulkIndexer(esClient, INDEX);
     return doIndex(bulk, dbRows);
   }
 
-  @Override
-  protected long doIndex(long lastUpdatedAt) {
-    return doIndex(lastUpdatedAt, null);
+  /**
+   * Indexes the given rows of a project, for example the tests persisted by the Compute Engine, without
+   * reading them from db. Projects are indexed concurrently.
+   */
+  public void index(String projectUuid, final Iterator<FileSourcesUpdaterHelper.Row> rows) {
+    indexProjectDocuments(projectUuid, new Runnable() {
+      @Override
+      public void run() {
+        TestIndexer.this.index(rows);
+      }
+    });
   }
 
-  private long doIndex(long lastUpdatedAt, @Nullable String projectUuid) {
+  @Override
+  protected long doIndex(long lastUpdatedAt) {
     final BulkIndexer bulk = new BulkIndexer(esClient, INDEX);
     bulk.setLarge(lastUpdatedAt == 0L);
 
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
     try {
-      TestResultSetIterator rowIt = TestResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, projectUuid);
+      TestResultSetIterator rowIt = TestResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, null);
       long maxUpdatedAt = doIndex(bulk, rowIt);
       rowIt.close();
       return maxUpdatedAt;
@@ -88,11 +87,17 @@ public class TestIndexer extends BaseIndexer {
     }
   }
 
-  private static long doIndex(BulkIndexer bulk, Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
+  @Override
+  protected String getProjectUuidFieldName() {
+    return FIELD_PROJECT_UUID;
+  }
+
+  private long doIndex(BulkIndexer bulk, Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
     long maxUpdatedAt = 0L;
     bulk.start();
     while (dbRows.hasNext()) {
       FileSourcesUpdaterHelper.Row row = dbRows.next();
+      addDeleteRequestsForRemovedTests(bulk, row);
       for (UpdateRequest updateRequest : row.getUpdateRequests()) {
         bulk.add(updateRequest);
       }
@@ -102,6 +107,30 @@ public class TestIndexer extends BaseIndexer {
     return maxUpdatedAt;
   }
 
+  /**
+   * Use-case:
+   * - file had tests T1 and T2 in previous analysis
+   * - same file has now only test T1
+   * T2 must be removed from index.
+   */
+  private void addDeleteRequestsForRemovedTests(BulkIndexer bulk, FileSourcesUpdaterHelper.Row fileRow) {
+    List<String> testUuids = new ArrayList<>();
+    for (UpdateRequest updateRequest : fileRow.getUpdateRequests()) {
+      testUuids.add(updateRequest.id());
+    }
+    SearchRequestBuilder searchRequest = esClient.prepareSearch(INDEX)
+      .setTypes(TYPE)
+      .setRouting(fileRow.getProjectUuid())
+      .setQuery(QueryBuilders.filteredQuery(
+        QueryBuilders.matchAllQuery(),
+        FilterBuilders.boolFilter()
+          .must(FilterBuilders.termFilter(FIELD_FILE_UUID, fileRow.getFileUuid()).cache(false))
+          .mustNot(FilterBuilders.termsFilter(FIELD_TEST_UUID, testUuids).cache(false))
+          .cache(false)
+      ));
+    bulk.addDeletion(searchRequest);
+  }
+
   public void deleteByFile(String fileUuid) {
     // TODO would be great to have the projectUuid for routing
     SearchRequestBuilder searchRequest = esClient.prepareSearch(INDEX)
@@ -17,17 +17,19 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-package org.sonar.server.computation.batch;
+package org.sonar.server.util.cache;
 
-import java.io.File;
-import org.sonar.server.computation.ReportQueue;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
-public interface BatchReportDirectoryHolder {
-  /**
-   * The File of the directory where the Batch report files for the current {@link ReportQueue.Item} are stored.
-   *
-   * @throws IllegalStateException if the holder is empty (ie. there is no directory yet)
-   */
-  File getDirectory();
+/**
+ * Binary encoding of the objects stored in a {@link DiskCache}.
+ */
+public interface Codec<O> {
+
+  void write(O object, DataOutput output) throws IOException;
+
+  O read(DataInput input) throws IOException;
 
 }
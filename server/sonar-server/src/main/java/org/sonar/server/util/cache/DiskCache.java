@@ -19,35 +19,48 @@
  */
 package org.sonar.server.util.cache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.io.Serializable;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.server.util.CloseableIterator;
-import org.sonar.server.util.ObjectInputStreamIterator;
 
 /**
  * Serialize and deserialize objects on disk. No search capabilities, only traversal (full scan).
+ * <p>
+ * Objects are encoded by a {@link Codec}. Each appender writes its own segment at the end of the file, optionally
+ * compressed with LZ4. Each object of a segment is prefixed by a marker byte so that the end of a segment can
+ * be detected without knowing the number of objects it contains.
+ * </p>
  */
-public class DiskCache<O extends Serializable> {
+public class DiskCache<O> {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int OBJECT_MARKER = 1;
 
   private final File file;
+  private final Codec<O> codec;
+  private final boolean compressed;
   private final System2 system2;
 
-  public DiskCache(File file, System2 system2) {
+  public DiskCache(File file, Codec<O> codec, boolean compressed, System2 system2) {
     this.system2 = system2;
     this.file = file;
+    this.codec = codec;
+    this.compressed = compressed;
     OutputStream output = null;
     try {
-      // writes the serialization stream header required when calling "traverse()"
-      // on empty stream. Moreover it allows to call multiple times "newAppender()"
-      output = new ObjectOutputStream(new FileOutputStream(file));
-      output.flush();
+      // truncates the file, so that traversal of a new cache is empty
+      output = new FileOutputStream(file);
 
       // raise an exception if can't close
       system2.close(output);
@@ -64,23 +77,23 @@ public class DiskCache<O extends Serializable> {
 
   public CloseableIterator<O> traverse() {
     try {
-      return new ObjectInputStreamIterator<>(FileUtils.openInputStream(file));
+      return new DiskIterator(new BufferedInputStream(FileUtils.openInputStream(file), BUFFER_SIZE));
     } catch (IOException e) {
       throw new IllegalStateException("Fail to traverse file: " + file, e);
     }
   }
 
   public class DiskAppender implements AutoCloseable {
-    private final ObjectOutputStream output;
+    private final DataOutputStream output;
 
     private DiskAppender() {
       try {
-        this.output = new ObjectOutputStream(new FileOutputStream(file, true)) {
-          @Override
-          protected void writeStreamHeader() throws IOException {
-            // do not write stream headers as it's already done in constructor of DiskCache
-          }
-        };
+        OutputStream fileOutput = new FileOutputStream(file, true);
+        if (compressed) {
+          this.output = new DataOutputStream(new LZ4BlockOutputStream(fileOutput, BUFFER_SIZE));
+        } else {
+          this.output = new DataOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE));
+        }
       } catch (IOException e) {
         throw new IllegalStateException("Fail to open file " + file, e);
       }
@@ -88,8 +101,8 @@ public class DiskCache<O extends Serializable> {
 
     public DiskAppender append(O object) {
       try {
-        output.writeObject(object);
-        output.reset();
+        output.writeByte(OBJECT_MARKER);
+        codec.write(object, output);
         return this;
       } catch (IOException e) {
         throw new IllegalStateException("Fail to write into file " + file, e);
@@ -101,4 +114,61 @@ public class DiskCache<O extends Serializable> {
       system2.close(output);
     }
   }
+
+  private class DiskIterator extends CloseableIterator<O> {
+    private final BufferedInputStream fileInput;
+    private DataInputStream segment = null;
+
+    private DiskIterator(BufferedInputStream fileInput) {
+      this.fileInput = fileInput;
+    }
+
+    @Override
+    protected O doNext() {
+      try {
+        if (segment == null && !openNextSegment()) {
+          return null;
+        }
+        int marker = segment.read();
+        while (marker == -1) {
+          if (!openNextSegment()) {
+            return null;
+          }
+          marker = segment.read();
+        }
+        if (marker != OBJECT_MARKER) {
+          throw new IllegalStateException("Unexpected marker " + marker + " in file " + file);
+        }
+        return codec.read(segment);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read file " + file, e);
+      }
+    }
+
+    /**
+     * Uncompressed segments are read as a single one. Compressed segments are read one after the other, as LZ4
+     * streams stop at the end mark written when closing the appender.
+     */
+    private boolean openNextSegment() throws IOException {
+      if (!compressed) {
+        if (segment != null) {
+          return false;
+        }
+        segment = new DataInputStream(fileInput);
+        return true;
+      }
+      fileInput.mark(1);
+      if (fileInput.read() == -1) {
+        return false;
+      }
+      fileInput.reset();
+      segment = new DataInputStream(new LZ4BlockInputStream(fileInput));
+      return true;
+    }
+
+    @Override
+    protected void doClose() {
+      IOUtils.closeQuietly(fileInput);
+    }
+  }
 }
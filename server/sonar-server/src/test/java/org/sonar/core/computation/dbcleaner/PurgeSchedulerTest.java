@@ -0,0 +1,172 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.computation.dbcleaner;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.sonar.api.config.Settings;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.purge.IdUuidPair;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.properties.ProjectSettingsFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class PurgeSchedulerTest {
+
+  private static final IdUuidPair PROJECT_1 = new IdUuidPair(1L, "UUID_1");
+  private static final IdUuidPair PROJECT_2 = new IdUuidPair(2L, "UUID_2");
+
+  DbClient dbClient = mock(DbClient.class, Mockito.RETURNS_DEEP_STUBS);
+  ProjectCleaner projectCleaner = mock(ProjectCleaner.class);
+  ProjectSettingsFactory projectSettingsFactory = mock(ProjectSettingsFactory.class);
+  ReportQueue reportQueue = mock(ReportQueue.class);
+  IssueIndexer issueIndexer = mock(IssueIndexer.class);
+  Settings settings = new Settings();
+
+  PurgeScheduler sut = new PurgeScheduler(dbClient, projectCleaner, projectSettingsFactory, reportQueue, issueIndexer, 0L, 1, TimeUnit.SECONDS);
+
+  @Before
+  public void setUp() {
+    when(dbClient.componentDao().selectNullableByUuid(any(DbSession.class), anyString())).thenReturn(new ComponentDto());
+    when(projectSettingsFactory.newProjectSettings(anyString())).thenReturn(settings);
+    when(reportQueue.all()).thenReturn(Collections.<AnalysisReportDto>emptyList());
+    when(reportQueue.tryLockProject(anyString())).thenReturn(true);
+  }
+
+  @Test
+  public void purge_projects_in_order_of_requests() {
+    sut.schedule(PROJECT_2, "KEY_2");
+    sut.schedule(PROJECT_1, "KEY_1");
+
+    sut.purgePendingProjects();
+
+    InOrder inOrder = inOrder(projectCleaner);
+    inOrder.verify(projectCleaner).purge(any(DbSession.class), eq(PROJECT_2), eq(settings));
+    inOrder.verify(projectCleaner).purge(any(DbSession.class), eq(PROJECT_1), eq(settings));
+    verify(projectSettingsFactory).newProjectSettings("KEY_1");
+    verify(projectSettingsFactory).newProjectSettings("KEY_2");
+    assertThat(sut.countPendingProjects()).isEqualTo(0);
+  }
+
+  @Test
+  public void project_is_purged_once_when_scheduled_many_times() {
+    sut.schedule(PROJECT_1, "KEY_1");
+    sut.schedule(PROJECT_1, "KEY_1");
+    assertThat(sut.countPendingProjects()).isEqualTo(1);
+
+    sut.purgePendingProjects();
+
+    verify(projectCleaner).purge(any(DbSession.class), eq(PROJECT_1), eq(settings));
+  }
+
+  @Test
+  public void do_not_purge_while_analysis_reports_are_processed() {
+    when(reportQueue.all()).thenReturn(Collections.singletonList(new AnalysisReportDto()));
+    sut.schedule(PROJECT_1, "KEY_1");
+
+    sut.purgePendingProjects();
+
+    verifyZeroInteractions(projectCleaner);
+    assertThat(sut.countPendingProjects()).isEqualTo(1);
+  }
+
+  @Test
+  public void ignore_deleted_projects() {
+    when(dbClient.componentDao().selectNullableByUuid(any(DbSession.class), eq(PROJECT_1.getUuid()))).thenReturn(null);
+    sut.schedule(PROJECT_1, "KEY_1");
+
+    sut.purgePendingProjects();
+
+    verifyZeroInteractions(projectCleaner);
+    assertThat(sut.countPendingProjects()).isEqualTo(0);
+  }
+
+  @Test
+  public void failure_does_not_stop_purge_of_other_projects() {
+    doThrow(new IllegalStateException("BOOM")).when(projectCleaner).purge(any(DbSession.class), eq(PROJECT_1), any(Settings.class));
+    sut.schedule(PROJECT_1, "KEY_1");
+    sut.schedule(PROJECT_2, "KEY_2");
+
+    sut.purgePendingProjects();
+
+    verify(projectCleaner).purge(any(DbSession.class), eq(PROJECT_2), eq(settings));
+    verify(issueIndexer).index(PROJECT_2.getUuid());
+    verify(reportQueue).unlockProject("KEY_1");
+    verify(reportQueue).unlockProject("KEY_2");
+  }
+
+  @Test
+  public void lock_project_in_report_queue_during_purge() {
+    sut.schedule(PROJECT_1, "KEY_1");
+
+    sut.purgePendingProjects();
+
+    InOrder inOrder = inOrder(reportQueue, projectCleaner, issueIndexer);
+    inOrder.verify(reportQueue).tryLockProject("KEY_1");
+    inOrder.verify(projectCleaner).purge(any(DbSession.class), eq(PROJECT_1), eq(settings));
+    inOrder.verify(issueIndexer).index(PROJECT_1.getUuid());
+    inOrder.verify(reportQueue).unlockProject("KEY_1");
+  }
+
+  @Test
+  public void do_not_purge_project_while_its_analysis_report_is_processed() {
+    // report of project 1 is booked after the queue has been checked
+    when(reportQueue.tryLockProject("KEY_1")).thenReturn(false);
+    sut.schedule(PROJECT_1, "KEY_1");
+
+    sut.purgePendingProjects();
+
+    verifyZeroInteractions(projectCleaner, issueIndexer);
+    verify(reportQueue, never()).unlockProject(anyString());
+    assertThat(sut.countPendingProjects()).isEqualTo(1);
+  }
+
+  @Test
+  public void nothing_to_purge() {
+    sut.purgePendingProjects();
+
+    verify(projectCleaner, never()).purge(any(DbSession.class), any(IdUuidPair.class), any(Settings.class));
+  }
+
+  @Test
+  public void stop_executor() {
+    sut.start();
+    sut.stop();
+  }
+}
@@ -29,7 +29,7 @@ public class BatchWsModuleTest {
   public void verify_count_of_added_components() throws Exception {
     ComponentContainer container = new ComponentContainer();
     new BatchWsModule().configure(container);
-    assertThat(container.size()).isEqualTo(10);
+    assertThat(container.size()).isEqualTo(11);
   }
 
 }
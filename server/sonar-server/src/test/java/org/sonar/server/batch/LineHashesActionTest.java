@@ -0,0 +1,111 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.platform.Server;
+import org.sonar.api.web.UserRole;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.ws.WsTester;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+
+@Category(DbTests.class)
+public class LineHashesActionTest {
+
+  @ClassRule
+  public static DbTester db = new DbTester();
+  @Rule
+  public UserSessionRule userSessionRule = UserSessionRule.standalone();
+
+  WsTester tester;
+
+  @Before
+  public void before() {
+    db.truncateTables();
+    DbClient dbClient = new DbClient(db.database(), db.myBatis(), new ComponentDao());
+    tester = new WsTester(new BatchWs(new BatchIndex(mock(Server.class)), new LineHashesAction(dbClient, userSessionRule)));
+  }
+
+  @Test
+  public void return_line_hashes_of_files_of_module() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    userSessionRule.login("john").addProjectUuidPermissions(UserRole.USER, "PROJECT_UUID");
+
+    Map<String, String> hashesByKey = execute("struts-core");
+
+    // disabled files, test data and files of other modules are ignored
+    assertThat(hashesByKey).containsOnly(
+      entry("struts-core:Action.java", "ABC\nDEF"),
+      entry("struts-core:Form.java", "GHI"));
+  }
+
+  @Test
+  public void return_line_hashes_of_files_of_root_module() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    userSessionRule.login("john").addProjectUuidPermissions(UserRole.USER, "PROJECT_UUID");
+
+    assertThat(execute("struts")).containsOnly(entry("struts:pom.xml", "MNO"));
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void fail_if_no_permission_on_project() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    userSessionRule.login("john");
+
+    execute("struts-core");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_component_is_not_a_module() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    userSessionRule.login("john").addProjectUuidPermissions(UserRole.USER, "PROJECT_UUID");
+
+    execute("struts-core:Action.java");
+  }
+
+  private Map<String, String> execute(String moduleKey) throws Exception {
+    WsTester.TestRequest request = tester.newGetRequest("batch", "line_hashes").setParam("key", moduleKey);
+    ByteArrayInputStream input = new ByteArrayInputStream(request.execute().output());
+
+    Map<String, String> hashesByKey = new HashMap<>();
+    FileLineHashes hashes = FileLineHashes.parseDelimitedFrom(input);
+    while (hashes != null) {
+      hashesByKey.put(hashes.getKey(), hashes.getLineHashes());
+      hashes = FileLineHashes.parseDelimitedFrom(input);
+    }
+    return hashesByKey;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ComputationMetricsTest {
+
+  System2 system = mock(System2.class);
+  ComputationMetrics metrics = new ComputationMetrics(system);
+
+  @Test
+  public void record_step() {
+    when(system.now()).thenReturn(1000L, 1500L);
+    ComputationMetrics.ReportMetrics report = metrics.startReport(1L, "P1");
+
+    ComputationMetrics.StepMetrics step = metrics.startStep(report, "Persist issues");
+    assertThat(step.isDone()).isFalse();
+    assertThat(step.getDurationMs()).isEqualTo(-1L);
+    assertThat(step.getAllocatedBytes()).isEqualTo(-1L);
+
+    // allocate some memory
+    byte[][] bytes = new byte[100][];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = new byte[1024];
+    }
+    metrics.addRowsRead(3L);
+    metrics.addRowsWritten(5L);
+    metrics.addRowsWritten(2L);
+    metrics.stopStep(step);
+
+    assertThat(step.isDone()).isTrue();
+    assertThat(step.getDescription()).isEqualTo("Persist issues");
+    assertThat(step.getDurationMs()).isEqualTo(500L);
+    assertThat(step.getRowsRead()).isEqualTo(3L);
+    assertThat(step.getRowsWritten()).isEqualTo(7L);
+    // -1 if not supported by JVM
+    long allocatedBytes = step.getAllocatedBytes();
+    assertThat(allocatedBytes == -1L || allocatedBytes >= 100 * 1024).isTrue();
+    assertThat(metrics.getReport(1L).getSteps()).containsExactly(step);
+  }
+
+  @Test
+  public void ignore_rows_if_no_step_is_executed_by_current_thread() {
+    ComputationMetrics.ReportMetrics report = metrics.startReport(1L, "P1");
+    ComputationMetrics.StepMetrics step = metrics.startStep(report, "Persist issues");
+    metrics.stopStep(step);
+
+    metrics.addRowsWritten(5L);
+
+    assertThat(step.getRowsWritten()).isEqualTo(0L);
+  }
+
+  @Test
+  public void keep_only_last_reports() {
+    for (long reportId = 1L; reportId <= ComputationMetrics.MAX_REPORTS + 10; reportId++) {
+      metrics.startReport(reportId, "P1");
+    }
+
+    assertThat(metrics.getReports()).hasSize(ComputationMetrics.MAX_REPORTS);
+    assertThat(metrics.getReport(1L)).isNull();
+    assertThat(metrics.getReport(ComputationMetrics.MAX_REPORTS + 10)).isNotNull();
+    assertThat(metrics.getReports().get(0).getReportId()).isEqualTo(11L);
+  }
+}
@@ -24,10 +24,17 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
@@ -39,8 +46,10 @@ import org.sonar.server.computation.step.ComputationSteps;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -54,12 +63,14 @@ public class ComputationServiceTest {
   ComputationSteps steps = mock(ComputationSteps.class);
   ActivityManager activityManager = mock(ActivityManager.class);
   System2 system = mock(System2.class);
+  ComputationMetrics metrics = new ComputationMetrics(system);
+  Settings settings = new Settings().setProperty(ComputationService.PROPERTY_STEP_THREADS, 1);
   AnalysisReportDto dto = AnalysisReportDto.newForTests(1L).setProjectKey("P1").setUuid("U1").setStatus(Status.PENDING);
   ComputationService sut;
 
   @Before
   public void setUp() throws IOException {
-    sut = new ComputationService(new ReportQueue.Item(dto, new File("Do_not_care")), steps, activityManager, system);
+    sut = newComputationService();
   }
 
   @Test
@@ -84,6 +95,37 @@ public class ComputationServiceTest {
     verify(activityManager).saveActivity(dto);
   }
 
+  @Test
+  public void record_metrics_of_steps() throws Exception {
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1, projectStep2));
+    when(system.now()).thenReturn(1000L, 1200L, 1200L, 1250L);
+
+    sut.process();
+
+    ComputationMetrics.ReportMetrics report = metrics.getReport(1L);
+    assertThat(report.getProjectKey()).isEqualTo("P1");
+    assertThat(report.getSteps()).hasSize(2);
+    assertThat(report.getSteps().get(0).getDescription()).isEqualTo(projectStep1.getDescription());
+    assertThat(report.getSteps().get(0).getDurationMs()).isEqualTo(200L);
+    assertThat(report.getSteps().get(1).getDescription()).isEqualTo(projectStep2.getDescription());
+    assertThat(report.getSteps().get(1).getDurationMs()).isEqualTo(50L);
+  }
+
+  @Test
+  public void record_metrics_of_failed_step() throws Exception {
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1, projectStep2));
+    doThrow(new IllegalStateException("pb")).when(projectStep1).execute();
+
+    try {
+      sut.process();
+      fail();
+    } catch (IllegalStateException e) {
+      List<ComputationMetrics.StepMetrics> stepMetrics = metrics.getReport(1L).getSteps();
+      assertThat(stepMetrics).hasSize(1);
+      assertThat(stepMetrics.get(0).isDone()).isTrue();
+    }
+  }
+
   @Test
   public void debug_logs() throws Exception {
     when(steps.instances()).thenReturn(Collections.<ComputationStep>emptyList());
@@ -125,6 +167,100 @@ public class ComputationServiceTest {
     }
   }
 
+  @Test
+  public void execute_independent_steps_concurrently() throws Exception {
+    settings.setProperty(ComputationService.PROPERTY_STEP_THREADS, 2);
+    sut = newComputationService();
+    final CountDownLatch bothStarted = new CountDownLatch(2);
+    ComputationStep independentStep1 = new WaitingStep(bothStarted);
+    ComputationStep independentStep2 = new WaitingStep(bothStarted);
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1, independentStep1, independentStep2, projectStep2));
+    when(steps.dependencies(independentStep1)).thenReturn(Arrays.asList(projectStep1));
+    when(steps.dependencies(independentStep2)).thenReturn(Arrays.asList(projectStep1));
+    when(steps.dependencies(projectStep2)).thenReturn(Arrays.asList(independentStep1, independentStep2));
+    final List<ComputationStep> executedSteps = new CopyOnWriteArrayList<>();
+    for (final ComputationStep step : Arrays.asList(projectStep1, projectStep2)) {
+      doAnswer(new Answer() {
+        @Override
+        public Object answer(InvocationOnMock invocation) {
+          executedSteps.add(step);
+          return null;
+        }
+      }).when(step).execute();
+    }
+
+    sut.process();
+
+    assertThat(dto.getStatus()).isEqualTo(Status.SUCCESS);
+    // each independent step waits for the other one, so they can't have been executed sequentially
+    assertThat(bothStarted.getCount()).isEqualTo(0L);
+    assertThat(executedSteps).containsExactly(projectStep1, projectStep2);
+    assertThat(metrics.getReport(1L).getSteps()).hasSize(4);
+  }
+
+  @Test
+  public void do_not_execute_next_steps_when_a_concurrent_step_fails() throws Exception {
+    settings.setProperty(ComputationService.PROPERTY_STEP_THREADS, 2);
+    sut = newComputationService();
+    ComputationStep nextStep = mockStep();
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1, projectStep2, nextStep));
+    when(steps.dependencies(nextStep)).thenReturn(Arrays.asList(projectStep1, projectStep2));
+    doThrow(new IllegalStateException("pb")).when(projectStep1).execute();
+
+    try {
+      sut.process();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("pb");
+      assertThat(dto.getStatus()).isEqualTo(Status.FAILED);
+      verify(projectStep2).execute();
+      verify(nextStep, never()).execute();
+    }
+  }
+
+  @Test
+  public void fail_if_dependencies_can_not_be_satisfied() throws Exception {
+    settings.setProperty(ComputationService.PROPERTY_STEP_THREADS, 2);
+    sut = newComputationService();
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1));
+    when(steps.dependencies(projectStep1)).thenReturn(Arrays.asList(projectStep2));
+
+    try {
+      sut.process();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).startsWith("Dependencies of steps can't be satisfied");
+      verify(projectStep1, never()).execute();
+    }
+  }
+
+  private ComputationService newComputationService() {
+    return new ComputationService(new ReportQueue.Item(dto, new File("Do_not_care")), steps, activityManager, system, metrics, settings);
+  }
+
+  private static class WaitingStep implements ComputationStep {
+    private final CountDownLatch allStarted;
+
+    WaitingStep(CountDownLatch allStarted) {
+      this.allStarted = allStarted;
+    }
+
+    @Override
+    public void execute() {
+      allStarted.countDown();
+      try {
+        allStarted.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public String getDescription() {
+      return "Waiting step";
+    }
+  }
+
   private ComputationStep mockStep() {
     ComputationStep step = mock(ComputationStep.class);
     when(step.getDescription()).thenReturn(RandomStringUtils.randomAscii(5));
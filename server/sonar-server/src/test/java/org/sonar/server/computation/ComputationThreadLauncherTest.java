@@ -20,7 +20,11 @@
 
 package org.sonar.server.computation;
 
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -28,13 +32,25 @@ import org.junit.Test;
 import org.junit.rules.DisableOnDebug;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
+import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.platform.ComponentContainer;
+import org.sonar.server.computation.container.ComputeEngineContainer;
 import org.sonar.server.computation.container.ContainerFactory;
 
-import static org.mockito.Mockito.atLeastOnce;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ComputationThreadLauncherTest {
 
@@ -60,31 +76,90 @@ public class ComputationThreadLauncherTest {
 
   @Test
   public void call_findAndBook_when_launching_a_recurrent_task() throws Exception {
-    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 0, 1, TimeUnit.MILLISECONDS);
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, TimeUnit.MILLISECONDS);
 
     sut.onServerStart(mock(Server.class));
 
     sleep();
 
-    verify(queue, atLeastOnce()).pop();
+    verify(queue, atLeast(2)).pop();
   }
 
   @Test
-  public void call_findAndBook_when_executing_task_immediately() throws Exception {
-    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, TimeUnit.HOURS);
-    sut.start();
+  public void start_one_worker_per_configured_thread() throws Exception {
+    // no report is added to the queue
+    emulateIdleQueue();
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 3, 1, TimeUnit.HOURS);
 
-    sut.startAnalysisTaskNow();
+    sut.onServerStart(mock(Server.class));
 
     sleep();
 
-    verify(queue, atLeastOnce()).pop();
+    verify(queue, times(3)).pop();
+  }
+
+  @Test
+  public void stop_waits_for_reports_being_processed() throws Exception {
+    emulateIdleQueue();
+    ReportQueue.Item item = new ReportQueue.Item(AnalysisReportDto.newForTests(1L), new File("report"));
+    when(queue.pop()).thenReturn(item, null);
+    final CountDownLatch processing = new CountDownLatch(1);
+    final AtomicBoolean processed = new AtomicBoolean(false);
+    ComputeEngineContainer computeEngineContainer = mock(ComputeEngineContainer.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        processing.countDown();
+        Thread.sleep(200L);
+        processed.set(!Thread.currentThread().isInterrupted());
+        return null;
+      }
+    }).when(computeEngineContainer).process();
+    when(containerFactory.create(componentContainer, item)).thenReturn(computeEngineContainer);
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 2, 1, TimeUnit.HOURS);
+
+    sut.onServerStart(mock(Server.class));
+    processing.await();
+    sut.stop();
+
+    assertThat(processed.get()).isTrue();
+    verify(queue).remove(item);
+  }
+
+  /**
+   * Workers wait for a report until they are woken up by {@link ReportQueue#wakeUp(int)}
+   */
+  private void emulateIdleQueue() throws InterruptedException {
+    final Semaphore newItems = new Semaphore(0);
+    when(queue.awaitNewItem(anyLong(), any(TimeUnit.class))).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        newItems.acquire();
+        return true;
+      }
+    });
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        newItems.release((Integer) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(queue).wakeUp(anyInt());
   }
 
   @Test
   public void test_real_constructor() throws Exception {
-    sut = new ComputationThreadLauncher(queue, componentContainer);
+    sut = new ComputationThreadLauncher(queue, componentContainer, new Settings());
     sut.start();
+
+    assertThat(sut.getWorkerCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void worker_count_is_configurable() throws Exception {
+    sut = new ComputationThreadLauncher(queue, componentContainer, new Settings().setProperty(ComputationThreadLauncher.PROPERTY_WORKER_COUNT, 4));
+
+    assertThat(sut.getWorkerCount()).isEqualTo(4);
   }
 
   private void sleep() throws InterruptedException {
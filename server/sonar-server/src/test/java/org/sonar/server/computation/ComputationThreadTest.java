@@ -24,6 +24,8 @@ import java.io.IOException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.platform.ComponentContainer;
@@ -32,8 +34,11 @@ import org.sonar.server.computation.container.ContainerFactory;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -65,15 +70,54 @@ public class ComputationThreadTest {
     AnalysisReportDto report = AnalysisReportDto.newForTests(1L);
     ReportQueue.Item item = new ReportQueue.Item(report, temp.newFile());
 
-    when(queue.pop()).thenReturn(item);
+    when(queue.pop()).thenReturn(item, null);
     when(containerFactory.create(componentContainer, item)).thenReturn(mock(ComputeEngineContainer.class));
 
     sut.run();
 
-    verify(queue).pop();
+    verify(queue, times(2)).pop();
     verify(containerFactory).create(componentContainer, item);
   }
 
+  @Test
+  public void pop_queue_until_empty() throws IOException {
+    ReportQueue.Item item1 = new ReportQueue.Item(AnalysisReportDto.newForTests(1L), temp.newFile());
+    ReportQueue.Item item2 = new ReportQueue.Item(AnalysisReportDto.newForTests(2L), temp.newFile());
+
+    when(queue.pop()).thenReturn(item1, item2, null);
+    when(containerFactory.create(any(ComponentContainer.class), any(ReportQueue.Item.class))).thenReturn(mock(ComputeEngineContainer.class));
+
+    sut.run();
+
+    verify(queue, times(3)).pop();
+    verify(containerFactory).create(componentContainer, item1);
+    verify(containerFactory).create(componentContainer, item2);
+    verify(queue).remove(item1);
+    verify(queue).remove(item2);
+  }
+
+  @Test
+  public void stop_popping_queue_once_current_report_is_processed() throws IOException {
+    ReportQueue.Item item1 = new ReportQueue.Item(AnalysisReportDto.newForTests(1L), temp.newFile());
+    ReportQueue.Item item2 = new ReportQueue.Item(AnalysisReportDto.newForTests(2L), temp.newFile());
+    when(queue.pop()).thenReturn(item1, item2, null);
+    ComputeEngineContainer computeEngineContainer = mock(ComputeEngineContainer.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        sut.stop();
+        return null;
+      }
+    }).when(computeEngineContainer).process();
+    when(containerFactory.create(componentContainer, item1)).thenReturn(computeEngineContainer);
+
+    sut.run();
+
+    verify(queue).pop();
+    verify(queue).remove(item1);
+    verify(containerFactory, never()).create(componentContainer, item2);
+  }
+
   @Test
   public void handle_error_during_queue_pop() {
     when(queue.pop()).thenThrow(new IllegalStateException());
@@ -89,7 +133,7 @@ public class ComputationThreadTest {
 
     AnalysisReportDto report = AnalysisReportDto.newForTests(1L).setProjectKey("P1");
     ReportQueue.Item item = new ReportQueue.Item(report, temp.newFile());
-    when(queue.pop()).thenReturn(item);
+    when(queue.pop()).thenReturn(item, null);
     doThrow(new IllegalStateException("pb")).when(queue).remove(item);
 
     sut.run();
@@ -21,7 +21,6 @@
 package org.sonar.server.computation;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -30,6 +29,8 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.DbTester;
@@ -39,9 +40,16 @@ import org.sonar.server.computation.db.AnalysisReportDao;
 import org.sonar.server.db.DbClient;
 import org.sonar.test.DbTests;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -88,11 +96,12 @@ public class ReportQueueTest {
   public void add_report_to_queue() {
     // must:
     // 1. insert metadata in db
-    // 2. copy report content to directory /data/analysis
+    // 2. store uncompressed report file in directory /data/analysis
     ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
 
     assertThat(item).isNotNull();
-    assertThat(item.zipFile).isFile().exists().hasContent("some data").hasParent(new File(dataDir, "analysis"));
+    assertThat(item.reportDir).isDirectory().exists().hasParent(new File(dataDir, "analysis"));
+    assertThat(new File(item.reportDir, "report.data")).isFile().hasContent("some data");
     assertThat(item.dto.getUuid()).isNotEmpty();
     assertThat(item.dto.getId()).isGreaterThan(0L);
 
@@ -111,7 +120,17 @@ public class ReportQueueTest {
     assertThat(report.getStartedAt()).isNull();
     assertThat(report.getFinishedAt()).isNull();
 
-    assertThat(FileUtils.listFiles(analysisDir(), new String[] {"zip"}, false)).hasSize(1);
+    assertThat(analysisDir().list()).containsOnly(item.reportDir.getName());
+  }
+
+  @Test
+  public void adding_report_wakes_up_waiting_worker() throws Exception {
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isFalse();
+
+    sut.add("P1", "Project 1", generateData());
+
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isFalse();
   }
 
   @Test
@@ -122,7 +141,7 @@ public class ReportQueueTest {
 
     ReportQueue.Item item = sut.pop();
     assertThat(item.dto.getProjectKey()).isEqualTo("P1");
-    assertThat(item.zipFile).exists().isFile().hasExtension("zip");
+    assertThat(item.reportDir).exists().isDirectory();
 
     // status changed from PENDING to WORKING
     assertThat(item.dto.getStatus()).isEqualTo(WORKING);
@@ -139,6 +158,29 @@ public class ReportQueueTest {
     assertThat(reports).extracting("status").containsOnly(WORKING);
   }
 
+  @Test
+  public void do_not_pop_reports_of_locked_project() {
+    sut.add("P1", "Project 1", generateData());
+    sut.add("P2", "Project 2", generateData());
+
+    assertThat(sut.tryLockProject("P1")).isTrue();
+    assertThat(sut.tryLockProject("P1")).isFalse();
+    assertThat(sut.pop().dto.getProjectKey()).isEqualTo("P2");
+    assertThat(sut.pop()).isNull();
+
+    sut.unlockProject("P1");
+    assertThat(sut.pop().dto.getProjectKey()).isEqualTo("P1");
+  }
+
+  @Test
+  public void do_not_lock_project_while_its_report_is_processed() {
+    sut.add("P1", "Project 1", generateData());
+    sut.pop();
+
+    assertThat(sut.tryLockProject("P1")).isFalse();
+    assertThat(sut.tryLockProject("P2")).isTrue();
+  }
+
   @Test
   public void remove() {
     ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
@@ -146,7 +188,24 @@ public class ReportQueueTest {
 
     sut.remove(item);
     assertThat(db.countRowsOfTable("analysis_reports")).isEqualTo(0);
-    assertThat(item.zipFile).doesNotExist();
+    assertThat(item.reportDir).doesNotExist();
+  }
+
+  @Test
+  public void removing_report_wakes_up_waiting_worker() throws Exception {
+    sut.add("P1", "Project 1", generateData());
+    sut.add("P1", "Project 1", generateData());
+    ReportQueue.Item item = sut.pop();
+    // the second report waits for the first one to be processed
+    assertThat(sut.pop()).isNull();
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isFalse();
+
+    sut.remove(item);
+
+    assertThat(sut.awaitNewItem(1, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(sut.pop().dto.getProjectKey()).isEqualTo("P1");
   }
 
   @Test
@@ -154,7 +213,7 @@ public class ReportQueueTest {
     ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
 
     // emulate corruption: file is missing on FS
-    FileUtils.deleteQuietly(item.zipFile);
+    FileUtils.deleteQuietly(item.reportDir);
 
     assertThat(sut.pop()).isNull();
 
@@ -162,6 +221,44 @@ public class ReportQueueTest {
     assertThat(db.countRowsOfTable("analysis_reports")).isEqualTo(0);
   }
 
+  @Test
+  public void convert_report_submitted_to_previous_version() throws Exception {
+    ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
+    // reports of previous versions are zip files with one file per domain and component
+    FileUtils.deleteQuietly(item.reportDir);
+    File legacyZip = new File(analysisDir(), item.dto.getUuid() + ".zip");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(legacyZip))) {
+      zip.putNextEntry(new ZipEntry("metadata.pb"));
+      zip.write(BatchReport.Metadata.newBuilder().setProjectKey("P1").build().toByteArray());
+      zip.closeEntry();
+    }
+
+    ReportQueue.Item popped = sut.pop();
+
+    assertThat(popped.reportDir).isEqualTo(item.reportDir).isDirectory();
+    assertThat(legacyZip).doesNotExist();
+    BatchReportReader reader = new BatchReportReader(popped.reportDir);
+    try {
+      assertThat(reader.readMetadata().getProjectKey()).isEqualTo("P1");
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void do_not_pop_corrupted_report_submitted_to_previous_version() throws Exception {
+    ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
+    FileUtils.deleteQuietly(item.reportDir);
+    File legacyZip = new File(analysisDir(), item.dto.getUuid() + ".zip");
+    FileUtils.write(legacyZip, "not a zip");
+
+    assertThat(sut.pop()).isNull();
+
+    assertThat(legacyZip).doesNotExist();
+    assertThat(item.reportDir).doesNotExist();
+    assertThat(db.countRowsOfTable("analysis_reports")).isEqualTo(0);
+  }
+
   @Test
   public void clear() {
     sut.add("P1", "Project 1", generateData());
@@ -196,8 +293,9 @@ public class ReportQueueTest {
 
   }
 
-  private InputStream generateData() {
-    return IOUtils.toInputStream("some data");
+  private static InputStream generateData() {
+    // report file is compressed by batch
+    return new DeflaterInputStream(new ByteArrayInputStream("some data".getBytes(StandardCharsets.UTF_8)));
   }
 
   private File analysisDir() {
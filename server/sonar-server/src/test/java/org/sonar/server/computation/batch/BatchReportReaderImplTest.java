@@ -22,14 +22,15 @@ package org.sonar.server.computation.batch;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportWriter;
-import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.util.CloseableIterator;
 
 import static com.google.common.collect.ImmutableList.of;
@@ -57,21 +58,37 @@ public class BatchReportReaderImplTest {
   @Rule
   public JUnitTempFolder tempFolder = new JUnitTempFolder();
 
+  private File reportDir;
   private BatchReportWriter writer;
   private BatchReportReaderImpl underTest;
-  private FileStructure fileStructure;
 
   @Before
   public void setUp() throws Exception {
-    BatchReportDirectoryHolder holder = new ImmutableBatchReportDirectoryHolder(tempFolder.newDir());
-    underTest = new BatchReportReaderImpl(holder);
-    writer = new BatchReportWriter(holder.getDirectory());
-    fileStructure = new FileStructure(holder.getDirectory());
+    reportDir = tempFolder.newDir();
+    writer = new BatchReportWriter(reportDir);
+  }
+
+  @After
+  public void tearDown() {
+    if (underTest != null) {
+      underTest.stop();
+    }
+  }
+
+  /**
+   * Closes the report written so far and reads it in place.
+   */
+  private BatchReportReaderImpl underTest() {
+    if (underTest == null) {
+      writer.close();
+      underTest = new BatchReportReaderImpl(new ReportQueue.Item(AnalysisReportDto.newForTests(1L), reportDir));
+    }
+    return underTest;
   }
 
   @Test(expected = IllegalStateException.class)
   public void readMetadata_throws_ISE_if_no_metadata() {
-    underTest.readMetadata();
+    underTest().readMetadata();
   }
 
   @Test
@@ -80,21 +97,21 @@ public class BatchReportReaderImplTest {
 
     writer.writeMetadata(metadata);
 
-    BatchReport.Metadata res = underTest.readMetadata();
+    BatchReport.Metadata res = underTest().readMetadata();
     assertThat(res).isEqualTo(metadata);
-    assertThat(underTest.readMetadata()).isSameAs(res);
+    assertThat(underTest().readMetadata()).isSameAs(res);
   }
 
   @Test
   public void readComponentMeasures_returns_empty_list_if_there_is_no_measure() {
-    assertThat(underTest.readComponentMeasures(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readComponentMeasures(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readComponentMeasures_returns_measures() {
     writer.writeComponentMeasures(COMPONENT_REF, of(MEASURE));
 
-    List<BatchReport.Measure> measures = underTest.readComponentMeasures(COMPONENT_REF);
+    List<BatchReport.Measure> measures = underTest().readComponentMeasures(COMPONENT_REF);
     assertThat(measures).hasSize(1);
     assertThat(measures.get(0)).isEqualTo(MEASURE);
   }
@@ -103,19 +120,19 @@ public class BatchReportReaderImplTest {
   public void readComponentMeasures_is_not_cached() {
     writer.writeComponentMeasures(COMPONENT_REF, of(MEASURE));
 
-    assertThat(underTest.readComponentMeasures(COMPONENT_REF)).isNotSameAs(underTest.readComponentMeasures(COMPONENT_REF));
+    assertThat(underTest().readComponentMeasures(COMPONENT_REF)).isNotSameAs(underTest().readComponentMeasures(COMPONENT_REF));
   }
 
   @Test
   public void readChangesets_returns_null_if_no_changeset() {
-    assertThat(underTest.readChangesets(COMPONENT_REF)).isNull();
+    assertThat(underTest().readChangesets(COMPONENT_REF)).isNull();
   }
 
   @Test
   public void verify_readChangesets_returns_changesets() {
     writer.writeComponentChangesets(CHANGESETS);
 
-    BatchReport.Changesets res = underTest.readChangesets(COMPONENT_REF);
+    BatchReport.Changesets res = underTest().readChangesets(COMPONENT_REF);
     assertThat(res).isEqualTo(CHANGESETS);
   }
 
@@ -123,38 +140,38 @@ public class BatchReportReaderImplTest {
   public void readChangesets_is_not_cached() {
     writer.writeComponentChangesets(CHANGESETS);
 
-    assertThat(underTest.readChangesets(COMPONENT_REF)).isNotSameAs(underTest.readChangesets(COMPONENT_REF));
+    assertThat(underTest().readChangesets(COMPONENT_REF)).isNotSameAs(underTest().readChangesets(COMPONENT_REF));
   }
 
   @Test(expected = IllegalStateException.class)
   public void readComponent_throws_ISE_if_file_does_not_exist() {
-    underTest.readComponent(COMPONENT_REF);
+    underTest().readComponent(COMPONENT_REF);
   }
 
   @Test
   public void verify_readComponent_returns_Component() {
     writer.writeComponent(COMPONENT);
 
-    assertThat(underTest.readComponent(COMPONENT_REF)).isEqualTo(COMPONENT);
+    assertThat(underTest().readComponent(COMPONENT_REF)).isEqualTo(COMPONENT);
   }
 
   @Test
   public void readComponent_is_not_cached() {
     writer.writeComponent(COMPONENT);
 
-    assertThat(underTest.readComponent(COMPONENT_REF)).isNotSameAs(underTest.readComponent(COMPONENT_REF));
+    assertThat(underTest().readComponent(COMPONENT_REF)).isNotSameAs(underTest().readComponent(COMPONENT_REF));
   }
 
   @Test
   public void readComponentIssues_returns_empty_list_if_file_does_not_exist() {
-    assertThat(underTest.readComponentIssues(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readComponentIssues(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readComponentIssues_returns_Issues() {
     writer.writeComponentIssues(COMPONENT_REF, of(ISSUE));
 
-    List<BatchReport.Issue> res = underTest.readComponentIssues(COMPONENT_REF);
+    List<BatchReport.Issue> res = underTest().readComponentIssues(COMPONENT_REF);
     assertThat(res).hasSize(1);
     assertThat(res.get(0)).isEqualTo(ISSUE);
   }
@@ -163,38 +180,38 @@ public class BatchReportReaderImplTest {
   public void readComponentIssues_it_not_cached() {
     writer.writeComponentIssues(COMPONENT_REF, of(ISSUE));
 
-    assertThat(underTest.readComponentIssues(COMPONENT_REF)).isNotSameAs(underTest.readComponentIssues(COMPONENT_REF));
+    assertThat(underTest().readComponentIssues(COMPONENT_REF)).isNotSameAs(underTest().readComponentIssues(COMPONENT_REF));
   }
 
   @Test(expected = IllegalStateException.class)
   public void readDeletedComponentIssues_throws_ISE_if_file_does_not_exist() {
-    underTest.readDeletedComponentIssues(COMPONENT_REF);
+    underTest().readDeletedComponentIssues(COMPONENT_REF);
   }
 
   @Test
   public void verify_readDeletedComponentIssues_returns_Issues() {
     writer.writeDeletedComponentIssues(COMPONENT_REF, COMPONENT_UUID, of(ISSUE));
 
-    assertThat(underTest.readDeletedComponentIssues(COMPONENT_REF)).isEqualTo(ISSUES);
+    assertThat(underTest().readDeletedComponentIssues(COMPONENT_REF)).isEqualTo(ISSUES);
   }
 
   @Test
   public void readDeletedComponentIssues_it_not_cached() {
     writer.writeDeletedComponentIssues(COMPONENT_REF, COMPONENT_UUID, of(ISSUE));
 
-    assertThat(underTest.readDeletedComponentIssues(COMPONENT_REF)).isNotSameAs(underTest.readDeletedComponentIssues(COMPONENT_REF));
+    assertThat(underTest().readDeletedComponentIssues(COMPONENT_REF)).isNotSameAs(underTest().readDeletedComponentIssues(COMPONENT_REF));
   }
 
   @Test
   public void readComponentDuplications_returns_empty_list_if_file_does_not_exist() {
-    assertThat(underTest.readComponentDuplications(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readComponentDuplications(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readComponentDuplications_returns_Issues() {
     writer.writeComponentDuplications(COMPONENT_REF, of(DUPLICATION));
 
-    List<BatchReport.Duplication> res = underTest.readComponentDuplications(COMPONENT_REF);
+    List<BatchReport.Duplication> res = underTest().readComponentDuplications(COMPONENT_REF);
     assertThat(res).hasSize(1);
     assertThat(res.get(0)).isEqualTo(DUPLICATION);
   }
@@ -203,19 +220,19 @@ public class BatchReportReaderImplTest {
   public void readComponentDuplications_it_not_cached() {
     writer.writeComponentDuplications(COMPONENT_REF, of(DUPLICATION));
 
-    assertThat(underTest.readComponentDuplications(COMPONENT_REF)).isNotSameAs(underTest.readComponentDuplications(COMPONENT_REF));
+    assertThat(underTest().readComponentDuplications(COMPONENT_REF)).isNotSameAs(underTest().readComponentDuplications(COMPONENT_REF));
   }
 
   @Test
   public void readComponentSymbols_returns_empty_list_if_file_does_not_exist() {
-    assertThat(underTest.readComponentSymbols(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readComponentSymbols(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readComponentSymbols_returns_Issues() {
     writer.writeComponentSymbols(COMPONENT_REF, of(SYMBOL));
 
-    List<BatchReport.Symbols.Symbol> res = underTest.readComponentSymbols(COMPONENT_REF);
+    List<BatchReport.Symbols.Symbol> res = underTest().readComponentSymbols(COMPONENT_REF);
     assertThat(res).hasSize(1);
     assertThat(res.get(0)).isEqualTo(SYMBOL);
   }
@@ -224,76 +241,81 @@ public class BatchReportReaderImplTest {
   public void readComponentSymbols_it_not_cached() {
     writer.writeComponentSymbols(COMPONENT_REF, of(SYMBOL));
 
-    assertThat(underTest.readComponentSymbols(COMPONENT_REF)).isNotSameAs(underTest.readComponentSymbols(COMPONENT_REF));
+    assertThat(underTest().readComponentSymbols(COMPONENT_REF)).isNotSameAs(underTest().readComponentSymbols(COMPONENT_REF));
   }
 
   @Test
   public void readComponentSyntaxHighlighting_returns_empty_CloseableIterator_when_file_does_not_exist() {
-    assertThat(underTest.readComponentSyntaxHighlighting(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readComponentSyntaxHighlighting(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readComponentSyntaxHighlighting() {
     writer.writeComponentSyntaxHighlighting(COMPONENT_REF, of(SYNTAX_HIGHLIGHTING_1, SYNTAX_HIGHLIGHTING_2));
 
-    CloseableIterator<BatchReport.SyntaxHighlighting> res = underTest.readComponentSyntaxHighlighting(COMPONENT_REF);
+    CloseableIterator<BatchReport.SyntaxHighlighting> res = underTest().readComponentSyntaxHighlighting(COMPONENT_REF);
     assertThat(res).containsExactly(SYNTAX_HIGHLIGHTING_1, SYNTAX_HIGHLIGHTING_2);
     res.close();
   }
 
   @Test
   public void readComponentCoverage_returns_empty_CloseableIterator_when_file_does_not_exist() {
-    assertThat(underTest.readComponentCoverage(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readComponentCoverage(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readComponentCoverage() {
     writer.writeComponentCoverage(COMPONENT_REF, of(COVERAGE_1, COVERAGE_2));
 
-    CloseableIterator<BatchReport.Coverage> res = underTest.readComponentCoverage(COMPONENT_REF);
+    CloseableIterator<BatchReport.Coverage> res = underTest().readComponentCoverage(COMPONENT_REF);
     assertThat(res).containsExactly(COVERAGE_1, COVERAGE_2);
     res.close();
   }
 
   @Test(expected = IllegalStateException.class)
   public void readFileSource_throws_ISE_when_file_does_not_exist() {
-    underTest.readFileSource(COMPONENT_REF);
+    underTest().readFileSource(COMPONENT_REF);
+  }
+
+  @Test
+  public void reader_can_be_stopped_without_having_been_used() {
+    underTest = new BatchReportReaderImpl(new ReportQueue.Item(AnalysisReportDto.newForTests(1L), tempFolder.newDir()));
+    underTest.stop();
   }
 
   @Test
   public void verify_readFileSource() throws IOException {
-    File file = writer.getSourceFile(COMPONENT_REF);
-    FileUtils.writeLines(file, of("1", "2", "3"));
+    writer.writeFileSource(COMPONENT_REF, "1\n2\n3");
 
-    CloseableIterator<String> res = underTest.readFileSource(COMPONENT_REF);
+    CloseableIterator<String> res = underTest().readFileSource(COMPONENT_REF);
     assertThat(res).containsExactly("1", "2", "3");
     res.close();
   }
 
   @Test
   public void readTests_returns_empty_CloseableIterator_when_file_does_not_exist() {
-    assertThat(underTest.readTests(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readTests(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readTests() throws IOException {
     writer.writeTests(COMPONENT_REF, of(TEST_1, TEST_2));
 
-    CloseableIterator<BatchReport.Test> res = underTest.readTests(COMPONENT_REF);
+    CloseableIterator<BatchReport.Test> res = underTest().readTests(COMPONENT_REF);
     assertThat(res).containsExactly(TEST_1, TEST_2);
     res.close();
   }
 
   @Test
   public void readCoverageDetails_returns_empty_CloseableIterator_when_file_does_not_exist() {
-    assertThat(underTest.readCoverageDetails(COMPONENT_REF)).isEmpty();
+    assertThat(underTest().readCoverageDetails(COMPONENT_REF)).isEmpty();
   }
 
   @Test
   public void verify_readCoverageDetails() throws IOException {
     writer.writeCoverageDetails(COMPONENT_REF, of(COVERAGE_DETAIL_1, COVERAGE_DETAIL_2));
 
-    CloseableIterator<BatchReport.CoverageDetail> res = underTest.readCoverageDetails(COMPONENT_REF);
+    CloseableIterator<BatchReport.CoverageDetail> res = underTest().readCoverageDetails(COMPONENT_REF);
     assertThat(res).containsExactly(COVERAGE_DETAIL_1, COVERAGE_DETAIL_2);
     res.close();
   }
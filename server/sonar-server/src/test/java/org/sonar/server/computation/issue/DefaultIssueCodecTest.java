@@ -0,0 +1,185 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Test;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.issue.internal.FieldDiffs;
+import org.sonar.api.issue.internal.IssueChangeContext;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class DefaultIssueCodecTest {
+
+  private static final Date DATE_1 = new Date(1_400_000_000_000L);
+  private static final Date DATE_2 = new Date(1_500_000_000_000L);
+
+  private DefaultIssueCodec underTest = new DefaultIssueCodec();
+
+  @Test
+  public void encode_and_decode_issue_with_all_fields() throws Exception {
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ISSUE_KEY")
+      .setComponentUuid("FILE_UUID")
+      .setComponentKey("FILE_KEY")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("PROJECT_KEY")
+      .setRuleKey(RuleKey.of("squid", "S001"))
+      .setLanguage("java")
+      .setSeverity(Severity.BLOCKER)
+      .setManualSeverity(true)
+      .setMessage("the message")
+      .setLine(12)
+      .setEffortToFix(3.5)
+      .setDebt(Duration.create(25L))
+      .setStatus("RESOLVED")
+      .setResolution("FIXED")
+      .setReporter("reporter")
+      .setAssignee("assignee")
+      .setChecksum("checksum")
+      .setAttribute("jira", "SONAR-1234")
+      .setAuthorLogin("author")
+      .setActionPlanKey("ACTION_PLAN")
+      .setTags(Arrays.asList("tag1", "tag2"))
+      .setCreationDate(DATE_1)
+      .setUpdateDate(DATE_2)
+      .setCloseDate(DATE_2)
+      .setNew(false)
+      .setEndOfLife(true)
+      .setOnDisabledRule(true)
+      .setChanged(true)
+      .setSendNotifications(true)
+      .setSelectedAt(123L);
+    issue.addComment(new DefaultIssueComment().setKey("COMMENT_KEY").setIssueKey("ISSUE_KEY").setUserLogin("john")
+      .setMarkdownText("*comment*").setCreatedAt(DATE_1).setUpdatedAt(DATE_2).setNew(true));
+    issue.addChange(new FieldDiffs().setIssueKey("ISSUE_KEY").setUserLogin("john").setCreationDate(DATE_1)
+      .setDiff("severity", "MINOR", "BLOCKER"));
+    issue.setFieldChange(IssueChangeContext.createUser(DATE_2, "john"), "effortToFix", 1.5, 3.5);
+    issue.setFieldChange(IssueChangeContext.createUser(DATE_2, "john"), "technicalDebt", 10L, 25L);
+
+    DefaultIssue decoded = encodeAndDecode(issue);
+
+    assertThat(decoded.key()).isEqualTo("ISSUE_KEY");
+    assertThat(decoded.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(decoded.componentKey()).isEqualTo("FILE_KEY");
+    assertThat(decoded.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(decoded.moduleUuidPath()).isEqualTo(".MODULE_UUID.");
+    assertThat(decoded.projectUuid()).isEqualTo("PROJECT_UUID");
+    assertThat(decoded.projectKey()).isEqualTo("PROJECT_KEY");
+    assertThat(decoded.ruleKey()).isEqualTo(RuleKey.of("squid", "S001"));
+    assertThat(decoded.language()).isEqualTo("java");
+    assertThat(decoded.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(decoded.manualSeverity()).isTrue();
+    assertThat(decoded.message()).isEqualTo("the message");
+    assertThat(decoded.line()).isEqualTo(12);
+    assertThat(decoded.effortToFix()).isEqualTo(3.5);
+    assertThat(decoded.debt()).isEqualTo(Duration.create(25L));
+    assertThat(decoded.status()).isEqualTo("RESOLVED");
+    assertThat(decoded.resolution()).isEqualTo("FIXED");
+    assertThat(decoded.reporter()).isEqualTo("reporter");
+    assertThat(decoded.assignee()).isEqualTo("assignee");
+    assertThat(decoded.checksum()).isEqualTo("checksum");
+    assertThat(decoded.attributes()).containsOnly(entry("jira", "SONAR-1234"));
+    assertThat(decoded.authorLogin()).isEqualTo("author");
+    assertThat(decoded.actionPlanKey()).isEqualTo("ACTION_PLAN");
+    assertThat(decoded.tags()).containsExactly("tag1", "tag2");
+    assertThat(decoded.creationDate()).isEqualTo(DATE_1);
+    assertThat(decoded.updateDate()).isEqualTo(DATE_2);
+    assertThat(decoded.closeDate()).isEqualTo(DATE_2);
+    assertThat(decoded.isNew()).isFalse();
+    assertThat(decoded.isEndOfLife()).isTrue();
+    assertThat(decoded.isOnDisabledRule()).isTrue();
+    assertThat(decoded.isChanged()).isTrue();
+    assertThat(decoded.mustSendNotifications()).isTrue();
+    assertThat(decoded.selectedAt()).isEqualTo(123L);
+
+    assertThat(decoded.comments()).hasSize(1);
+    DefaultIssueComment comment = (DefaultIssueComment) decoded.comments().get(0);
+    assertThat(comment.key()).isEqualTo("COMMENT_KEY");
+    assertThat(comment.issueKey()).isEqualTo("ISSUE_KEY");
+    assertThat(comment.userLogin()).isEqualTo("john");
+    assertThat(comment.markdownText()).isEqualTo("*comment*");
+    assertThat(comment.createdAt()).isEqualTo(DATE_1);
+    assertThat(comment.updatedAt()).isEqualTo(DATE_2);
+    assertThat(comment.isNew()).isTrue();
+  }
+
+  @Test
+  public void keep_current_change_as_one_of_the_changes() throws Exception {
+    DefaultIssue issue = new DefaultIssue().setKey("ISSUE_KEY");
+    issue.addChange(new FieldDiffs().setUserLogin("john").setCreationDate(DATE_1).setDiff("severity", "MINOR", "BLOCKER"));
+    issue.setFieldChange(IssueChangeContext.createUser(DATE_2, "john"), "effortToFix", 1.5, 3.5);
+    issue.setFieldChange(IssueChangeContext.createUser(DATE_2, "john"), "technicalDebt", 10L, 25L);
+
+    DefaultIssue decoded = encodeAndDecode(issue);
+
+    assertThat(decoded.changes()).hasSize(3);
+    assertThat(decoded.changes().get(0).diffs()).containsOnlyKeys("severity");
+    assertThat(decoded.changes().get(0).get("severity").oldValue()).isEqualTo("MINOR");
+    assertThat(decoded.changes().get(0).creationDate()).isEqualTo(DATE_1);
+    assertThat(decoded.changes().get(1)).isSameAs(decoded.currentChange());
+    assertThat(decoded.changes().get(2)).isSameAs(decoded.currentChange());
+    assertThat(decoded.currentChange().userLogin()).isEqualTo("john");
+    assertThat(decoded.currentChange().get("effortToFix").newValue()).isEqualTo(3.5);
+    assertThat(decoded.currentChange().get("technicalDebt").oldValue()).isEqualTo(10L);
+  }
+
+  @Test
+  public void encode_and_decode_issue_with_no_optional_fields() throws Exception {
+    DefaultIssue decoded = encodeAndDecode(new DefaultIssue());
+
+    assertThat(decoded.key()).isNull();
+    assertThat(decoded.ruleKey()).isNull();
+    assertThat(decoded.status()).isNull();
+    assertThat(decoded.line()).isNull();
+    assertThat(decoded.debt()).isNull();
+    assertThat(decoded.creationDate()).isNull();
+    assertThat(decoded.attributes()).isEmpty();
+    assertThat(decoded.comments()).isEmpty();
+    assertThat(decoded.tags()).isEmpty();
+    assertThat(decoded.changes()).isEmpty();
+    assertThat(decoded.currentChange()).isNull();
+    assertThat(decoded.isNew()).isTrue();
+  }
+
+  private DefaultIssue encodeAndDecode(DefaultIssue issue) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      underTest.write(issue, output);
+    }
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    DefaultIssue decoded = underTest.read(input);
+    assertThat(input.read()).isEqualTo(-1);
+    return decoded;
+  }
+}
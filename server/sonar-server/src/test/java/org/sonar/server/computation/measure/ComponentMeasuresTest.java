@@ -0,0 +1,92 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.server.computation.measure.Measure.newMeasureBuilder;
+
+public class ComponentMeasuresTest {
+
+  private static final Measure SOME_MEASURE = newMeasureBuilder().create(1);
+  private static final Measure OTHER_MEASURE = newMeasureBuilder().create(2);
+
+  private ComponentMeasures underTest = new ComponentMeasures();
+
+  @Test
+  public void keys_differ_by_metric_rule_and_characteristic() {
+    assertThat(ComponentMeasures.key(1, null, null)).isNotEqualTo(ComponentMeasures.key(2, null, null));
+    assertThat(ComponentMeasures.key(1, 5, null)).isNotEqualTo(ComponentMeasures.key(1, null, 5));
+    assertThat(ComponentMeasures.key(1, 5, null)).isNotEqualTo(ComponentMeasures.key(1, null, null));
+    assertThat(ComponentMeasures.key(1, 5, null)).isNotEqualTo(ComponentMeasures.key(1, 6, null));
+    assertThat(ComponentMeasures.key(1, -1, null)).isNotEqualTo(ComponentMeasures.key(2, null, null));
+  }
+
+  @Test
+  public void get_returns_null_if_no_measure() {
+    assertThat(underTest.get(ComponentMeasures.key(1, null, null))).isNull();
+    assertThat(underTest.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void put_does_not_override_unless_asked_to() {
+    long key = ComponentMeasures.key(1, null, null);
+
+    assertThat(underTest.put(key, 1, SOME_MEASURE, false)).isTrue();
+    assertThat(underTest.put(key, 1, OTHER_MEASURE, false)).isFalse();
+    assertThat(underTest.get(key)).isSameAs(SOME_MEASURE);
+
+    assertThat(underTest.put(key, 1, OTHER_MEASURE, true)).isTrue();
+    assertThat(underTest.get(key)).isSameAs(OTHER_MEASURE);
+    assertThat(underTest.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void store_many_measures() {
+    for (int metricId = 0; metricId < 1000; metricId++) {
+      underTest.put(ComponentMeasures.key(metricId, null, null), metricId, newMeasureBuilder().create(metricId), false);
+      underTest.put(ComponentMeasures.key(metricId, metricId, null), metricId, SOME_MEASURE, false);
+    }
+
+    assertThat(underTest.size()).isEqualTo(2000);
+    for (int metricId = 0; metricId < 1000; metricId++) {
+      assertThat(underTest.get(ComponentMeasures.key(metricId, null, null)).getIntValue()).isEqualTo(metricId);
+      assertThat(underTest.get(ComponentMeasures.key(metricId, metricId, null))).isSameAs(SOME_MEASURE);
+      assertThat(underTest.get(ComponentMeasures.key(metricId, null, metricId))).isNull();
+    }
+    int found = 0;
+    for (int slot = 0; slot < underTest.capacity(); slot++) {
+      if (underTest.measureAt(slot) != null) {
+        found++;
+      }
+    }
+    assertThat(found).isEqualTo(2000);
+  }
+
+  @Test
+  public void batch_measures_are_not_loaded_by_default() {
+    assertThat(underTest.isBatchMeasuresLoaded()).isFalse();
+
+    underTest.setBatchMeasuresLoaded();
+
+    assertThat(underTest.isBatchMeasuresLoaded()).isTrue();
+  }
+}
@@ -46,6 +46,7 @@ import org.sonar.server.component.db.ComponentDao;
 import org.sonar.server.component.db.SnapshotDao;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
 import org.sonar.server.computation.debt.Characteristic;
@@ -73,10 +74,14 @@ public class MeasureRepositoryImplTest {
   public static final DbTester dbTester = new DbTester();
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
   private static final String FILE_COMPONENT_KEY = "file cpt key";
   private static final DumbComponent FILE_COMPONENT = DumbComponent.builder(Component.Type.FILE, 1).setKey(FILE_COMPONENT_KEY).build();
   private static final DumbComponent OTHER_COMPONENT = DumbComponent.builder(Component.Type.FILE, 2).setKey("some other key").build();
+  private static final DumbComponent PROJECT = DumbComponent.builder(Component.Type.PROJECT, 3).setUuid("PROJECT_UUID").setKey("project key")
+    .addChildren(FILE_COMPONENT, OTHER_COMPONENT).build();
   private static final String METRIC_KEY_1 = "metric 1";
   private static final int METRIC_ID_1 = 1;
   private static final String METRIC_KEY_2 = "metric 2";
@@ -86,6 +91,8 @@ public class MeasureRepositoryImplTest {
   private static final long LAST_SNAPSHOT_ID = 123;
   private static final long OTHER_SNAPSHOT_ID = 369;
   private static final long COMPONENT_ID = 567;
+  private static final long OTHER_COMPONENT_ID = 568;
+  private static final long OTHER_COMPONENT_LAST_SNAPSHOT_ID = 124;
   private static final Measure SOME_MEASURE = Measure.newMeasureBuilder().create("some value");
   private static final String SOME_DATA = "some data";
   private static final RuleDto SOME_RULE = RuleDto.createFor(RuleKey.of("A", "1")).setId(963);
@@ -94,19 +101,22 @@ public class MeasureRepositoryImplTest {
   private DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new MeasureDao(), new SnapshotDao(), new MetricDao(), new ComponentDao());
   private MetricRepository metricRepository = mock(MetricRepository.class);
   private RuleCache ruleCache = mock(RuleCache.class);
-  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, ruleCache);
+  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, ruleCache, treeRootHolder);
 
   private DbClient mockedDbClient = mock(DbClient.class);
   private BatchReportReader mockBatchReportReader = mock(BatchReportReader.class);
-  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, mockBatchReportReader, metricRepository, ruleCache);
+  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, mockBatchReportReader, metricRepository, ruleCache, treeRootHolder);
 
   @CheckForNull
   private DbSession dbSession;
 
   @Before
   public void setUp() throws Exception {
+    treeRootHolder.setRoot(PROJECT);
+    when(metric1.getId()).thenReturn(METRIC_ID_1);
     when(metric1.getKey()).thenReturn(METRIC_KEY_1);
     when(metric1.getType()).thenReturn(Metric.MetricType.STRING);
+    when(metric2.getId()).thenReturn(METRIC_ID_2);
     when(metric2.getKey()).thenReturn(METRIC_KEY_2);
     when(metric2.getType()).thenReturn(Metric.MetricType.STRING);
 
@@ -169,6 +179,22 @@ public class MeasureRepositoryImplTest {
     assertThat(res).isAbsent();
   }
 
+  @Test
+  public void getBaseMeasure_loads_measures_of_all_components_of_the_project_at_once() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    dbSession = dbClient.openSession(false);
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_1, LAST_SNAPSHOT_ID));
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_1, OTHER_COMPONENT_ID, OTHER_COMPONENT_LAST_SNAPSHOT_ID));
+    dbSession.commit();
+
+    assertThat(underTest.getBaseMeasure(FILE_COMPONENT, metric1).get().getStringValue()).isEqualTo(SOME_DATA);
+
+    // measures are not read from DB anymore
+    dbTester.executeUpdateSql("DELETE FROM project_measures");
+    assertThat(underTest.getBaseMeasure(OTHER_COMPONENT, metric1).get().getStringValue()).isEqualTo(SOME_DATA);
+    assertThat(underTest.getBaseMeasure(PROJECT, metric1)).isAbsent();
+  }
+
   @Test(expected = NullPointerException.class)
   public void add_throws_NPE_if_Component_argument_is_null() {
     underTest.add(null, metric1, SOME_MEASURE);
@@ -235,7 +261,7 @@ public class MeasureRepositoryImplTest {
   @Test
   public void add_accepts_NO_VALUE_as_measure_arg() {
     for (Metric.MetricType metricType : Metric.MetricType.values()) {
-      underTest.add(FILE_COMPONENT, new MetricImpl(1, "key" + metricType, "name" + metricType, metricType), Measure.newMeasureBuilder().createNoValue());
+      underTest.add(FILE_COMPONENT, new MetricImpl(metricType.ordinal() + 1, "key" + metricType, "name" + metricType, metricType), Measure.newMeasureBuilder().createNoValue());
     }
   }
 
@@ -248,7 +274,7 @@ public class MeasureRepositoryImplTest {
       }
 
       try {
-        final MetricImpl metric = new MetricImpl(1, "key" + metricType, "name" + metricType, metricType);
+        final MetricImpl metric = new MetricImpl(metricType.ordinal() + 1, "key" + metricType, "name" + metricType, metricType);
         underTest.add(FILE_COMPONENT, metric, getSomeMeasureByValueType(metricType));
         underTest.update(FILE_COMPONENT, metric, measure);
         fail("An IllegalArgumentException should have been raised");
@@ -263,7 +289,7 @@ public class MeasureRepositoryImplTest {
   @Test
   public void update_accepts_NO_VALUE_as_measure_arg() {
     for (Metric.MetricType metricType : Metric.MetricType.values()) {
-      MetricImpl metric = new MetricImpl(1, "key" + metricType, "name" + metricType, metricType);
+      MetricImpl metric = new MetricImpl(metricType.ordinal() + 1, "key" + metricType, "name" + metricType, metricType);
       underTest.add(FILE_COMPONENT, metric, getSomeMeasureByValueType(metricType));
       underTest.update(FILE_COMPONENT, metric, Measure.newMeasureBuilder().createNoValue());
     }
@@ -473,8 +499,12 @@ public class MeasureRepositoryImplTest {
   }
 
   private static MeasureDto createMeasureDto(int metricId, long snapshotId) {
+    return createMeasureDto(metricId, COMPONENT_ID, snapshotId);
+  }
+
+  private static MeasureDto createMeasureDto(int metricId, long componentId, long snapshotId) {
     return new MeasureDto()
-      .setComponentId(COMPONENT_ID)
+      .setComponentId(componentId)
       .setSnapshotId(snapshotId)
       .setData(SOME_DATA)
       .setMetricId(metricId);
@@ -26,13 +26,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.batch.protocol.output.BatchReport;
-import org.sonar.batch.protocol.output.BatchReportWriter;
-import org.sonar.batch.protocol.output.FileStructure;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.util.NoSuchElementException;
 
-import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ReportIteratorTest {
@@ -46,16 +45,13 @@ public class ReportIteratorTest {
 
   @Before
   public void setUp() throws Exception {
-    File dir = temp.newFolder();
-    BatchReportWriter writer = new BatchReportWriter(dir);
-
-    writer.writeComponentCoverage(1, newArrayList(
+    file = temp.newFile();
+    try (OutputStream output = new FileOutputStream(file)) {
       BatchReport.Coverage.newBuilder()
         .setLine(1)
         .build()
-    ));
-
-    file = new FileStructure(dir).fileFor(FileStructure.Domain.COVERAGES, 1);
+        .writeDelimitedTo(output);
+    }
   }
 
   @After
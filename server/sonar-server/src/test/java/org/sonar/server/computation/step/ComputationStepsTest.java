@@ -25,6 +25,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import java.util.List;
 import java.util.Set;
 import org.junit.Test;
 import org.picocontainer.ComponentAdapter;
@@ -49,6 +50,29 @@ public class ComputationStepsTest {
     }
   }
 
+  @Test
+  public void dependencies_are_declared_before_steps() {
+    ComputationSteps steps = new ComputationSteps(mock(ComputeEngineContainerImpl.class));
+    List<Class<? extends ComputationStep>> ordered = steps.orderedStepClasses();
+
+    for (Class<? extends ComputationStep> stepClass : ordered) {
+      for (Class<? extends ComputationStep> dependency : steps.dependencyClasses(stepClass)) {
+        assertThat(ordered.indexOf(dependency)).as(stepClass.getSimpleName() + " depends on " + dependency.getSimpleName())
+          .isGreaterThanOrEqualTo(0).isLessThan(ordered.indexOf(stepClass));
+      }
+    }
+  }
+
+  @Test
+  public void steps_depend_on_their_predecessor_by_default() {
+    ComputationSteps steps = new ComputationSteps(mock(ComputeEngineContainerImpl.class));
+
+    assertThat(steps.dependencyClasses(BuildComponentTreeStep.class)).isEmpty();
+    assertThat(steps.dependencyClasses(FillComponentsStep.class)).containsExactly(BuildComponentTreeStep.class);
+    assertThat(steps.dependencyClasses(PersistFileSourcesStep.class)).containsExactly(PersistSnapshotsStep.class);
+    assertThat(steps.dependencyClasses(PersistTestsStep.class)).containsExactly(PersistFileSourcesStep.class);
+  }
+
   @Test
   public void all_steps_from_package_step_are_present_in_container() {
     ComputeEngineContainerImpl ceContainer = new ComputeEngineContainerImpl(new ComponentContainer(), mock(ReportQueue.Item.class));
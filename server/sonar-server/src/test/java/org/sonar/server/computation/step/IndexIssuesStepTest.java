@@ -17,26 +17,191 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-
 package org.sonar.server.computation.step;
 
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.System2;
+import org.sonar.batch.protocol.Constants;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.rule.RuleDto;
+import org.sonar.server.component.ComponentTesting;
+import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.issue.IssueCache;
+import org.sonar.server.computation.issue.RuleCache;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.es.EsTester;
+import org.sonar.server.issue.index.IssueDoc;
+import org.sonar.server.issue.index.IssueIndexDefinition;
 import org.sonar.server.issue.index.IssueIndexer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class IndexIssuesStepTest {
 
+  static final RuleKey RULE_KEY = RuleKey.of("xoo", "S01");
+
+  @ClassRule
+  public static DbTester dbTester = new DbTester();
+
+  @ClassRule
+  public static EsTester esTester = new EsTester().addDefinitions(new IssueIndexDefinition(new Settings()));
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  RuleCache ruleCache = mock(RuleCache.class);
+  DbClient dbClient;
+  IssueCache issueCache;
+  IssueIndexer indexer;
   IndexIssuesStep sut;
 
+  @Before
+  public void setUp() throws Exception {
+    dbTester.truncateTables();
+    esTester.truncateIndices();
+    dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new ComponentDao());
+    issueCache = new IssueCache(temp.newFile(), System2.INSTANCE);
+    when(ruleCache.getNullable(RULE_KEY)).thenReturn(new RuleDto().setLanguage("xoo"));
+
+    treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("PROJECT_UUID").setKey("PROJECT_KEY").addChildren(
+      DumbComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE_UUID").setKey("MODULE_KEY").addChildren(
+        DumbComponent.builder(Component.Type.DIRECTORY, 3).setUuid("DIRECTORY_UUID").setKey("MODULE_KEY:src/main").addChildren(
+          DumbComponent.builder(Component.Type.FILE, 4).setUuid("FILE_UUID").setKey("MODULE_KEY:src/main/Foo.xoo").build())
+          .build())
+        .build())
+      .build());
+    reportReader.putComponent(BatchReport.Component.newBuilder().setRef(1).setType(Constants.ComponentType.PROJECT).build());
+    reportReader.putComponent(BatchReport.Component.newBuilder().setRef(2).setType(Constants.ComponentType.MODULE).setPath("module").build());
+    reportReader.putComponent(BatchReport.Component.newBuilder().setRef(3).setType(Constants.ComponentType.DIRECTORY).setPath("src/main").build());
+    reportReader.putComponent(BatchReport.Component.newBuilder().setRef(4).setType(Constants.ComponentType.FILE).setPath("src/main/Foo.xoo").build());
+    reportReader.setMetadata(BatchReport.Metadata.newBuilder().setRootComponentRef(1).build());
+
+    indexer = new IssueIndexer(dbClient, esTester.client());
+    indexer.setEnabled(true);
+    ReportQueue.Item item = new ReportQueue.Item(new AnalysisReportDto().setProjectKey("PROJECT_KEY").setStartedAt(1500000000000L), null);
+    sut = new IndexIssuesStep(indexer, treeRootHolder, reportReader, issueCache, ruleCache, dbClient, item);
+  }
+
   @Test
-  public void call_indexers() {
-    IssueIndexer issueIndexer = mock(IssueIndexer.class);
-    sut = new IndexIssuesStep(issueIndexer);
+  public void index_new_and_changed_issues_from_cache() {
+    issueCache.newAppender()
+      .append(newIssue("NEW", "FILE_UUID").setNew(true).setLine(10).setSeverity(Severity.BLOCKER).setTags(Arrays.asList("bug")))
+      .append(newIssue("CHANGED", "MODULE_UUID").setNew(false).setChanged(true))
+      .append(newIssue("UNCHANGED", "FILE_UUID").setNew(false))
+      .close();
 
     sut.execute();
 
-    verify(issueIndexer).index();
+    List<IssueDoc> docs = esTester.getDocuments(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, IssueDoc.class);
+    assertThat(docs).hasSize(2);
+
+    IssueDoc doc = docByKey(docs, "NEW");
+    assertThat(doc.projectUuid()).isEqualTo("PROJECT_UUID");
+    assertThat(doc.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(doc.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(doc.modulePath()).isEqualTo(".PROJECT_UUID.MODULE_UUID.");
+    assertThat(doc.filePath()).isEqualTo("src/main/Foo.xoo");
+    assertThat(doc.directoryPath()).isEqualTo("src/main");
+    assertThat(doc.ruleKey()).isEqualTo(RULE_KEY);
+    assertThat(doc.language()).isEqualTo("xoo");
+    assertThat(doc.line()).isEqualTo(10);
+    assertThat(doc.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(doc.tags()).containsOnly("bug");
+    assertThat(doc.getTechnicalUpdateDate().getTime()).isEqualTo(1500000000000L);
+
+    doc = docByKey(docs, "CHANGED");
+    assertThat(doc.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(doc.modulePath()).isEqualTo(".PROJECT_UUID.MODULE_UUID.");
+    assertThat(doc.filePath()).isNull();
+    assertThat(doc.directoryPath()).isNull();
+  }
+
+  @Test
+  public void index_closed_issues_of_deleted_components() {
+    ComponentDto project = ComponentTesting.newProjectDto("PROJECT_UUID");
+    DbSession session = dbTester.myBatis().openSession(false);
+    dbClient.componentDao().insert(session, project, ComponentTesting.newFileDto(project, "DELETED_UUID").setPath("src/main/Deleted.xoo"));
+    session.commit();
+    session.close();
+    reportReader.setMetadata(BatchReport.Metadata.newBuilder().setRootComponentRef(1).setDeletedComponentsCount(1).build());
+    reportReader.putDeletedIssues(1, BatchReport.Issues.newBuilder().setComponentRef(1).setComponentUuid("DELETED_UUID").build());
+    issueCache.newAppender()
+      .append(newIssue("CLOSED", "DELETED_UUID").setNew(false).setChanged(true).setStatus(Issue.STATUS_CLOSED))
+      .close();
+
+    sut.execute();
+
+    List<IssueDoc> docs = esTester.getDocuments(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, IssueDoc.class);
+    assertThat(docs).hasSize(1);
+    IssueDoc doc = docs.get(0);
+    assertThat(doc.status()).isEqualTo(Issue.STATUS_CLOSED);
+    assertThat(doc.componentUuid()).isEqualTo("DELETED_UUID");
+    assertThat(doc.filePath()).isEqualTo("src/main/Deleted.xoo");
+    assertThat(doc.directoryPath()).isEqualTo("src/main");
+  }
+
+  @Test
+  public void do_not_skip_issues_updated_in_db_during_computation() {
+    dbTester.prepareDbUnit(getClass(), "issue_updated_during_computation.xml");
+    issueCache.newAppender()
+      .append(newIssue("NEW", "FILE_UUID").setNew(true))
+      .close();
+
+    sut.execute();
+    indexer.index("PROJECT_UUID");
+
+    List<IssueDoc> docs = esTester.getDocuments(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, IssueDoc.class);
+    assertThat(docs).hasSize(2);
+    assertThat(docByKey(docs, "ASSIGNED").assignee()).isEqualTo("simon");
+  }
+
+  private static DefaultIssue newIssue(String key, String componentUuid) {
+    return new DefaultIssue()
+      .setKey(key)
+      .setProjectUuid("PROJECT_UUID")
+      .setComponentUuid(componentUuid)
+      .setRuleKey(RULE_KEY)
+      .setSeverity(Severity.MAJOR)
+      .setStatus(Issue.STATUS_OPEN)
+      .setCreationDate(new Date(1400000000000L))
+      .setUpdateDate(new Date(1400000000000L));
+  }
+
+  private static IssueDoc docByKey(List<IssueDoc> docs, String key) {
+    for (IssueDoc doc : docs) {
+      if (doc.key().equals(key)) {
+        return doc;
+      }
+    }
+    throw new AssertionError("Issue not indexed: " + key);
   }
 }
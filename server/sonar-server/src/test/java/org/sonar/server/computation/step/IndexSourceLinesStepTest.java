@@ -19,18 +19,21 @@
  */
 package org.sonar.server.computation.step;
 
-import java.sql.Connection;
 import java.util.List;
 import org.elasticsearch.search.SearchHit;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.source.db.FileSourceDao;
@@ -52,26 +55,31 @@ public class IndexSourceLinesStepTest extends BaseStepTest {
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   DbClient dbClient;
+  FileSourcesToIndexCache fileSourcesToIndexCache;
 
   @Before
-  public void setUp() {
+  public void setUp() throws Exception {
     dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new FileSourceDao(null));
+    fileSourcesToIndexCache = new FileSourcesToIndexCache(temp.newFile(), System2.INSTANCE);
   }
 
   @Override
   protected ComputationStep step() {
     SourceLineIndexer sourceLineIndexer = new SourceLineIndexer(dbClient, esTester.client());
     sourceLineIndexer.setEnabled(true);
-    return new IndexSourceLinesStep(sourceLineIndexer, treeRootHolder);
+    return new IndexSourceLinesStep(sourceLineIndexer, treeRootHolder, fileSourcesToIndexCache);
   }
 
   @Test
   public void index_source() throws Exception {
-    dbTester.prepareDbUnit(getClass(), "index_source.xml");
-    Connection connection = dbTester.openConnection();
-    FileSourceTesting.updateDataColumn(connection, "FILE1_UUID", FileSourceTesting.newRandomData(1).build());
-    connection.close();
+    fileSourcesToIndexCache.newAppender()
+      .append(new FileSourcesToIndexCache.Entry(FileSourceDto.Type.SOURCE, "FILE1_UUID", 1500000000000L,
+        FileSourceDto.encodeSourceData(FileSourceTesting.newRandomData(1).build())))
+      .close();
 
     treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").build());
 
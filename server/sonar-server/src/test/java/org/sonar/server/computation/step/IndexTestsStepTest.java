@@ -20,18 +20,21 @@
 
 package org.sonar.server.computation.step;
 
-import java.sql.Connection;
 import java.util.List;
 import org.elasticsearch.search.SearchHit;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.source.db.FileSourceDao;
@@ -53,11 +56,16 @@ public class IndexTestsStepTest extends BaseStepTest {
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   DbClient dbClient;
+  FileSourcesToIndexCache fileSourcesToIndexCache;
 
   @Before
-  public void setUp() {
+  public void setUp() throws Exception {
     dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new FileSourceDao(null));
+    fileSourcesToIndexCache = new FileSourcesToIndexCache(temp.newFile(), System2.INSTANCE);
     esTester.truncateIndices();
   }
 
@@ -65,15 +73,15 @@ public class IndexTestsStepTest extends BaseStepTest {
   protected ComputationStep step() {
     TestIndexer testIndexer = new TestIndexer(dbClient, esTester.client());
     testIndexer.setEnabled(true);
-    return new IndexTestsStep(testIndexer, treeRootHolder);
+    return new IndexTestsStep(testIndexer, treeRootHolder, fileSourcesToIndexCache);
   }
 
   @Test
   public void index_test() throws Exception {
-    dbTester.prepareDbUnit(getClass(), "index_source.xml");
-    Connection connection = dbTester.openConnection();
-    TestTesting.updateDataColumn(connection, "FILE1_UUID", TestTesting.newRandomTests(1));
-    connection.close();
+    fileSourcesToIndexCache.newAppender()
+      .append(new FileSourcesToIndexCache.Entry(FileSourceDto.Type.TEST, "FILE1_UUID", 1500000000000L,
+        FileSourceDto.encodeTestData(TestTesting.newRandomTests(1))))
+      .close();
 
     treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").build());
 
@@ -86,4 +94,23 @@ public class IndexTestsStepTest extends BaseStepTest {
     assertThat(doc.fileUuid()).isEqualTo("FILE1_UUID");
     assertThat(doc.coveredFiles()).isNotEmpty();
   }
+
+  @Test
+  public void keep_tests_of_files_not_reindexed() throws Exception {
+    esTester.putDocuments(TestIndexDefinition.INDEX, TestIndexDefinition.TYPE,
+      new TestDoc().setProjectUuid("ABCD").setFileUuid("FILE2_UUID").setUuid("TEST2_UUID").setName("NAME"));
+    fileSourcesToIndexCache.newAppender()
+      .append(new FileSourcesToIndexCache.Entry(FileSourceDto.Type.TEST, "FILE1_UUID", 1500000000000L,
+        FileSourceDto.encodeTestData(TestTesting.newRandomTests(1))))
+      .close();
+
+    treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").build());
+
+    step().execute();
+
+    List<SearchHit> docs = esTester.getDocuments(TestIndexDefinition.INDEX, TestIndexDefinition.TYPE);
+    assertThat(docs).hasSize(2);
+    assertThat(esTester.getDocumentFieldValues(TestIndexDefinition.INDEX, TestIndexDefinition.TYPE, TestIndexDefinition.FIELD_FILE_UUID))
+      .containsOnly("FILE1_UUID", "FILE2_UUID");
+  }
 }
@@ -21,6 +21,7 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterators;
 import java.io.IOException;
 import java.util.List;
 import org.junit.After;
@@ -38,11 +39,13 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.DbTester;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.core.source.db.FileSourceDto.Type;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.batch.BatchReportReaderRule;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
 import org.sonar.server.computation.language.LanguageRepository;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.source.db.FileSourceDao;
 import org.sonar.server.source.db.FileSourceDb;
@@ -77,6 +80,8 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
 
   DbSession session;
   DbClient dbClient;
+  ComputationMetrics metrics = new ComputationMetrics(System2.INSTANCE);
+  FileSourcesToIndexCache fileSourcesToIndexCache;
   PersistFileSourcesStep sut;
 
   long now = 123456789L;
@@ -89,7 +94,8 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
 
     System2 system2 = mock(System2.class);
     when(system2.now()).thenReturn(now);
-    sut = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader);
+    fileSourcesToIndexCache = new FileSourcesToIndexCache(temp.newFile(), System2.INSTANCE);
+    sut = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, fileSourcesToIndexCache, metrics);
   }
 
   @Override
@@ -126,6 +132,30 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(data.getLines(1).getSource()).isEqualTo("line2");
   }
 
+  @Test
+  public void persist_sources_of_files_computed_concurrently_in_several_batches() throws Exception {
+    DumbComponent.Builder module = DumbComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE").setKey("MODULE_KEY");
+    for (int ref = 3; ref < 23; ref++) {
+      module.addChildren(DumbComponent.builder(Component.Type.FILE, ref).setUuid("FILE_" + ref).setKey("MODULE_KEY:src/Foo" + ref + ".java").build());
+      reportReader.putComponent(BatchReport.Component.newBuilder()
+        .setRef(ref)
+        .setType(Constants.ComponentType.FILE)
+        .setLines(1)
+        .build());
+      reportReader.putFileSourceLines(ref, "line of file " + ref);
+    }
+    treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(module.build()).build());
+
+    // flush after each file
+    new PersistFileSourcesStep(dbClient, System2.INSTANCE, treeRootHolder, reportReader, fileSourcesToIndexCache, metrics, 1L, 3).execute();
+
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(20);
+    for (int ref = 3; ref < 23; ref++) {
+      FileSourceDb.Data data = FileSourceDto.decodeSourceData(dbClient.fileSourceDao().selectSource("FILE_" + ref).getBinaryData());
+      assertThat(data.getLines(0).getSource()).isEqualTo("line of file " + ref);
+    }
+  }
+
   @Test
   public void persist_last_line() throws Exception {
     treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
@@ -345,6 +375,8 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getDataHash()).isEqualTo(dataHash);
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(past);
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
+    // nothing to re-index
+    assertThat(Iterators.size(fileSourcesToIndexCache.traverseRows(PROJECT_UUID, Type.SOURCE))).isEqualTo(0);
   }
 
   @Test
@@ -376,6 +408,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(past);
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now);
+    assertThat(Iterators.size(fileSourcesToIndexCache.traverseRows(PROJECT_UUID, Type.SOURCE))).isEqualTo(1);
   }
 
   @Test
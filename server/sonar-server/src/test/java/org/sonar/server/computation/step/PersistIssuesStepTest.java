@@ -36,6 +36,7 @@ import org.sonar.api.utils.System2;
 import org.sonar.core.issue.db.UpdateConflictResolver;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.issue.IssueCache;
 import org.sonar.server.computation.issue.RuleCache;
 import org.sonar.server.computation.issue.RuleCacheLoader;
@@ -57,6 +58,7 @@ public class PersistIssuesStepTest extends BaseStepTest {
   DbSession session;
 
   DbClient dbClient;
+  ComputationMetrics metrics = new ComputationMetrics(System2.INSTANCE);
 
   System2 system2;
 
@@ -78,7 +80,7 @@ public class PersistIssuesStepTest extends BaseStepTest {
     issueCache = new IssueCache(temp.newFile(), System2.INSTANCE);
     system2 = mock(System2.class);
     when(system2.now()).thenReturn(1400000000000L);
-    step = new PersistIssuesStep(dbClient, system2, new UpdateConflictResolver(), new RuleCache(new RuleCacheLoader(dbClient)), issueCache);
+    step = new PersistIssuesStep(dbClient, system2, new UpdateConflictResolver(), new RuleCache(new RuleCacheLoader(dbClient)), issueCache, metrics);
   }
 
   @After
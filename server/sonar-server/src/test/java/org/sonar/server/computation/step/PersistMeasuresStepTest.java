@@ -40,6 +40,7 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.DbTester;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.computation.batch.BatchReportReaderRule;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
@@ -78,6 +79,7 @@ public class PersistMeasuresStepTest extends BaseStepTest {
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
 
   DbClient dbClient;
+  ComputationMetrics metrics = new ComputationMetrics(System2.INSTANCE);
   DbSession session;
   DbIdsRepository dbIdsRepository = new DbIdsRepository();
   MetricDto stringMetric;
@@ -110,10 +112,10 @@ public class PersistMeasuresStepTest extends BaseStepTest {
     RuleCache ruleCache = new RuleCache(new RuleCacheLoader(dbClient));
     MetricRepositoryImpl metricRepository = new MetricRepositoryImpl(dbClient);
     metricRepository.start();
-    MeasureRepository measureRepository = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, ruleCache);
+    MeasureRepository measureRepository = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, ruleCache, treeRootHolder);
     session.commit();
 
-    sut = new PersistMeasuresStep(dbClient, metricRepository, dbIdsRepository, treeRootHolder, measureRepository);
+    sut = new PersistMeasuresStep(dbClient, metricRepository, dbIdsRepository, treeRootHolder, measureRepository, metrics);
 
     projectDto = addComponent("project-key");
     fileDto = addComponent("file-key");
@@ -27,6 +27,7 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
@@ -42,6 +43,7 @@ import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
 import org.sonar.server.computation.component.FileAttributes;
+import org.sonar.server.computation.source.FileSourcesToIndexCache;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.source.db.FileSourceDao;
 import org.sonar.server.source.db.FileSourceDb;
@@ -78,6 +80,9 @@ public class PersistTestsStepTest extends BaseStepTest {
   @Rule
   public LogTester log = new LogTester();
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   DbSession session;
   DbClient dbClient;
   Component root;
@@ -95,7 +100,7 @@ public class PersistTestsStepTest extends BaseStepTest {
     System2 system2 = mock(System2.class);
     when(system2.now()).thenReturn(now);
 
-    sut = new PersistTestsStep(dbClient, system2, reportReader, treeRootHolder);
+    sut = new PersistTestsStep(dbClient, system2, reportReader, treeRootHolder, new FileSourcesToIndexCache(temp.newFile(), System2.INSTANCE));
 
     root = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
       DumbComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE_UUID").setKey("MODULE_KEY").addChildren(
@@ -20,67 +20,44 @@
 
 package org.sonar.server.computation.step;
 
-import java.io.IOException;
-import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.Mockito;
-import org.sonar.api.config.Settings;
-import org.sonar.batch.protocol.output.BatchReport;
-import org.sonar.core.computation.dbcleaner.ProjectCleaner;
-import org.sonar.core.persistence.DbSession;
+import org.sonar.core.computation.dbcleaner.PurgeScheduler;
 import org.sonar.core.purge.IdUuidPair;
-import org.sonar.server.computation.batch.BatchReportReaderRule;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.DumbComponent;
-import org.sonar.server.computation.component.ProjectSettingsRepository;
-import org.sonar.server.db.DbClient;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
 public class PurgeDatastoresStepTest extends BaseStepTest {
 
   private static final String PROJECT_KEY = "PROJECT_KEY";
 
-  @Rule
-  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
-
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
   DbIdsRepository dbIdsRepository = new DbIdsRepository();
 
-  ProjectCleaner projectCleaner = mock(ProjectCleaner.class);
-  ProjectSettingsRepository projectSettingsRepository = mock(ProjectSettingsRepository.class);
+  PurgeScheduler purgeScheduler = mock(PurgeScheduler.class);
 
-  PurgeDatastoresStep sut = new PurgeDatastoresStep(mock(DbClient.class, Mockito.RETURNS_DEEP_STUBS), projectCleaner, dbIdsRepository, treeRootHolder, projectSettingsRepository);
-
-  @Before
-  public void setUp() throws Exception {
-    when(projectSettingsRepository.getProjectSettings(PROJECT_KEY)).thenReturn(new Settings());
-  }
+  PurgeDatastoresStep sut = new PurgeDatastoresStep(purgeScheduler, dbIdsRepository, treeRootHolder);
 
   @Test
-  public void call_purge_method_of_the_purge_task() throws IOException {
+  public void schedule_purge_of_project() {
     Component project = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("UUID-1234").setKey(PROJECT_KEY).build();
     treeRootHolder.setRoot(project);
     dbIdsRepository.setComponentId(project, 123L);
 
-    reportReader.setMetadata(BatchReport.Metadata.newBuilder()
-      .setRootComponentRef(1)
-      .build());
-
     sut.execute();
 
     ArgumentCaptor<IdUuidPair> argumentCaptor = ArgumentCaptor.forClass(IdUuidPair.class);
-    verify(projectCleaner).purge(any(DbSession.class), argumentCaptor.capture(), any(Settings.class));
+    verify(purgeScheduler).schedule(argumentCaptor.capture(), eq(PROJECT_KEY));
     assertThat(argumentCaptor.getValue().getId()).isEqualTo(123L);
     assertThat(argumentCaptor.getValue().getUuid()).isEqualTo("UUID-1234");
   }
@@ -28,6 +28,7 @@ import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.permission.GlobalPermissions;
 import org.sonar.server.activity.Activity;
 import org.sonar.server.activity.ActivityService;
+import org.sonar.server.computation.ComputationMetrics;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.tester.ServerTester;
 import org.sonar.server.tester.UserSessionRule;
@@ -83,6 +84,27 @@ public class HistoryActionMediumTest {
     request.execute().assertJson(getClass(), "list_history_reports.json");
   }
 
+  @Test
+  public void return_metrics_of_steps() throws Exception {
+    Activity activity = new Activity();
+    activity.setType(Activity.Type.ANALYSIS_REPORT);
+    activity.setAction("LOG_ANALYSIS_REPORT");
+    activity.setData("key", "10");
+    activity.setData("projectKey", "P1");
+    activity.setData("status", AnalysisReportDto.Status.SUCCESS);
+    activityService.save(activity);
+
+    ComputationMetrics metrics = tester.get(ComputationMetrics.class);
+    ComputationMetrics.StepMetrics step = metrics.startStep(metrics.startReport(10L, "P1"), "Persist issues");
+    metrics.addRowsWritten(3L);
+    metrics.stopStep(step);
+
+    userSessionRule.setGlobalPermissions(GlobalPermissions.SYSTEM_ADMIN);
+
+    WsTester.TestRequest request = tester.wsTester().newGetRequest("api/computation", "history");
+    request.execute().assertJson(getClass(), "list_history_reports_with_steps.json");
+  }
+
   @Test(expected = ForbiddenException.class)
   public void requires_admin_right() throws Exception {
     WsTester.TestRequest request = tester.wsTester().newGetRequest("api/computation", "history");
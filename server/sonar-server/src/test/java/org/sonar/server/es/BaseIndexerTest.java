@@ -0,0 +1,280 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.base.Throwables;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BaseIndexerTest {
+
+  EsClient esClient = mock(EsClient.class);
+  FakeIndexer indexer;
+
+  @Before
+  public void setUp() {
+    when(esClient.getMaxFieldValue("fakes", "fake", "updatedAt")).thenReturn(100L);
+    indexer = new FakeIndexer(esClient);
+    indexer.setEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    indexer.stop();
+  }
+
+  @Test
+  public void index_projects_concurrently() throws Exception {
+    final CountDownLatch bothStarted = new CountDownLatch(2);
+    Thread first = indexInBackground("P1", bothStarted);
+    Thread second = indexInBackground("P2", bothStarted);
+
+    first.join(10000L);
+    second.join(10000L);
+
+    // each task waits for the other one, so they can't have been executed sequentially
+    assertThat(bothStarted.getCount()).isEqualTo(0L);
+  }
+
+  @Test
+  public void keep_last_date_of_each_project() {
+    final AtomicLong since = new AtomicLong();
+
+    indexer.index("P1", new RecordingTask(since, 200L));
+    assertThat(since.get()).isEqualTo(100L);
+
+    indexer.index("P1", new RecordingTask(since, 0L));
+    assertThat(since.get()).isEqualTo(200L);
+
+    // other projects start from the date of the index
+    indexer.index("P2", new RecordingTask(since, 0L));
+    assertThat(since.get()).isEqualTo(100L);
+
+    // indexing of projects does not change the date of the index
+    indexer.index(new RecordingTask(since, 0L));
+    assertThat(since.get()).isEqualTo(100L);
+
+    verify(esClient, times(1)).getMaxFieldValue("fakes", "fake", "updatedAt");
+  }
+
+  @Test
+  public void start_project_from_date_of_its_documents() {
+    when(esClient.getMaxFieldValue("fakes", "fake", "updatedAt", "projectUuid", "P1")).thenReturn(50L);
+    indexer.stop();
+    indexer = new FakeIndexer(esClient, "projectUuid");
+    indexer.setEnabled(true);
+    AtomicLong since = new AtomicLong();
+
+    indexer.index("P1", new RecordingTask(since, 200L));
+    assertThat(since.get()).isEqualTo(50L);
+
+    indexer.index("P1", new RecordingTask(since, 0L));
+    assertThat(since.get()).isEqualTo(200L);
+
+    verify(esClient, times(1)).getMaxFieldValue("fakes", "fake", "updatedAt", "projectUuid", "P1");
+    verify(esClient, never()).getMaxFieldValue("fakes", "fake", "updatedAt");
+  }
+
+  @Test
+  public void always_index_documents_provided_by_caller_without_changing_date_of_project() {
+    AtomicLong since = new AtomicLong();
+    // date of project is in the future, so that documents read from db would not be indexed
+    indexer.index("P1", new RecordingTask(since, Long.MAX_VALUE - 1L));
+
+    final AtomicLong executions = new AtomicLong();
+    indexer.indexProjectDocuments("P1", new Runnable() {
+      @Override
+      public void run() {
+        executions.incrementAndGet();
+      }
+    });
+    assertThat(executions.get()).isEqualTo(1L);
+
+    indexer.stop();
+    indexer = new FakeIndexer(esClient);
+    indexer.setEnabled(true);
+    indexer.index("P1", new RecordingTask(since, 200L));
+    indexer.indexProjectDocuments("P1", new Runnable() {
+      @Override
+      public void run() {
+        executions.incrementAndGet();
+      }
+    });
+    indexer.index("P1", new RecordingTask(since, 0L));
+    assertThat(executions.get()).isEqualTo(2L);
+    assertThat(since.get()).isEqualTo(200L);
+  }
+
+  @Test
+  public void index_project_while_whole_index_is_being_indexed() throws Exception {
+    final CountDownLatch bothStarted = new CountDownLatch(2);
+    Thread global = new Thread() {
+      @Override
+      public void run() {
+        indexer.index(new WaitingTask(bothStarted, 0L));
+      }
+    };
+    global.start();
+
+    indexer.index("P1", new WaitingTask(bothStarted, 0L));
+    global.join(10000L);
+
+    // each task waits for the other one, so they can't have been executed sequentially
+    assertThat(bothStarted.getCount()).isEqualTo(0L);
+  }
+
+  @Test
+  public void index_partitions_concurrently_and_keep_max_date() {
+    final CountDownLatch allStarted = new CountDownLatch(3);
+    final AtomicLong since = new AtomicLong();
+
+    indexer.indexPartitions(Arrays.asList(
+      new WaitingTask(allStarted, 150L), new WaitingTask(allStarted, 300L), new WaitingTask(allStarted, 200L)));
+
+    // each partition waits for the others, so they can't have been executed sequentially
+    assertThat(allStarted.getCount()).isEqualTo(0L);
+
+    // next indexing starts from the max date returned by partitions
+    indexer.index(new RecordingTask(since, 0L));
+    assertThat(since.get()).isEqualTo(300L);
+  }
+
+  @Test
+  public void fail_if_a_partition_fails() {
+    try {
+      indexer.indexPartitions(Arrays.asList(new RecordingTask(new AtomicLong(), 200L), new BaseIndexer.IndexerTask() {
+        @Override
+        public long index(long lastUpdatedAt) {
+          throw new IllegalStateException("Boom");
+        }
+      }));
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(Throwables.getRootCause(e)).isInstanceOf(IllegalStateException.class).hasMessage("Boom");
+    }
+  }
+
+  @Test
+  public void do_nothing_if_disabled() {
+    indexer.setEnabled(false);
+    AtomicLong since = new AtomicLong(-1L);
+
+    indexer.index("P1", new RecordingTask(since, 200L));
+    indexer.index(new RecordingTask(since, 200L));
+
+    assertThat(since.get()).isEqualTo(-1L);
+  }
+
+  private Thread indexInBackground(final String projectUuid, final CountDownLatch bothStarted) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        indexer.index(projectUuid, new BaseIndexer.IndexerTask() {
+          @Override
+          public long index(long lastUpdatedAt) {
+            bothStarted.countDown();
+            try {
+              bothStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return 0L;
+          }
+        });
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  private static class WaitingTask implements BaseIndexer.IndexerTask {
+    private final CountDownLatch allStarted;
+    private final long result;
+
+    WaitingTask(CountDownLatch allStarted, long result) {
+      this.allStarted = allStarted;
+      this.result = result;
+    }
+
+    @Override
+    public long index(long lastUpdatedAt) {
+      allStarted.countDown();
+      try {
+        allStarted.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return result;
+    }
+  }
+
+  private static class RecordingTask implements BaseIndexer.IndexerTask {
+    private final AtomicLong since;
+    private final long result;
+
+    RecordingTask(AtomicLong since, long result) {
+      this.since = since;
+      this.result = result;
+    }
+
+    @Override
+    public long index(long lastUpdatedAt) {
+      since.set(lastUpdatedAt);
+      return result;
+    }
+  }
+
+  private static class FakeIndexer extends BaseIndexer {
+    private final String projectUuidFieldName;
+
+    FakeIndexer(EsClient client) {
+      this(client, null);
+    }
+
+    FakeIndexer(EsClient client, @Nullable String projectUuidFieldName) {
+      super(client, 0L, "fakes", "fake", "updatedAt");
+      this.projectUuidFieldName = projectUuidFieldName;
+    }
+
+    @Override
+    protected String getProjectUuidFieldName() {
+      return projectUuidFieldName;
+    }
+
+    @Override
+    protected long doIndex(long lastUpdatedAt) {
+      return 0L;
+    }
+  }
+}
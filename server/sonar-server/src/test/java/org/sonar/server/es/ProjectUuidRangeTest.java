@@ -0,0 +1,94 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.server.db.DbClient;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class ProjectUuidRangeTest {
+
+  @ClassRule
+  public static DbTester db = new DbTester();
+
+  DbClient dbClient;
+
+  @Before
+  public void setUp() {
+    db.truncateTables();
+    dbClient = new DbClient(db.database(), db.myBatis());
+  }
+
+  @Test
+  public void split_root_projects() {
+    db.prepareDbUnit(getClass(), "projects.xml");
+
+    List<ProjectUuidRange> ranges = ProjectUuidRange.split(dbClient, 2);
+
+    assertThat(ranges).hasSize(2);
+    assertThat(ranges.get(0).from()).isNull();
+    assertThat(ranges.get(0).to()).isEqualTo("P3");
+    assertThat(ranges.get(1).from()).isEqualTo("P3");
+    assertThat(ranges.get(1).to()).isNull();
+  }
+
+  @Test
+  public void no_more_ranges_than_root_projects() {
+    db.prepareDbUnit(getClass(), "projects.xml");
+
+    List<ProjectUuidRange> ranges = ProjectUuidRange.split(dbClient, 10);
+
+    assertThat(ranges).hasSize(4);
+    assertThat(ranges.get(0).toString()).isEqualTo("[null,P2)");
+    assertThat(ranges.get(3).toString()).isEqualTo("[P4,null)");
+  }
+
+  @Test
+  public void single_unbounded_range_if_no_projects() {
+    List<ProjectUuidRange> ranges = ProjectUuidRange.split(dbClient, 4);
+
+    assertThat(ranges).hasSize(1);
+    assertThat(ranges.get(0).from()).isNull();
+    assertThat(ranges.get(0).to()).isNull();
+  }
+
+  @Test
+  public void append_sql_condition() {
+    StringBuilder sql = new StringBuilder("select * from issues where 1=1");
+    new ProjectUuidRange("P1", "P3").appendSqlCondition(sql, "project_uuid");
+    assertThat(sql.toString()).isEqualTo("select * from issues where 1=1 AND project_uuid>=? AND project_uuid<?");
+
+    sql = new StringBuilder();
+    new ProjectUuidRange(null, "P3").appendSqlCondition(sql, "project_uuid");
+    assertThat(sql.toString()).isEqualTo(" AND project_uuid<?");
+
+    sql = new StringBuilder();
+    new ProjectUuidRange(null, null).appendSqlCondition(sql, "project_uuid");
+    assertThat(sql.toString()).isEmpty();
+  }
+}
@@ -46,6 +46,7 @@ import java.util.Date;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ServerIssueStorageTest extends AbstractDaoTestCase {
@@ -53,6 +54,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
   DbClient dbClient;
   DbSession session;
 
+  IssueIndexer indexer = mock(IssueIndexer.class);
   ServerIssueStorage storage;
 
   @Before
@@ -65,7 +67,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
       new ResourceDao(getMyBatis(), system));
     session = dbClient.openSession(false);
 
-    storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), dbClient, mock(IssueIndexer.class));
+    storage = new ServerIssueStorage(getMyBatis(), new FakeRuleFinder(), dbClient, indexer);
   }
 
   @After
@@ -125,6 +127,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
     storage.save(issue);
 
     checkTables("should_insert_new_issues", new String[] {"id", "created_at", "updated_at", "issue_change_creation_date"}, "issues", "issue_changes");
+    verify(indexer).index("ABCD");
   }
 
   @Test
@@ -169,6 +172,7 @@ public class ServerIssueStorageTest extends AbstractDaoTestCase {
     storage.save(issue);
 
     checkTables("should_update_issues", new String[] {"id", "created_at", "updated_at", "issue_change_creation_date"}, "issues", "issue_changes");
+    verify(indexer).index("CDEF");
   }
 
   static class FakeRuleFinder implements RuleFinder {
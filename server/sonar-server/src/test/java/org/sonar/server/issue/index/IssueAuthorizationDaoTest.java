@@ -90,6 +90,26 @@ public class IssueAuthorizationDaoTest {
     assertThat(def.getUsers()).containsOnly("user1", "user2");
   }
 
+  @Test
+  public void select_project() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    Collection<IssueAuthorizationDao.Dto> dtos = dao.selectAfterDate(client, connection, 0L, "ABC");
+
+    assertThat(dtos).hasSize(1);
+    IssueAuthorizationDao.Dto abc = Iterables.find(dtos, new ProjectPredicate("ABC"));
+    assertThat(abc.getGroups()).containsOnly("Anyone", "devs");
+    assertThat(abc.getUsers()).containsOnly("user1");
+  }
+
+  @Test
+  public void select_project_after_date() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    assertThat(dao.selectAfterDate(client, connection, 1500000000L, "ABC")).isEmpty();
+    assertThat(dao.selectAfterDate(client, connection, 1500000000L, "DEF")).hasSize(1);
+  }
+
   @Test
   public void no_authorization() {
     dbTester.prepareDbUnit(getClass(), "no_authorization.xml");
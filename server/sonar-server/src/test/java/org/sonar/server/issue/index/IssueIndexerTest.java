@@ -96,6 +96,26 @@ public class IssueIndexerTest {
     assertThat(esTester.countDocuments("issues", "issue")).isZero();
   }
 
+  @Test
+  public void index_project() {
+    dbTester.prepareDbUnit(getClass(), "index.xml");
+
+    createIndexer().index("THE_PROJECT");
+
+    List<IssueDoc> docs = esTester.getDocuments("issues", "issue", IssueDoc.class);
+    assertThat(docs).hasSize(1);
+    assertThat(docs.get(0).projectUuid()).isEqualTo("THE_PROJECT");
+  }
+
+  @Test
+  public void index_nothing_from_unknown_project() {
+    dbTester.prepareDbUnit(getClass(), "index.xml");
+
+    createIndexer().index("UNKNOWN");
+
+    assertThat(esTester.countDocuments("issues", "issue")).isZero();
+  }
+
   private IssueIndexer createIndexer() {
     IssueIndexer indexer = new IssueIndexer(new DbClient(dbTester.database(), dbTester.myBatis()), esTester.client());
     indexer.setEnabled(true);
@@ -0,0 +1,76 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import java.util.LinkedHashMap;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+import org.sonar.server.computation.ComputationMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ComputeEngineMonitorTest {
+
+  System2 system = mock(System2.class);
+  ComputationMetrics metrics = new ComputationMetrics(system);
+  ComputeEngineMonitor monitor = new ComputeEngineMonitor(metrics);
+
+  @Test
+  public void name() {
+    assertThat(monitor.name()).isEqualTo("ComputeEngine");
+  }
+
+  @Test
+  public void average_metrics_of_steps() {
+    when(system.now()).thenReturn(0L, 100L, 0L, 300L, 0L, 50L, 0L);
+    recordStep(1L, "Persist issues", 10L);
+    recordStep(2L, "Persist issues", 20L);
+    recordStep(2L, "Persist measures", 5L);
+    // not done
+    metrics.startStep(metrics.startReport(3L, "P1"), "Persist measures");
+
+    assertThat(monitor.getRecordedReports()).isEqualTo(3);
+    assertThat(monitor.getAverageStepDurationsInMs()).containsOnly(entry("Persist issues", 200L), entry("Persist measures", 50L));
+    assertThat(monitor.getAverageStepRowsWritten()).containsOnly(entry("Persist issues", 15L), entry("Persist measures", 5L));
+
+    LinkedHashMap<String, Object> attributes = monitor.attributes();
+    assertThat(attributes).containsKeys("Recorded Reports", "Average Step Durations (ms)", "Average Step Allocated Bytes", "Average Step Rows Written");
+  }
+
+  @Test
+  public void no_reports() {
+    assertThat(monitor.getRecordedReports()).isEqualTo(0);
+    assertThat(monitor.getAverageStepDurationsInMs()).isEmpty();
+    assertThat(monitor.getAverageStepAllocatedBytes()).isEmpty();
+  }
+
+  private void recordStep(long reportId, String description, long rowsWritten) {
+    ComputationMetrics.ReportMetrics report = metrics.getReport(reportId);
+    if (report == null) {
+      report = metrics.startReport(reportId, "P1");
+    }
+    ComputationMetrics.StepMetrics step = metrics.startStep(report, description);
+    metrics.addRowsWritten(rowsWritten);
+    metrics.stopStep(step);
+  }
+}
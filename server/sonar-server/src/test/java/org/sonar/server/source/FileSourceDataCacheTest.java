@@ -0,0 +1,117 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.source.db.FileSourceDao;
+import org.sonar.server.source.db.FileSourceDb;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class FileSourceDataCacheTest {
+
+  @ClassRule
+  public static DbTester dbTester = new DbTester();
+
+  DbClient dbClient;
+  DbSession session;
+  FileSourceDataCache sut;
+
+  @Before
+  public void setUp() {
+    dbTester.truncateTables();
+    dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new FileSourceDao(dbTester.myBatis()));
+    session = dbClient.openSession(false);
+    sut = new FileSourceDataCache(dbClient);
+  }
+
+  @After
+  public void tearDown() {
+    session.close();
+  }
+
+  @Test
+  public void load_and_keep_decoded_sources() {
+    insertSource("FILE1", "HASH1", "foo");
+
+    FileSourceDb.Data data = sut.get("FILE1");
+
+    assertThat(data.getLines(0).getSource()).isEqualTo("foo");
+    assertThat(sut.get("FILE1")).isSameAs(data);
+    assertThat(sut.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void reload_sources_when_data_hash_changed() {
+    insertSource("FILE1", "HASH1", "foo");
+    assertThat(sut.get("FILE1").getLines(0).getSource()).isEqualTo("foo");
+
+    FileSourceDto dto = dbClient.fileSourceDao().selectSource("FILE1");
+    dbClient.fileSourceDao().update(dto.setSourceData(newData("bar")).setDataHash("HASH2"));
+
+    assertThat(sut.get("FILE1").getLines(0).getSource()).isEqualTo("bar");
+  }
+
+  @Test
+  public void return_null_when_file_has_no_sources() {
+    assertThat(sut.get("UNKNOWN")).isNull();
+    assertThat(sut.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void evict_files_when_size_limit_is_reached() {
+    insertSource("FILE1", "HASH1", "foo");
+    insertSource("FILE2", "HASH2", "bar");
+    long sizeOfOneFile = newData("foo").getSerializedSize();
+    sut = new FileSourceDataCache(dbClient, sizeOfOneFile);
+
+    sut.get("FILE1");
+    sut.get("FILE2");
+
+    assertThat(sut.size()).isEqualTo(1);
+    assertThat(sut.get("FILE1").getLines(0).getSource()).isEqualTo("foo");
+  }
+
+  private void insertSource(String fileUuid, String dataHash, String source) {
+    dbClient.fileSourceDao().insert(session, new FileSourceDto()
+      .setProjectUuid("PROJECT")
+      .setFileUuid(fileUuid)
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setSourceData(newData(source))
+      .setDataHash(dataHash)
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+    session.commit();
+  }
+
+  private static FileSourceDb.Data newData(String source) {
+    return FileSourceDb.Data.newBuilder().addLines(FileSourceDb.Line.newBuilder().setLine(1).setSource(source)).build();
+  }
+}
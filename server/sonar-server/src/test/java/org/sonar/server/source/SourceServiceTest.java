@@ -20,17 +20,13 @@
 
 package org.sonar.server.source;
 
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.sonar.server.measure.persistence.MeasureDao;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
-
-import java.util.Arrays;
-import java.util.List;
+import org.sonar.server.source.db.FileSourceDb;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
@@ -39,29 +35,26 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class SourceServiceTest {
 
-  static final String PROJECT_KEY = "org.sonar.sample";
   static final String COMPONENT_UUID = "abc123";
 
   @Mock
   HtmlSourceDecorator sourceDecorator;
 
   @Mock
-  MeasureDao measureDao;
-
-  @Mock
-  SourceLineIndex sourceLineIndex;
+  FileSourceDataCache fileSourceDataCache;
 
   SourceService service;
 
   @Before
   public void setUp() {
-    service = new SourceService(sourceDecorator, sourceLineIndex);
+    service = new SourceService(sourceDecorator, fileSourceDataCache);
   }
 
   @Test
   public void get_html_lines() {
-    when(sourceLineIndex.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).thenReturn(
-      Arrays.asList(new SourceLineDoc().setSource("source").setHighlighting("highlight").setSymbols("symbols")));
+    when(fileSourceDataCache.get(COMPONENT_UUID)).thenReturn(FileSourceDb.Data.newBuilder()
+      .addLines(FileSourceDb.Line.newBuilder().setLine(1).setSource("source").setHighlighting("highlight").setSymbols("symbols"))
+      .build());
 
     service.getLinesAsHtml(COMPONENT_UUID, null, null);
 
@@ -70,10 +63,10 @@ public class SourceServiceTest {
 
   @Test
   public void get_block_of_lines() {
-
-    when(sourceLineIndex.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).thenReturn(
-      Arrays.asList(new SourceLineDoc().setSource("source").setHighlighting("highlight").setSymbols("symbols"),
-        new SourceLineDoc().setSource("source2").setHighlighting("highlight2").setSymbols("symbols2")));
+    when(fileSourceDataCache.get(COMPONENT_UUID)).thenReturn(FileSourceDb.Data.newBuilder()
+      .addLines(FileSourceDb.Line.newBuilder().setLine(1).setSource("source").setHighlighting("highlight").setSymbols("symbols"))
+      .addLines(FileSourceDb.Line.newBuilder().setLine(2).setSource("source2").setHighlighting("highlight2").setSymbols("symbols2"))
+      .build());
 
     service.getLinesAsHtml(COMPONENT_UUID, null, null);
 
@@ -81,15 +74,45 @@ public class SourceServiceTest {
     verify(sourceDecorator).getDecoratedSourceAsHtml("source2", "highlight2", "symbols2");
   }
 
+  @Test
+  public void do_not_decorate_with_missing_highlighting_and_symbols() {
+    when(fileSourceDataCache.get(COMPONENT_UUID)).thenReturn(FileSourceDb.Data.newBuilder()
+      .addLines(FileSourceDb.Line.newBuilder().setLine(1).setSource("source"))
+      .build());
+
+    service.getLinesAsHtml(COMPONENT_UUID, null, null);
+
+    verify(sourceDecorator).getDecoratedSourceAsHtml("source", null, null);
+  }
+
   @Test
   public void getLinesAsTxt() {
-    when(sourceLineIndex.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).thenReturn(
-      Arrays.asList(
-        new SourceLineDoc().setSource("line1"),
-        new SourceLineDoc().setSource("line2")));
+    when(fileSourceDataCache.get(COMPONENT_UUID)).thenReturn(newData(3));
 
     List<String> result = service.getLinesAsTxt(COMPONENT_UUID, null, null);
-    assertThat(result).contains("line1", "line2");
+    assertThat(result).containsExactly("line1", "line2", "line3");
+  }
+
+  @Test
+  public void get_range_of_lines() {
+    when(fileSourceDataCache.get(COMPONENT_UUID)).thenReturn(newData(5));
+
+    assertThat(service.getLinesAsTxt(COMPONENT_UUID, 2, 4)).containsExactly("line2", "line3", "line4");
+    assertThat(service.getLinesAsTxt(COMPONENT_UUID, 4, 10)).containsExactly("line4", "line5");
+    assertThat(service.getLines(COMPONENT_UUID, 6, 10)).isEmpty();
   }
 
+  @Test
+  public void no_lines_when_file_has_no_sources() {
+    assertThat(service.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).isEmpty();
+    assertThat(service.getLinesAsTxt(COMPONENT_UUID, null, null)).isEmpty();
+  }
+
+  private static FileSourceDb.Data newData(int numberOfLines) {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= numberOfLines; line++) {
+      data.addLinesBuilder().setLine(line).setSource("line" + line);
+    }
+    return data.build();
+  }
 }
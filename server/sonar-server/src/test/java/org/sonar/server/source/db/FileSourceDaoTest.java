@@ -67,6 +67,14 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
     assertThat(fileSourceDto.getDataType()).isEqualTo(Type.SOURCE);
   }
 
+  @Test
+  public void select_data_hash() {
+    setupData("shared");
+
+    assertThat(sut.selectSourceDataHash("FILE1_UUID")).isEqualTo("hash");
+    assertThat(sut.selectSourceDataHash("unknown")).isNull();
+  }
+
   @Test
   public void select_line_hashes() {
     setupData("shared");
@@ -98,29 +98,7 @@ public class SourceLineIndexerTest {
     assertThat(countDocuments()).isEqualTo(3);
   }
 
-  @Test
-  public void index_source_lines_from_project() throws Exception {
-    db.prepareDbUnit(getClass(), "db.xml");
-
-    Connection connection = db.openConnection();
-    FileSourceTesting.updateDataColumn(connection, "FILE_UUID", FileSourceTesting.newRandomData(3).build());
-    connection.close();
-
-    indexer.index("PROJECT_UUID");
-    assertThat(countDocuments()).isEqualTo(3);
-  }
 
-  @Test
-  public void index_nothing_from_unknown_project() throws Exception {
-    db.prepareDbUnit(getClass(), "db.xml");
-
-    Connection connection = db.openConnection();
-    FileSourceTesting.updateDataColumn(connection, "FILE_UUID", FileSourceTesting.newRandomData(3).build());
-    connection.close();
-
-    indexer.index("UNKNOWN");
-    assertThat(countDocuments()).isZero();
-  }
 
   /**
    * File F1 in project P1 has one line -> to be updated
@@ -161,6 +139,28 @@ public class SourceLineIndexerTest {
       );
   }
 
+  @Test
+  public void index_project_rows_and_remove_lines_not_in_file_anymore() throws Exception {
+    indexLine("P1", "F1", 1);
+    indexLine("P1", "F1", 2);
+    indexLine("P1", "F2", 1);
+
+    FileSourceDb.Data.Builder dataBuilder = FileSourceDb.Data.newBuilder();
+    dataBuilder.addLinesBuilder()
+      .setLine(1)
+      .setSource("new source")
+      .build();
+    FileSourcesUpdaterHelper.Row dbRow = SourceLineResultSetIterator.toRow("P1", "F1", new Date(), dataBuilder.build());
+    indexer.index("P1", Iterators.singletonIterator(dbRow));
+
+    assertThat(countDocuments()).isEqualTo(2L);
+    SearchResponse fileSearch = prepareSearch()
+      .setQuery(QueryBuilders.termQuery(FIELD_FILE_UUID, "F1"))
+      .get();
+    assertThat(fileSearch.getHits().getTotalHits()).isEqualTo(1L);
+    assertThat(fileSearch.getHits().getHits()[0].sourceAsMap()).contains(entry(FIELD_LINE, 1), entry(FIELD_SOURCE, "new source"));
+  }
+
   @Test
   public void delete_file_uuid() throws Exception {
     indexLine("P1", "F1", 1);
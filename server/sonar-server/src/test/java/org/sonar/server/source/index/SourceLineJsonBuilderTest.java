@@ -0,0 +1,134 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import org.apache.commons.lang.StringUtils;
+import org.assertj.core.data.MapEntry;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+import org.sonar.server.es.EsUtils;
+import org.sonar.server.source.db.FileSourceDb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceLineJsonBuilderTest {
+
+  static final Date UPDATED_AT = new Date(1416239042000L);
+
+  SourceLineJsonBuilder sut = new SourceLineJsonBuilder();
+
+  @Test
+  public void serialize_all_fields() {
+    FileSourceDb.Line line = FileSourceDb.Line.newBuilder()
+      .setLine(12)
+      .setScmRevision("REV")
+      .setScmAuthor("AUTHOR")
+      .setScmDate(1300000000000L)
+      .setUtLineHits(1).setUtConditions(2).setUtCoveredConditions(3)
+      .setItLineHits(4).setItConditions(5).setItCoveredConditions(6)
+      .setOverallLineHits(7).setOverallConditions(8).setOverallCoveredConditions(9)
+      .setHighlighting("2,9,k")
+      .setSymbols("1,3,1")
+      .addAllDuplication(Arrays.asList(1, 20, 300))
+      .setSource("public class Foo {")
+      .build();
+
+    Map<String, Object> doc = toMap(sut.startFile("P1", "F1", UPDATED_AT).toJson(line));
+
+    assertThat(doc).containsOnly(
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_PROJECT_UUID, "P1"),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_FILE_UUID, "F1"),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_UPDATED_AT, EsUtils.formatDateTime(UPDATED_AT)),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_LINE, 12),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_SCM_REVISION, "REV"),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_SCM_AUTHOR, "AUTHOR"),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_SCM_DATE, EsUtils.formatDateTime(new Date(1300000000000L))),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_UT_LINE_HITS, 1),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_UT_CONDITIONS, 2),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_UT_COVERED_CONDITIONS, 3),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_IT_LINE_HITS, 4),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_IT_CONDITIONS, 5),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_IT_COVERED_CONDITIONS, 6),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_OVERALL_LINE_HITS, 7),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_OVERALL_CONDITIONS, 8),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_OVERALL_COVERED_CONDITIONS, 9),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_HIGHLIGHTING, "2,9,k"),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_SYMBOLS, "1,3,1"),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_DUPLICATIONS, Arrays.asList(1, 20, 300)),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_SOURCE, "public class Foo {"));
+  }
+
+  @Test
+  public void serialize_null_values() {
+    FileSourceDb.Line line = FileSourceDb.Line.newBuilder().setLine(1).build();
+
+    Map<String, Object> doc = toMap(sut.startFile("P1", "F1", UPDATED_AT).toJson(line));
+
+    assertThat(doc).hasSize(20);
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_SCM_DATE)).isNull();
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_UT_LINE_HITS)).isNull();
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_OVERALL_COVERED_CONDITIONS)).isNull();
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_HIGHLIGHTING)).isNull();
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_SOURCE)).isNull();
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_DUPLICATIONS)).isEqualTo(Arrays.asList());
+  }
+
+  @Test
+  public void escape_strings() {
+    String source = "\"quoted\" \\ \t tab\r\n\u0001 é € 😀 </script>";
+    FileSourceDb.Line line = FileSourceDb.Line.newBuilder().setLine(1).setSource(source).build();
+
+    Map<String, Object> doc = toMap(sut.startFile("P1", "F1", UPDATED_AT).toJson(line));
+
+    assertThat(doc.get(SourceLineIndexDefinition.FIELD_SOURCE)).isEqualTo(source);
+  }
+
+  @Test
+  public void reuse_buffer_between_files_and_lines() {
+    String bigSource = StringUtils.repeat("a", 100000);
+    FileSourceDb.Line bigLine = FileSourceDb.Line.newBuilder().setLine(1).setSource(bigSource).setScmDate(1300000000000L).build();
+    FileSourceDb.Line smallLine = FileSourceDb.Line.newBuilder().setLine(2).setSource("b").setScmDate(1300000000000L).build();
+
+    Map<String, Object> doc1 = toMap(sut.startFile("P1", "F1", UPDATED_AT).toJson(bigLine));
+    Map<String, Object> doc2 = toMap(sut.toJson(smallLine));
+    Map<String, Object> doc3 = toMap(sut.startFile("P2", "F2", UPDATED_AT).toJson(smallLine));
+
+    assertThat(doc1.get(SourceLineIndexDefinition.FIELD_SOURCE)).isEqualTo(bigSource);
+    assertThat(doc2).contains(MapEntry.entry(SourceLineIndexDefinition.FIELD_FILE_UUID, "F1"), MapEntry.entry(SourceLineIndexDefinition.FIELD_LINE, 2),
+      MapEntry.entry(SourceLineIndexDefinition.FIELD_SOURCE, "b"));
+    assertThat(doc2.get(SourceLineIndexDefinition.FIELD_SCM_DATE)).isEqualTo(doc1.get(SourceLineIndexDefinition.FIELD_SCM_DATE));
+    assertThat(doc3).contains(MapEntry.entry(SourceLineIndexDefinition.FIELD_PROJECT_UUID, "P2"), MapEntry.entry(SourceLineIndexDefinition.FIELD_FILE_UUID, "F2"));
+  }
+
+  @Test
+  public void instance_per_thread() {
+    assertThat(SourceLineJsonBuilder.forCurrentThread()).isSameAs(SourceLineJsonBuilder.forCurrentThread());
+  }
+
+  private static Map<String, Object> toMap(byte[] json) {
+    // fails if not valid UTF-8 JSON
+    assertThat(new String(json, StandardCharsets.UTF_8)).startsWith("{").endsWith("}");
+    return XContentHelper.convertToMap(json, false).v2();
+  }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.core.persistence.DbTester;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.es.ProjectUuidRange;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.source.db.FileSourceTesting;
 import org.sonar.test.DbTests;
@@ -165,6 +166,23 @@ public class SourceLineResultSetIteratorTest {
     assertThat(iterator.hasNext()).isFalse();
   }
 
+  @Test
+  public void filter_by_range_of_projects() throws Exception {
+    db.prepareDbUnit(getClass(), "filter_by_project.xml");
+    FileSourceDb.Data.Builder dataBuilder = FileSourceDb.Data.newBuilder();
+    dataBuilder.addLinesBuilder().setLine(1).build();
+    FileSourceTesting.updateDataColumn(connection, "F2", dataBuilder.build());
+
+    iterator = SourceLineResultSetIterator.create(dbClient, connection, 0L, null, new ProjectUuidRange("P2", null));
+
+    FileSourcesUpdaterHelper.Row row = iterator.next();
+    assertThat(row.getProjectUuid()).isEqualTo("P2");
+    assertThat(row.getFileUuid()).isEqualTo("F2");
+
+    // File from project P1, out of range, is not returned
+    assertThat(iterator.hasNext()).isFalse();
+  }
+
   @Test
   public void filter_by_project_and_date() throws Exception {
     db.prepareDbUnit(getClass(), "filter_by_project_and_date.xml");
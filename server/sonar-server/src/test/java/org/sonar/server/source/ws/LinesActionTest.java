@@ -20,32 +20,29 @@
 
 package org.sonar.server.source.ws;
 
-import com.google.common.collect.ImmutableList;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
-import org.sonar.api.config.Settings;
 import org.sonar.api.web.UserRole;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.component.ComponentTesting;
 import org.sonar.server.component.db.ComponentDao;
 import org.sonar.server.db.DbClient;
-import org.sonar.server.es.EsTester;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.exceptions.NotFoundException;
+import org.sonar.server.source.FileSourceDataCache;
 import org.sonar.server.source.HtmlSourceDecorator;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
-import org.sonar.server.source.index.SourceLineIndexDefinition;
+import org.sonar.server.source.SourceService;
+import org.sonar.server.source.db.FileSourceDao;
+import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.WsTester;
 
-import java.util.Date;
-
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.junit.Assert.fail;
@@ -56,19 +53,15 @@ public class LinesActionTest {
   private static final String FILE_UUID = "efgh";
   private static final String FILE_KEY = "Foo.java";
 
-  @ClassRule
-  public static EsTester esTester = new EsTester().addDefinitions(new SourceLineIndexDefinition(new Settings()));
   @ClassRule
   public static DbTester dbTester = new DbTester();
   @Rule
   public UserSessionRule userSessionRule = UserSessionRule.standalone();
 
-  SourceLineIndex sourceLineIndex;
-
-  HtmlSourceDecorator htmlSourceDecorator;
-
   ComponentDao componentDao;
 
+  DbClient dbClient;
+
   DbSession session;
 
   WsTester wsTester;
@@ -76,14 +69,12 @@ public class LinesActionTest {
   @Before
   public void setUp() {
     dbTester.truncateTables();
-    esTester.truncateIndices();
 
-    htmlSourceDecorator = new HtmlSourceDecorator();
-    sourceLineIndex = new SourceLineIndex(esTester.client());
     componentDao = new ComponentDao();
-    DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), componentDao);
+    dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), componentDao, new FileSourceDao(dbTester.myBatis()));
     session = dbClient.openSession(false);
-    wsTester = new WsTester(new SourcesWs(new LinesAction(dbClient, sourceLineIndex, htmlSourceDecorator, userSessionRule)));
+    SourceService sourceService = new SourceService(new HtmlSourceDecorator(), new FileSourceDataCache(dbClient));
+    wsTester = new WsTester(new SourcesWs(new LinesAction(dbClient, sourceService, userSessionRule)));
   }
 
   @After
@@ -95,66 +86,46 @@ public class LinesActionTest {
   public void show_source() throws Exception {
     newFile();
 
-    Date updatedAt = new Date();
-    String scmDate = "2014-01-01T12:34:56.789Z";
-    SourceLineDoc line1 = new SourceLineDoc()
-      .setProjectUuid(PROJECT_UUID)
-      .setFileUuid(FILE_UUID)
-      .setLine(1)
-      .setScmRevision("cafebabe")
-      .setScmAuthor("polop")
-      .setSource("package org.polop;")
-      .setHighlighting("0,7,k")
-      .setSymbols("8,17,42")
-      .setUtLineHits(3)
-      .setUtConditions(2)
-      .setUtCoveredConditions(1)
-      .setItLineHits(3)
-      .setItConditions(2)
-      .setItCoveredConditions(1)
-      .setDuplications(ImmutableList.<Integer>of())
-      .setUpdateDate(updatedAt);
-    line1.setField(SourceLineIndexDefinition.FIELD_SCM_DATE, scmDate);
-
-    SourceLineDoc line2 = new SourceLineDoc()
-      .setProjectUuid(PROJECT_UUID)
-      .setFileUuid(FILE_UUID)
-      .setLine(2)
-      .setScmRevision("cafebabe")
-      .setScmAuthor("polop")
-      .setSource("abc")
-      .setHighlighting("0,5,c")
-      .setSymbols("")
-      .setUtLineHits(3)
-      .setUtConditions(2)
-      .setUtCoveredConditions(1)
-      .setItLineHits(null)
-      .setItConditions(null)
-      .setItCoveredConditions(null)
-      .setDuplications(ImmutableList.of(1))
-      .setUpdateDate(updatedAt);
-    line2.setField(SourceLineIndexDefinition.FIELD_SCM_DATE, scmDate);
-
-    SourceLineDoc line3 = new SourceLineDoc()
-      .setProjectUuid(PROJECT_UUID)
-      .setFileUuid(FILE_UUID)
-      .setLine(3)
-      .setScmRevision("cafebabe")
-      .setScmAuthor("polop")
-      .setSource("}")
-      .setHighlighting(null)
-      .setSymbols(null)
-      .setUtLineHits(null)
-      .setUtConditions(null)
-      .setUtCoveredConditions(null)
-      .setItLineHits(3)
-      .setItConditions(2)
-      .setItCoveredConditions(1)
-      .setDuplications(ImmutableList.<Integer>of())
-      .setUpdateDate(updatedAt);
-    line3.setField(SourceLineIndexDefinition.FIELD_SCM_DATE, scmDate);
-
-    esTester.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE, line1, line2, line3);
+    long scmDate = 1388579696789L;
+    insertSource(
+      FileSourceDb.Line.newBuilder()
+        .setLine(1)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setScmDate(scmDate)
+        .setSource("package org.polop;")
+        .setHighlighting("0,7,k")
+        .setSymbols("8,17,42")
+        .setUtLineHits(3)
+        .setUtConditions(2)
+        .setUtCoveredConditions(1)
+        .setItLineHits(3)
+        .setItConditions(2)
+        .setItCoveredConditions(1)
+        .build(),
+      FileSourceDb.Line.newBuilder()
+        .setLine(2)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setScmDate(scmDate)
+        .setSource("abc")
+        .setHighlighting("0,5,c")
+        .setSymbols("")
+        .setUtLineHits(3)
+        .setUtConditions(2)
+        .setUtCoveredConditions(1)
+        .addDuplication(1)
+        .build(),
+      FileSourceDb.Line.newBuilder()
+        .setLine(3)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setScmDate(scmDate)
+        .setSource("}")
+        .setItLineHits(3)
+        .setItConditions(2)
+        .setItCoveredConditions(1)
+        .build());
 
     userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
 
@@ -183,26 +154,17 @@ public class LinesActionTest {
 
     userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
 
-    esTester.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE,
-      new SourceLineDoc()
-        .setProjectUuid(PROJECT_UUID)
-        .setFileUuid(FILE_UUID)
+    insertSource(
+      FileSourceDb.Line.newBuilder().setLine(1).setSource("package org.polop;").build(),
+      FileSourceDb.Line.newBuilder().setLine(2).setSource("abc").build(),
+      FileSourceDb.Line.newBuilder()
         .setLine(3)
         .setScmRevision("cafebabe")
-        .setScmDate(null)
         .setScmAuthor("polop")
         .setSource("}")
         .setHighlighting("")
         .setSymbols("")
-        .setUtLineHits(null)
-        .setUtConditions(null)
-        .setUtCoveredConditions(null)
-        .setItLineHits(null)
-        .setItConditions(null)
-        .setItCoveredConditions(null)
-        .setDuplications(null)
-        .setUpdateDate(new Date())
-      );
+        .build());
 
     WsTester.TestRequest request = wsTester
       .newGetRequest("api/sources", "lines")
@@ -216,26 +178,15 @@ public class LinesActionTest {
   public void show_source_by_file_key() throws Exception {
     newFile();
 
-    esTester.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE,
-      new SourceLineDoc()
-        .setProjectUuid(PROJECT_UUID)
-        .setFileUuid(FILE_UUID)
+    insertSource(
+      FileSourceDb.Line.newBuilder()
         .setLine(3)
         .setScmRevision("cafebabe")
-        .setScmDate(null)
         .setScmAuthor("polop")
         .setSource("}")
         .setHighlighting("")
         .setSymbols("")
-        .setUtLineHits(null)
-        .setUtConditions(null)
-        .setUtCoveredConditions(null)
-        .setItLineHits(null)
-        .setItConditions(null)
-        .setItCoveredConditions(null)
-        .setDuplications(null)
-        .setUpdateDate(new Date())
-      );
+        .build());
 
     userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
 
@@ -274,4 +225,20 @@ public class LinesActionTest {
     componentDao.insert(session, project, file);
     session.commit();
   }
+
+  private void insertSource(FileSourceDb.Line... lines) {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (FileSourceDb.Line line : lines) {
+      data.addLines(line);
+    }
+    dbClient.fileSourceDao().insert(session, new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE_UUID)
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setSourceData(data.build())
+      .setDataHash("DATA_HASH")
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+    session.commit();
+  }
 }
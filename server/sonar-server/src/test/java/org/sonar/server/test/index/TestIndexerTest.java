@@ -92,29 +92,7 @@ public class TestIndexerTest {
     assertThat(countDocuments()).isEqualTo(3);
   }
 
-  @Test
-  public void index_tests_from_project() throws Exception {
-    db.prepareDbUnit(getClass(), "db.xml");
-
-    Connection connection = db.openConnection();
-    TestTesting.updateDataColumn(connection, "FILE_UUID", TestTesting.newRandomTests(3));
-    connection.close();
-
-    sut.index("PROJECT_UUID");
-    assertThat(countDocuments()).isEqualTo(3);
-  }
-
-  @Test
-  public void index_nothing_from_unknown_project() throws Exception {
-    db.prepareDbUnit(getClass(), "db.xml");
-
-    Connection connection = db.openConnection();
-    TestTesting.updateDataColumn(connection, "FILE_UUID", TestTesting.newRandomTests(3));
-    connection.close();
 
-    sut.index("UNKNOWN");
-    assertThat(countDocuments()).isZero();
-  }
 
   /**
    * File F1 in project P1 has one test -> to be updated
@@ -158,6 +136,26 @@ public class TestIndexerTest {
       );
   }
 
+  @Test
+  public void index_project_rows_and_remove_tests_not_in_file_anymore() throws Exception {
+    indexTest("P1", "F1", "T1", "U111");
+    indexTest("P1", "F1", "T2", "U112");
+    indexTest("P1", "F2", "T1", "U121");
+
+    FileSourcesUpdaterHelper.Row dbRow = TestResultSetIterator.toRow("P1", "F1", new Date(), Arrays.asList(
+      FileSourceDb.Test.newBuilder()
+        .setUuid("U111")
+        .setName("NAME_1")
+        .setStatus(TestStatus.OK)
+        .build()
+      ));
+    sut.index("P1", Iterators.singletonIterator(dbRow));
+
+    List<SearchHit> hits = getDocuments();
+    assertThat(hits).hasSize(2);
+    assertThat(hits).extracting("id").containsOnly("U111", "U121");
+  }
+
   @Test
   public void delete_file_uuid() throws Exception {
     indexTest("P1", "F1", "T1", "U111");
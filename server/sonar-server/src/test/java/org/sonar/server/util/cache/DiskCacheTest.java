@@ -38,7 +38,7 @@ public class DiskCacheTest {
 
   @Test
   public void write_and_read() throws Exception {
-    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE);
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), new SerializableCodec<String>(), false, System2.INSTANCE);
     try (CloseableIterator<String> traverse = cache.traverse()) {
       assertThat(traverse).isEmpty();
     }
@@ -52,10 +52,38 @@ public class DiskCacheTest {
     }
   }
 
+  @Test
+  public void write_and_read_with_several_appenders() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), new SerializableCodec<String>(), false, System2.INSTANCE);
+    cache.newAppender().append("foo").close();
+    cache.newAppender().close();
+    cache.newAppender().append("bar").append("baz").close();
+
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
+  @Test
+  public void write_and_read_compressed() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), new SerializableCodec<String>(), true, System2.INSTANCE);
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).isEmpty();
+    }
+
+    cache.newAppender().append("foo").close();
+    cache.newAppender().close();
+    cache.newAppender().append("bar").append("baz").close();
+
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
   @Test
   public void fail_if_file_is_not_writable() throws Exception {
     try {
-      new DiskCache<>(temp.newFolder(), System2.INSTANCE);
+      new DiskCache<>(temp.newFolder(), new SerializableCodec<String>(), false, System2.INSTANCE);
       fail();
     } catch (IllegalStateException e) {
       assertThat(e).hasMessageContaining("Fail to write into file");
@@ -69,7 +97,7 @@ public class DiskCacheTest {
         throw new UnsupportedOperationException("expected error");
       }
     }
-    DiskCache<Serializable> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE);
+    DiskCache<Serializable> cache = new DiskCache<>(temp.newFile(), new SerializableCodec<>(), false, System2.INSTANCE);
     try {
       cache.newAppender().append(new Unserializable());
       fail();
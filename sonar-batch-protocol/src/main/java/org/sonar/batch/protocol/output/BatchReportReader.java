@@ -19,147 +19,361 @@
  */
 package org.sonar.batch.protocol.output;
 
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.CheckForNull;
-import org.sonar.batch.protocol.ProtobufUtil;
 import org.sonar.batch.protocol.output.BatchReport.Issues;
 
-public class BatchReportReader {
+/**
+ * Random access to the entries of the analysis report, see {@link ReportFile}. When the report is complete, its
+ * index is loaded at once and the file is mapped in memory. Otherwise, as when the report is read while being
+ * written, the headers of the new entries are scanned on demand.
+ */
+public class BatchReportReader implements Closeable {
 
-  private final FileStructure fileStructure;
+  private final File reportFile;
+  private RandomAccessFile file;
+  private FileChannel channel;
+  private MappedByteBuffer mapped;
+  private final Map<Long, ReportFile.Location> index = new HashMap<>();
+  private boolean complete = false;
+  // position of the first entry which has not been scanned yet, when report is not complete
+  private long scannedUpTo = ReportFile.HEADER_SIZE;
 
   public BatchReportReader(File dir) {
-    this.fileStructure = new FileStructure(dir);
+    this.reportFile = new FileStructure(dir).reportFile();
   }
 
   public BatchReport.Metadata readMetadata() {
-    File file = fileStructure.metadataFile();
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Metadata file is missing in analysis report: " + file);
+    ByteBuffer data = data(FileStructure.Domain.METADATA, 0);
+    if (data == null) {
+      throw new IllegalStateException("Metadata is missing in analysis report: " + reportFile);
     }
-    return ProtobufUtil.readFile(file, BatchReport.Metadata.PARSER);
+    return parse(data, BatchReport.Metadata.PARSER);
   }
 
   public List<BatchReport.Measure> readComponentMeasures(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    if (doesFileExists(file)) {
+    ByteBuffer data = data(FileStructure.Domain.MEASURES, componentRef);
+    if (data != null) {
       // all the measures are loaded in memory
-      BatchReport.Measures measures = ProtobufUtil.readFile(file, BatchReport.Measures.PARSER);
-      return measures.getMeasureList();
+      return parse(data, BatchReport.Measures.PARSER).getMeasureList();
     }
     return Collections.emptyList();
   }
 
   @CheckForNull
   public BatchReport.Changesets readChangesets(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
-    if (doesFileExists(file)) {
-      return ProtobufUtil.readFile(file, BatchReport.Changesets.PARSER);
+    ByteBuffer data = data(FileStructure.Domain.CHANGESETS, componentRef);
+    if (data != null) {
+      return parse(data, BatchReport.Changesets.PARSER);
     }
     return null;
   }
 
   public BatchReport.Component readComponent(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, componentRef);
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
+    ByteBuffer data = data(FileStructure.Domain.COMPONENT, componentRef);
+    if (data == null) {
+      throw new IllegalStateException("Unable to find report for component #" + componentRef + " in " + reportFile);
     }
-    return ProtobufUtil.readFile(file, BatchReport.Component.PARSER);
+    return parse(data, BatchReport.Component.PARSER);
   }
 
   public List<BatchReport.Issue> readComponentIssues(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    if (doesFileExists(file)) {
+    ByteBuffer data = data(FileStructure.Domain.ISSUES, componentRef);
+    if (data != null) {
       // all the issues are loaded in memory
-      BatchReport.Issues issues = ProtobufUtil.readFile(file, BatchReport.Issues.PARSER);
-      return issues.getIssueList();
+      return parse(data, BatchReport.Issues.PARSER).getIssueList();
     }
     return Collections.emptyList();
   }
 
   public Issues readDeletedComponentIssues(int deletedComponentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES_ON_DELETED, deletedComponentRef);
-    if (!doesFileExists(file)) {
+    ByteBuffer data = data(FileStructure.Domain.ISSUES_ON_DELETED, deletedComponentRef);
+    if (data == null) {
       throw new IllegalStateException("Unable to find report for deleted component #" + deletedComponentRef);
     }
     // all the issues are loaded in memory
-    return ProtobufUtil.readFile(file, Issues.PARSER);
+    return parse(data, Issues.PARSER);
   }
 
   public List<BatchReport.Duplication> readComponentDuplications(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    if (doesFileExists(file)) {
+    ByteBuffer data = data(FileStructure.Domain.DUPLICATIONS, componentRef);
+    if (data != null) {
       // all the duplications are loaded in memory
-      BatchReport.Duplications duplications = ProtobufUtil.readFile(file, BatchReport.Duplications.PARSER);
-      return duplications.getDuplicationList();
+      return parse(data, BatchReport.Duplications.PARSER).getDuplicationList();
     }
     return Collections.emptyList();
   }
 
   public List<BatchReport.Symbols.Symbol> readComponentSymbols(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    if (doesFileExists(file)) {
+    ByteBuffer data = data(FileStructure.Domain.SYMBOLS, componentRef);
+    if (data != null) {
       // all the symbols are loaded in memory
-      BatchReport.Symbols symbols = ProtobufUtil.readFile(file, BatchReport.Symbols.PARSER);
-      return symbols.getSymbolList();
+      return parse(data, BatchReport.Symbols.PARSER).getSymbolList();
     }
     return Collections.emptyList();
   }
 
   public boolean hasSyntaxHighlighting(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    return file.exists();
+    return data(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef) != null;
+  }
+
+  /**
+   * Stream of delimited messages, or null if the file has no syntax highlighting
+   */
+  @CheckForNull
+  public InputStream readComponentSyntaxHighlighting(int fileRef) {
+    return stream(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
   }
 
+  /**
+   * Stream of delimited messages, or null if the file has no coverage
+   */
   @CheckForNull
-  public File readComponentSyntaxHighlighting(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
-    if (doesFileExists(file)) {
-      return file;
+  public InputStream readComponentCoverage(int fileRef) {
+    return stream(FileStructure.Domain.COVERAGES, fileRef);
+  }
+
+  /**
+   * Lines of the source file encoded in UTF-8 and separated by '\n'
+   */
+  public InputStream readFileSource(int fileRef) {
+    InputStream stream = stream(FileStructure.Domain.SOURCE, fileRef);
+    if (stream == null) {
+      throw new IllegalStateException("Unable to find source for file #" + fileRef + " in " + reportFile);
     }
-    return null;
+    return stream;
+  }
+
+  @CheckForNull
+  public InputStream readTests(int testFileRef) {
+    return stream(FileStructure.Domain.TESTS, testFileRef);
   }
 
   @CheckForNull
-  public File readComponentCoverage(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
-    if (doesFileExists(file)) {
-      return file;
+  public InputStream readCoverageDetails(int testFileRef) {
+    return stream(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
+  }
+
+  /**
+   * Releases the report file, so that it can be deleted. The streams returned by this reader must not be used
+   * anymore. The reader can be used again, the file is then opened again.
+   */
+  @Override
+  public synchronized void close() {
+    if (mapped != null) {
+      unmap(mapped);
+    }
+    mapped = null;
+    channel = null;
+    index.clear();
+    complete = false;
+    scannedUpTo = ReportFile.HEADER_SIZE;
+    if (file != null) {
+      try {
+        file.close();
+      } catch (IOException ignored) {
+        // nothing to do
+      }
+      file = null;
     }
-    return null;
   }
 
-  public File readFileSource(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef);
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Unable to find source for file #" + fileRef + ". File does not exist: " + file);
+  /**
+   * The mapped file is otherwise released only when the buffer is garbage collected, which prevents the
+   * file from being deleted on some platforms. Does nothing if the JVM does not allow it.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Exception | LinkageError ignored) {
+      // the buffer is released by garbage collector
     }
-    return file;
   }
 
   @CheckForNull
-  public File readTests(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
-    if (doesFileExists(file)) {
-      return file;
-    }
+  private InputStream stream(FileStructure.Domain domain, int componentRef) {
+    ByteBuffer data = data(domain, componentRef);
+    return data == null ? null : new ByteBufferInputStream(data);
+  }
 
-    return null;
+  private <T extends Message> T parse(ByteBuffer data, Parser<T> parser) {
+    try {
+      if (data.hasArray()) {
+        return parser.parseFrom(data.array(), data.arrayOffset() + data.position(), data.remaining());
+      }
+      return parser.parseFrom(new ByteBufferInputStream(data));
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Fail to read report " + reportFile, e);
+    }
   }
 
+  /**
+   * Data of the given entry, or null if it does not exist
+   */
   @CheckForNull
-  public File readCoverageDetails(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
-    if (doesFileExists(file)) {
-      return file;
+  private synchronized ByteBuffer data(FileStructure.Domain domain, int componentRef) {
+    try {
+      if (!open()) {
+        return null;
+      }
+      if (!complete && !loadIndex()) {
+        scan();
+      }
+      ReportFile.Location location = index.get(ReportFile.key(domain, componentRef));
+      return location == null ? null : read(location);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read report " + reportFile, e);
     }
+  }
 
-    return null;
+  private ByteBuffer read(ReportFile.Location location) throws IOException {
+    if (mapped != null) {
+      ByteBuffer data = mapped.duplicate();
+      data.position((int) location.offset);
+      data.limit((int) location.offset + location.length);
+      return data.slice();
+    }
+    ByteBuffer data = ByteBuffer.allocate(location.length);
+    ReportFile.readFully(channel, data, location.offset);
+    return data;
+  }
+
+  /**
+   * @return false if the report file does not exist yet
+   */
+  private boolean open() throws IOException {
+    if (channel != null) {
+      return true;
+    }
+    if (!reportFile.isFile() || reportFile.length() < ReportFile.HEADER_SIZE) {
+      return false;
+    }
+    file = new RandomAccessFile(reportFile, "r");
+    channel = file.getChannel();
+    ByteBuffer header = ByteBuffer.allocate(ReportFile.HEADER_SIZE);
+    ReportFile.readFully(channel, header, 0L);
+    if (header.getInt() != ReportFile.MAGIC) {
+      throw new IllegalStateException("File is not an analysis report: " + reportFile);
+    }
+    int version = header.getInt();
+    if (version != ReportFile.VERSION) {
+      throw new IllegalStateException("Unsupported version " + version + " of analysis report: " + reportFile);
+    }
+    return true;
+  }
+
+  /**
+   * Loads the index written when closing the report, if any. It replaces the entries which have been
+   * scanned while the report was being written.
+   *
+   * @return false if the report is still being written
+   */
+  private boolean loadIndex() throws IOException {
+    long size = channel.size();
+    if (size < ReportFile.HEADER_SIZE + ReportFile.FOOTER_SIZE) {
+      return false;
+    }
+    ByteBuffer footer = ByteBuffer.allocate(ReportFile.FOOTER_SIZE);
+    ReportFile.readFully(channel, footer, size - ReportFile.FOOTER_SIZE);
+    long indexOffset = footer.getLong();
+    int count = footer.getInt();
+    int magic = footer.getInt();
+    if (magic != ReportFile.MAGIC || count < 0 || indexOffset < ReportFile.HEADER_SIZE
+      || indexOffset + (long) count * ReportFile.INDEX_ENTRY_SIZE + ReportFile.FOOTER_SIZE != size) {
+      return false;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(count * ReportFile.INDEX_ENTRY_SIZE);
+    ReportFile.readFully(channel, buffer, indexOffset);
+    index.clear();
+    for (int i = 0; i < count; i++) {
+      byte domainCode = buffer.get();
+      int componentRef = buffer.getInt();
+      index.put(ReportFile.key(domainCode, componentRef), new ReportFile.Location(buffer.getLong(), buffer.getInt()));
+    }
+    complete = true;
+    if (indexOffset <= Integer.MAX_VALUE) {
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0L, indexOffset);
+    }
+    return true;
   }
 
-  private static boolean doesFileExists(File file) {
-    return file.exists() && file.isFile();
+  /**
+   * Indexes the entries appended since last call. An entry which is partially written is ignored.
+   */
+  private void scan() throws IOException {
+    long size = channel.size();
+    ByteBuffer entryHeader = ByteBuffer.allocate(ReportFile.ENTRY_HEADER_SIZE);
+    while (scannedUpTo + ReportFile.ENTRY_HEADER_SIZE <= size) {
+      entryHeader.clear();
+      ReportFile.readFully(channel, entryHeader, scannedUpTo);
+      byte domainCode = entryHeader.get();
+      int componentRef = entryHeader.getInt();
+      int length = entryHeader.getInt();
+      long dataOffset = scannedUpTo + ReportFile.ENTRY_HEADER_SIZE;
+      if (dataOffset + length > size) {
+        break;
+      }
+      FileStructure.Domain.fromCode(domainCode);
+      index.put(ReportFile.key(domainCode, componentRef), new ReportFile.Location(dataOffset, length));
+      scannedUpTo = dataOffset + length;
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(bytes, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) {
+      int count = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
   }
 }
@@ -19,18 +19,52 @@
  */
 package org.sonar.batch.protocol.output;
 
+import com.google.protobuf.Message;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import org.sonar.batch.protocol.ProtobufUtil;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class BatchReportWriter {
+/**
+ * Appends the entries of the analysis report to a single file, see {@link ReportFile}. The report
+ * must be closed in order to write the index of entries.
+ */
+public class BatchReportWriter implements Closeable {
 
   private final FileStructure fileStructure;
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  // guards the file channel and the index. It is held while an entry is streamed by appendFileSource().
+  private final ReentrantLock lock = new ReentrantLock();
+  // location of the last data written for each domain and component
+  private final Map<Long, ReportFile.Location> index = new HashMap<>();
+  private boolean closed = false;
 
   public BatchReportWriter(File dir) {
     if (!dir.exists() && !dir.mkdirs()) {
       throw new IllegalStateException("Unable to create directory: " + dir);
     }
     this.fileStructure = new FileStructure(dir);
+    File reportFile = fileStructure.reportFile();
+    try {
+      this.file = new RandomAccessFile(reportFile, "rw");
+      this.channel = file.getChannel();
+      channel.truncate(0L);
+      ByteBuffer header = ByteBuffer.allocate(ReportFile.HEADER_SIZE);
+      header.putInt(ReportFile.MAGIC).putInt(ReportFile.VERSION).flip();
+      ReportFile.writeFully(channel, header);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to create report file: " + reportFile, e);
+    }
   }
 
   public FileStructure getFileStructure() {
@@ -38,106 +72,260 @@ public class BatchReportWriter {
   }
 
   public boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
-    File file = fileStructure.fileFor(domain, componentRef);
-    return file.exists() && file.isFile();
+    lock.lock();
+    try {
+      return index.containsKey(ReportFile.key(domain, componentRef));
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Metadata is mandatory
    */
-  public File writeMetadata(BatchReport.Metadata metadata) {
-    ProtobufUtil.writeToFile(metadata, fileStructure.metadataFile());
-    return fileStructure.metadataFile();
+  public void writeMetadata(BatchReport.Metadata metadata) {
+    write(FileStructure.Domain.METADATA, 0, metadata);
   }
 
-  public File writeComponent(BatchReport.Component component) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, component.getRef());
-    ProtobufUtil.writeToFile(component, file);
-    return file;
+  public void writeComponent(BatchReport.Component component) {
+    write(FileStructure.Domain.COMPONENT, component.getRef(), component);
   }
 
-  public File writeComponentIssues(int componentRef, Iterable<BatchReport.Issue> issues) {
+  public void writeComponentIssues(int componentRef, Iterable<BatchReport.Issue> issues) {
     BatchReport.Issues.Builder issuesBuilder = BatchReport.Issues.newBuilder();
     issuesBuilder.setComponentRef(componentRef);
     issuesBuilder.addAllIssue(issues);
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    ProtobufUtil.writeToFile(issuesBuilder.build(), file);
-    return file;
+    write(FileStructure.Domain.ISSUES, componentRef, issuesBuilder.build());
   }
 
-  public File writeComponentMeasures(int componentRef, Iterable<BatchReport.Measure> measures) {
+  public void writeComponentMeasures(int componentRef, Iterable<BatchReport.Measure> measures) {
     BatchReport.Measures.Builder measuresBuilder = BatchReport.Measures.newBuilder();
     measuresBuilder.setComponentRef(componentRef);
     measuresBuilder.addAllMeasure(measures);
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    ProtobufUtil.writeToFile(measuresBuilder.build(), file);
-    return file;
+    write(FileStructure.Domain.MEASURES, componentRef, measuresBuilder.build());
   }
 
-  public File writeComponentChangesets(BatchReport.Changesets changesets) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, changesets.getComponentRef());
-    ProtobufUtil.writeToFile(changesets, file);
-    return file;
+  public void writeComponentChangesets(BatchReport.Changesets changesets) {
+    write(FileStructure.Domain.CHANGESETS, changesets.getComponentRef(), changesets);
   }
 
   /**
    * Issues on components which have been deleted are stored in another location.
    * Temporary hack, waiting for computation stack
    */
-  public File writeDeletedComponentIssues(int componentRef, String componentUuid, Iterable<BatchReport.Issue> issues) {
+  public void writeDeletedComponentIssues(int componentRef, String componentUuid, Iterable<BatchReport.Issue> issues) {
     BatchReport.Issues.Builder issuesBuilder = BatchReport.Issues.newBuilder();
     issuesBuilder.setComponentRef(componentRef);
     issuesBuilder.setComponentUuid(componentUuid);
     issuesBuilder.addAllIssue(issues);
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES_ON_DELETED, componentRef);
-    ProtobufUtil.writeToFile(issuesBuilder.build(), file);
-    return file;
+    write(FileStructure.Domain.ISSUES_ON_DELETED, componentRef, issuesBuilder.build());
   }
 
-  public File writeComponentDuplications(int componentRef, Iterable<BatchReport.Duplication> duplications) {
+  public void writeComponentDuplications(int componentRef, Iterable<BatchReport.Duplication> duplications) {
     BatchReport.Duplications.Builder builder = BatchReport.Duplications.newBuilder();
     builder.setComponentRef(componentRef);
     builder.addAllDuplication(duplications);
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    ProtobufUtil.writeToFile(builder.build(), file);
-    return file;
+    write(FileStructure.Domain.DUPLICATIONS, componentRef, builder.build());
   }
 
-  public File writeComponentSymbols(int componentRef, Iterable<BatchReport.Symbols.Symbol> symbols) {
+  public void writeComponentSymbols(int componentRef, Iterable<BatchReport.Symbols.Symbol> symbols) {
     BatchReport.Symbols.Builder builder = BatchReport.Symbols.newBuilder();
     builder.setFileRef(componentRef);
     builder.addAllSymbol(symbols);
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    ProtobufUtil.writeToFile(builder.build(), file);
-    return file;
+    write(FileStructure.Domain.SYMBOLS, componentRef, builder.build());
+  }
+
+  public void writeComponentSyntaxHighlighting(int componentRef, Iterable<BatchReport.SyntaxHighlighting> syntaxHighlightingRules) {
+    writeDelimited(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef, syntaxHighlightingRules);
+  }
+
+  public void writeComponentCoverage(int componentRef, Iterable<BatchReport.Coverage> coverageList) {
+    writeDelimited(FileStructure.Domain.COVERAGES, componentRef, coverageList);
+  }
+
+  public void writeTests(int componentRef, Iterable<BatchReport.Test> tests) {
+    writeDelimited(FileStructure.Domain.TESTS, componentRef, tests);
+  }
+
+  public void writeCoverageDetails(int componentRef, Iterable<BatchReport.CoverageDetail> tests) {
+    writeDelimited(FileStructure.Domain.COVERAGE_DETAILS, componentRef, tests);
+  }
+
+  /**
+   * Lines of the source file, separated by '\n'.
+   */
+  public void writeFileSource(int componentRef, String source) {
+    append(FileStructure.Domain.SOURCE, componentRef, source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Same as {@link #writeFileSource(int, String)}, except that the lines, encoded in UTF-8, are written to the
+   * returned stream without being buffered in memory. The entry is complete when the stream is closed, which must
+   * be done by the calling thread. Meanwhile the other entries wait.
+   */
+  public OutputStream appendFileSource(int componentRef) {
+    return new EntryOutputStream(FileStructure.Domain.SOURCE, componentRef);
+  }
+
+  private void write(FileStructure.Domain domain, int componentRef, Message message) {
+    append(domain, componentRef, message.toByteArray());
+  }
+
+  private void writeDelimited(FileStructure.Domain domain, int componentRef, Iterable<? extends Message> messages) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try {
+      for (Message message : messages) {
+        message.writeDelimitedTo(output);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to serialize " + domain + " of component #" + componentRef, e);
+    }
+    append(domain, componentRef, output.toByteArray());
+  }
+
+  void append(FileStructure.Domain domain, int componentRef, byte[] data) {
+    lock.lock();
+    try {
+      checkNotClosed();
+      long position = channel.position();
+      ByteBuffer entryHeader = ByteBuffer.allocate(ReportFile.ENTRY_HEADER_SIZE);
+      entryHeader.put(domain.code()).putInt(componentRef).putInt(data.length).flip();
+      ReportFile.writeFully(channel, entryHeader, ByteBuffer.wrap(data));
+      index.put(ReportFile.key(domain, componentRef), new ReportFile.Location(position + ReportFile.ENTRY_HEADER_SIZE, data.length));
+    } catch (IOException e) {
+      throw writeFailure(domain, componentRef, e);
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public File writeComponentSyntaxHighlighting(int componentRef, Iterable<BatchReport.SyntaxHighlighting> syntaxHighlightingRules) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    ProtobufUtil.writeMessagesToFile(syntaxHighlightingRules, file);
-    return file;
+  private IllegalStateException writeFailure(FileStructure.Domain domain, int componentRef, IOException cause) {
+    return new IllegalStateException("Unable to write " + domain + " of component #" + componentRef + " in report " + fileStructure.reportFile(), cause);
   }
 
-  public File writeComponentCoverage(int componentRef, Iterable<BatchReport.Coverage> coverageList) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
-    ProtobufUtil.writeMessagesToFile(coverageList, file);
-    return file;
+  /**
+   * Writes the index of entries. The report can't be written anymore.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      doClose();
+    } finally {
+      lock.unlock();
+    }
   }
 
-  public File writeTests(int componentRef, Iterable<BatchReport.Test> tests) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, componentRef);
-    ProtobufUtil.writeMessagesToFile(tests, file);
-    return file;
+  private void doClose() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      long[] keys = new long[index.size()];
+      int i = 0;
+      for (Long key : index.keySet()) {
+        keys[i] = key;
+        i++;
+      }
+      Arrays.sort(keys);
+      long indexOffset = channel.position();
+      ByteBuffer buffer = ByteBuffer.allocate(keys.length * ReportFile.INDEX_ENTRY_SIZE + ReportFile.FOOTER_SIZE);
+      for (long key : keys) {
+        ReportFile.Location location = index.get(key);
+        buffer.put(ReportFile.domainCodeOf(key)).putInt(ReportFile.componentRefOf(key)).putLong(location.offset).putInt(location.length);
+      }
+      buffer.putLong(indexOffset).putInt(keys.length).putInt(ReportFile.MAGIC).flip();
+      ReportFile.writeFully(channel, buffer);
+      channel.force(false);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write index of report " + fileStructure.reportFile(), e);
+    } finally {
+      closeQuietly();
+    }
   }
 
-  public File writeCoverageDetails(int componentRef, Iterable<BatchReport.CoverageDetail> tests) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, componentRef);
-    ProtobufUtil.writeMessagesToFile(tests, file);
-    return file;
+  private void closeQuietly() {
+    try {
+      file.close();
+    } catch (IOException ignored) {
+      // nothing to do
+    }
   }
 
-  public File getSourceFile(int componentRef) {
-    return fileStructure.fileFor(FileStructure.Domain.SOURCE, componentRef);
+  private void checkNotClosed() {
+    if (closed) {
+      throw new IllegalStateException("Report is closed: " + fileStructure.reportFile());
+    }
+  }
+
+  /**
+   * Writes the data of an entry directly to the report file. The length of the entry is unknown until the stream
+   * is closed, so meanwhile the header declares the max length: readers consider the entry as partially written.
+   */
+  private class EntryOutputStream extends OutputStream {
+    private final FileStructure.Domain domain;
+    private final int componentRef;
+    private final long position;
+    private long length = 0L;
+    private boolean entryClosed = false;
+
+    EntryOutputStream(FileStructure.Domain domain, int componentRef) {
+      this.domain = domain;
+      this.componentRef = componentRef;
+      lock.lock();
+      boolean started = false;
+      try {
+        checkNotClosed();
+        this.position = channel.position();
+        ByteBuffer entryHeader = ByteBuffer.allocate(ReportFile.ENTRY_HEADER_SIZE);
+        entryHeader.put(domain.code()).putInt(componentRef).putInt(Integer.MAX_VALUE).flip();
+        ReportFile.writeFully(channel, entryHeader);
+        started = true;
+      } catch (IOException e) {
+        throw writeFailure(domain, componentRef, e);
+      } finally {
+        if (!started) {
+          lock.unlock();
+        }
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+      if (entryClosed) {
+        throw new IOException("Stream is closed");
+      }
+      if (length + len >= Integer.MAX_VALUE) {
+        throw new IOException("Entry is too big: " + domain + " of component #" + componentRef);
+      }
+      ReportFile.writeFully(channel, ByteBuffer.wrap(bytes, off, len));
+      length += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (entryClosed) {
+        return;
+      }
+      entryClosed = true;
+      try {
+        ByteBuffer entryLength = ByteBuffer.allocate(4);
+        entryLength.putInt((int) length).flip();
+        // positional write, the position of the channel does not change
+        while (entryLength.hasRemaining()) {
+          channel.write(entryLength, position + ReportFile.ENTRY_HEADER_SIZE - 4 + entryLength.position());
+        }
+        index.put(ReportFile.key(domain, componentRef), new ReportFile.Location(position + ReportFile.ENTRY_HEADER_SIZE, (int) length));
+      } finally {
+        lock.unlock();
+      }
+    }
   }
 
 }
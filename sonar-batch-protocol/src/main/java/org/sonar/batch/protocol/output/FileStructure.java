@@ -22,33 +22,53 @@ package org.sonar.batch.protocol.output;
 import java.io.File;
 
 /**
- * Structure of files in the zipped report
+ * Structure of the analysis report. All the entries are stored in a single file, see {@link ReportFile}.
  */
 public class FileStructure {
 
+  public static final String REPORT_FILE_NAME = "report.data";
+
   public enum Domain {
-    ISSUES("issues-", Domain.PB),
-    ISSUES_ON_DELETED("issues-deleted-", Domain.PB),
-    COMPONENT("component-", Domain.PB),
-    MEASURES("measures-", Domain.PB),
-    DUPLICATIONS("duplications-", Domain.PB),
-    SYNTAX_HIGHLIGHTINGS("syntax-highlightings-", Domain.PB),
-    CHANGESETS("changesets-", Domain.PB),
-    SYMBOLS("symbols-", Domain.PB),
-    COVERAGES("coverages-", Domain.PB),
-    TESTS("tests-", Domain.PB),
-    COVERAGE_DETAILS("coverage-details-", Domain.PB),
-    FILE_DEPENDENCIES("file-dependencies-", Domain.PB),
-    MODULE_DEPENDENCIES("module-dependencies-", Domain.PB),
-    SOURCE("source-", ".txt");
+    METADATA(0),
+    ISSUES(1),
+    ISSUES_ON_DELETED(2),
+    COMPONENT(3),
+    MEASURES(4),
+    DUPLICATIONS(5),
+    SYNTAX_HIGHLIGHTINGS(6),
+    CHANGESETS(7),
+    SYMBOLS(8),
+    COVERAGES(9),
+    TESTS(10),
+    COVERAGE_DETAILS(11),
+    FILE_DEPENDENCIES(12),
+    MODULE_DEPENDENCIES(13),
+    SOURCE(14);
+
+    private static final Domain[] BY_CODE = new Domain[values().length];
+
+    static {
+      for (Domain domain : values()) {
+        BY_CODE[domain.code] = domain;
+      }
+    }
+
+    // persisted in the report file, must not be changed
+    private final byte code;
 
-    private static final String PB = ".pb";
-    private final String filePrefix;
-    private final String fileSuffix;
+    Domain(int code) {
+      this.code = (byte) code;
+    }
+
+    byte code() {
+      return code;
+    }
 
-    Domain(String filePrefix, String fileSuffix) {
-      this.filePrefix = filePrefix;
-      this.fileSuffix = fileSuffix;
+    static Domain fromCode(byte code) {
+      if (code < 0 || code >= BY_CODE.length) {
+        throw new IllegalStateException("Unknown domain of report entry: " + code);
+      }
+      return BY_CODE[code];
     }
   }
 
@@ -61,12 +81,8 @@ public class FileStructure {
     this.dir = dir;
   }
 
-  public File metadataFile() {
-    return new File(dir, "metadata.pb");
-  }
-
-  public File fileFor(Domain domain, int componentRef) {
-    return new File(dir, domain.filePrefix + componentRef + domain.fileSuffix);
+  public File reportFile() {
+    return new File(dir, REPORT_FILE_NAME);
   }
 
 }
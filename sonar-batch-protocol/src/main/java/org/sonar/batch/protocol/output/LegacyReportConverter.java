@@ -0,0 +1,120 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Converts the zipped reports of previous versions, with one file per domain and component, to the
+ * single file of {@link ReportFile}. The content of the files is not changed.
+ */
+public class LegacyReportConverter {
+
+  private static final String LEGACY_METADATA_FILE_NAME = "metadata.pb";
+
+  // file prefixes of previous versions. Longest prefixes first, as "issues-" is a prefix of "issues-deleted-".
+  private static final Map<String, FileStructure.Domain> DOMAINS_BY_PREFIX = new LinkedHashMap<>();
+
+  static {
+    DOMAINS_BY_PREFIX.put("issues-deleted-", FileStructure.Domain.ISSUES_ON_DELETED);
+    DOMAINS_BY_PREFIX.put("issues-", FileStructure.Domain.ISSUES);
+    DOMAINS_BY_PREFIX.put("component-", FileStructure.Domain.COMPONENT);
+    DOMAINS_BY_PREFIX.put("measures-", FileStructure.Domain.MEASURES);
+    DOMAINS_BY_PREFIX.put("duplications-", FileStructure.Domain.DUPLICATIONS);
+    DOMAINS_BY_PREFIX.put("syntax-highlightings-", FileStructure.Domain.SYNTAX_HIGHLIGHTINGS);
+    DOMAINS_BY_PREFIX.put("changesets-", FileStructure.Domain.CHANGESETS);
+    DOMAINS_BY_PREFIX.put("symbols-", FileStructure.Domain.SYMBOLS);
+    DOMAINS_BY_PREFIX.put("coverages-", FileStructure.Domain.COVERAGES);
+    DOMAINS_BY_PREFIX.put("tests-", FileStructure.Domain.TESTS);
+    DOMAINS_BY_PREFIX.put("coverage-details-", FileStructure.Domain.COVERAGE_DETAILS);
+    DOMAINS_BY_PREFIX.put("file-dependencies-", FileStructure.Domain.FILE_DEPENDENCIES);
+    DOMAINS_BY_PREFIX.put("module-dependencies-", FileStructure.Domain.MODULE_DEPENDENCIES);
+    DOMAINS_BY_PREFIX.put("source-", FileStructure.Domain.SOURCE);
+  }
+
+  private LegacyReportConverter() {
+    // only static stuff
+  }
+
+  /**
+   * Writes the entries of the legacy zip into the report of the given directory. Unknown files are ignored.
+   */
+  public static void convert(File legacyZip, File reportDir) {
+    BatchReportWriter writer = new BatchReportWriter(reportDir);
+    try (ZipFile zip = new ZipFile(legacyZip)) {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (!entry.isDirectory()) {
+          convertEntry(zip, entry, writer);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to convert legacy analysis report: " + legacyZip, e);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static void convertEntry(ZipFile zip, ZipEntry entry, BatchReportWriter writer) throws IOException {
+    String name = new File(entry.getName()).getName();
+    if (LEGACY_METADATA_FILE_NAME.equals(name)) {
+      writer.append(FileStructure.Domain.METADATA, 0, read(zip, entry));
+      return;
+    }
+    for (Map.Entry<String, FileStructure.Domain> prefix : DOMAINS_BY_PREFIX.entrySet()) {
+      if (name.startsWith(prefix.getKey())) {
+        Integer componentRef = componentRef(name.substring(prefix.getKey().length()));
+        if (componentRef != null) {
+          writer.append(prefix.getValue(), componentRef, read(zip, entry));
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the ref of "12.pb" or "12.txt", or null if the name is not valid
+   */
+  @CheckForNull
+  private static Integer componentRef(String refAndSuffix) {
+    int dot = refAndSuffix.indexOf('.');
+    try {
+      return dot > 0 ? Integer.valueOf(refAndSuffix.substring(0, dot)) : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+    try (InputStream input = zip.getInputStream(entry)) {
+      return IOUtils.toByteArray(input);
+    }
+  }
+}
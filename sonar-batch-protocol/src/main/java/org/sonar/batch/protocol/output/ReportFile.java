@@ -0,0 +1,99 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Format of the single append-only file containing all the entries of an analysis report:
+ * <pre>
+ *   header : magic (int), version (int)
+ *   entries: domain code (byte), component ref (int), length of data (int), data
+ *   index  : domain code (byte), component ref (int), offset of data (long), length of data (int), sorted by domain and ref
+ *   footer : offset of index (long), number of entries in index (int), magic (int)
+ * </pre>
+ * The index and the footer are appended when the writer is closed. The entries of a report which is still being
+ * written can be read anyway by scanning their headers. When an entry is written several times, the last one wins.
+ */
+final class ReportFile {
+
+  static final int MAGIC = 0x53515250;
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 8;
+  static final int ENTRY_HEADER_SIZE = 9;
+  static final int INDEX_ENTRY_SIZE = 17;
+  static final int FOOTER_SIZE = 16;
+
+  private ReportFile() {
+    // only static stuff
+  }
+
+  static long key(FileStructure.Domain domain, int componentRef) {
+    return key(domain.code(), componentRef);
+  }
+
+  static long key(byte domainCode, int componentRef) {
+    return ((long) domainCode << 32) | (componentRef & 0xFFFFFFFFL);
+  }
+
+  static byte domainCodeOf(long key) {
+    return (byte) (key >>> 32);
+  }
+
+  static int componentRefOf(long key) {
+    return (int) key;
+  }
+
+  static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long pos = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, pos);
+      if (read < 0) {
+        throw new IOException("Unexpected end of report file at position " + pos);
+      }
+      pos += read;
+    }
+    buffer.flip();
+  }
+
+  static void writeFully(FileChannel channel, ByteBuffer... buffers) throws IOException {
+    for (ByteBuffer buffer : buffers) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Location of the data of an entry in the report file
+   */
+  static final class Location {
+    final long offset;
+    final int length;
+
+    Location(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
@@ -19,8 +19,8 @@
  */
 package org.sonar.batch.protocol.output;
 
-import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,9 +29,11 @@ import org.sonar.batch.protocol.Constants;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class BatchReportReaderTest {
 
@@ -203,7 +205,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readComponentSyntaxHighlighting(1))) {
+    try (InputStream inputStream = sut.readComponentSyntaxHighlighting(1)) {
       BatchReport.SyntaxHighlighting syntaxHighlighting = BatchReport.SyntaxHighlighting.PARSER.parseDelimitedFrom(inputStream);
       assertThat(syntaxHighlighting.getRange()).isNotNull();
       assertThat(syntaxHighlighting.getRange().getStartLine()).isEqualTo(1);
@@ -283,7 +285,7 @@ public class BatchReportReaderTest {
 
     sut = new BatchReportReader(dir);
 
-    try (InputStream inputStream = FileUtils.openInputStream(new BatchReportReader(dir).readComponentCoverage(1))) {
+    try (InputStream inputStream = new BatchReportReader(dir).readComponentCoverage(1)) {
       BatchReport.Coverage coverage = BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverage.getLine()).isEqualTo(1);
       assertThat(coverage.getConditions()).isEqualTo(1);
@@ -312,11 +314,85 @@ public class BatchReportReaderTest {
   @Test
   public void read_source_lines() throws Exception {
     BatchReportWriter writer = new BatchReportWriter(dir);
-    File file = writer.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 1);
-    FileUtils.writeLines(file, Lists.newArrayList("line1", "line2"));
+    writer.writeFileSource(1, "line1\nline2");
 
-    File sourceFile = new BatchReportReader(dir).readFileSource(1);
-    assertThat(sourceFile).isEqualTo(file);
+    try (InputStream inputStream = new BatchReportReader(dir).readFileSource(1)) {
+      assertThat(IOUtils.readLines(inputStream, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_if_missing_source() {
+    sut.readFileSource(UNKNOWN_COMPONENT_REF);
+  }
+
+  @Test
+  public void read_closed_report() {
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/Foo.java").build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(2).setPath("src/Bar.java").build());
+    writer.close();
+
+    assertThat(sut.readComponent(1).getPath()).isEqualTo("src/Foo.java");
+    assertThat(sut.readComponent(2).getPath()).isEqualTo("src/Bar.java");
+    assertThat(sut.readComponentIssues(1)).isEmpty();
+    sut.close();
+  }
+
+  @Test
+  public void release_report_file_when_closed() {
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/Foo.java").build());
+    writer.close();
+    assertThat(sut.readComponent(1).getPath()).isEqualTo("src/Foo.java");
+
+    sut.close();
+    assertThat(new FileStructure(dir).reportFile().delete()).isTrue();
+
+    // reader opens the new file
+    writer = new BatchReportWriter(dir);
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/Bar.java").build());
+    writer.close();
+    assertThat(sut.readComponent(1).getPath()).isEqualTo("src/Bar.java");
+    sut.close();
+  }
+
+  @Test
+  public void read_entries_appended_after_first_read() {
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).build());
+    assertThat(sut.readComponent(1).getRef()).isEqualTo(1);
+    assertThat(sut.readChangesets(1)).isNull();
+
+    writer.writeComponentChangesets(BatchReport.Changesets.newBuilder().setComponentRef(1).build());
+    assertThat(sut.readChangesets(1)).isNotNull();
+
+    // index written on close replaces the scanned entries
+    writer.close();
+    assertThat(sut.readComponent(1).getRef()).isEqualTo(1);
+    assertThat(sut.readChangesets(1)).isNotNull();
+  }
+
+  @Test
+  public void last_written_entry_wins() {
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("old").build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("new").build());
+    assertThat(sut.readComponent(1).getPath()).isEqualTo("new");
+
+    writer.close();
+    assertThat(new BatchReportReader(dir).readComponent(1).getPath()).isEqualTo("new");
+  }
+
+  @Test
+  public void fail_if_not_a_report_file() throws Exception {
+    FileUtils.write(new FileStructure(dir).reportFile(), "not a report");
+    try {
+      sut.readMetadata();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("File is not an analysis report");
+    }
   }
 
   @Test
@@ -330,7 +406,7 @@ public class BatchReportReaderTest {
         .setStatus(Constants.TestStatus.OK)
         .build()));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readTests(1))) {
+    try (InputStream inputStream = sut.readTests(1)) {
       BatchReport.Test testResult = BatchReport.Test.PARSER.parseDelimitedFrom(inputStream);
       assertThat(testResult.getDurationInMs()).isEqualTo(60_000);
       assertThat(testResult.getStacktrace()).isEqualTo("stacktrace");
@@ -357,7 +433,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readCoverageDetails(1))) {
+    try (InputStream inputStream = sut.readCoverageDetails(1)) {
       BatchReport.CoverageDetail coverageDetail = BatchReport.CoverageDetail.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverageDetail.getTestName()).isEqualTo("test-name");
       assertThat(coverageDetail.getCoveredFile(0).getFileRef()).isEqualTo(2);
@@ -20,18 +20,24 @@
 package org.sonar.batch.protocol.output;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.batch.protocol.Constants;
-import org.sonar.batch.protocol.ProtobufUtil;
 import org.sonar.batch.protocol.output.BatchReport.Range;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class BatchReportWriterTest {
 
@@ -62,7 +68,7 @@ public class BatchReportWriterTest {
       .setRootComponentRef(1);
     sut.writeMetadata(metadata.build());
 
-    BatchReport.Metadata read = ProtobufUtil.readFile(sut.getFileStructure().metadataFile(), BatchReport.Metadata.PARSER);
+    BatchReport.Metadata read = reader().readMetadata();
     assertThat(read.getAnalysisDate()).isEqualTo(15000000L);
     assertThat(read.getProjectKey()).isEqualTo("PROJECT_A");
     assertThat(read.getRootComponentRef()).isEqualTo(1);
@@ -85,9 +91,7 @@ public class BatchReportWriterTest {
     sut.writeComponent(component.build());
 
     assertThat(sut.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.COMPONENT, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Component read = ProtobufUtil.readFile(file, BatchReport.Component.PARSER);
+    BatchReport.Component read = reader().readComponent(1);
     assertThat(read.getRef()).isEqualTo(1);
     assertThat(read.getChildRefList()).containsOnly(5, 42);
     assertThat(read.hasName()).isFalse();
@@ -109,12 +113,7 @@ public class BatchReportWriterTest {
     sut.writeComponentIssues(1, Arrays.asList(issue));
 
     assertThat(sut.hasComponentData(FileStructure.Domain.ISSUES, 1)).isTrue();
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.ISSUES, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Issues read = ProtobufUtil.readFile(file, BatchReport.Issues.PARSER);
-    assertThat(read.getComponentRef()).isEqualTo(1);
-    assertThat(read.hasComponentUuid()).isFalse();
-    assertThat(read.getIssueCount()).isEqualTo(1);
+    assertThat(reader().readComponentIssues(1)).hasSize(1);
   }
 
   @Test
@@ -132,9 +131,7 @@ public class BatchReportWriterTest {
     sut.writeDeletedComponentIssues(1, "componentUuid", Arrays.asList(issue));
 
     assertThat(sut.hasComponentData(FileStructure.Domain.ISSUES_ON_DELETED, 1)).isTrue();
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.ISSUES_ON_DELETED, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Issues read = ProtobufUtil.readFile(file, BatchReport.Issues.PARSER);
+    BatchReport.Issues read = reader().readDeletedComponentIssues(1);
     assertThat(read.getComponentRef()).isEqualTo(1);
     assertThat(read.getComponentUuid()).isEqualTo("componentUuid");
     assertThat(read.getIssueCount()).isEqualTo(1);
@@ -154,15 +151,12 @@ public class BatchReportWriterTest {
     sut.writeComponentMeasures(1, Arrays.asList(measure));
 
     assertThat(sut.hasComponentData(FileStructure.Domain.MEASURES, 1)).isTrue();
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.MEASURES, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Measures measures = ProtobufUtil.readFile(file, BatchReport.Measures.PARSER);
-    assertThat(measures.getComponentRef()).isEqualTo(1);
-    assertThat(measures.getMeasureCount()).isEqualTo(1);
-    assertThat(measures.getMeasure(0).getStringValue()).isEqualTo("text-value");
-    assertThat(measures.getMeasure(0).getDoubleValue()).isEqualTo(2.5d);
-    assertThat(measures.getMeasure(0).getValueType()).isEqualTo(Constants.MeasureValueType.DOUBLE);
-    assertThat(measures.getMeasure(0).getDescription()).isEqualTo("description");
+    List<BatchReport.Measure> measures = reader().readComponentMeasures(1);
+    assertThat(measures).hasSize(1);
+    assertThat(measures.get(0).getStringValue()).isEqualTo("text-value");
+    assertThat(measures.get(0).getDoubleValue()).isEqualTo(2.5d);
+    assertThat(measures.get(0).getValueType()).isEqualTo(Constants.MeasureValueType.DOUBLE);
+    assertThat(measures.get(0).getDescription()).isEqualTo("description");
   }
 
   @Test
@@ -181,9 +175,7 @@ public class BatchReportWriterTest {
     sut.writeComponentChangesets(scm);
 
     assertThat(sut.hasComponentData(FileStructure.Domain.CHANGESETS, 1)).isTrue();
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.CHANGESETS, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Changesets read = ProtobufUtil.readFile(file, BatchReport.Changesets.PARSER);
+    BatchReport.Changesets read = reader().readChangesets(1);
     assertThat(read.getComponentRef()).isEqualTo(1);
     assertThat(read.getChangesetCount()).isEqualTo(1);
     assertThat(read.getChangesetList()).hasSize(1);
@@ -211,13 +203,10 @@ public class BatchReportWriterTest {
     sut.writeComponentDuplications(1, Arrays.asList(duplication));
 
     assertThat(sut.hasComponentData(FileStructure.Domain.DUPLICATIONS, 1)).isTrue();
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.DUPLICATIONS, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Duplications duplications = ProtobufUtil.readFile(file, BatchReport.Duplications.PARSER);
-    assertThat(duplications.getComponentRef()).isEqualTo(1);
-    assertThat(duplications.getDuplicationList()).hasSize(1);
-    assertThat(duplications.getDuplication(0).getOriginPosition()).isNotNull();
-    assertThat(duplications.getDuplication(0).getDuplicateList()).hasSize(1);
+    List<BatchReport.Duplication> duplications = reader().readComponentDuplications(1);
+    assertThat(duplications).hasSize(1);
+    assertThat(duplications.get(0).getOriginPosition()).isNotNull();
+    assertThat(duplications.get(0).getDuplicateList()).hasSize(1);
   }
 
   @Test
@@ -245,13 +234,10 @@ public class BatchReportWriterTest {
 
     assertThat(sut.hasComponentData(FileStructure.Domain.SYMBOLS, 1)).isTrue();
 
-    File file = sut.getFileStructure().fileFor(FileStructure.Domain.SYMBOLS, 1);
-    assertThat(file).exists().isFile();
-    BatchReport.Symbols read = ProtobufUtil.readFile(file, BatchReport.Symbols.PARSER);
-    assertThat(read.getFileRef()).isEqualTo(1);
-    assertThat(read.getSymbolList()).hasSize(1);
-    assertThat(read.getSymbol(0).getDeclaration().getStartLine()).isEqualTo(1);
-    assertThat(read.getSymbol(0).getReference(0).getStartLine()).isEqualTo(10);
+    List<BatchReport.Symbols.Symbol> read = reader().readComponentSymbols(1);
+    assertThat(read).hasSize(1);
+    assertThat(read.get(0).getDeclaration().getStartLine()).isEqualTo(1);
+    assertThat(read.get(0).getReference(0).getStartLine()).isEqualTo(10);
   }
 
   @Test
@@ -314,4 +300,73 @@ public class BatchReportWriterTest {
 
     assertThat(sut.hasComponentData(FileStructure.Domain.COVERAGE_DETAILS, 1)).isTrue();
   }
+
+  @Test
+  public void write_file_source() throws Exception {
+    assertThat(sut.hasComponentData(FileStructure.Domain.SOURCE, 1)).isFalse();
+
+    sut.writeFileSource(1, "line1\nline2");
+
+    assertThat(sut.hasComponentData(FileStructure.Domain.SOURCE, 1)).isTrue();
+    try (InputStream source = reader().readFileSource(1)) {
+      assertThat(IOUtils.toString(source, StandardCharsets.UTF_8)).isEqualTo("line1\nline2");
+    }
+  }
+
+  @Test
+  public void stream_file_source() throws Exception {
+    sut.writeComponent(BatchReport.Component.newBuilder().setRef(1).build());
+
+    OutputStream output = sut.appendFileSource(2);
+    output.write("line1\n".getBytes(StandardCharsets.UTF_8));
+    // entry is not readable until the stream is closed
+    BatchReportReader reader = reader();
+    assertThat(reader.readComponent(1).getRef()).isEqualTo(1);
+    try {
+      reader.readFileSource(2);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("Unable to find source for file #2");
+    }
+    output.write("line2".getBytes(StandardCharsets.UTF_8));
+    output.close();
+    sut.writeComponent(BatchReport.Component.newBuilder().setRef(3).build());
+
+    assertThat(sut.hasComponentData(FileStructure.Domain.SOURCE, 2)).isTrue();
+    try (InputStream source = reader.readFileSource(2)) {
+      assertThat(IOUtils.toString(source, StandardCharsets.UTF_8)).isEqualTo("line1\nline2");
+    }
+    assertThat(reader.readComponent(3).getRef()).isEqualTo(3);
+
+    sut.close();
+    try (InputStream source = reader().readFileSource(2)) {
+      assertThat(IOUtils.toString(source, StandardCharsets.UTF_8)).isEqualTo("line1\nline2");
+    }
+  }
+
+  @Test
+  public void write_all_entries_in_a_single_file() {
+    sut.writeComponent(BatchReport.Component.newBuilder().setRef(1).build());
+    sut.writeComponent(BatchReport.Component.newBuilder().setRef(2).build());
+    sut.writeComponentIssues(1, Collections.<BatchReport.Issue>emptyList());
+    sut.close();
+
+    assertThat(dir.list()).containsOnly(FileStructure.REPORT_FILE_NAME);
+    assertThat(reader().readComponent(2).getRef()).isEqualTo(2);
+  }
+
+  @Test
+  public void fail_to_write_when_closed() {
+    sut.close();
+    try {
+      sut.writeComponent(BatchReport.Component.newBuilder().setRef(1).build());
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("Report is closed");
+    }
+  }
+
+  private BatchReportReader reader() {
+    return new BatchReportReader(dir);
+  }
 }
@@ -59,16 +59,17 @@ public class FileStructureTest {
   }
 
   @Test
-  public void locate_files() throws Exception {
+  public void locate_report_file() throws Exception {
     File dir = temp.newFolder();
-    FileUtils.write(new File(dir, "metadata.pb"), "metadata content");
-    FileUtils.write(new File(dir, "issues-3.pb"), "issues of component 3");
-    FileUtils.write(new File(dir, "component-42.pb"), "details of component 42");
 
     FileStructure structure = new FileStructure(dir);
-    assertThat(structure.metadataFile()).exists().isFile();
-    assertThat(structure.fileFor(FileStructure.Domain.COMPONENT, 42)).exists().isFile();
-    assertThat(structure.fileFor(FileStructure.Domain.ISSUES, 3)).exists().isFile();
-    assertThat(structure.fileFor(FileStructure.Domain.ISSUES, 42)).doesNotExist();
+    assertThat(structure.reportFile()).isEqualTo(new File(dir, "report.data"));
+  }
+
+  @Test
+  public void domain_codes_are_unique() throws Exception {
+    for (FileStructure.Domain domain : FileStructure.Domain.values()) {
+      assertThat(FileStructure.Domain.fromCode(domain.code())).isSameAs(domain);
+    }
   }
 }
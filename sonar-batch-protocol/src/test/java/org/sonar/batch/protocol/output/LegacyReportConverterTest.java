@@ -0,0 +1,76 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LegacyReportConverterTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void convert_files_of_legacy_zip_to_report_entries() throws Exception {
+    File zip = temp.newFile();
+    try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+      putEntry(output, "metadata.pb", BatchReport.Metadata.newBuilder().setProjectKey("PROJECT_A").setRootComponentRef(1).build().toByteArray());
+      putEntry(output, "component-1.pb", BatchReport.Component.newBuilder().setRef(1).setPath("src/Foo.java").build().toByteArray());
+      putEntry(output, "issues-1.pb", BatchReport.Issues.newBuilder().setComponentRef(1)
+        .addIssue(BatchReport.Issue.newBuilder().setMsg("the message")).build().toByteArray());
+      putEntry(output, "issues-deleted-2.pb", BatchReport.Issues.newBuilder().setComponentRef(2).setComponentUuid("DELETED_UUID").build().toByteArray());
+      putEntry(output, "source-1.txt", "line1\nline2".getBytes(StandardCharsets.UTF_8));
+      putEntry(output, "unknown-1.txt", "ignored".getBytes(StandardCharsets.UTF_8));
+    }
+    File dir = temp.newFolder();
+
+    LegacyReportConverter.convert(zip, dir);
+
+    BatchReportReader reader = new BatchReportReader(dir);
+    try {
+      assertThat(reader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+      assertThat(reader.readComponent(1).getPath()).isEqualTo("src/Foo.java");
+      assertThat(reader.readComponentIssues(1)).hasSize(1);
+      assertThat(reader.readComponentIssues(1).get(0).getMsg()).isEqualTo("the message");
+      assertThat(reader.readDeletedComponentIssues(2).getComponentUuid()).isEqualTo("DELETED_UUID");
+      try (InputStream source = reader.readFileSource(1)) {
+        assertThat(IOUtils.toString(source, StandardCharsets.UTF_8)).isEqualTo("line1\nline2");
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void putEntry(ZipOutputStream output, String name, byte[] data) throws Exception {
+    output.putNextEntry(new ZipEntry(name));
+    output.write(data);
+    output.closeEntry();
+  }
+}
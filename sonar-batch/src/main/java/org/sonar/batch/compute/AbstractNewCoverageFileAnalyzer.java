@@ -45,7 +45,6 @@ import org.sonar.batch.components.TimeMachineConfiguration;
 import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReport.Changesets.Changeset;
-import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.report.ReportPublisher;
 
 /**
@@ -120,8 +119,7 @@ public abstract class AbstractNewCoverageFileAnalyzer implements Decorator {
   }
 
   private boolean parse(DecoratorContext context) {
-    BatchReportReader reader = new BatchReportReader(publishReportJob.getReportDir());
-    BatchReport.Changesets componentScm = reader.readChangesets(resourceCache.get(context.getResource()).batchId());
+    BatchReport.Changesets componentScm = publishReportJob.getReader().readChangesets(resourceCache.get(context.getResource()).batchId());
     Measure hitsByLineMeasure = context.getMeasure(getCoverageLineHitsDataMetric());
 
     if (componentScm != null && hitsByLineMeasure != null && hitsByLineMeasure.hasData()) {
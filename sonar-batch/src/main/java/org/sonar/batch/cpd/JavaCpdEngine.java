@@ -58,6 +58,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -65,7 +66,8 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -73,6 +75,11 @@ public class JavaCpdEngine extends CpdEngine {
 
   private static final Logger LOG = LoggerFactory.getLogger(JavaCpdEngine.class);
 
+  /**
+   * Number of threads used to index files and to detect duplications. Default is the number of available processors.
+   */
+  public static final String PROPERTY_THREADS = "sonar.internal.cpd.threads";
+
   private static final int BLOCK_SIZE = 10;
 
   /**
@@ -117,71 +124,125 @@ public class JavaCpdEngine extends CpdEngine {
     if (sourceFiles.isEmpty()) {
       return;
     }
-    SonarDuplicationsIndex index = createIndex(project, languageKey, sourceFiles);
-    detect(index, context, sourceFiles);
+    int threads = settings.getInt(PROPERTY_THREADS);
+    ExecutorService executorService = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    try {
+      SonarDuplicationsIndex index = createIndex(executorService, project, languageKey, sourceFiles);
+      detect(executorService, index, context, sourceFiles);
+    } finally {
+      executorService.shutdownNow();
+    }
   }
 
-  private SonarDuplicationsIndex createIndex(@Nullable Project project, String language, Iterable<InputFile> sourceFiles) {
+  private SonarDuplicationsIndex createIndex(ExecutorService executorService, @Nullable Project project, String language, List<InputFile> sourceFiles) {
     final SonarDuplicationsIndex index = indexFactory.create(project, language);
 
+    List<Future<List<Block>>> blocksByFile = new ArrayList<>();
+    for (final InputFile inputFile : sourceFiles) {
+      blocksByFile.add(executorService.submit(new Callable<List<Block>>() {
+        @Override
+        public List<Block> call() {
+          return chunk(inputFile);
+        }
+      }));
+    }
+
+    // blocks are inserted in the order of files, so that the result of detection does not depend on scheduling
+    for (int i = 0; i < sourceFiles.size(); i++) {
+      InputFile inputFile = sourceFiles.get(i);
+      try {
+        index.insert(inputFile, blocksByFile.get(i).get());
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail during indexation of " + inputFile, e);
+      } catch (ExecutionException e) {
+        throw propagate("Fail during indexation of " + inputFile, e);
+      }
+    }
+
+    return index;
+  }
+
+  private List<Block> chunk(InputFile inputFile) {
+    LOG.debug("Populating index from {}", inputFile);
+    String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+
+    // chunkers are not thread-safe
     TokenChunker tokenChunker = JavaTokenProducer.build();
     StatementChunker statementChunker = JavaStatementBuilder.build();
     BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
 
+    List<Statement> statements;
+
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding());
+      statements = statementChunker.chunk(tokenChunker.chunk(reader));
+    } catch (FileNotFoundException e) {
+      throw new SonarException("Cannot find file " + inputFile.file(), e);
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+
+    return blockChunker.chunk(resourceEffectiveKey, statements);
+  }
+
+  private static void detect(ExecutorService executorService, SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
+    List<Task> tasks = new ArrayList<>();
+    List<Future<List<CloneGroup>>> futures = new ArrayList<>();
     for (InputFile inputFile : sourceFiles) {
-      LOG.debug("Populating index from {}", inputFile);
       String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+      Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
+      Task task = new Task(index, fileBlocks);
+      tasks.add(task);
+      futures.add(executorService.submit(task));
+    }
 
-      List<Statement> statements;
-
-      Reader reader = null;
+    for (int i = 0; i < sourceFiles.size(); i++) {
+      InputFile inputFile = sourceFiles.get(i);
+      LOG.debug("Detection of duplications for {}", inputFile);
+      List<CloneGroup> clones;
       try {
-        reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding());
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
-      } catch (FileNotFoundException e) {
-        throw new SonarException("Cannot find file " + inputFile.file(), e);
-      } finally {
-        IOUtils.closeQuietly(reader);
+        clones = waitForClones(tasks.get(i), futures.get(i));
+      } catch (TimeoutException e) {
+        clones = null;
+        futures.get(i).cancel(true);
+        LOG.warn("Timeout during detection of duplications for " + inputFile, e);
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+      } catch (ExecutionException e) {
+        throw propagate("Fail during detection of duplication for " + inputFile, e);
       }
 
-      List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
-      index.insert(inputFile, blocks);
+      save(context, inputFile, clones);
     }
-
-    return index;
   }
 
-  private void detect(SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
-    try {
-      for (InputFile inputFile : sourceFiles) {
-        LOG.debug("Detection of duplications for {}", inputFile);
-        String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-
-        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+  /**
+   * The timeout applies to the detection itself, not to the time spent waiting for a thread of the pool.
+   */
+  private static List<CloneGroup> waitForClones(Task task, Future<List<CloneGroup>> future) throws InterruptedException, ExecutionException, TimeoutException {
+    while (true) {
+      try {
+        return future.get(task.remainingTimeMs(TIMEOUT * 1000L), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        if (task.remainingTimeMs(TIMEOUT * 1000L) <= 0) {
+          throw e;
         }
-
-        save(context, inputFile, clones);
       }
-    } finally {
-      executorService.shutdown();
     }
   }
 
+  private static RuntimeException propagate(String message, ExecutionException e) {
+    if (e.getCause() instanceof RuntimeException) {
+      return (RuntimeException) e.getCause();
+    }
+    return new SonarException(message, e);
+  }
+
   static class Task implements Callable<List<CloneGroup>> {
     private final CloneIndex index;
     private final Collection<Block> fileBlocks;
+    private volatile long startTime = 0L;
 
     public Task(CloneIndex index, Collection<Block> fileBlocks) {
       this.index = index;
@@ -190,8 +251,17 @@ public class JavaCpdEngine extends CpdEngine {
 
     @Override
     public List<CloneGroup> call() {
+      startTime = System.currentTimeMillis();
       return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
     }
+
+    /**
+     * Whole timeout as long as the task is not started
+     */
+    long remainingTimeMs(long timeoutMs) {
+      long start = startTime;
+      return start == 0L ? timeoutMs : (start + timeoutMs - System.currentTimeMillis());
+    }
   }
 
   static void save(org.sonar.api.batch.sensor.SensorContext context, InputFile inputFile, @Nullable Iterable<CloneGroup> duplications) {
@@ -0,0 +1,68 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import java.util.Iterator;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Storage of the values of a {@link Cache}. Keys are arrays of key segments, values are encoded
+ * with the {@link com.persistit.encoding.ValueCoder}s registered in {@link Caches}.
+ * Implementations must be thread-safe.
+ */
+interface CacheStore<V> {
+
+  void put(Object[] key, V value);
+
+  @CheckForNull
+  V get(Object[] key);
+
+  boolean containsKey(Object[] key);
+
+  /**
+   * Removes the value of the key, but not the values of its sub-keys
+   */
+  boolean remove(Object[] key);
+
+  /**
+   * Removes the value of the key and the values of all its sub-keys
+   */
+  void clear(Object[] key);
+
+  void clearAll();
+
+  /**
+   * Distinct segments that follow the given key segments, in key order
+   */
+  Set<Object> keySet(Object[] key);
+
+  /**
+   * Lazy iterator on the values of the key and of its sub-keys, in key order
+   */
+  Iterator<V> values(Object[] key);
+
+  Iterator<Cache.Entry<V>> entries(Object[] key);
+
+  /**
+   * Releases the resources held for the current thread
+   */
+  void release();
+}
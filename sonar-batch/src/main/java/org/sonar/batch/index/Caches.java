@@ -19,30 +19,49 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.Maps;
-
-import java.util.Map;
-import java.util.Map.Entry;
-
 import com.google.common.base.Preconditions;
-import com.persistit.Exchange;
-import com.persistit.Value;
-import com.persistit.encoding.CoderManager;
 import com.persistit.Persistit;
+import com.persistit.Volume;
+import com.persistit.encoding.CoderManager;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
-import com.persistit.Volume;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import org.picocontainer.Startable;
 import org.sonar.api.batch.BatchSide;
+import org.sonar.batch.bootstrap.AnalysisProperties;
 
 @BatchSide
 public class Caches implements Startable {
-  private final Map<String, Exchange> cacheMap = Maps.newHashMap();
-  private Persistit persistit;
+
+  /**
+   * When true, the values of caches are stored in memory-mapped files instead of a Persistit volume.
+   * <p/>
+   * Only the values are out of the Java heap. The keys, encoded with Persistit, are indexed on the heap in
+   * a {@link java.util.concurrent.ConcurrentSkipListMap}, with the location of their values. The heap used
+   * by a cache therefore still grows with its number of entries, by the size of the encoded key plus about
+   * 100 bytes per entry. It fits caches with big values, like sources or measures, but not caches of many
+   * small entries.
+   */
+  public static final String PROPERTY_OFF_HEAP = "sonar.internal.caches.offHeap";
+
+  private final Map<String, Cache<?>> cacheMap = new ConcurrentHashMap<>();
+  private final boolean offHeap;
+  private final CachesManager manager;
+  private final Persistit persistit;
   private Volume volume;
+  private MappedSegments segments;
+
+  public Caches(CachesManager caches, AnalysisProperties props) {
+    this(caches, Boolean.parseBoolean(props.property(PROPERTY_OFF_HEAP)));
+  }
 
-  public Caches(CachesManager caches) {
-    persistit = caches.persistit();
+  Caches(CachesManager caches, boolean offHeap) {
+    this.manager = caches;
+    this.persistit = caches.persistit();
+    this.offHeap = offHeap;
     doStart();
   }
 
@@ -53,8 +72,12 @@ public class Caches implements Startable {
 
   private void doStart() {
     try {
-      persistit.flush();
-      volume = persistit.createTemporaryVolume();
+      if (offHeap) {
+        segments = new MappedSegments(Files.createTempDirectory(manager.tempDir().toPath(), "offheap").toFile());
+      } else {
+        persistit.flush();
+        volume = persistit.createTemporaryVolume();
+      }
     } catch (Exception e) {
       throw new IllegalStateException("Fail to create a cache volume", e);
     }
@@ -66,25 +89,50 @@ public class Caches implements Startable {
   }
 
   public <V> Cache<V> createCache(String cacheName) {
-    Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
+    Preconditions.checkState(segments != null || (volume != null && volume.isOpened()), "Caches are not initialized");
     Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: " + cacheName);
-    try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<>(cacheName, exchange);
-      cacheMap.put(cacheName, exchange);
-      return cache;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to create cache: " + cacheName, e);
+    CacheStore<V> store;
+    if (offHeap) {
+      store = new OffHeapCacheStore<>(cacheName, persistit, segments);
+    } else {
+      store = new PersistitCacheStore<>(cacheName, persistit, volume);
     }
+    Cache<V> cache = new Cache<>(store);
+    cacheMap.put(cacheName, cache);
+    return cache;
   }
 
-  @Override
-  public void stop() {
-    for (Entry<String, Exchange> e : cacheMap.entrySet()) {
-      persistit.releaseExchange(e.getValue());
+  /**
+   * Releases the resources, for example Persistit exchanges, that the current thread holds on all caches.
+   * Persistit allows only the owner thread to release its exchanges.
+   */
+  public void releaseThreadResources() {
+    for (Cache<?> cache : cacheMap.values()) {
+      cache.release();
     }
+  }
 
+  /**
+   * Wraps a task executed by a pooled thread, so that the thread releases its resources on caches when the task
+   * completes. Resources are released before the result of the task is available, so before the caller can
+   * stop the caches.
+   */
+  public <T> Callable<T> releasingThreadResources(final Callable<T> task) {
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        try {
+          return task.call();
+        } finally {
+          releaseThreadResources();
+        }
+      }
+    };
+  }
+
+  @Override
+  public void stop() {
+    releaseThreadResources();
     cacheMap.clear();
 
     if (volume != null) {
@@ -96,5 +144,9 @@ public class Caches implements Startable {
       }
       volume = null;
     }
+    if (segments != null) {
+      segments.close();
+      segments = null;
+    }
   }
 }
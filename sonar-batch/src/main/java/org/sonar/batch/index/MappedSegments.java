@@ -0,0 +1,129 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Append-only storage of byte arrays in memory-mapped files, so that they are kept out of the Java heap.
+ * The space of the arrays that are not referenced anymore is reclaimed only when the storage is closed.
+ */
+class MappedSegments {
+
+  static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  private final File dir;
+  private int segmentCount = 0;
+  private Segment current;
+
+  MappedSegments(File dir) {
+    this.dir = dir;
+  }
+
+  Location append(byte[] bytes, int length) {
+    Segment segment;
+    int offset;
+    synchronized (this) {
+      if (current == null || current.remaining() < length) {
+        current = newSegment(Math.max(SEGMENT_SIZE, length));
+      }
+      segment = current;
+      offset = segment.allocate(length);
+    }
+    // regions are allocated to a single writer, so they can be written without lock
+    segment.write(offset, bytes, length);
+    return new Location(segment, offset, length);
+  }
+
+  private Segment newSegment(int size) {
+    File file = new File(dir, "segment" + segmentCount);
+    segmentCount++;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      // the mapping stays valid after the channel is closed
+      return new Segment(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to create cache segment " + file, e);
+    }
+  }
+
+  /**
+   * Files are unmapped when their buffers are garbage collected. Deletion may fail before on some platforms,
+   * in which case files are dropped with the temp directory of {@link CachesManager}.
+   */
+  synchronized void close() {
+    current = null;
+    FileUtils.deleteQuietly(dir);
+  }
+
+  private static class Segment {
+    private final MappedByteBuffer buffer;
+    private int position = 0;
+
+    Segment(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    int remaining() {
+      return buffer.capacity() - position;
+    }
+
+    int allocate(int length) {
+      int offset = position;
+      position += length;
+      return offset;
+    }
+
+    void write(int offset, byte[] bytes, int length) {
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset);
+      view.put(bytes, 0, length);
+    }
+
+    byte[] read(int offset, int length) {
+      byte[] bytes = new byte[length];
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset);
+      view.get(bytes);
+      return bytes;
+    }
+  }
+
+  static class Location {
+    private final Segment segment;
+    private final int offset;
+    private final int length;
+
+    private Location(Segment segment, int offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    byte[] read() {
+      return segment.read(offset, length);
+    }
+  }
+}
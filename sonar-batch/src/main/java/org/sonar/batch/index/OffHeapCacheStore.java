@@ -0,0 +1,226 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedBytes;
+import com.persistit.Key;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.annotation.CheckForNull;
+
+/**
+ * Stores the encoded values in {@link MappedSegments}, out of the Java heap. Keys are encoded with Persistit
+ * and indexed on the Java heap in the same order as in a Persistit tree, so that both stores iterate
+ * on the same sequences of values. See {@link Caches#PROPERTY_OFF_HEAP}.
+ */
+class OffHeapCacheStore<V> implements CacheStore<V> {
+
+  private final String name;
+  private final Persistit persistit;
+  private final MappedSegments segments;
+  private final ConcurrentNavigableMap<byte[], MappedSegments.Location> index = new ConcurrentSkipListMap<>(UnsignedBytes.lexicographicalComparator());
+
+  // Key and Value are codecs that must not be shared between threads
+  private final ThreadLocal<Key> threadKey = new ThreadLocal<>();
+  private final ThreadLocal<Value> threadValue = new ThreadLocal<>();
+
+  OffHeapCacheStore(String name, Persistit persistit, MappedSegments segments) {
+    this.name = name;
+    this.persistit = persistit;
+    this.segments = segments;
+  }
+
+  @Override
+  public void put(Object[] key, V value) {
+    try {
+      Value encoder = value();
+      encoder.put(value);
+      index.put(encode(key), segments.append(encoder.getEncodedBytes(), encoder.getEncodedSize()));
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public V get(Object[] key) {
+    try {
+      MappedSegments.Location location = index.get(encode(key));
+      return location == null ? null : this.<V>decodeValue(location);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object[] key) {
+    return index.containsKey(encode(key));
+  }
+
+  @Override
+  public boolean remove(Object[] key) {
+    return index.remove(encode(key)) != null;
+  }
+
+  @Override
+  public void clear(Object[] key) {
+    index.subMap(encode(key), true, encode(key, Key.AFTER), false).clear();
+  }
+
+  @Override
+  public void clearAll() {
+    index.clear();
+  }
+
+  @Override
+  public Set<Object> keySet(Object[] key) {
+    Set<Object> keys = Sets.newLinkedHashSet();
+    byte[] to = encode(key, Key.AFTER);
+    byte[] cursor = index.ceilingKey(encode(key, Key.BEFORE));
+    while (cursor != null && index.comparator().compare(cursor, to) < 0) {
+      Key subKey = decodeKey(cursor);
+      keys.add(subKey.indexTo(key.length).decode());
+      // skip the other keys starting with the same segment
+      subKey.setDepth(key.length + 1);
+      subKey.append(Key.AFTER);
+      cursor = index.ceilingKey(toBytes(subKey));
+    }
+    return keys;
+  }
+
+  @Override
+  public Iterator<V> values(Object[] key) {
+    final Iterator<Map.Entry<byte[], MappedSegments.Location>> it = subIndex(key);
+    return new ReadOnlyIterator<V>() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public V next() {
+        return decodeValue(it.next().getValue());
+      }
+    };
+  }
+
+  @Override
+  public Iterator<Cache.Entry<V>> entries(Object[] key) {
+    final Iterator<Map.Entry<byte[], MappedSegments.Location>> it = subIndex(key);
+    return new ReadOnlyIterator<Cache.Entry<V>>() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public Cache.Entry<V> next() {
+        Map.Entry<byte[], MappedSegments.Location> entry = it.next();
+        Key subKey = decodeKey(entry.getKey());
+        Object[] array = new Object[subKey.getDepth()];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = subKey.indexTo(i).decode();
+        }
+        return new Cache.Entry<>(array, OffHeapCacheStore.this.<V>decodeValue(entry.getValue()));
+      }
+    };
+  }
+
+  /**
+   * Sub-keys of the given key, excluding the key itself as when traversing a Persistit tree
+   */
+  private Iterator<Map.Entry<byte[], MappedSegments.Location>> subIndex(Object[] key) {
+    return index.subMap(encode(key, Key.BEFORE), true, encode(key, Key.AFTER), false).entrySet().iterator();
+  }
+
+  @Override
+  public void release() {
+    threadKey.remove();
+    threadValue.remove();
+  }
+
+  private byte[] encode(Object[] key) {
+    return toBytes(resetKey(key));
+  }
+
+  private byte[] encode(Object[] key, Key.EdgeValue edge) {
+    return toBytes(resetKey(key).append(edge));
+  }
+
+  private Key resetKey(Object[] key) {
+    Key encoder = key();
+    encoder.clear();
+    for (Object o : key) {
+      encoder.append(o);
+    }
+    return encoder;
+  }
+
+  private static byte[] toBytes(Key key) {
+    return Arrays.copyOf(key.getEncodedBytes(), key.getEncodedSize());
+  }
+
+  private Key decodeKey(byte[] bytes) {
+    Key decoder = key();
+    System.arraycopy(bytes, 0, decoder.getEncodedBytes(), 0, bytes.length);
+    decoder.setEncodedSize(bytes.length);
+    return decoder;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T decodeValue(MappedSegments.Location location) {
+    byte[] bytes = location.read();
+    Value decoder = value();
+    decoder.putEncodedBytes(bytes, 0, bytes.length);
+    return (T) decoder.get();
+  }
+
+  private Key key() {
+    Key key = threadKey.get();
+    if (key == null) {
+      key = new Key(persistit);
+      threadKey.set(key);
+    }
+    return key;
+  }
+
+  private Value value() {
+    Value value = threadValue.get();
+    if (value == null) {
+      value = new Value(persistit, Value.INITIAL_SIZE, Value.MAXIMUM_SIZE);
+      threadValue.set(value);
+    }
+    return value;
+  }
+
+  private abstract static class ReadOnlyIterator<T> implements Iterator<T> {
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Sets;
+import com.persistit.Exchange;
+import com.persistit.Key;
+import com.persistit.KeyFilter;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import com.persistit.Volume;
+import com.persistit.exception.PersistitException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Stores values in a tree of a temporary Persistit volume. As a {@link com.persistit.Exchange} must not be
+ * shared between threads, each thread accesses the tree through its own exchange.
+ */
+class PersistitCacheStore<V> implements CacheStore<V> {
+
+  private final String name;
+  private final Persistit persistit;
+  private final Volume volume;
+  private final ThreadLocal<Exchange> threadExchange = new ThreadLocal<>();
+
+  PersistitCacheStore(String name, Persistit persistit, Volume volume) {
+    this.name = name;
+    this.persistit = persistit;
+    this.volume = volume;
+    // fail fast if the tree can't be created
+    exchange();
+  }
+
+  private Exchange exchange() {
+    Exchange exchange = threadExchange.get();
+    if (exchange == null) {
+      try {
+        exchange = persistit.getExchange(volume, name, true);
+        exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+      } catch (Exception e) {
+        throw new IllegalStateException("Fail to create cache: " + name, e);
+      }
+      threadExchange.set(exchange);
+    }
+    return exchange;
+  }
+
+  /**
+   * Persistit allows only the owner thread to release an exchange. Exchanges of threads that
+   * are not released are dropped with the volume.
+   */
+  @Override
+  public void release() {
+    Exchange exchange = threadExchange.get();
+    if (exchange != null) {
+      persistit.releaseExchange(exchange);
+      threadExchange.remove();
+    }
+  }
+
+  @Override
+  public void put(Object[] key, V value) {
+    try {
+      Exchange exchange = resetKey(key);
+      exchange.getValue().put(value);
+      exchange.store();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  @CheckForNull
+  public V get(Object[] key) {
+    try {
+      Exchange exchange = resetKey(key);
+      exchange.fetch();
+      if (!exchange.getValue().isDefined()) {
+        return null;
+      }
+      return (V) exchange.getValue().get();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object[] key) {
+    try {
+      Exchange exchange = resetKey(key);
+      exchange.fetch();
+      return exchange.isValueDefined();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
+    }
+  }
+
+  @Override
+  public boolean remove(Object[] key) {
+    try {
+      return resetKey(key).remove();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public void clear(Object[] key) {
+    try {
+      Exchange exchange = resetKey(key);
+      Key to = new Key(exchange.getKey());
+      to.append(Key.AFTER);
+      exchange.removeKeyRange(exchange.getKey(), to);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear values from cache " + name, e);
+    }
+  }
+
+  @Override
+  public void clearAll() {
+    try {
+      Exchange exchange = exchange();
+      exchange.clear();
+      exchange.removeAll();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear cache", e);
+    }
+  }
+
+  @Override
+  public Set<Object> keySet(Object[] key) {
+    try {
+      Set<Object> keys = Sets.newLinkedHashSet();
+      Exchange exchange = exchange();
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+      for (Object o : key) {
+        iteratorExchange.append(o);
+      }
+      iteratorExchange.append(Key.BEFORE);
+      while (iteratorExchange.next(false)) {
+        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
+      }
+      return keys;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get keys from cache " + name, e);
+    }
+  }
+
+  @Override
+  public Iterator<V> values(Object[] key) {
+    return new ValueIterator<>(iteratorExchange(key), keyFilter(key));
+  }
+
+  @Override
+  public Iterator<Cache.Entry<V>> entries(Object[] key) {
+    return new EntryIterator<>(iteratorExchange(key), keyFilter(key));
+  }
+
+  private Exchange iteratorExchange(Object[] key) {
+    Exchange originExchange = exchange();
+    originExchange.clear();
+    for (Object o : key) {
+      originExchange.append(o);
+    }
+    originExchange.append(Key.BEFORE);
+    return new Exchange(originExchange);
+  }
+
+  private static KeyFilter keyFilter(Object[] key) {
+    KeyFilter filter = new KeyFilter();
+    for (Object o : key) {
+      filter = filter.append(KeyFilter.simpleTerm(o));
+    }
+    return filter;
+  }
+
+  private Exchange resetKey(Object[] key) {
+    Exchange exchange = exchange();
+    exchange.clear();
+    for (Object o : key) {
+      exchange.append(o);
+    }
+    return exchange;
+  }
+
+  //
+  // LAZY ITERATORS
+  //
+
+  private static class ValueIterator<T> implements Iterator<T> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        return (T) exchange.getValue().get();
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  private static class EntryIterator<T> implements Iterator<Cache.Entry<T>> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Cache.Entry<T> next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        T value = (T) exchange.getValue().get();
+        Key key = exchange.getKey();
+        Object[] array = new Object[key.getDepth()];
+        for (int i = 0; i < key.getDepth(); i++) {
+          array[i] = key.indexTo(i - key.getDepth()).decode();
+        }
+        return new Cache.Entry<>(array, value);
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+}
@@ -19,11 +19,15 @@
  */
 package org.sonar.batch.issue.tracking;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.Iterators;
+import com.google.common.base.Function;
+import com.google.common.io.InputSupplier;
+import java.io.IOException;
+import java.io.InputStream;
+import org.sonar.api.utils.HttpDownloader;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
 
 public class DefaultServerLineHashesLoader implements ServerLineHashesLoader {
 
@@ -34,19 +38,29 @@ public class DefaultServerLineHashesLoader implements ServerLineHashesLoader {
   }
 
   @Override
-  public String[] getLineHashes(String fileKey) {
-    String hashesFromWs = loadHashesFromWs(fileKey);
-    return Iterators.toArray(Splitter.on('\n').split(hashesFromWs).iterator(), String.class);
-  }
-
-  private String loadHashesFromWs(String fileKey) {
+  public void load(String moduleKey, Function<FileLineHashes, Void> consumer) {
     Profiler profiler = Profiler.createIfDebug(Loggers.get(getClass()))
-      .addContext("file", fileKey)
+      .addContext("module", moduleKey)
       .startDebug("Load line hashes");
     try {
-      return server.request("/api/sources/hash?key=" + ServerClient.encodeForUrl(fileKey));
+      InputSupplier<InputStream> request = server.doRequest("/batch/line_hashes?key=" + ServerClient.encodeForUrl(moduleKey), "GET", null);
+      parseLineHashes(request, consumer);
+    } catch (HttpDownloader.HttpException e) {
+      throw server.handleHttpException(e);
     } finally {
       profiler.stopDebug();
     }
   }
+
+  private static void parseLineHashes(InputSupplier<InputStream> input, Function<FileLineHashes, Void> consumer) {
+    try (InputStream is = input.getInput()) {
+      FileLineHashes lineHashes = FileLineHashes.parseDelimitedFrom(is);
+      while (lineHashes != null) {
+        consumer.apply(lineHashes);
+        lineHashes = FileLineHashes.parseDelimitedFrom(is);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to get line hashes", e);
+    }
+  }
 }
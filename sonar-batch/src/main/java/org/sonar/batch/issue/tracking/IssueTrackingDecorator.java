@@ -67,7 +67,7 @@ public class IssueTrackingDecorator implements Decorator {
   private final IssueCache issueCache;
   private final InitialOpenIssuesStack initialOpenIssues;
   private final IssueTracking tracking;
-  private final ServerLineHashesLoader lastLineHashes;
+  private final ServerLineHashesRepository lastLineHashes;
   private final IssueHandlers handlers;
   private final IssueWorkflow workflow;
   private final IssueUpdater updater;
@@ -79,7 +79,7 @@ public class IssueTrackingDecorator implements Decorator {
   private final Project project;
 
   public IssueTrackingDecorator(IssueCache issueCache, InitialOpenIssuesStack initialOpenIssues, IssueTracking tracking,
-    ServerLineHashesLoader lastLineHashes,
+    ServerLineHashesRepository lastLineHashes,
     IssueHandlers handlers, IssueWorkflow workflow,
     IssueUpdater updater,
     Project project,
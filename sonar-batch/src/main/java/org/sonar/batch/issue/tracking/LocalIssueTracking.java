@@ -56,7 +56,7 @@ public class LocalIssueTracking {
 
   private final IssueCache issueCache;
   private final IssueTracking tracking;
-  private final ServerLineHashesLoader lastLineHashes;
+  private final ServerLineHashesRepository lastLineHashes;
   private final IssueWorkflow workflow;
   private final IssueUpdater updater;
   private final IssueChangeContext changeContext;
@@ -68,7 +68,7 @@ public class LocalIssueTracking {
   private final AnalysisMode analysisMode;
 
   public LocalIssueTracking(BatchComponentCache resourceCache, IssueCache issueCache, IssueTracking tracking,
-    ServerLineHashesLoader lastLineHashes, IssueWorkflow workflow, IssueUpdater updater,
+    ServerLineHashesRepository lastLineHashes, IssueWorkflow workflow, IssueUpdater updater,
     ActiveRules activeRules, InputPathCache inputPathCache, ServerIssueRepository serverIssueRepository,
     ProjectRepositories projectRepositories, AnalysisMode analysisMode) {
     this.resourceCache = resourceCache;
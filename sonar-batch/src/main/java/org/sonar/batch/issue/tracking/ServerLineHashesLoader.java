@@ -19,10 +19,15 @@
  */
 package org.sonar.batch.issue.tracking;
 
+import com.google.common.base.Function;
 import org.sonar.api.batch.BatchSide;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
 
 @BatchSide
 public interface ServerLineHashesLoader {
 
-  String[] getLineHashes(String fileKey);
+  /**
+   * Streams the line hashes of all the files of the given module.
+   */
+  void load(String moduleKey, Function<FileLineHashes, Void> consumer);
 }
@@ -0,0 +1,76 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue.tracking;
+
+import com.google.common.base.Function;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterators;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.batch.index.Cache;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
+
+/**
+ * Line hashes of the files of the last analysis, downloaded for a whole module
+ * the first time one of its files is requested.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@BatchSide
+public class ServerLineHashesRepository {
+
+  private final Caches caches;
+  private final ServerLineHashesLoader loader;
+  private final Set<String> loadedModules = new HashSet<>();
+  private Cache<String> lineHashesCache;
+
+  public ServerLineHashesRepository(Caches caches, ServerLineHashesLoader loader) {
+    this.caches = caches;
+    this.loader = loader;
+  }
+
+  @CheckForNull
+  public String[] getLineHashes(String moduleKey, String fileKey) {
+    load(moduleKey);
+    String hashes = lineHashesCache.get(fileKey);
+    return hashes != null ? Iterators.toArray(Splitter.on('\n').split(hashes).iterator(), String.class) : null;
+  }
+
+  private void load(String moduleKey) {
+    if (lineHashesCache == null) {
+      lineHashesCache = caches.createCache("lineHashes");
+    }
+    if (loadedModules.add(moduleKey)) {
+      loader.load(moduleKey, new Function<FileLineHashes, Void>() {
+        @Override
+        public Void apply(@Nullable FileLineHashes fileLineHashes) {
+          if (fileLineHashes != null && fileLineHashes.hasLineHashes()) {
+            lineHashesCache.put(fileLineHashes.getKey(), fileLineHashes.getLineHashes());
+          }
+          return null;
+        }
+      });
+    }
+  }
+}
@@ -29,13 +29,13 @@ import java.util.Collection;
 
 public class SourceHashHolder {
 
-  private final ServerLineHashesLoader lastSnapshots;
+  private final ServerLineHashesRepository lastSnapshots;
 
   private FileHashes hashedReference;
   private FileHashes hashedSource;
   private DefaultInputFile inputFile;
 
-  public SourceHashHolder(DefaultInputFile inputFile, ServerLineHashesLoader lastSnapshots) {
+  public SourceHashHolder(DefaultInputFile inputFile, ServerLineHashesRepository lastSnapshots) {
     this.inputFile = inputFile;
     this.lastSnapshots = lastSnapshots;
   }
@@ -49,7 +49,7 @@ public class SourceHashHolder {
       } else if (status == Status.SAME) {
         hashedReference = hashedSource;
       } else {
-        String[] lineHashes = lastSnapshots.getLineHashes(inputFile.key());
+        String[] lineHashes = lastSnapshots.getLineHashes(inputFile.moduleKey(), inputFile.key());
         hashedReference = lineHashes != null ? FileHashes.create(lineHashes) : null;
       }
     }
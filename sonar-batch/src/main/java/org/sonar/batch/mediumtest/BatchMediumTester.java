@@ -20,6 +20,7 @@
 package org.sonar.batch.mediumtest;
 
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.FileInputStream;
@@ -44,6 +45,7 @@ import org.sonar.batch.bootstrapper.EnvironmentInformation;
 import org.sonar.batch.bootstrapper.LogOutput;
 import org.sonar.batch.issue.tracking.ServerLineHashesLoader;
 import org.sonar.batch.protocol.input.ActiveRule;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
 import org.sonar.batch.protocol.input.BatchInput.ServerIssue;
 import org.sonar.batch.protocol.input.FileData;
 import org.sonar.batch.protocol.input.GlobalRepositories;
@@ -306,11 +308,14 @@ public class BatchMediumTester {
     private Map<String, String[]> byKey = new HashMap<>();
 
     @Override
-    public String[] getLineHashes(String fileKey) {
-      if (byKey.containsKey(fileKey)) {
-        return byKey.get(fileKey);
-      } else {
-        throw new IllegalStateException("You forgot to mock line hashes for " + fileKey);
+    public void load(String moduleKey, Function<FileLineHashes, Void> consumer) {
+      for (Map.Entry<String, String[]> entry : byKey.entrySet()) {
+        if (entry.getKey().startsWith(moduleKey + ":")) {
+          consumer.apply(FileLineHashes.newBuilder()
+            .setKey(entry.getKey())
+            .setLineHashes(Joiner.on('\n').join(entry.getValue()))
+            .build());
+        }
       }
     }
   }
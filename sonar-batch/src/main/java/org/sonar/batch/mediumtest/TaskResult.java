@@ -22,7 +22,6 @@ package org.sonar.batch.mediumtest;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +57,6 @@ import org.sonar.batch.scan.measure.MeasureCache;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
-import java.io.File;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -198,15 +196,13 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
    */
   public List<TypeOfText> highlightingTypeFor(InputFile file, int line, int lineOffset) {
     int ref = reportComponents.get(((DefaultInputFile) file).key()).getRef();
-    File highlightingFile = reader.readComponentSyntaxHighlighting(ref);
-    if (highlightingFile == null) {
+    InputStream inputStream = reader.readComponentSyntaxHighlighting(ref);
+    if (inputStream == null) {
       return Collections.emptyList();
     }
     TextPointer pointer = file.newPointer(line, lineOffset);
     List<TypeOfText> result = new ArrayList<>();
-    InputStream inputStream = null;
     try {
-      inputStream = FileUtils.openInputStream(highlightingFile);
       BatchReport.SyntaxHighlighting rule = BatchReport.SyntaxHighlighting.PARSER.parseDelimitedFrom(inputStream);
       while (rule != null) {
         TextRange ruleRange = toRange(file, rule.getRange());
@@ -252,7 +248,11 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
   @CheckForNull
   public BatchReport.Coverage coverageFor(InputFile file, int line) {
     int ref = reportComponents.get(((DefaultInputFile) file).key()).getRef();
-    try (InputStream inputStream = FileUtils.openInputStream(getReportReader().readComponentCoverage(ref))) {
+    InputStream stream = getReportReader().readComponentCoverage(ref);
+    if (stream == null) {
+      return null;
+    }
+    try (InputStream inputStream = stream) {
       BatchReport.Coverage coverage = BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream);
       while (coverage != null) {
         if (coverage.getLine() == line) {
@@ -268,7 +268,11 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
 
   public BatchReport.Test testExecutionFor(InputFile testFile, String testName) {
     int ref = reportComponents.get(((DefaultInputFile) testFile).key()).getRef();
-    try (InputStream inputStream = FileUtils.openInputStream(getReportReader().readTests(ref))) {
+    InputStream stream = getReportReader().readTests(ref);
+    if (stream == null) {
+      return null;
+    }
+    try (InputStream inputStream = stream) {
       BatchReport.Test test = BatchReport.Test.PARSER.parseDelimitedFrom(inputStream);
       while (test != null) {
         if (test.getName().equals(testName)) {
@@ -284,7 +288,11 @@ public class TaskResult implements org.sonar.batch.mediumtest.ScanTaskObserver {
 
   public BatchReport.CoverageDetail coveragePerTestFor(InputFile testFile, String testName) {
     int ref = reportComponents.get(((DefaultInputFile) testFile).key()).getRef();
-    try (InputStream inputStream = FileUtils.openInputStream(getReportReader().readCoverageDetails(ref))) {
+    InputStream stream = getReportReader().readCoverageDetails(ref);
+    if (stream == null) {
+      return null;
+    }
+    try (InputStream inputStream = stream) {
       BatchReport.CoverageDetail details = BatchReport.CoverageDetail.PARSER.parseDelimitedFrom(inputStream);
       while (details != null) {
         if (details.getTestName().equals(testName)) {
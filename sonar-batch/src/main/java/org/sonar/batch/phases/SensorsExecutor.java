@@ -20,42 +20,149 @@
 package org.sonar.batch.phases;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.batch.bootstrap.BatchExtensionDictionnary;
+import org.sonar.batch.events.BatchEvent;
 import org.sonar.batch.events.EventBus;
-
-import java.util.Collection;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.sensor.SensorWrapper;
 
 @BatchSide
 public class SensorsExecutor {
 
+  /**
+   * Maximum number of sensors executed at the same time. Only sensors declaring
+   * {@link org.sonar.api.batch.sensor.SensorDescriptor#executedConcurrently()} are executed concurrently.
+   */
+  public static final String PROPERTY_SENSOR_THREADS = "sonar.internal.sensorThreads";
+
+  private static final long TERMINATION_TIMEOUT_IN_SECONDS = 30L;
+
   private EventBus eventBus;
   private Project module;
   private BatchExtensionDictionnary selector;
+  private final Caches caches;
+  private final int threads;
 
-  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, EventBus eventBus) {
+  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, EventBus eventBus, Caches caches, Settings settings) {
     this.selector = selector;
     this.eventBus = eventBus;
     this.module = project;
+    this.caches = caches;
+    int threadsSetting = settings.getInt(PROPERTY_SENSOR_THREADS);
+    this.threads = threadsSetting > 0 ? threadsSetting : Runtime.getRuntime().availableProcessors();
   }
 
   public void execute(SensorContext context) {
     Collection<Sensor> sensors = selector.select(Sensor.class, module, true, null);
-    eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), true));
+    fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), true));
 
+    // consecutive sensors that accept it are executed together, so that the order resulting from dependencies is kept
+    List<Sensor> concurrentSensors = new ArrayList<>();
     for (Sensor sensor : sensors) {
-      executeSensor(context, sensor);
+      if (sensor instanceof SensorWrapper && ((SensorWrapper) sensor).isExecutedConcurrently()) {
+        concurrentSensors.add(sensor);
+      } else {
+        executeConcurrently(context, concurrentSensors);
+        concurrentSensors.clear();
+        executeSensor(context, sensor);
+      }
     }
+    executeConcurrently(context, concurrentSensors);
 
-    eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), false));
+    fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), false));
+  }
+
+  private void executeConcurrently(final SensorContext context, List<Sensor> sensors) {
+    if (threads == 1 || sensors.size() < 2) {
+      for (Sensor sensor : sensors) {
+        executeSensor(context, sensor);
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, sensors.size()),
+      new ThreadFactoryBuilder().setNameFormat("sensor-%d").setDaemon(true).build());
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (final Sensor sensor : sensors) {
+        // sensors access caches, so worker threads must release their exchanges before caches are stopped
+        futures.add(executor.submit(caches.releasingThreadResources(new Callable<Void>() {
+          @Override
+          public Void call() {
+            executeSensor(context, sensor);
+            return null;
+          }
+        })));
+      }
+      waitForCompletion(futures);
+    } finally {
+      shutdown(executor);
+    }
+  }
+
+  /**
+   * All the tasks are completed, except when interrupted, so worker threads terminate quickly
+   */
+  private static void shutdown(ExecutorService executor) {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(TERMINATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Waits for all sensors, even when one of them fails, so that no sensor is still writing data
+   * when the first failure is rethrown.
+   */
+  private static void waitForCompletion(List<Future<Void>> futures) {
+    RuntimeException failure = null;
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while executing sensors", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
   }
 
   private void executeSensor(SensorContext context, Sensor sensor) {
-    eventBus.fireEvent(new SensorExecutionEvent(sensor, true));
+    fireEvent(new SensorExecutionEvent(sensor, true));
     sensor.analyse(module, context);
-    eventBus.fireEvent(new SensorExecutionEvent(sensor, false));
+    fireEvent(new SensorExecutionEvent(sensor, false));
+  }
+
+  /**
+   * Event handlers are not thread-safe
+   */
+  private synchronized void fireEvent(BatchEvent<?> event) {
+    eventBus.fireEvent(event);
   }
 }
@@ -22,9 +22,12 @@ package org.sonar.batch.report;
 import com.github.kevinsawicki.http.HttpRequest;
 import com.google.common.annotations.VisibleForTesting;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.zip.DeflaterInputStream;
 import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
 import org.slf4j.Logger;
@@ -34,10 +37,9 @@ import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
-import org.sonar.api.utils.TempFolder;
-import org.sonar.api.utils.ZipUtils;
 import org.sonar.batch.bootstrap.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
 import org.sonar.batch.scan.ImmutableProjectReactor;
 
@@ -46,27 +48,27 @@ public class ReportPublisher implements Startable {
 
   private static final Logger LOG = LoggerFactory.getLogger(ReportPublisher.class);
   public static final String KEEP_REPORT_PROP_KEY = "sonar.batch.keepReport";
+  private static final int CHUNK_SIZE = 64 * 1024;
 
   private final ServerClient serverClient;
   private final Server server;
   private final Settings settings;
   private final ImmutableProjectReactor projectReactor;
   private final DefaultAnalysisMode analysisMode;
-  private final TempFolder temp;
 
   private ReportPublisherStep[] publishers;
 
   private File reportDir;
   private BatchReportWriter writer;
+  private BatchReportReader reader;
 
   public ReportPublisher(Settings settings, ServerClient serverClient, Server server,
-    ImmutableProjectReactor projectReactor, DefaultAnalysisMode analysisMode, TempFolder temp, ReportPublisherStep[] publishers) {
+    ImmutableProjectReactor projectReactor, DefaultAnalysisMode analysisMode, ReportPublisherStep[] publishers) {
     this.serverClient = serverClient;
     this.server = server;
     this.projectReactor = projectReactor;
     this.settings = settings;
     this.analysisMode = analysisMode;
-    this.temp = temp;
     this.publishers = publishers;
   }
 
@@ -78,6 +80,10 @@ public class ReportPublisher implements Startable {
 
   @Override
   public void stop() {
+    if (reader != null) {
+      reader.close();
+    }
+    writer.close();
     if (!settings.getBoolean(KEEP_REPORT_PROP_KEY)) {
       FileUtils.deleteQuietly(reportDir);
     } else {
@@ -93,39 +99,40 @@ public class ReportPublisher implements Startable {
     return writer;
   }
 
+  /**
+   * Reader of the entries which have already been written in the report. It is shared in order to
+   * not index the report each time it is read during analysis.
+   */
+  public synchronized BatchReportReader getReader() {
+    if (reader == null) {
+      reader = new BatchReportReader(reportDir);
+    }
+    return reader;
+  }
+
   public void execute() {
     // If this is a preview analysis then we should not upload reports
     if (!analysisMode.isPreview()) {
-      File report = prepareReport();
+      prepareReport();
       if (!analysisMode.isMediumTest()) {
-        uploadMultiPartReport(report);
+        uploadMultiPartReport();
       }
     }
     logSuccess(LoggerFactory.getLogger(getClass()));
   }
 
-  private File prepareReport() {
-    try {
-      long startTime = System.currentTimeMillis();
-      for (ReportPublisherStep publisher : publishers) {
-        publisher.publish(writer);
-      }
-      long stopTime = System.currentTimeMillis();
-      LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
-
-      startTime = System.currentTimeMillis();
-      File reportZip = temp.newFile("batch-report", ".zip");
-      ZipUtils.zipDir(reportDir, reportZip);
-      stopTime = System.currentTimeMillis();
-      LOG.info("Analysis reports compressed in " + (stopTime - startTime) + "ms, zip size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportZip)));
-      return reportZip;
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to prepare batch report", e);
+  private void prepareReport() {
+    long startTime = System.currentTimeMillis();
+    for (ReportPublisherStep publisher : publishers) {
+      publisher.publish(writer);
     }
+    writer.close();
+    long stopTime = System.currentTimeMillis();
+    LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
   }
 
   @VisibleForTesting
-  void uploadMultiPartReport(File report) {
+  void uploadMultiPartReport() {
     LOG.debug("Publish results");
     long startTime = System.currentTimeMillis();
     URL url;
@@ -141,7 +148,13 @@ public class ReportPublisher implements Startable {
     request.trustAllHosts();
     request.header("User-Agent", String.format("SonarQube %s", server.getVersion()));
     request.basic(serverClient.getLogin(), serverClient.getPassword());
-    request.part("report", null, "application/octet-stream", report);
+    // report file is compressed while being sent, so its length is not known in advance
+    request.chunk(CHUNK_SIZE);
+    try (InputStream report = new DeflaterInputStream(new FileInputStream(writer.getFileStructure().reportFile()))) {
+      request.part("report", null, "application/octet-stream", report);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to send analysis report", e);
+    }
     if (!request.ok()) {
       int responseCode = request.code();
       if (responseCode == 401) {
@@ -20,7 +20,6 @@
 package org.sonar.batch.report;
 
 import org.apache.commons.io.ByteOrderMark;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.batch.index.BatchComponent;
@@ -28,11 +27,12 @@ import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReportWriter;
 
 import java.io.BufferedReader;
-import java.io.File;
+import java.io.BufferedWriter;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 public class SourcePublisher implements ReportPublisherStep {
@@ -51,17 +51,18 @@ public class SourcePublisher implements ReportPublisherStep {
       }
 
       DefaultInputFile inputFile = (DefaultInputFile) resource.inputPath();
-      File iofile = writer.getSourceFile(resource.batchId());
       int line = 0;
-      try (FileOutputStream output = new FileOutputStream(iofile); BOMInputStream bomIn = new BOMInputStream(new FileInputStream(inputFile.file()),
+      // lines are copied to the report file without loading the whole source in memory
+      try (BOMInputStream bomIn = new BOMInputStream(new FileInputStream(inputFile.file()),
         ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(bomIn, inputFile.charset()))) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(bomIn, inputFile.charset()));
+        Writer output = new BufferedWriter(new OutputStreamWriter(writer.appendFileSource(resource.batchId()), StandardCharsets.UTF_8))) {
         String lineStr = reader.readLine();
         while (lineStr != null) {
-          IOUtils.write(lineStr, output, StandardCharsets.UTF_8);
+          output.write(lineStr);
           line++;
           if (line < inputFile.lines()) {
-            IOUtils.write("\n", output, StandardCharsets.UTF_8);
+            output.write('\n');
           }
           lineStr = reader.readLine();
         }
@@ -56,6 +56,7 @@ import org.sonar.batch.issue.IssueCache;
 import org.sonar.batch.issue.tracking.InitialOpenIssuesStack;
 import org.sonar.batch.issue.tracking.LocalIssueTracking;
 import org.sonar.batch.issue.tracking.ServerIssueRepository;
+import org.sonar.batch.issue.tracking.ServerLineHashesRepository;
 import org.sonar.batch.mediumtest.ScanTaskObservers;
 import org.sonar.batch.phases.PhasesTimeProfiler;
 import org.sonar.batch.profiling.PhasesSumUpTimeProfiler;
@@ -171,6 +172,7 @@ public class ProjectScanContainer extends ComponentContainer {
       DefaultProjectIssues.class,
       LocalIssueTracking.class,
       ServerIssueRepository.class,
+      ServerLineHashesRepository.class,
 
     // metrics
       DefaultMetricFinder.class,
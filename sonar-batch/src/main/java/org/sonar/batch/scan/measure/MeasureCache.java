@@ -72,36 +72,29 @@ public class MeasureCache {
   public MeasureCache put(Resource resource, Measure measure) {
     Preconditions.checkNotNull(resource.getEffectiveKey());
     Preconditions.checkNotNull(measure.getMetricKey());
-    cache.put(resource.getEffectiveKey(), measure.getMetricKey(), computeMeasureKey(measure), measure);
+    cache.put(computeKey(resource, measure), measure);
     return this;
   }
 
   public boolean contains(Resource resource, Measure measure) {
     Preconditions.checkNotNull(resource.getEffectiveKey());
     Preconditions.checkNotNull(measure.getMetricKey());
-    return cache.containsKey(resource.getEffectiveKey(), measure.getMetricKey(), computeMeasureKey(measure));
+    return cache.containsKey(computeKey(resource, measure));
   }
 
-  private static String computeMeasureKey(Measure m) {
-    StringBuilder sb = new StringBuilder();
-    if (m.getMetricKey() != null) {
-      sb.append(m.getMetricKey());
-    }
-    sb.append("|");
+  /**
+   * Each part of the key of a measure is directly appended to the key of the cache, instead of
+   * being concatenated in a string.
+   */
+  private static Object[] computeKey(Resource resource, Measure m) {
     Characteristic characteristic = m.getCharacteristic();
-    if (characteristic != null) {
-      sb.append(characteristic.key());
-    }
-    sb.append("|");
-    Integer personId = m.getPersonId();
-    if (personId != null) {
-      sb.append(personId);
-    }
-    if (m instanceof RuleMeasure) {
-      sb.append("|");
-      sb.append(((RuleMeasure) m).ruleKey());
-    }
-    return sb.toString();
+    return new Object[] {
+      resource.getEffectiveKey(),
+      m.getMetricKey(),
+      characteristic != null ? characteristic.key() : null,
+      m.getPersonId(),
+      m instanceof RuleMeasure ? String.valueOf(((RuleMeasure) m).ruleKey()) : null
+    };
   }
 
 }
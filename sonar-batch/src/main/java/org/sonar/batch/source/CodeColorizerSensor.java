@@ -26,7 +26,7 @@ import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.batch.index.BatchComponentCache;
-import org.sonar.batch.protocol.output.BatchReportReader;
+import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.batch.report.ReportPublisher;
 
 @Phase(name = Phase.Name.POST)
@@ -52,10 +52,9 @@ public final class CodeColorizerSensor implements Sensor {
   public void execute(final SensorContext context) {
     FileSystem fs = context.fileSystem();
     for (InputFile f : fs.inputFiles(fs.predicates().all())) {
-      BatchReportReader reader = new BatchReportReader(reportPublisher.getReportDir());
       int batchId = resourceCache.get(f).batchId();
       String language = f.language();
-      if (reader.hasSyntaxHighlighting(batchId) || language == null) {
+      if (reportPublisher.getWriter().hasComponentData(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, batchId) || language == null) {
         continue;
       }
       codeColorizers.toSyntaxHighlighting(f.file(), fs.encoding(), language, context.newHighlighting().onFile(f));
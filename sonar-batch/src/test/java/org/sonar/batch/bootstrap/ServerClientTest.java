@@ -107,8 +107,8 @@ public class ServerClientTest {
 
     assertThat(newServerClient().request("/foo")).isEqualTo("this is the content");
 
-    // should have the .lock and one request cached
-    assertThat(getNumFilesInCache()).isEqualTo(2);
+    // should have one request cached, lookups do not lock the cache directory
+    assertThat(getNumFilesInCache()).isEqualTo(1);
   }
 
   @Test
@@ -39,6 +39,7 @@ import org.sonar.api.utils.DateUtils;
 import org.sonar.batch.index.BatchComponentCache;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReport.Changesets.Changeset;
+import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
 import org.sonar.batch.report.ReportPublisher;
 
@@ -70,8 +71,8 @@ public class NewCoverageFileAnalyzerTest {
       new AbstractNewCoverageFileAnalyzer.PeriodStruct(3, newDate("2011-02-18")));
     ReportPublisher publishReportJob = mock(ReportPublisher.class);
     java.io.File reportBaseDir = temp.newFolder();
-    when(publishReportJob.getReportDir()).thenReturn(reportBaseDir);
     writer = new BatchReportWriter(reportBaseDir);
+    when(publishReportJob.getReader()).thenReturn(new BatchReportReader(reportBaseDir));
     decorator = new NewCoverageFileAnalyzer(structs, publishReportJob, cache);
 
   }
@@ -25,6 +25,9 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.duplication.NewDuplication;
@@ -32,16 +35,22 @@ import org.sonar.api.batch.sensor.duplication.internal.DefaultDuplication;
 import org.sonar.api.batch.sensor.internal.SensorStorage;
 import org.sonar.api.batch.sensor.measure.Measure;
 import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.batch.cpd.index.IndexFactory;
+import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -145,6 +154,42 @@ public class JavaCpdEngineTest {
       .isDuplicatedBy("key3", 15, 214));
   }
 
+  @Test
+  public void testDetectionOnSeveralThreads() throws Exception {
+    File baseDir = temp.newFolder();
+    DefaultFileSystem fs = new DefaultFileSystem(baseDir).setEncoding(StandardCharsets.UTF_8);
+    StringBuilder source = new StringBuilder("class Foo {\n");
+    for (int i = 0; i < 30; i++) {
+      source.append("  void method").append(i).append("() { int x = ").append(i).append("; }\n");
+    }
+    source.append("}\n");
+    DefaultInputFile foo = newJavaFile(fs, baseDir, "src/Foo.java", source.toString());
+    DefaultInputFile bar = newJavaFile(fs, baseDir, "src/Bar.java", source.toString().replace("Foo", "Bar"));
+    DefaultInputFile other = newJavaFile(fs, baseDir, "src/Other.java", "class Other {\n}\n");
+
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(null, "java")).thenReturn(new SonarDuplicationsIndex());
+    Settings settings = new Settings();
+    settings.setProperty(JavaCpdEngine.PROPERTY_THREADS, 2);
+
+    new JavaCpdEngine(indexFactory, fs, settings).analyse("java", context);
+
+    verify(storage).store(new DefaultMeasure().forMetric(CoreMetrics.DUPLICATED_FILES).onFile(foo).withValue(1));
+    verify(storage).store(new DefaultMeasure().forMetric(CoreMetrics.DUPLICATED_FILES).onFile(bar).withValue(1));
+    verify(storage, never()).store(new DefaultMeasure().forMetric(CoreMetrics.DUPLICATED_FILES).onFile(other).withValue(1));
+  }
+
+  private static DefaultInputFile newJavaFile(DefaultFileSystem fs, File baseDir, String relativePath, String content) throws IOException {
+    FileUtils.write(new File(baseDir, relativePath), content, StandardCharsets.UTF_8);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", relativePath)
+      .setModuleBaseDir(baseDir.toPath())
+      .setLanguage("java")
+      .setType(InputFile.Type.MAIN)
+      .setLines(content.split("\n").length);
+    fs.add(inputFile);
+    return inputFile;
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
@@ -41,10 +41,14 @@ public abstract class AbstractCachesTest {
 
   @Before
   public void start() {
-    caches = new Caches(cachesManager);
+    caches = new Caches(cachesManager, offHeap());
     caches.start();
   }
 
+  protected boolean offHeap() {
+    return false;
+  }
+
   @After
   public void stop() {
     caches.stop();
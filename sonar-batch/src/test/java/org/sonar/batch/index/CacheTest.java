@@ -20,6 +20,12 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 import org.sonar.batch.index.Cache.Entry;
 
@@ -208,6 +214,18 @@ public class CacheTest extends AbstractCachesTest {
     assertThat(cache.values()).isEmpty();
   }
 
+  @Test
+  public void null_segments_are_before_numbers_and_strings() {
+    Cache<String> cache = caches.createCache("types");
+    cache.put("key", "text", "string");
+    cache.put("key", 2, "number");
+    cache.put("key", null, "null");
+
+    assertThat(cache.values("key")).containsExactly("null", "number", "string");
+    assertThat(cache.keySet("key")).containsExactly(null, 2, "text");
+    assertThat(cache.get("key", null)).isEqualTo("null");
+  }
+
   @Test
   public void remove_versus_clear() {
     Cache<String> cache = caches.createCache("capitals");
@@ -247,4 +265,36 @@ public class CacheTest extends AbstractCachesTest {
     cache.clear("foo", "bar", "baz");
     cache.clear();
   }
+
+  @Test
+  public void concurrent_access() throws Exception {
+    final Cache<String> cache = caches.createCache("concurrent");
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        final String group = "group" + thread;
+        results.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            for (int i = 0; i < 500; i++) {
+              cache.put(group, i, group + i);
+              if (!(group + i).equals(cache.get(group, i))) {
+                throw new IllegalStateException("Unexpected value for " + group + " " + i);
+              }
+            }
+            return Iterables.size(cache.values(group));
+          }
+        }));
+      }
+      for (Future<Integer> result : results) {
+        assertThat(result.get()).isEqualTo(500);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(cache.values()).hasSize(2000);
+  }
 }
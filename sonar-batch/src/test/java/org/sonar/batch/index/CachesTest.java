@@ -20,11 +20,20 @@
 package org.sonar.batch.index;
 
 import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.google.common.collect.ImmutableMap;
 import com.persistit.exception.PersistitException;
 import org.junit.Test;
+import org.sonar.batch.bootstrap.AnalysisProperties;
+
+import static org.apache.commons.io.filefilter.FileFilterUtils.prefixFileFilter;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 public class CachesTest extends AbstractCachesTest {
   @Test
@@ -56,7 +65,7 @@ public class CachesTest extends AbstractCachesTest {
     // manager continues up
     assertThat(cachesManager.persistit().isInitialized()).isTrue();
 
-    caches = new Caches(cachesManager);
+    caches = new Caches(cachesManager, false);
     caches.start();
     caches.createCache("test1");
   }
@@ -72,7 +81,7 @@ public class CachesTest extends AbstractCachesTest {
     }
 
     for (int i = 0; i < 3; i++) {
-      caches = new Caches(cachesManager);
+      caches = new Caches(cachesManager, false);
       caches.start();
       Cache<String> c = caches.<String>createCache("test" + i);
       c.put("key" + i, sb.toString());
@@ -82,6 +91,45 @@ public class CachesTest extends AbstractCachesTest {
     }
   }
 
+  @Test
+  public void store_values_off_heap_when_enabled() {
+    caches.stop();
+    caches = new Caches(cachesManager, new AnalysisProperties(ImmutableMap.of(Caches.PROPERTY_OFF_HEAP, "true"), null));
+    caches.start();
+    Cache<String> c = caches.<String>createCache("offHeap");
+    c.put("key", "value");
+
+    assertThat(c.get("key")).isEqualTo("value");
+    assertThat(cachesManager.tempDir().list(prefixFileFilter("offheap"))).hasSize(1);
+
+    caches.stop();
+    assertThat(cachesManager.tempDir().list(prefixFileFilter("offheap"))).isEmpty();
+  }
+
+  @Test
+  public void pooled_threads_release_their_resources_when_tasks_complete() throws Exception {
+    caches = spy(caches);
+    final Cache<String> c = caches.<String>createCache("threads");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      String result = executor.submit(caches.releasingThreadResources(new Callable<String>() {
+        @Override
+        public String call() {
+          c.put("key", "value");
+          return "done";
+        }
+      })).get();
+
+      // released before the result is available
+      assertThat(result).isEqualTo("done");
+      verify(caches).releaseThreadResources();
+      assertThat(c.get("key")).isEqualTo("value");
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   private static class Element implements Serializable {
     private static final long serialVersionUID = 1L;
 
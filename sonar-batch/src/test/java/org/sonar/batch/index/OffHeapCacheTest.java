@@ -17,20 +17,15 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-package org.sonar.server.computation.batch;
+package org.sonar.batch.index;
 
-import java.io.File;
-import java.util.Objects;
-
-public class ImmutableBatchReportDirectoryHolder implements BatchReportDirectoryHolder {
-  private final File directory;
-
-  public ImmutableBatchReportDirectoryHolder(File directory) {
-    this.directory = Objects.requireNonNull(directory);
-  }
+/**
+ * Same behavior as {@link CacheTest}, with values stored out of the heap
+ */
+public class OffHeapCacheTest extends CacheTest {
 
   @Override
-  public File getDirectory() {
-    return directory;
+  protected boolean offHeap() {
+    return true;
   }
 }
@@ -19,20 +19,28 @@
  */
 package org.sonar.batch.issue.tracking;
 
+import com.google.common.base.Function;
+import com.google.common.io.InputSupplier;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrap.ServerClient;
-
-import java.net.URI;
-import java.net.URISyntaxException;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultServerLineHashesLoaderTest {
@@ -40,43 +48,72 @@ public class DefaultServerLineHashesLoaderTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  ServerClient server;
+  ServerLineHashesLoader loader;
+
   @Before
   public void before() {
+    server = mock(ServerClient.class);
+    loader = new DefaultServerLineHashesLoader(server);
   }
 
   @Test
-  public void should_download_source_from_ws_if_preview_mode() {
-    ServerClient server = mock(ServerClient.class);
-    when(server.request(anyString())).thenReturn("ae12\n\n43fb");
+  public void stream_line_hashes_of_module() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    FileLineHashes.newBuilder().setKey("myproject:org/foo/Bar.c").setLineHashes("ae12\n\n43fb").build().writeDelimitedTo(bos);
+    FileLineHashes.newBuilder().setKey("myproject:org/foo/Foo Bar.c").setLineHashes("").build().writeDelimitedTo(bos);
+    mockResponse("/batch/line_hashes?key=myproject", bos.toByteArray());
 
-    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(server);
+    List<FileLineHashes> result = load("myproject");
 
-    String[] hashes = lastSnapshots.getLineHashes("myproject:org/foo/Bar.c");
-    assertThat(hashes).containsOnly("ae12", "", "43fb");
-    verify(server).request("/api/sources/hash?key=myproject%3Aorg%2Ffoo%2FBar.c");
+    assertThat(result).extracting("key").containsExactly("myproject:org/foo/Bar.c", "myproject:org/foo/Foo Bar.c");
+    assertThat(result.get(0).getLineHashes()).isEqualTo("ae12\n\n43fb");
   }
 
   @Test
-  public void should_download_source_with_space_from_ws_if_preview_mode() {
-    ServerClient server = mock(ServerClient.class);
-    when(server.request(anyString())).thenReturn("ae12\n\n43fb");
-
-    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(server);
+  public void encode_module_key() throws Exception {
+    mockResponse("/batch/line_hashes?key=my+project%3Amodule", new byte[0]);
 
-    String[] hashes = lastSnapshots.getLineHashes("myproject:org/foo/Foo Bar.c");
-    assertThat(hashes).containsOnly("ae12", "", "43fb");
-    verify(server).request("/api/sources/hash?key=myproject%3Aorg%2Ffoo%2FFoo+Bar.c");
+    assertThat(load("my project:module")).isEmpty();
   }
 
   @Test
-  public void should_fail_to_download_source_from_ws() throws URISyntaxException {
-    ServerClient server = mock(ServerClient.class);
-    when(server.request(anyString())).thenThrow(new HttpDownloader.HttpException(new URI(""), 500));
+  public void fail_to_download_line_hashes() throws Exception {
+    HttpDownloader.HttpException httpException = new HttpDownloader.HttpException(new URI(""), 500);
+    when(server.doRequest(anyString(), eq("GET"), (Integer) isNull())).thenThrow(httpException);
+    when(server.handleHttpException(httpException)).thenReturn(new IllegalStateException("Fail to execute request"));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail to execute request");
+    load("foo");
+  }
 
-    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(server);
+  @Test
+  public void fail_to_read_line_hashes() throws Exception {
+    InputSupplier<InputStream> input = mock(InputSupplier.class);
+    when(input.getInput()).thenThrow(new IOException("broken"));
+    when(server.doRequest("/batch/line_hashes?key=foo", "GET", null)).thenReturn(input);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to get line hashes");
+    load("foo");
+  }
 
-    thrown.expect(HttpDownloader.HttpException.class);
-    lastSnapshots.getLineHashes("foo");
+  private void mockResponse(String url, byte[] body) throws IOException {
+    InputSupplier<InputStream> input = mock(InputSupplier.class);
+    when(input.getInput()).thenReturn(new ByteArrayInputStream(body));
+    when(server.doRequest(url, "GET", null)).thenReturn(input);
   }
 
+  private List<FileLineHashes> load(String moduleKey) {
+    final List<FileLineHashes> result = new ArrayList<>();
+    loader.load(moduleKey, new Function<FileLineHashes, Void>() {
+      @Override
+      public Void apply(FileLineHashes input) {
+        result.add(input);
+        return null;
+      }
+    });
+    return result;
+  }
 }
@@ -82,7 +82,7 @@ public class IssueTrackingDecoratorTest {
   IssueCache issueCache = mock(IssueCache.class, RETURNS_MOCKS);
   InitialOpenIssuesStack initialOpenIssues = mock(InitialOpenIssuesStack.class);
   IssueTracking tracking = mock(IssueTracking.class, RETURNS_MOCKS);
-  ServerLineHashesLoader lastSnapshots = mock(ServerLineHashesLoader.class);
+  ServerLineHashesRepository lastSnapshots = mock(ServerLineHashesRepository.class);
   IssueHandlers handlers = mock(IssueHandlers.class);
   IssueWorkflow workflow = mock(IssueWorkflow.class);
   IssueUpdater updater = mock(IssueUpdater.class);
@@ -226,8 +226,9 @@ public class IssueTrackingDecoratorTest {
     when(inputFile.lines()).thenReturn(StringUtils.countMatches(newSource, "\n") + 1);
     FileUtils.write(f, newSource, StandardCharsets.UTF_8);
     when(inputFile.key()).thenReturn("foo:Action.java");
+    when(inputFile.moduleKey()).thenReturn("foo");
     when(inputPathCache.getFile("foo", "Action.java")).thenReturn(inputFile);
-    when(lastSnapshots.getLineHashes("foo:Action.java")).thenReturn(computeHexHashes(originalSource));
+    when(lastSnapshots.getLineHashes("foo", "foo:Action.java")).thenReturn(computeHexHashes(originalSource));
     Resource file = File.create("Action.java");
     return file;
   }
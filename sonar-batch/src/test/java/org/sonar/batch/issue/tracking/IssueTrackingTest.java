@@ -61,12 +61,12 @@ public class IssueTrackingTest {
   IssueTracking tracking;
   Resource project;
   SourceHashHolder sourceHashHolder;
-  ServerLineHashesLoader lastSnapshots;
+  ServerLineHashesRepository lastSnapshots;
   long violationId = 0;
 
   @Before
   public void before() {
-    lastSnapshots = mock(ServerLineHashesLoader.class);
+    lastSnapshots = mock(ServerLineHashesRepository.class);
 
     project = mock(Project.class);
     tracking = new IssueTracking();
@@ -376,7 +376,8 @@ public class IssueTrackingTest {
     when(inputFile.lines()).thenReturn(StringUtils.countMatches(data, "\n") + 1);
     FileUtils.write(f, data, StandardCharsets.UTF_8);
     when(inputFile.key()).thenReturn("foo:Action.java");
-    when(lastSnapshots.getLineHashes("foo:Action.java")).thenReturn(computeHexHashes(load(reference)));
+    when(inputFile.moduleKey()).thenReturn("foo");
+    when(lastSnapshots.getLineHashes("foo", "foo:Action.java")).thenReturn(computeHexHashes(load(reference)));
     sourceHashHolder = new SourceHashHolder(inputFile, lastSnapshots);
   }
 
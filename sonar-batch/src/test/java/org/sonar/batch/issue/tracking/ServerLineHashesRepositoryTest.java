@@ -0,0 +1,74 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue.tracking;
+
+import com.google.common.base.Function;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.batch.index.AbstractCachesTest;
+import org.sonar.batch.protocol.input.BatchInput.FileLineHashes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ServerLineHashesRepositoryTest extends AbstractCachesTest {
+
+  ServerLineHashesLoader loader = mock(ServerLineHashesLoader.class);
+  ServerLineHashesRepository repository;
+
+  @Before
+  public void setUp() {
+    repository = new ServerLineHashesRepository(caches, loader);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        Function<FileLineHashes, Void> consumer = (Function<FileLineHashes, Void>) invocation.getArguments()[1];
+        consumer.apply(FileLineHashes.newBuilder().setKey("foo:src/A.java").setLineHashes("ae12\n\n43fb").build());
+        consumer.apply(FileLineHashes.newBuilder().setKey("foo:src/B.java").setLineHashes("").build());
+        return null;
+      }
+    }).when(loader).load(eq("foo"), any(Function.class));
+  }
+
+  @Test
+  public void load_module_only_once() {
+    assertThat(repository.getLineHashes("foo", "foo:src/A.java")).containsExactly("ae12", "", "43fb");
+    assertThat(repository.getLineHashes("foo", "foo:src/B.java")).containsExactly("");
+
+    verify(loader, times(1)).load(anyString(), any(Function.class));
+  }
+
+  @Test
+  public void return_null_for_unknown_file() {
+    assertThat(repository.getLineHashes("foo", "foo:src/Unknown.java")).isNull();
+    assertThat(repository.getLineHashes("bar", "bar:src/A.java")).isNull();
+
+    verify(loader).load(eq("foo"), any(Function.class));
+    verify(loader).load(eq("bar"), any(Function.class));
+  }
+}
@@ -44,14 +44,14 @@ public class SourceHashHolderTest {
 
   SourceHashHolder sourceHashHolder;
 
-  ServerLineHashesLoader lastSnapshots;
+  ServerLineHashesRepository lastSnapshots;
   DefaultInputFile file;
 
   private File ioFile;
 
   @Before
   public void setUp() throws Exception {
-    lastSnapshots = mock(ServerLineHashesLoader.class);
+    lastSnapshots = mock(ServerLineHashesRepository.class);
     file = mock(DefaultInputFile.class);
     ioFile = temp.newFile();
     when(file.file()).thenReturn(ioFile);
@@ -82,11 +82,12 @@ public class SourceHashHolderTest {
     String key = "foo:src/Foo.java";
     FileUtils.write(ioFile, source, StandardCharsets.UTF_8);
     when(file.key()).thenReturn(key);
+    when(file.moduleKey()).thenReturn("foo");
     when(file.status()).thenReturn(InputFile.Status.CHANGED);
-    when(lastSnapshots.getLineHashes(key)).thenReturn(new String[] {md5Hex(source)});
+    when(lastSnapshots.getLineHashes("foo", key)).thenReturn(new String[] {md5Hex(source)});
 
     assertThat(sourceHashHolder.getHashedReference().getHash(1)).isEqualTo(md5Hex(source));
-    verify(lastSnapshots).getLineHashes(key);
+    verify(lastSnapshots).getLineHashes("foo", key);
 
     assertThat(sourceHashHolder.getHashedReference().getHash(1)).isEqualTo(md5Hex(source));
     Mockito.verifyNoMoreInteractions(lastSnapshots);
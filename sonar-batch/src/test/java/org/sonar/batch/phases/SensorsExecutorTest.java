@@ -0,0 +1,185 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.phases;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.BatchExtensionDictionnary;
+import org.sonar.batch.events.EventBus;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.sensor.SensorWrapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SensorsExecutorTest {
+
+  Project project = new Project("project");
+  BatchExtensionDictionnary selector = mock(BatchExtensionDictionnary.class);
+  SensorContext context = mock(SensorContext.class);
+  Caches caches = mock(Caches.class);
+  Settings settings = new Settings();
+
+  @Before
+  public void setUp() {
+    settings.setProperty(SensorsExecutor.PROPERTY_SENSOR_THREADS, 4);
+    when(caches.releasingThreadResources(any(Callable.class))).thenAnswer(AdditionalAnswers.returnsFirstArg());
+  }
+
+  @Test
+  public void execute_sensors_in_order() {
+    Sensor sensor1 = mock(Sensor.class);
+    Sensor sensor2 = mock(Sensor.class);
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Arrays.asList(sensor1, sensor2));
+
+    newExecutor().execute(context);
+
+    InOrder inOrder = inOrder(sensor1, sensor2);
+    inOrder.verify(sensor1).analyse(project, context);
+    inOrder.verify(sensor2).analyse(project, context);
+  }
+
+  @Test
+  public void execute_concurrent_sensors_at_the_same_time() {
+    // each sensor waits for the other one, which would time out if they were executed one after the other
+    CountDownLatch latch = new CountDownLatch(2);
+    SensorWrapper sensor1 = newConcurrentSensor(latch);
+    SensorWrapper sensor2 = newConcurrentSensor(latch);
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Arrays.<Sensor>asList(sensor1, sensor2));
+
+    newExecutor().execute(context);
+
+    verify(sensor1).analyse(project, context);
+    verify(sensor2).analyse(project, context);
+    // worker threads release their cache exchanges
+    verify(caches, times(2)).releasingThreadResources(any(Callable.class));
+  }
+
+  @Test
+  public void keep_order_of_sensors_not_executed_concurrently() {
+    final List<Sensor> executed = new CopyOnWriteArrayList<>();
+    Sensor first = newRecordedSensor(mock(Sensor.class), executed);
+    SensorWrapper concurrent1 = newRecordedSensor(newConcurrentSensor(null), executed);
+    SensorWrapper concurrent2 = newRecordedSensor(newConcurrentSensor(null), executed);
+    Sensor last = newRecordedSensor(mock(Sensor.class), executed);
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Arrays.asList(first, concurrent1, concurrent2, last));
+
+    newExecutor().execute(context);
+
+    assertThat(executed).hasSize(4);
+    assertThat(executed.get(0)).isSameAs(first);
+    assertThat(executed.subList(1, 3)).containsOnly(concurrent1, concurrent2);
+    assertThat(executed.get(3)).isSameAs(last);
+  }
+
+  @Test
+  public void fail_when_a_concurrent_sensor_fails() {
+    SensorWrapper failing = newConcurrentSensor(null);
+    doThrow(new IllegalStateException("Sensor failure")).when(failing).analyse(project, context);
+    SensorWrapper other = newConcurrentSensor(null);
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Arrays.<Sensor>asList(failing, other));
+
+    try {
+      newExecutor().execute(context);
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Sensor failure");
+      // other sensors are not interrupted
+      verify(other).analyse(project, context);
+      return;
+    }
+    throw new AssertionError("Expected failure");
+  }
+
+  @Test
+  public void execute_concurrent_sensors_sequentially_when_single_thread() {
+    settings.setProperty(SensorsExecutor.PROPERTY_SENSOR_THREADS, 1);
+    SensorWrapper sensor1 = newConcurrentSensor(null);
+    SensorWrapper sensor2 = newConcurrentSensor(null);
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Arrays.<Sensor>asList(sensor1, sensor2));
+
+    newExecutor().execute(context);
+
+    InOrder inOrder = inOrder(sensor1, sensor2);
+    inOrder.verify(sensor1).analyse(project, context);
+    inOrder.verify(sensor2).analyse(project, context);
+  }
+
+  @Test
+  public void do_nothing_without_sensors() {
+    when(selector.select(Sensor.class, project, true, null)).thenReturn(Collections.<Sensor>emptyList());
+
+    newExecutor().execute(context);
+  }
+
+  private SensorsExecutor newExecutor() {
+    return new SensorsExecutor(selector, project, mock(EventBus.class), caches, settings);
+  }
+
+  private SensorWrapper newConcurrentSensor(final CountDownLatch latch) {
+    SensorWrapper sensor = mock(SensorWrapper.class);
+    when(sensor.isExecutedConcurrently()).thenReturn(true);
+    if (latch != null) {
+      doAnswer(new Answer<Void>() {
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+          latch.countDown();
+          if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Sensors are not executed concurrently");
+          }
+          return null;
+        }
+      }).when(sensor).analyse(project, context);
+    }
+    return sensor;
+  }
+
+  private <S extends Sensor> S newRecordedSensor(final S sensor, final List<Sensor> executed) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        executed.add(sensor);
+        return null;
+      }
+    }).when(sensor).analyse(project, context);
+    return sensor;
+  }
+}
@@ -19,7 +19,6 @@
  */
 package org.sonar.batch.report;
 
-import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -95,7 +94,7 @@ public class CoveragePublisherTest {
 
     publisher.publish(writer);
 
-    try (InputStream inputStream = FileUtils.openInputStream(new BatchReportReader(outputDir).readComponentCoverage(2))) {
+    try (InputStream inputStream = new BatchReportReader(outputDir).readComponentCoverage(2)) {
       assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream)).isEqualTo(Coverage.newBuilder()
         .setLine(2)
         .setUtHits(true)
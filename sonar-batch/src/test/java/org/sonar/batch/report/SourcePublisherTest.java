@@ -20,6 +20,7 @@
 package org.sonar.batch.report;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,10 +30,12 @@ import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
@@ -47,6 +50,8 @@ public class SourcePublisherTest {
 
   private File sourceFile;
 
+  private File outputDir;
+
   private BatchReportWriter writer;
 
   private org.sonar.api.resources.File sampleFile;
@@ -63,7 +68,7 @@ public class SourcePublisherTest {
     resourceCache.add(sampleFile, null).setInputPath(
       new DefaultInputFile("foo", "src/Foo.php").setLines(5).setModuleBaseDir(baseDir.toPath()).setCharset(StandardCharsets.ISO_8859_1));
     publisher = new SourcePublisher(resourceCache);
-    File outputDir = temp.newFolder();
+    outputDir = temp.newFolder();
     writer = new BatchReportWriter(outputDir);
   }
 
@@ -73,8 +78,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("");
+    assertThat(readSource(2)).isEqualTo("");
   }
 
   @Test
@@ -83,8 +87,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n");
+    assertThat(readSource(2)).isEqualTo("1\n2\n3\n4\n");
   }
 
   @Test
@@ -94,8 +97,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n");
+    assertThat(readSource(2)).isEqualTo("1\n2\n3\n4\n");
   }
 
   @Test
@@ -104,8 +106,7 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n5");
+    assertThat(readSource(2)).isEqualTo("1\n2\n3\n4\n5");
   }
 
   @Test
@@ -114,7 +115,12 @@ public class SourcePublisherTest {
 
     publisher.publish(writer);
 
-    File out = writer.getSourceFile(2);
-    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("\n2\n3\n4\n5");
+    assertThat(readSource(2)).isEqualTo("\n2\n3\n4\n5");
+  }
+
+  private String readSource(int ref) throws IOException {
+    try (InputStream source = new BatchReportReader(outputDir).readFileSource(ref)) {
+      return IOUtils.toString(source, StandardCharsets.UTF_8);
+    }
   }
 }
@@ -255,6 +255,29 @@ public class MeasureCacheTest extends AbstractCachesTest {
     assertThat(measureCache.byResource(dir).iterator().next()).isEqualTo(mDir);
   }
 
+  /**
+   * Measures of a resource are ordered by the segments of their keys: metric, characteristic, person and rule.
+   * Null segments are before the other ones.
+   */
+  @Test
+  public void measures_of_resource_are_ordered_by_key_segments() {
+    when(metricFinder.findByKey(CoreMetrics.LINES_KEY)).thenReturn(CoreMetrics.LINES);
+    Resource file = File.create("foo/bar/File1.txt").setEffectiveKey("struts:foo/bar/File1.txt");
+    Characteristic characteristic = mock(Characteristic.class);
+    when(characteristic.key()).thenReturn("MAINTAINABILITY");
+
+    Measure byCharacteristic = new Measure(CoreMetrics.NCLOC, 1.0).setCharacteristic(characteristic);
+    Measure byPerson = new Measure(CoreMetrics.NCLOC, 2.0).setPersonId(3);
+    Measure ncloc = new Measure(CoreMetrics.NCLOC, 3.0);
+    Measure lines = new Measure(CoreMetrics.LINES, 4.0);
+    measureCache.put(file, byCharacteristic);
+    measureCache.put(file, byPerson);
+    measureCache.put(file, ncloc);
+    measureCache.put(file, lines);
+
+    assertThat(measureCache.byResource(file)).extracting("value").containsExactly(4.0, 3.0, 2.0, 1.0);
+  }
+
   @Test
   public void test_measure_coder() throws Exception {
     Resource file1 = File.create("foo/bar/File1.txt").setEffectiveKey("struts:foo/bar/File1.txt");
@@ -288,9 +311,10 @@ public class MeasureCacheTest extends AbstractCachesTest {
     measure.setVariation3(13.0);
     measure.setVariation4(14.0);
     measure.setVariation5(15.0);
-    measureCache.put(file1, measure);
+    Resource file2 = File.create("foo/bar/File2.txt").setEffectiveKey("struts:foo/bar/File2.txt");
+    measureCache.put(file2, measure);
 
-    savedMeasure = measureCache.byResource(file1).iterator().next();
+    savedMeasure = measureCache.byResource(file2).iterator().next();
     assertThat(EqualsBuilder.reflectionEquals(measure, savedMeasure)).isTrue();
 
   }
@@ -102,6 +102,18 @@ public final class DataCleanerProperties {
         .category(CoreProperties.CATEGORY_GENERAL)
         .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .index(6)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.MAX_PURGE_DURATION_IN_MINUTES)
+        .defaultValue("0")
+        .name("Maximum duration of history purge")
+        .description("Maximum number of minutes spent purging the history of a project at the end of an analysis. "
+          + "Snapshots which are not purged in time are purged by the next analyses. Zero means no limit.")
+        .type(PropertyType.INTEGER)
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(7)
         .build()
       );
   }
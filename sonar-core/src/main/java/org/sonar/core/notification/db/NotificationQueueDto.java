@@ -20,23 +20,45 @@
 
 package org.sonar.core.notification.db;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.builder.ToStringBuilder;
-import org.apache.commons.lang.builder.ToStringStyle;
-import org.sonar.api.notifications.Notification;
-import org.sonar.api.utils.SonarException;
-
+import com.google.common.base.Optional;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+import org.sonar.api.notifications.Notification;
+import org.sonar.api.utils.SonarException;
 
 /**
  * @since 3.7.1
  */
 public class NotificationQueueDto {
 
+  /**
+   * First byte of the notifications stored as class, type and fields only. Java serialization streams
+   * start with 0xACED, so both formats can be read.
+   */
+  private static final byte COMPACT_FORMAT = 1;
+
+  /**
+   * Type of the notifications created by the no-arg constructor of each subclass, absent when
+   * the subclass can't be re-created from its type and fields.
+   */
+  private static final ConcurrentMap<Class<?>, Optional<String>> COMPACT_TYPES = new ConcurrentHashMap<>();
+
   private Long id;
   private byte[] data;
 
@@ -63,12 +85,20 @@ public class NotificationQueueDto {
     return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
   }
 
+  /**
+   * Notifications are stored as their class, type and fields. The notifications that can't be re-created
+   * from them are stored with Java serialization.
+   */
   public static NotificationQueueDto toNotificationQueueDto(Notification notification) {
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
     try {
-      ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-      objectOutputStream.writeObject(notification);
-      objectOutputStream.close();
+      if (isCompact(notification)) {
+        writeCompact(notification, byteArrayOutputStream);
+      } else {
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+        objectOutputStream.writeObject(notification);
+        objectOutputStream.close();
+      }
       return new NotificationQueueDto().setData(byteArrayOutputStream.toByteArray());
 
     } catch (IOException e) {
@@ -83,6 +113,9 @@ public class NotificationQueueDto {
     if (this.data == null) {
       return null;
     }
+    if (this.data.length > 0 && this.data[0] == COMPACT_FORMAT) {
+      return readCompact(this.data);
+    }
     ByteArrayInputStream byteArrayInputStream = null;
     try {
       byteArrayInputStream = new ByteArrayInputStream(this.data);
@@ -95,4 +128,101 @@ public class NotificationQueueDto {
     }
   }
 
+  private static void writeCompact(Notification notification, ByteArrayOutputStream output) throws IOException {
+    DataOutputStream dataOutput = new DataOutputStream(output);
+    dataOutput.writeByte(COMPACT_FORMAT);
+    writeString(dataOutput, notification.getClass().getName());
+    writeString(dataOutput, notification.getType());
+    Map<String, String> fields = notification.getFieldValues();
+    dataOutput.writeInt(fields.size());
+    for (Map.Entry<String, String> field : fields.entrySet()) {
+      writeString(dataOutput, field.getKey());
+      writeString(dataOutput, field.getValue());
+    }
+    dataOutput.flush();
+  }
+
+  private static Notification readCompact(byte[] bytes) throws IOException, ClassNotFoundException {
+    DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(bytes));
+    dataInput.readByte();
+    Class<?> notificationClass = Class.forName(readString(dataInput));
+    String type = readString(dataInput);
+    Notification notification;
+    if (notificationClass == Notification.class) {
+      notification = new Notification(type);
+    } else {
+      try {
+        notification = newInstance(notificationClass);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Fail to create notification " + notificationClass, e);
+      }
+    }
+    int fieldCount = dataInput.readInt();
+    for (int i = 0; i < fieldCount; i++) {
+      notification.setFieldValue(readString(dataInput), readString(dataInput));
+    }
+    return notification;
+  }
+
+  private static void writeString(DataOutputStream output, String s) throws IOException {
+    if (s == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Subclasses of {@link Notification} can be stored as class, type and fields as long as they don't declare
+   * non-transient instance fields, and their no-arg constructor creates notifications of the same type.
+   */
+  private static boolean isCompact(Notification notification) {
+    Class<?> notificationClass = notification.getClass();
+    if (notificationClass == Notification.class) {
+      return true;
+    }
+    Optional<String> compactType = COMPACT_TYPES.get(notificationClass);
+    if (compactType == null) {
+      compactType = Optional.fromNullable(compactType(notificationClass));
+      COMPACT_TYPES.put(notificationClass, compactType);
+    }
+    return compactType.isPresent() && compactType.get().equals(notification.getType());
+  }
+
+  @CheckForNull
+  private static String compactType(Class<?> notificationClass) {
+    for (Class<?> c = notificationClass; c != Notification.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+          return null;
+        }
+      }
+    }
+    try {
+      return newInstance(notificationClass).getType();
+    } catch (ReflectiveOperationException e) {
+      // no no-arg constructor
+      return null;
+    }
+  }
+
+  private static Notification newInstance(Class<?> notificationClass) throws ReflectiveOperationException {
+    Constructor<? extends Notification> constructor = notificationClass.asSubclass(Notification.class).getDeclaredConstructor();
+    constructor.setAccessible(true);
+    return constructor.newInstance();
+  }
+
 }
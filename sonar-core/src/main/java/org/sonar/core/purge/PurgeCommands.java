@@ -22,6 +22,7 @@ package org.sonar.core.purge;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import java.util.List;
+import org.apache.ibatis.executor.BatchResult;
 import org.apache.ibatis.session.SqlSession;
 
 class PurgeCommands {
@@ -65,85 +66,73 @@ class PurgeCommands {
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
       purgeMapper.deleteResourceLinks(componentUuidPartition);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResourceProperties (properties)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteResourceProperties(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResourceIndex (resource_index)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteResourceIndex(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResourceGroupRoles (group_roles)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteResourceGroupRoles(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResourceUserRoles (user_roles)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteResourceUserRoles(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResourceManualMeasures (manual_measures)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
       purgeMapper.deleteResourceManualMeasures(componentUuidPartition);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteComponentIssueChanges (issue_changes)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
       purgeMapper.deleteComponentIssueChanges(componentUuidPartition);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteComponentIssues (issues)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
       purgeMapper.deleteComponentIssues(componentUuidPartition);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResourceActionPlans (action_plans)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteResourceActionPlans(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteComponentEvents (events)");
     for (List<String> componentUuidPartition : componentUuidsPartitions) {
       purgeMapper.deleteComponentEvents(componentUuidPartition);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteResource (projects)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteResource(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteAuthors (authors)");
     for (List<Long> partResourceIds : componentIdPartitions) {
       purgeMapper.deleteAuthors(partResourceIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
   }
 
   void deleteSnapshots(final PurgeSnapshotQuery query) {
@@ -161,22 +150,19 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotEvents(partSnapshotIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteSnapshotMeasures (project_measures)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotMeasures(partSnapshotIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("deleteSnapshot (snapshots)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshot(partSnapshotIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
   }
 
   void purgeSnapshots(final PurgeSnapshotQuery query) {
@@ -195,15 +181,13 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
 
     profiler.start("updatePurgeStatusToOne (snapshots)");
-    for (Long snapshotId : snapshotIds) {
-      purgeMapper.updatePurgeStatusToOne(snapshotId);
+    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
+      purgeMapper.updatePurgeStatusToOne(partSnapshotIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
   }
 
   private void deleteSnapshotDuplications(final List<List<Long>> snapshotIdsPartition) {
@@ -211,14 +195,65 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotDuplications(partSnapshotIds);
     }
-    session.commit();
-    profiler.stop();
+    commitAndProfile();
+  }
+
+  void disableResources(List<IdUuidPair> componentIdUuids, long now) {
+    List<List<Long>> componentIdPartitions = Lists.partition(IdUuidPairs.ids(componentIdUuids), MAX_RESOURCES_PER_QUERY);
+    List<List<String>> componentUuidsPartitions = Lists.partition(IdUuidPairs.uuids(componentIdUuids), MAX_RESOURCES_PER_QUERY);
+
+    profiler.start("deleteResourceIndex (resource_index)");
+    for (List<Long> partResourceIds : componentIdPartitions) {
+      purgeMapper.deleteResourceIndex(partResourceIds);
+    }
+    commitAndProfile();
+
+    profiler.start("setSnapshotIsLastToFalse (snapshots)");
+    for (List<Long> partResourceIds : componentIdPartitions) {
+      purgeMapper.setSnapshotIsLastToFalse(partResourceIds);
+    }
+    commitAndProfile();
+
+    profiler.start("deleteFileSourcesByUuid (file_sources)");
+    for (List<String> componentUuidPartition : componentUuidsPartitions) {
+      purgeMapper.deleteFileSourcesByUuid(componentUuidPartition);
+    }
+    commitAndProfile();
+
+    profiler.start("disableResource (projects)");
+    for (List<Long> partResourceIds : componentIdPartitions) {
+      purgeMapper.disableResource(partResourceIds);
+    }
+    commitAndProfile();
+
+    profiler.start("resolveResourceIssuesNotAlreadyResolved (issues)");
+    for (List<String> componentUuidPartition : componentUuidsPartitions) {
+      purgeMapper.resolveResourceIssuesNotAlreadyResolved(componentUuidPartition, now);
+    }
+    commitAndProfile();
   }
 
   public void deleteFileSources(String rootUuid) {
     profiler.start("deleteFileSources (file_sources)");
     purgeMapper.deleteFileSourcesByProjectUuid(rootUuid);
+    commitAndProfile();
+  }
+
+  /**
+   * Flushes the JDBC batch of the current step, then commits. Rows affected by the batch are
+   * reported to the profiler. Drivers that do not return update counts in batch mode (for example
+   * Oracle returns {@link java.sql.Statement#SUCCESS_NO_INFO}) are reported as zero rows.
+   */
+  private void commitAndProfile() {
+    long rowCount = 0L;
+    for (BatchResult batchResult : session.flushStatements()) {
+      for (int updateCount : batchResult.getUpdateCounts()) {
+        if (updateCount > 0) {
+          rowCount += updateCount;
+        }
+      }
+    }
     session.commit();
-    profiler.stop();
+    profiler.stop(rowCount);
   }
 }
@@ -21,7 +21,6 @@ package org.sonar.core.purge;
 
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -45,6 +44,7 @@ import static org.sonar.api.utils.DateUtils.dateToLong;
  */
 public class PurgeDao implements DaoComponent {
   private static final Logger LOG = LoggerFactory.getLogger(PurgeDao.class);
+  private static final int MAX_ROOT_SNAPSHOTS_PER_CHUNK = 50;
   private final MyBatis mybatis;
   private final ResourceDao resourceDao;
   private final System2 system2;
@@ -71,14 +71,15 @@ public class PurgeDao implements DaoComponent {
   public void purge(DbSession session, PurgeConfiguration conf, PurgeListener purgeListener) {
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
     PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+    long deadline = conf.maxDurationInMs() > 0 ? (system2.now() + conf.maxDurationInMs()) : Long.MAX_VALUE;
     List<ResourceDto> projects = getProjects(conf.rootProjectIdUuid().getId(), session);
     for (ResourceDto project : projects) {
       LOG.debug("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
       deleteAbortedBuilds(project, commands);
-      purge(project, conf.scopesWithoutHistoricalData(), commands);
+      purge(project, conf.scopesWithoutHistoricalData(), commands, deadline);
     }
     for (ResourceDto project : projects) {
-      disableOrphanResources(project, session, mapper, purgeListener);
+      disableOrphanResources(project, session, commands, purgeListener);
     }
     deleteOldClosedIssues(conf, mapper);
   }
@@ -108,32 +109,42 @@ public class PurgeDao implements DaoComponent {
     return !commands.selectSnapshotIds(query).isEmpty();
   }
 
-  private void purge(ResourceDto project, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands) {
+  /**
+   * Snapshots of the project are purged by chunks, each table being processed once per chunk instead of once
+   * per snapshot. The purge stops between two chunks when the deadline is reached. It's safe because
+   * the snapshots of the project are flagged as purged only after their children, so remaining ones
+   * are processed by the next analysis.
+   */
+  private void purge(ResourceDto project, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands, long deadline) {
     List<Long> projectSnapshotIds = purgeCommands.selectSnapshotIds(
       PurgeSnapshotQuery.create()
         .setResourceId(project.getId())
         .setIslast(false)
         .setNotPurged(true)
       );
-    for (final Long projectSnapshotId : projectSnapshotIds) {
-      LOG.debug("<- Clean snapshot " + projectSnapshotId);
+    for (List<Long> chunk : Lists.partition(projectSnapshotIds, MAX_ROOT_SNAPSHOTS_PER_CHUNK)) {
+      if (system2.now() > deadline) {
+        LOG.info("Time budget of purge is exceeded. Remaining snapshots of " + project.getLongName() + " will be purged by next analysis");
+        return;
+      }
+      LOG.debug("<- Clean snapshots " + chunk);
       if (!ArrayUtils.isEmpty(scopesWithoutHistoricalData)) {
         PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
           .setIslast(false)
           .setScopes(scopesWithoutHistoricalData)
-          .setRootSnapshotId(projectSnapshotId);
+          .setRootSnapshotIds(chunk);
         purgeCommands.deleteSnapshots(query);
       }
 
-      PurgeSnapshotQuery query = PurgeSnapshotQuery.create().setRootSnapshotId(projectSnapshotId).setNotPurged(true);
+      PurgeSnapshotQuery query = PurgeSnapshotQuery.create().setRootSnapshotIds(chunk).setNotPurged(true);
       purgeCommands.purgeSnapshots(query);
 
       // must be executed at the end for reentrance
-      purgeCommands.purgeSnapshots(PurgeSnapshotQuery.create().setId(projectSnapshotId).setNotPurged(true));
+      purgeCommands.purgeSnapshots(chunk);
     }
   }
 
-  private void disableOrphanResources(final ResourceDto project, final SqlSession session, final PurgeMapper purgeMapper, final PurgeListener purgeListener) {
+  private void disableOrphanResources(final ResourceDto project, final SqlSession session, PurgeCommands purgeCommands, final PurgeListener purgeListener) {
     final List<IdUuidPair> componentIdUuids = new ArrayList<>();
     session.select("org.sonar.core.purge.PurgeMapper.selectComponentIdUuidsToDisable", project.getId(), new ResultHandler() {
       @Override
@@ -145,12 +156,10 @@ public class PurgeDao implements DaoComponent {
       }
     });
 
+    purgeCommands.disableResources(componentIdUuids, system2.now());
     for (IdUuidPair componentIdUuid : componentIdUuids) {
-      disableResource(componentIdUuid, purgeMapper);
       purgeListener.onComponentDisabling(componentIdUuid.getUuid());
     }
-
-    session.commit();
   }
 
   public List<PurgeableSnapshotDto> selectPurgeableSnapshots(long resourceId) {
@@ -200,15 +209,6 @@ public class PurgeDao implements DaoComponent {
     commands.deleteResources(componentIdUuids);
   }
 
-  private void disableResource(IdUuidPair componentIdUuid, PurgeMapper mapper) {
-    long componentId = componentIdUuid.getId();
-    mapper.deleteResourceIndex(Arrays.asList(componentId));
-    mapper.setSnapshotIsLastToFalse(componentId);
-    mapper.deleteFileSourcesByUuid(componentIdUuid.getUuid());
-    mapper.disableResource(componentId);
-    mapper.resolveResourceIssuesNotAlreadyResolved(componentIdUuid.getUuid(), system2.now());
-  }
-
   public PurgeDao deleteSnapshots(PurgeSnapshotQuery query) {
     final DbSession session = mybatis.openSession(true);
     try {
@@ -45,17 +45,17 @@ public interface PurgeMapper {
 
   void deleteSnapshotWastedMeasures(@Param("snapshotIds") List<Long> snapshotIds, @Param("mids") List<Long> metricIds);
 
-  void updatePurgeStatusToOne(long snapshotId);
+  void updatePurgeStatusToOne(@Param("snapshotIds") List<Long> snapshotIds);
 
-  void disableResource(long resourceId);
+  void disableResource(@Param("resourceIds") List<Long> resourceIds);
 
-  void resolveResourceIssuesNotAlreadyResolved(@Param("componentUuid") String componentUuid, @Param("dateAsLong") Long dateAsLong);
+  void resolveResourceIssuesNotAlreadyResolved(@Param("componentUuids") List<String> componentUuids, @Param("dateAsLong") Long dateAsLong);
 
   void deleteResourceIndex(@Param("resourceIds") List<Long> resourceIds);
 
   void deleteEvent(long eventId);
 
-  void setSnapshotIsLastToFalse(long resourceId);
+  void setSnapshotIsLastToFalse(@Param("resourceIds") List<Long> resourceIds);
 
   void deleteResourceLinks(@Param("componentUuids") List<String> componentUuids);
 
@@ -89,7 +89,7 @@ public interface PurgeMapper {
 
   void deleteFileSourcesByProjectUuid(String rootProjectUuid);
 
-  void deleteFileSourcesByUuid(String fileUuid);
+  void deleteFileSourcesByUuid(@Param("fileUuids") List<String> fileUuids);
 
   List<String> selectPurgeableFileUuids(Long projectId);
 }
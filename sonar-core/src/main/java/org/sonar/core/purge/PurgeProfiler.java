@@ -34,6 +34,7 @@ import java.util.Map.Entry;
 public class PurgeProfiler {
 
   private Map<String, Long> durations = new HashMap<>();
+  private Map<String, Long> rows = new HashMap<>();
   private long startTime;
   private String currentTable;
   private final Clock clock;
@@ -49,6 +50,7 @@ public class PurgeProfiler {
 
   public void reset() {
     durations.clear();
+    rows.clear();
   }
 
   void start(String table) {
@@ -57,13 +59,20 @@ public class PurgeProfiler {
   }
 
   void stop() {
-    final Long cumulatedDuration;
-    if (durations.containsKey(currentTable)) {
-      cumulatedDuration = durations.get(currentTable);
-    } else {
-      cumulatedDuration = 0L;
-    }
-    durations.put(currentTable, cumulatedDuration + (clock.now() - startTime));
+    stop(0L);
+  }
+
+  /**
+   * @param rowCount number of rows affected since {@link #start(String)}, used to report throughput
+   */
+  void stop(long rowCount) {
+    durations.put(currentTable, cumulated(durations, currentTable) + (clock.now() - startTime));
+    rows.put(currentTable, cumulated(rows, currentTable) + rowCount);
+  }
+
+  private static long cumulated(Map<String, Long> values, String table) {
+    Long value = values.get(table);
+    return value == null ? 0L : value;
   }
 
   public void dump(long totalTime, Logger logger) {
@@ -79,6 +88,11 @@ public class PurgeProfiler {
       StringBuilder sb = new StringBuilder();
       sb.append("   o ").append(entry.getKey()).append(": ").append(TimeUtils.formatDuration(entry.getValue()))
           .append(" (").append((int) (entry.getValue() / percent)).append("%)");
+      long rowCount = cumulated(rows, entry.getKey());
+      if (rowCount > 0) {
+        sb.append(", ").append(rowCount).append(" rows (")
+          .append(rowCount * 1000L / Math.max(1L, entry.getValue())).append(" rows/s)");
+      }
       logger.info(sb.toString());
     }
   }
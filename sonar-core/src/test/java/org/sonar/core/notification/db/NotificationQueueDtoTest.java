@@ -0,0 +1,111 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.notification.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+import org.sonar.api.notifications.Notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotificationQueueDtoTest {
+
+  @Test
+  public void write_and_read_notification() throws Exception {
+    Notification notification = new Notification("new-issues")
+      .setDefaultMessage("10 new issues")
+      .setFieldValue("projectKey", "org.sonar:sonar")
+      .setFieldValue("nullable", null);
+
+    NotificationQueueDto dto = NotificationQueueDto.toNotificationQueueDto(notification);
+
+    Notification read = dto.toNotification();
+    assertThat(read).isEqualTo(notification);
+    assertThat(read.getFieldValues()).containsKey("nullable");
+  }
+
+  @Test
+  public void do_not_use_java_serialization_when_notification_has_no_state() throws Exception {
+    NotificationQueueDto dto = NotificationQueueDto.toNotificationQueueDto(new StatelessNotification().setFieldValue("key", "value"));
+
+    assertThat(dto.getData()[0]).isEqualTo((byte) 1);
+    Notification read = dto.toNotification();
+    assertThat(read.getClass()).isEqualTo(StatelessNotification.class);
+    assertThat(read.getType()).isEqualTo("stateless");
+    assertThat(read.getFieldValue("key")).isEqualTo("value");
+  }
+
+  @Test
+  public void use_java_serialization_when_notification_has_no_no_arg_constructor() throws Exception {
+    NotificationQueueDto dto = NotificationQueueDto.toNotificationQueueDto(new TypedNotification("typed").setFieldValue("key", "value"));
+
+    assertThat(dto.getData()[0]).isNotEqualTo((byte) 1);
+    Notification read = dto.toNotification();
+    assertThat(read).isInstanceOf(TypedNotification.class);
+    assertThat(read.getType()).isEqualTo("typed");
+    assertThat(read.getFieldValue("key")).isEqualTo("value");
+  }
+
+  @Test
+  public void use_java_serialization_when_notification_has_state() throws Exception {
+    NotificationQueueDto dto = NotificationQueueDto.toNotificationQueueDto(new StatefulNotification("state"));
+
+    Notification read = dto.toNotification();
+    assertThat(read).isInstanceOf(StatefulNotification.class);
+    assertThat(((StatefulNotification) read).state).isEqualTo("state");
+  }
+
+  @Test
+  public void read_notification_stored_with_java_serialization() throws Exception {
+    Notification notification = new Notification("old").setFieldValue("key", "value");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream output = new ObjectOutputStream(bytes);
+    output.writeObject(notification);
+    output.close();
+
+    Notification read = new NotificationQueueDto().setData(bytes.toByteArray()).toNotification();
+
+    assertThat(read).isEqualTo(notification);
+  }
+
+  private static class StatelessNotification extends Notification {
+    private transient Object cache = new Object();
+
+    StatelessNotification() {
+      super("stateless");
+    }
+  }
+
+  private static class TypedNotification extends Notification {
+    TypedNotification(String type) {
+      super(type);
+    }
+  }
+
+  private static class StatefulNotification extends Notification {
+    private final String state;
+
+    StatefulNotification(String state) {
+      super("stateful");
+      this.state = state;
+    }
+  }
+}
@@ -64,6 +64,23 @@ public class PurgeConfigurationTest {
     assertThat(sut.maxLiveDateOfClosedIssues(now)).isEqualTo(DateUtils.addDays(now, -5));
   }
 
+  @Test
+  public void no_time_budget_by_default() {
+    PurgeConfiguration sut = PurgeConfiguration.newDefaultPurgeConfiguration(new Settings(), new IdUuidPair(42L, "any-uuid"));
+
+    assertThat(sut.maxDurationInMs()).isEqualTo(0L);
+  }
+
+  @Test
+  public void time_budget_is_defined_in_minutes() {
+    Settings settings = new Settings();
+    settings.setProperty(DbCleanerConstants.MAX_PURGE_DURATION_IN_MINUTES, 3);
+
+    PurgeConfiguration sut = PurgeConfiguration.newDefaultPurgeConfiguration(settings, new IdUuidPair(42L, "any-uuid"));
+
+    assertThat(sut.maxDurationInMs()).isEqualTo(180000L);
+  }
+
   @Test
   public void delete_directory_if_in_settings() {
     Settings settings = new Settings();
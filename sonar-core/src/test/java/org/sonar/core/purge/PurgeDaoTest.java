@@ -29,6 +29,10 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.resource.ResourceDao;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -78,6 +82,40 @@ public class PurgeDaoTest extends AbstractDaoTestCase {
     checkTables("shouldPurgeProject", "projects", "snapshots");
   }
 
+  @Test
+  public void stop_purging_snapshots_when_time_budget_is_exceeded() {
+    setupData("stop_purging_snapshots_when_time_budget_is_exceeded");
+    when(system2.now()).thenReturn(1450000000000L, 1450000000010L);
+
+    sut.purge(new PurgeConfiguration(new IdUuidPair(1L, "1"), new String[0], 30, 5L, system2), PurgeListener.EMPTY);
+
+    // snapshot 3 is purged by next analysis
+    checkTables("stop_purging_snapshots_when_time_budget_is_exceeded", "snapshots");
+  }
+
+  @Test
+  public void purge_snapshots_by_chunks_until_time_budget_is_exceeded() throws Exception {
+    setupData("purge_snapshots_by_chunks_until_time_budget_is_exceeded");
+    // deadline is computed, first chunk is purged, then budget is exceeded before the second chunk
+    when(system2.now()).thenReturn(1450000000000L, 1450000000000L, 1450000000010L);
+
+    sut.purge(new PurgeConfiguration(new IdUuidPair(1L, "1"), new String[0], 30, 5L, system2), PurgeListener.EMPTY);
+
+    // the 10 remaining snapshots are purged by next analysis
+    assertThat(countSnapshots("purge_status=1")).isEqualTo(50);
+    assertThat(countSnapshots("purge_status is null and islast=" + getDatabase().getDialect().getFalseSqlValue())).isEqualTo(10);
+    assertThat(countSnapshots("islast=" + getDatabase().getDialect().getTrueSqlValue())).isEqualTo(1);
+  }
+
+  private int countSnapshots(String condition) throws SQLException {
+    try (Connection connection = getConnection();
+      PreparedStatement stmt = connection.prepareStatement("select count(*) from snapshots where " + condition);
+      ResultSet rs = stmt.executeQuery()) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
   private PurgeConfiguration newConfigurationWith30Days() {
     return new PurgeConfiguration(new IdUuidPair(1L, "1"), new String[0], 30);
   }
@@ -25,6 +25,7 @@ import org.sonar.api.utils.log.Logger;
 
 import static org.mockito.Matchers.contains;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class PurgeProfilerTest {
@@ -80,6 +81,26 @@ public class PurgeProfilerTest {
     verify(logger).info(contains("bar: 5ms"));
   }
 
+  @Test
+  public void shouldDumpRowsPerSecond() {
+    profiler.start("foo");
+    clock.sleep(200);
+    profiler.stop(1000);
+
+    profiler.start("foo");
+    clock.sleep(300);
+    profiler.stop(500);
+
+    profiler.start("bar");
+    clock.sleep(5);
+    profiler.stop();
+
+    profiler.dump(505, logger);
+    verify(logger).info(contains("foo: 500ms (99%), 1500 rows (3000 rows/s)"));
+    verify(logger).info(contains("bar: 5ms (0%)"));
+    verify(logger, never()).info(contains("bar: 5ms (0%), "));
+  }
+
   private class MockedClock extends org.sonar.core.purge.PurgeProfiler.Clock {
     private long now = 0;
 
@@ -24,7 +24,13 @@ import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -109,6 +115,40 @@ public class PackedMemoryCloneIndexTest {
     index.getBySequenceHash(new ByteArray(1L));
   }
 
+  /**
+   * Given: index with all blocks inserted.
+   * Expected: queries executed concurrently return same results as sequential queries.
+   */
+  @Test
+  public void should_support_concurrent_queries() throws Exception {
+    for (int resource = 0; resource < 100; resource++) {
+      for (long hash = 0; hash < 10; hash++) {
+        index.insert(newBlock("resource" + resource, hash));
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        final int resource = i % 100;
+        final long hash = i % 10;
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            return index.getByResourceId("resource" + resource).size() == 10
+              && index.getBySequenceHash(new ByteArray(hash)).size() == 100;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get(), is(true));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private static Block newBlock(String resourceId, long hash) {
     return Block.builder()
         .setResourceId(resourceId)
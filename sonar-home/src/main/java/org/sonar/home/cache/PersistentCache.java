@@ -26,13 +26,20 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -41,11 +48,20 @@ import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
+/**
+ * Cache of web service responses, stored as one file per entry. Lookups of different keys run concurrently:
+ * each key is guarded by one of {@link #LOCK_STRIPES} in-process locks, and entries are written to a temporary
+ * file then renamed, so that readers never need the global file lock. That lock is only taken to clear or clean
+ * the whole cache. The most recently used entries are also kept in memory.
+ */
 public class PersistentCache {
 
   private static final Charset ENCODING = StandardCharsets.UTF_8;
   private static final String DIGEST_ALGO = "MD5";
   private static final String LOCK_FNAME = ".lock";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+  static final int LOCK_STRIPES = 32;
+  static final int MAX_ENTRIES_IN_MEMORY = 50;
 
   private Path baseDir;
 
@@ -53,11 +69,21 @@ public class PersistentCache {
   private final long defaultDurationToExpireMs;
   private boolean forceUpdate;
   private final Logger logger;
+  private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+  private final Map<String, MemoryEntry> memoryCache = Collections.synchronizedMap(new LinkedHashMap<String, MemoryEntry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+      return size() > MAX_ENTRIES_IN_MEMORY;
+    }
+  });
 
   public PersistentCache(Path baseDir, long defaultDurationToExpireMs, boolean forceUpdate, Logger logger) {
     this.baseDir = baseDir;
     this.defaultDurationToExpireMs = defaultDurationToExpireMs;
     this.logger = logger;
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new ReentrantLock();
+    }
 
     reconfigure(forceUpdate);
     logger.debug("cache: " + baseDir + ", default expiration time (ms): " + defaultDurationToExpireMs);
@@ -65,6 +91,7 @@ public class PersistentCache {
 
   public void reconfigure(boolean forceUpdate) {
     this.forceUpdate = forceUpdate;
+    memoryCache.clear();
 
     if (forceUpdate) {
       logger.debug("cache: forcing update");
@@ -86,7 +113,7 @@ public class PersistentCache {
   }
 
   @CheckForNull
-  public synchronized String getString(@Nonnull String obj, @Nullable final Callable<String> valueLoader) throws Exception {
+  public String getString(@Nonnull String obj, @Nullable final Callable<String> valueLoader) throws Exception {
     byte[] cached = get(obj, new Callable<byte[]>() {
       @Override
       public byte[] call() throws Exception {
@@ -106,11 +133,12 @@ public class PersistentCache {
   }
 
   @CheckForNull
-  public synchronized byte[] get(@Nonnull String obj, @Nullable Callable<byte[]> valueLoader) throws Exception {
+  public byte[] get(@Nonnull String obj, @Nullable Callable<byte[]> valueLoader) throws Exception {
     String key = getKey(obj);
+    ReentrantLock keyLock = locks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
 
+    keyLock.lock();
     try {
-      lock();
       if (!forceUpdate) {
         byte[] cached = getCache(key);
 
@@ -132,7 +160,7 @@ public class PersistentCache {
         return value;
       }
     } finally {
-      unlock();
+      keyLock.unlock();
     }
 
     return null;
@@ -143,6 +171,7 @@ public class PersistentCache {
    */
   public synchronized void clear() {
     logger.info("cache: clearing");
+    memoryCache.clear();
     try {
       lock();
       deleteCacheEntries(createClearFilter());
@@ -232,7 +261,9 @@ public class PersistentCache {
     return new DirectoryStream.Filter<Path>() {
       @Override
       public boolean accept(Path entry) throws IOException {
-        return !LOCK_FNAME.equals(entry.getFileName().toString());
+        String fileName = entry.getFileName().toString();
+        // files being written by other threads or processes are left to clean()
+        return !LOCK_FNAME.equals(fileName) && !fileName.endsWith(TEMP_FILE_SUFFIX);
       }
     };
   }
@@ -252,17 +283,41 @@ public class PersistentCache {
 
   private void putCache(String key, byte[] value) throws UnsupportedEncodingException, IOException {
     Path cachePath = getCacheEntryPath(key);
-    Files.write(cachePath, value, CREATE, WRITE, TRUNCATE_EXISTING);
+    Path tempPath = Files.createTempFile(baseDir, key, TEMP_FILE_SUFFIX);
+    try {
+      Files.write(tempPath, value, CREATE, WRITE, TRUNCATE_EXISTING);
+      try {
+        Files.move(tempPath, cachePath, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+    memoryCache.put(key, new MemoryEntry(value, System.currentTimeMillis()));
   }
 
   private byte[] getCache(String key) throws IOException {
-    Path cachePath = getCacheEntryPath(key);
+    MemoryEntry inMemory = memoryCache.get(key);
+    if (inMemory != null) {
+      if (!isExpired(inMemory.modificationTime, this.defaultDurationToExpireMs)) {
+        return inMemory.value;
+      }
+      memoryCache.remove(key);
+    }
 
-    if (!validateCacheEntry(cachePath, this.defaultDurationToExpireMs)) {
+    Path cachePath = getCacheEntryPath(key);
+    try {
+      if (!validateCacheEntry(cachePath, this.defaultDurationToExpireMs)) {
+        return null;
+      }
+      byte[] value = Files.readAllBytes(cachePath);
+      memoryCache.put(key, new MemoryEntry(value, Files.getLastModifiedTime(cachePath).toMillis()));
+      return value;
+    } catch (NoSuchFileException e) {
+      // deleted in the meantime by another process
       return null;
     }
-
-    return Files.readAllBytes(cachePath);
   }
 
   private boolean validateCacheEntry(Path cacheEntryPath, long durationToExpireMs) throws IOException {
@@ -272,7 +327,7 @@ public class PersistentCache {
 
     if (isCacheEntryExpired(cacheEntryPath, durationToExpireMs)) {
       logger.debug("cache: expiring entry");
-      Files.delete(cacheEntryPath);
+      Files.deleteIfExists(cacheEntryPath);
       return false;
     }
 
@@ -281,15 +336,12 @@ public class PersistentCache {
 
   private boolean isCacheEntryExpired(Path cacheEntryPath, long durationToExpireMs) throws IOException {
     BasicFileAttributes attr = Files.readAttributes(cacheEntryPath, BasicFileAttributes.class);
-    long modTime = attr.lastModifiedTime().toMillis();
-
-    long age = System.currentTimeMillis() - modTime;
-
-    if (age > durationToExpireMs) {
-      return true;
-    }
+    return isExpired(attr.lastModifiedTime().toMillis(), durationToExpireMs);
+  }
 
-    return false;
+  private static boolean isExpired(long modificationTime, long durationToExpireMs) {
+    long age = System.currentTimeMillis() - modificationTime;
+    return age > durationToExpireMs;
   }
 
   private Path getLockPath() {
@@ -307,4 +359,14 @@ public class PersistentCache {
     }
     return sb.toString();
   }
+
+  private static class MemoryEntry {
+    private final byte[] value;
+    private final long modificationTime;
+
+    MemoryEntry(byte[] value, long modificationTime) {
+      this.value = value;
+      this.modificationTime = modificationTime;
+    }
+  }
 }
@@ -20,7 +20,15 @@
 package org.sonar.home.cache;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -116,6 +124,61 @@ public class PersistentCacheTest {
     assertCacheHit(false);
   }
 
+  @Test
+  public void testNoTemporaryFileLeft() throws Exception {
+    assertCacheHit(false);
+
+    String[] files = tmp.getRoot().list();
+    assertThat(files).hasSize(1);
+    assertThat(files[0].endsWith(".tmp")).isFalse();
+  }
+
+  @Test
+  public void testRecentEntriesKeptInMemory() throws Exception {
+    assertCacheHit(false);
+    FileUtils.cleanDirectory(tmp.getRoot());
+    assertCacheHit(true);
+
+    cache.clear();
+    assertCacheHit(false);
+  }
+
+  @Test
+  public void testConcurrentLookups() throws Exception {
+    final ConcurrentMap<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        final String key = "key" + (i % 10);
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return cache.getString(key, new Callable<String>() {
+              @Override
+              public String call() throws Exception {
+                loads.putIfAbsent(key, new AtomicInteger());
+                loads.get(key).incrementAndGet();
+                return VALUE + key;
+              }
+            });
+          }
+        }));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertThat(results.get(i).get()).isEqualTo(VALUE + "key" + (i % 10));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // each key is loaded only once, even when requested concurrently
+    assertThat(loads).hasSize(10);
+    for (AtomicInteger count : loads.values()) {
+      assertThat(count.get()).isEqualTo(1);
+    }
+  }
+
   private void assertCacheHit(boolean hit) throws Exception {
     CacheFillerString c = new CacheFillerString();
     assertThat(cache.getString(URI, c)).isEqualTo(VALUE);
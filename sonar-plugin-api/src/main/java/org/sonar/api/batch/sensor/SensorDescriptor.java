@@ -86,4 +86,12 @@ public interface SensorDescriptor {
    */
   SensorDescriptor disabledInPreview();
 
+  /**
+   * Allow the platform to execute this {@link Sensor} at the same time as other sensors declaring this option.
+   * Such a sensor must only exchange data through the {@link SensorContext}, and must not depend on data saved
+   * by another sensor executed concurrently. Default is to execute sensors one after the other.
+   * @since 5.2
+   */
+  SensorDescriptor executedConcurrently();
+
 }
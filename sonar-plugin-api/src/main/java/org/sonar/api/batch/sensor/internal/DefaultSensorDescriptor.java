@@ -35,6 +35,7 @@ public class DefaultSensorDescriptor implements SensorDescriptor {
   private String[] ruleRepositories = new String[0];
   private String[] properties = new String[0];
   private boolean disabledInPreview = false;
+  private boolean executedConcurrently = false;
 
   public String name() {
     return name;
@@ -61,6 +62,10 @@ public class DefaultSensorDescriptor implements SensorDescriptor {
     return disabledInPreview;
   }
 
+  public boolean isExecutedConcurrently() {
+    return executedConcurrently;
+  }
+
   @Override
   public DefaultSensorDescriptor name(String name) {
     this.name = name;
@@ -112,4 +117,10 @@ public class DefaultSensorDescriptor implements SensorDescriptor {
     return this;
   }
 
+  @Override
+  public DefaultSensorDescriptor executedConcurrently() {
+    this.executedConcurrently = true;
+    return this;
+  }
+
 }